@@ -2,7 +2,7 @@
 
 use near_sdk::borsh::{self, BorshDeserialize, BorshSerialize};
 use near_sdk::collections::{LazyOption, LookupMap, UnorderedSet};
-use near_sdk::json_types::{U128};
+use near_sdk::json_types::{U128, U64};
 use near_sdk::{env, near_bindgen, AccountId, Balance, Promise, Gas};
 
 // Standard FT (Fungible Token) interface for NEAR.
@@ -10,6 +10,8 @@ use near_sdk::{env, near_bindgen, AccountId, Balance, Promise, Gas};
 // For full FT standard: https://docs.near.org/standards/tokens/ft
 const FT_STORAGE_DEPOSIT: Balance = 1_250_000_000_000_000_000_000_000; // 1.25 NEAR (for storage of FT accounts)
 const BASE_GAS: Gas = Gas(5_000_000_000_000); // 5 TGas base gas for cross-contract calls
+// Largest page of get_active_members, so a view call stays within its gas limit however many members there are.
+const MAX_MEMBERS_PAGE: u64 = 500;
 
 // --- Contract State ---
 #[near_bindgen]
@@ -171,6 +173,19 @@ impl IndividualDeCoContract {
         self.active_members.contains(&account_id)
     }
 
+    // One page of the member set, so the oracle can cache it locally instead of asking per account.
+    // Pages hold at most MAX_MEMBERS_PAGE accounts; a shorter page is the last one.
+    pub fn get_active_members(&self, from_index: Option<U64>, limit: Option<u64>) -> Vec<AccountId> {
+        let members = self.active_members.as_vector();
+        let start = from_index.map(u64::from).unwrap_or(0);
+        let end = start.saturating_add(limit.unwrap_or(MAX_MEMBERS_PAGE).min(MAX_MEMBERS_PAGE)).min(members.len());
+        (start..end).filter_map(|index| members.get(index)).collect()
+    }
+
+    pub fn get_active_members_count(&self) -> U64 {
+        U64(self.active_members.len())
+    }
+
     pub fn get_values_csv_hash(&self) -> Option<String> {
         self.current_values_csv_hash.get()
     }
@@ -1,32 +1,42 @@
 package com.decozero;
 
-import com.google.cloud.aiplatform.v1.PredictionServiceClient;
-import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
-import com.google.cloud.aiplatform.v1.EndpointName;
-import com.google.protobuf.Value;
-import com.google.protobuf.ListValue;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
 
+import com.decozero.github.CircuitBreaker;
+import com.decozero.github.GitHubClients;
+import com.decozero.github.ResilientGitHubConnector;
 import com.decozero.secrets.SecretManager;
 import org.kohsuke.github.GHApp;
 import org.kohsuke.github.GHAppInstallation;
 import org.kohsuke.github.GHAppInstallationToken;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.HttpException;
+import org.kohsuke.github.extras.authorization.JWTTokenProvider;
 
 import spark.Spark; // Using Spark Java for the web server
 import spark.Request;
 import spark.Response;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Locale;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.Base64; // For Base64 encoding commit content
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
 public class AiServiceOracle {
 
@@ -51,27 +61,212 @@ public class AiServiceOracle {
     // and NEAR interaction (listening to event) would be done by another component.
     // This oracle only *receives* event data from that component.
 
-    private PredictionServiceClient predictionServiceClient;
+    // Optional "host:port" of a local plaintext stub prediction service, used instead of Vertex AI.
+    private static final String PREDICTION_ENDPOINT = System.getenv("PREDICTION_ENDPOINT");
+    // Maximum number of Gemini calls in flight across all requests handled by this instance.
+    private static final int GEMINI_MAX_IN_FLIGHT =
+            Integer.parseInt(System.getenv().getOrDefault("GEMINI_MAX_IN_FLIGHT", "8"));
+    // Time allowed for each area's generation before it is reported as timed out.
+    private static final long GEMINI_AREA_TIMEOUT_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("GEMINI_AREA_TIMEOUT_SECONDS", "120"));
+
+    // Size of the in-memory generation cache tier (0 disables caching of model responses).
+    private static final int GENERATION_CACHE_MAX_ENTRIES =
+            Integer.parseInt(System.getenv().getOrDefault("GENERATION_CACHE_MAX_ENTRIES", "256"));
+    // Optional directory of the on-disk generation cache tier.
+    private static final String GENERATION_CACHE_DIR = System.getenv("GENERATION_CACHE_DIR");
+    // Total size of the files of the on-disk tier; least recently used ones are deleted beyond it.
+    private static final long GENERATION_CACHE_MAX_DISK_BYTES =
+            Long.parseLong(System.getenv().getOrDefault("GENERATION_CACHE_MAX_DISK_BYTES", "1073741824"));
+    // Age after which a cached model response is no longer used; expired files are swept every interval.
+    private static final long GENERATION_CACHE_TTL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("GENERATION_CACHE_TTL_SECONDS", "86400"));
+    private static final long GENERATION_CACHE_SWEEP_INTERVAL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("GENERATION_CACHE_SWEEP_INTERVAL_SECONDS", "3600"));
+    // Capacity of the pending job queue; requests beyond it are rejected with 429.
+    private static final int JOB_QUEUE_CAPACITY =
+            Integer.parseInt(System.getenv().getOrDefault("JOB_QUEUE_CAPACITY", "100"));
+    // Number of jobs processed concurrently.
+    private static final int JOB_WORKERS =
+            Integer.parseInt(System.getenv().getOrDefault("JOB_WORKERS", "4"));
+    // Number of finished jobs kept for status polling and deduplication.
+    private static final int JOB_HISTORY_LIMIT =
+            Integer.parseInt(System.getenv().getOrDefault("JOB_HISTORY_LIMIT", "1000"));
+    // Local journal of accepted jobs, replayed on startup.
+    private static final String JOB_JOURNAL_PATH = System.getenv().getOrDefault("JOB_JOURNAL_PATH", "deco-jobs.journal");
+    // Transaction ids of finished jobs the journal remembers, so that their redeliveries are not run again.
+    private static final int JOB_JOURNAL_FINISHED_LIMIT =
+            Integer.parseInt(System.getenv().getOrDefault("JOB_JOURNAL_FINISHED_LIMIT", "10000"));
+    private static final int JOB_RETRY_AFTER_SECONDS = 30;
+    // How long before expiry a cached installation token is refreshed in the background.
+    private static final long GITHUB_TOKEN_REFRESH_AHEAD_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("GITHUB_TOKEN_REFRESH_AHEAD_SECONDS", "300"));
+    // GitHub REST API base URL.
+    private static final String GITHUB_API_URL = System.getenv().getOrDefault("GITHUB_API_URL", "https://api.github.com");
+    // Number of repositories whose README is cached for conditional revalidation.
+    private static final int README_CACHE_MAX_REPOS =
+            Integer.parseInt(System.getenv().getOrDefault("README_CACHE_MAX_REPOS", "512"));
+    // Per-area prompt, compiled once.
+    private static final PromptTemplate AREA_PROMPT = PromptTemplate.compile(
+            "You are an expert AI agent tasked with drafting initial documents for a new Decentralized Autonomous Company (DeCo). " +
+            "Based on the provided README.md, generate a concise, professional, and foundational draft for the '{area}' functional area. " +
+            "Focus on key elements relevant to starting such a company. The output should be in Markdown format.\n\n" +
+            "DeCo Idea (from README.md):\n{readme}\n\n" +
+            "Draft for {area} area:");
+    // Number of parallel blob uploads when committing generated documents.
+    private static final int GITHUB_BLOB_UPLOAD_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("GITHUB_BLOB_UPLOAD_THREADS", "4"));
+
+    // Consecutive failures of GitHub or of the model after which /health reports the instance unavailable,
+    // until HEALTH_RECOVERY_SECONDS have passed without another one.
+    private static final int HEALTH_MAX_CONSECUTIVE_FAILURES =
+            Integer.parseInt(System.getenv().getOrDefault("HEALTH_MAX_CONSECUTIVE_FAILURES", "5"));
+    private static final long HEALTH_RECOVERY_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("HEALTH_RECOVERY_SECONDS", "30"));
+
+    // "owner/repo" part of a GitHub repository URL.
+    private static final Pattern OWNER_REPO = Pattern.compile("[A-Za-z0-9-]+/[A-Za-z0-9._-]+");
+
+    // Sections split out of an area's document into their own files, by area then heading.
+    private static final Map<String, Map<String, String>> AREA_SECTION_FILES = areaSectionFiles();
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.HistogramFamily stageLatency =
+            metrics.histogram("deco_stage_seconds", "Latency of completed job stages.", "stage");
+    private final Metrics.CounterFamily stageErrors =
+            metrics.counter("deco_stage_errors_total", "Jobs failed by the stage they failed in.", "stage");
+    private final Metrics.HistogramFamily jobLatency =
+            metrics.histogram("deco_job_seconds", "Latency of whole jobs by final state.", "state");
+    private final LongAdder readmeChars =
+            metrics.counter("deco_readme_chars_total", "Characters of README content used for prompts.");
+    // Consecutive failures per dependency, reset by the next success; reported by /health.
+    private final DependencyHealth gitHubHealth =
+            new DependencyHealth(HEALTH_MAX_CONSECUTIVE_FAILURES, HEALTH_RECOVERY_SECONDS, TimeUnit.SECONDS);
+    private final DependencyHealth modelHealth =
+            new DependencyHealth(HEALTH_MAX_CONSECUTIVE_FAILURES, HEALTH_RECOVERY_SECONDS, TimeUnit.SECONDS);
+
+    private final PredictionClient predictionClient;
+    private final GenerationCache generationCache;
+    private final AreaGenerator areaGenerator;
+    private final JobJournal jobJournal;
+    private final JobQueue jobQueue;
+    private final GitTreeCommitter gitTreeCommitter = new GitTreeCommitter(GITHUB_BLOB_UPLOAD_THREADS);
+    private final InstallationTokenCache installationTokens =
+            new InstallationTokenCache(this::mintInstallationToken, GITHUB_API_URL, GITHUB_TOKEN_REFRESH_AHEAD_SECONDS, TimeUnit.SECONDS);
+    private volatile GHApp gitHubApp;
+    // Every GitHub call of the oracle is paced, retried and coalesced by the shared connector.
+    private final ResilientGitHubConnector gitHubConnector = GitHubClients.connector();
+    private final ReadmeCache readmeCache = new ReadmeCache(gitHubConnector, GITHUB_API_URL, README_CACHE_MAX_REPOS);
 
     public AiServiceOracle() {
-        // Initialize Gemini client
+        this(createVertexClient());
+    }
+
+    AiServiceOracle(PredictionClient predictionClient) {
+        this.predictionClient = predictionClient;
+        this.generationCache = createGenerationCache();
+        Map<String, List<String>> sectionHeadings = new LinkedHashMap<>();
+        AREA_SECTION_FILES.forEach((area, sections) -> sectionHeadings.put(area, new ArrayList<>(sections.keySet())));
+        this.areaGenerator = new AreaGenerator(predictionClient, generationCache, sectionHeadings,
+                GEMINI_MAX_IN_FLIGHT, GEMINI_AREA_TIMEOUT_SECONDS, TimeUnit.SECONDS, metrics);
+        this.jobJournal = new JobJournal(Paths.get(JOB_JOURNAL_PATH), JOB_JOURNAL_FINISHED_LIMIT,
+                JobJournal.DEFAULT_COMPACT_MIN_BYTES);
+        this.jobQueue = new JobQueue(JOB_QUEUE_CAPACITY, JOB_WORKERS, JOB_HISTORY_LIMIT, jobJournal, this::runJob);
+        registerComponentMetrics();
+    }
+
+    // Counters the queue and caches already keep, exported as they are.
+    private void registerComponentMetrics() {
+        metrics.gauge("deco_job_queue_depth", "Jobs waiting for a worker.", jobQueue::depth);
+        metrics.gauge("deco_job_queue_capacity", "Maximum number of waiting jobs.", () -> JOB_QUEUE_CAPACITY);
+        metrics.gauge("deco_jobs_running", "Jobs being processed.", jobQueue::running);
+        metrics.counter("deco_github_token_cache_hits_total", "Installation tokens served from the cache.", installationTokens::hitCount);
+        metrics.counter("deco_github_token_cache_misses_total", "Installation tokens minted on demand.", installationTokens::missCount);
+        metrics.counter("deco_github_token_coalesced_total", "Token requests that joined a mint already in flight.",
+                installationTokens::coalescedCount);
+        metrics.counter("deco_github_token_refreshes_total", "Installation tokens refreshed ahead of expiry.", installationTokens::refreshCount);
+        metrics.counter("deco_github_token_refresh_failures_total", "Failed background token refreshes.",
+                installationTokens::refreshFailureCount);
+        metrics.counter("deco_readme_not_modified_total", "README fetches answered 304 Not Modified.", readmeCache::notModifiedCount);
+        metrics.counter("deco_readme_downloads_total", "README fetches that downloaded the content.", readmeCache::downloadCount);
+        metrics.counter("deco_github_requests_total", "GitHub API requests made.", gitHubConnector::requestCount);
+        metrics.counter("deco_github_calls_total", "Calls sent to GitHub, retries included.", gitHubConnector::callCount);
+        metrics.counter("deco_github_coalesced_total", "GitHub GETs answered by an identical call in flight.", gitHubConnector::coalescedCount);
+        metrics.counter("deco_github_retries_total", "GitHub calls retried.", gitHubConnector::retryCount);
+        metrics.counter("deco_github_throttled_total", "GitHub responses that were rate limited.", gitHubConnector::throttledCount);
+        metrics.counter("deco_github_limited_total", "GitHub requests refused for lack of rate limit.", gitHubConnector::limitedCount);
+        metrics.counter("deco_github_circuit_rejected_total", "GitHub requests refused by the open circuit.",
+                gitHubConnector.circuitBreaker()::rejectedCount);
+        metrics.gauge("deco_github_circuit_open", "1 while the GitHub circuit breaker is open.",
+                () -> gitHubConnector.circuitBreaker().state() == CircuitBreaker.State.CLOSED ? 0 : 1);
+        if (generationCache != null) {
+            metrics.counter("deco_generation_cache_hits_total", "Model responses served from the generation cache.", generationCache::hitCount);
+            metrics.counter("deco_generation_cache_disk_hits_total", "Generation cache hits served from disk.", generationCache::diskHitCount);
+            metrics.counter("deco_generation_cache_misses_total", "Generations that needed a model call.", generationCache::missCount);
+            metrics.counter("deco_generation_cache_disk_evictions_total", "Generation cache files deleted to stay within the byte budget.",
+                    generationCache::diskEvictionCount);
+            metrics.gauge("deco_generation_cache_disk_bytes", "Size of the generation cache files.", generationCache::diskBytes);
+            metrics.gauge("deco_generation_cache_saved_seconds", "Model time saved by generation cache hits.",
+                    () -> generationCache.savedLatencyNanos() / 1e9);
+        }
+    }
+    private static Map<String, Map<String, String>> areaSectionFiles() {
+        Map<String, String> board = new LinkedHashMap<>();
+        board.put("Elevator Pitch", "BOARD/elevator_pitch.md");
+        board.put("Vision Statement", "BOARD/vision_statement.md");
+        Map<String, Map<String, String>> files = new LinkedHashMap<>();
+        files.put("board", board);
+        return files;
+    }
+
+    // Cache of model responses; disabled with GENERATION_CACHE_MAX_ENTRIES=0.
+    private static GenerationCache createGenerationCache() {
+        if (GENERATION_CACHE_MAX_ENTRIES <= 0) {
+            return null;
+        }
+        Path directory = GENERATION_CACHE_DIR == null || GENERATION_CACHE_DIR.isEmpty() ? null : Paths.get(GENERATION_CACHE_DIR);
+        return new GenerationCache(GENERATION_CACHE_MAX_ENTRIES, directory, GENERATION_CACHE_MAX_DISK_BYTES,
+                GENERATION_CACHE_TTL_SECONDS, GENERATION_CACHE_SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Resumes jobs left unfinished by a previous run and starts the job workers.
+     */
+    void start() throws IOException {
+        List<DeCoJob> recovered = new ArrayList<>();
+        for (String payload : jobJournal.recover()) {
+            try {
+                recovered.add(parseJob(payload));
+            } catch (JsonParseException | IllegalArgumentException e) {
+                logger.warning("Skipping unparseable journaled request: " + e.getMessage());
+            }
+        }
+        jobQueue.start(recovered);
+    }
+
+    // Initialize Gemini client
+    private static PredictionClient createVertexClient() {
         try {
-            PredictionServiceSettings predictionServiceSettings =
-                PredictionServiceSettings.newBuilder()
-                    .setEndpoint(GCP_LOCATION + "-aiplatform.googleapis.com:443")
-                    .build();
-            predictionServiceClient = PredictionServiceClient.create(predictionServiceSettings);
+            PredictionClient client = VertexPredictionClient.create(GCP_PROJECT_ID, GCP_LOCATION, PREDICTION_ENDPOINT);
             logger.info("PredictionServiceClient (Gemini) initialized.");
+            return client;
         } catch (IOException e) {
             logger.severe("Failed to initialize PredictionServiceClient (Gemini): " + e.getMessage());
             // This is a critical error, the application should not proceed
             System.exit(1);
+            return null;
         }
     }
 
     public static void main(String[] args) {
         // Initialize the AiServiceOracle
         AiServiceOracle oracle = new AiServiceOracle();
+        try {
+            oracle.start();
+        } catch (IOException e) {
+            logger.severe("Failed to open job journal " + JOB_JOURNAL_PATH + ": " + e.getMessage());
+            System.exit(1);
+        }
 
         // Get the port from environment variable, default to 8080
         int port = Integer.parseInt(System.getenv().getOrDefault("PORT", "8080"));
@@ -84,10 +279,16 @@ public class AiServiceOracle {
         // `ServiceRequested` events on the DeCo Zero Service Contract on NEAR.
         Spark.post("/process-deco-request", (request, response) -> oracle.handleDeCoServiceRequest(request, response));
 
-        // Basic health check endpoint
-        Spark.get("/health", (req, res) -> {
-            res.status(200);
-            return "OK";
+        // Progress of a queued request, keyed by its NEAR transaction id.
+        Spark.get("/requests/:transactionId", (request, response) -> oracle.handleStatusRequest(request, response));
+
+        // Readiness: 503 while the workers are down, the queue is full or a dependency keeps failing.
+        Spark.get("/health", (request, response) -> oracle.handleHealthRequest(request, response));
+
+        // Metrics in the Prometheus text format.
+        Spark.get("/metrics", (request, response) -> {
+            response.type(Metrics.CONTENT_TYPE);
+            return oracle.metrics.render();
         });
     }
 
@@ -103,174 +304,366 @@ public class AiServiceOracle {
      * "fee_paid": "..."
      * }
      * This payload would typically come from a NEAR Indexer/Listener service.
+     *
+     * The request is only validated and queued here; it is answered with 202 and processed by a
+     * worker. Progress can be polled on GET /requests/{transactionId}.
      */
     private String handleDeCoServiceRequest(Request req, Response res) {
         logger.info("Received /process-deco-request POST request.");
         res.type("application/json");
 
-        JsonObject payload;
+        DeCoJob job;
         try {
-            payload = gson.fromJson(req.body(), JsonObject.class);
-        } catch (JsonSyntaxException e) {
-            logger.severe("Invalid JSON payload: " + e.getMessage());
+            job = parseJob(req.body());
+        } catch (JsonParseException | IllegalArgumentException e) {
+            logger.warning("Invalid JSON payload: " + e.getMessage());
             res.status(400);
-            return gson.toJson(Collections.singletonMap("status", "error: Invalid JSON payload"));
+            return gson.toJson(Collections.singletonMap("status", "error: Invalid JSON payload: " + e.getMessage()));
         }
 
-        // --- Extract Data from Payload ---
-        String requesterId = payload.get("requester_id").getAsString();
-        String githubRepoUrl = payload.get("github_repo_url").getAsString();
-        // Gson's getAsJsonArray().asList() is for simple types. For complex, iterate JsonElement.
-        // For simplicity, assuming simple strings for now.
-        String[] selectedAreas = gson.fromJson(payload.get("selected_areas"), String[].class);
-        String transactionId = payload.get("transaction_id").getAsString();
+        JobQueue.SubmitResult result;
+        try {
+            result = jobQueue.submit(job);
+        } catch (IOException e) {
+            logger.severe("Could not journal request " + job.transactionId + ": " + e.getMessage());
+            res.status(503);
+            return gson.toJson(Collections.singletonMap("status", "error: Could not accept request"));
+        }
 
-        logger.info(String.format("Processing request for %s, Repo: %s, Areas: %s, Tx ID: %s",
-                requesterId, githubRepoUrl, String.join(", ", selectedAreas), transactionId));
+        switch (result) {
+            case QUEUE_FULL:
+                logger.warning("Job queue full, rejecting Tx ID: " + job.transactionId);
+                res.status(429);
+                res.header("Retry-After", String.valueOf(JOB_RETRY_AFTER_SECONDS));
+                return gson.toJson(Collections.singletonMap("status", "error: Too many pending requests"));
+            case DUPLICATE:
+                logger.info("Duplicate request for Tx ID: " + job.transactionId);
+                res.status(202);
+                return gson.toJson(accepted(jobQueue.get(job.transactionId), "duplicate"));
+            default:
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.log(Level.INFO, "Queued request for {0}, Repo: {1}, Areas: {2}, Tx ID: {3}",
+                            new Object[] {job.requesterId, job.githubRepoUrl, String.join(", ", job.selectedAreas), job.transactionId});
+                }
+                res.status(202);
+                return gson.toJson(accepted(job, "accepted"));
+        }
+    }
+
+    // --- Handles GET /requests/{transactionId} ---
+    private String handleStatusRequest(Request req, Response res) {
+        res.type("application/json");
+        DeCoJob job = jobQueue.get(req.params(":transactionId"));
+        if (job == null) {
+            res.status(404);
+            return gson.toJson(Collections.singletonMap("status", "error: Unknown transaction id"));
+        }
+        res.status(200);
+        return gson.toJson(job.toStatus());
+    }
+
+    // --- Handles GET /health ---
+    private String handleHealthRequest(Request req, Response res) {
+        res.type("application/json");
+        int depth = jobQueue.depth();
+        boolean workers = jobQueue.isRunning();
+        boolean ready = workers && depth < jobQueue.capacity() && gitHubHealth.isUp() && modelHealth.isUp();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", ready ? "ready" : "unavailable");
+        body.put("workers", workers ? "running" : "stopped");
+        body.put("queue_depth", depth);
+        body.put("queue_capacity", jobQueue.capacity());
+        body.put("jobs_running", jobQueue.running());
+        body.put("github_consecutive_failures", gitHubHealth.consecutiveFailures());
+        body.put("github_circuit", gitHubConnector.circuitBreaker().state().name().toLowerCase(Locale.ROOT));
+        body.put("model_consecutive_failures", modelHealth.consecutiveFailures());
+        res.status(ready ? 200 : 503);
+        return gson.toJson(body);
+    }
 
+    // --- Runs a job for the queue, recording its latency by final state ---
+    private void runJob(DeCoJob job) {
+        long start = System.nanoTime();
+        try {
+            processJob(job);
+        } finally {
+            // A job still running here threw; the queue marks it failed.
+            DeCoJob.State state = job.state() == DeCoJob.State.RUNNING ? DeCoJob.State.FAILED : job.state();
+            jobLatency.labels(state.name().toLowerCase(Locale.ROOT)).observeSince(start);
+        }
+    }
+    /**
+     * Runs the generation pipeline of one job, recording the progress of each stage on the job.
+     * Called by the job queue's workers.
+     */
+    void processJob(DeCoJob job) {
+        String githubRepoUrl = job.githubRepoUrl;
+        String[] selectedAreas = job.selectedAreas;
+        String transactionId = job.transactionId;
+
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Processing request for {0}, Repo: {1}, Areas: {2}, Tx ID: {3}",
+                    new Object[] {job.requesterId, githubRepoUrl, String.join(", ", selectedAreas), transactionId});
+        }
+
+        String stage = DeCoJob.STAGE_GITHUB_AUTH;
+        long stageStart = System.nanoTime();
         try {
             // --- 1. Authenticate with GitHub ---
-            String installationToken = getGitHubAppInstallationToken(githubRepoUrl, GITHUB_APP_ID, GITHUB_APP_PRIVATE_KEY);
-            if (installationToken == null) {
-                logger.severe("Failed to get GitHub App installation token.");
-                res.status(500);
-                return gson.toJson(Collections.singletonMap("status", "error: Could not authenticate with GitHub App"));
-            }
-            GitHub github = new GitHubBuilder().withAppInstallationToken(installationToken).build();
+            job.stage(stage, "running");
+            // Installation tokens and clients are cached per repository and refreshed ahead of expiry.
             String ownerRepo = githubRepoUrl.replace("https://github.com/", "");
+            if (!OWNER_REPO.matcher(ownerRepo).matches()) {
+                fail(job, stage, "error: Not a GitHub repository URL: " + githubRepoUrl, false);
+                return;
+            }
+            GitHub github;
+            try {
+                github = installationTokens.client(ownerRepo);
+            } catch (IOException e) {
+                logger.severe("Failed to get GitHub App installation token: " + e.getMessage());
+                // A 404 means the app is not installed on the repository, which GitHub is not to blame for.
+                fail(job, stage, "error: Could not authenticate with GitHub App", isDependencyError(e));
+                return;
+            }
             GHRepository repo = github.getRepository(ownerRepo);
-            logger.info("Successfully authenticated with GitHub for repo: " + repo.getFullName());
+            logger.log(Level.INFO, "Successfully authenticated with GitHub for repo: {0}", repo.getFullName());
+            stageDone(job, stage, stageStart);
+            gitHubHealth.success();
 
 
             // --- 2. Fetch README.md Content ---
-            String readmeContent = fetchReadmeContent(repo);
+            stage = DeCoJob.STAGE_README_FETCH;
+            stageStart = System.nanoTime();
+            job.stage(stage, "running");
+            // Revalidated with ETag, so an unchanged README is not downloaded again.
+            String readmeContent = readmeCache.fetch(ownerRepo, installationTokens.token(ownerRepo));
             if (readmeContent == null) {
                 logger.severe("Failed to fetch README.md. Cannot proceed with AI generation.");
-                res.status(500);
-                return gson.toJson(Collections.singletonMap("status", "error: Failed to fetch README.md"));
+                fail(job, stage, "error: Failed to fetch README.md", false);
+                return;
             }
-            logger.info("README.md fetched successfully. Size: " + readmeContent.length() + " chars.");
+            logger.log(Level.INFO, "README.md fetched successfully. Size: {0} chars.", readmeContent.length());
+            readmeChars.add(readmeContent.length());
+            stageDone(job, stage, stageStart);
 
 
             // --- 3. Generate Documents with Gemini AI ---
-            Map<String, String> generatedDocs = new HashMap<>();
+            // All areas are generated concurrently; each one succeeds or fails on its own.
+            stage = DeCoJob.STAGE_GENERATION;
+            stageStart = System.nanoTime();
+            job.stage(stage, "running");
+            Map<String, String> prompts = new LinkedHashMap<>();
             for (String area : selectedAreas) {
-                logger.info("Generating document for area: " + area);
-                String prompt = String.format(
-                    "You are an expert AI agent tasked with drafting initial documents for a new Decentralized Autonomous Company (DeCo). " +
-                    "Based on the provided README.md, generate a concise, professional, and foundational draft for the '%s' functional area. " +
-                    "Focus on key elements relevant to starting such a company. The output should be in Markdown format.\n\n" +
-                    "DeCo Idea (from README.md):\n%s\n\n" +
-                    "Draft for %s area:",
-                    area, readmeContent, area
-                );
-                String docContent = callGeminiApi(prompt, GEMINI_MODEL_ID);
-                if (docContent != null && !docContent.trim().isEmpty()) {
-                    generatedDocs.put(area, docContent);
-                    logger.info("Generated document for " + area + ". Length: " + docContent.length());
-                } else {
-                    logger.warning("Failed to generate content for area: " + area);
+                String prompt = AREA_PROMPT.render(area, readmeContent);
+                prompts.put(area, prompt);
+                job.area(area, "generating");
+            }
+            if (logger.isLoggable(Level.INFO)) {
+                logger.log(Level.INFO, "Generating documents for areas: {0}", String.join(", ", prompts.keySet()));
+            }
+            Map<String, AreaGenerator.AreaResult> areaResults = areaGenerator.generateAll(prompts, GEMINI_MODEL_ID, job.useGenerationCache);
+            if (generationCache != null && logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Generation cache hit ratio: {0}, model time saved: {1} ms",
+                        new Object[] {generationCache.hitRatio(), TimeUnit.NANOSECONDS.toMillis(generationCache.savedLatencyNanos())});
+            }
+
+            Map<String, AreaGenerator.AreaResult> generatedDocs = new LinkedHashMap<>();
+            for (Map.Entry<String, AreaGenerator.AreaResult> entry : areaResults.entrySet()) {
+                AreaGenerator.AreaResult result = entry.getValue();
+                job.area(entry.getKey(), result.describe());
+                if (result.isGenerated()) {
+                    generatedDocs.put(entry.getKey(), result);
+                    logger.log(Level.INFO, "Generated document for {0}. Length: {1}", new Object[] {entry.getKey(), result.content.length()});
                 }
             }
 
             if (generatedDocs.isEmpty()) {
                 logger.warning("No documents were successfully generated by AI.");
-                res.status(500);
-                return gson.toJson(Collections.singletonMap("status", "error: No documents generated by AI"));
+                // Empty answers (e.g. a blocked prompt) are about the README; failed or timed out calls are the model's.
+                boolean modelError = false;
+                for (AreaGenerator.AreaResult result : areaResults.values()) {
+                    modelError |= result.status == AreaGenerator.AreaResult.Status.FAILED
+                            || result.status == AreaGenerator.AreaResult.Status.TIMED_OUT;
+                }
+                fail(job, stage, "error: No documents generated by AI", modelError);
+                return;
             }
+            modelHealth.success();
+            stageLatency.labels(stage).observeSince(stageStart);
+            job.stage(stage, generatedDocs.size() + "/" + prompts.size() + " generated");
 
 
             // --- 4. Commit Generated Documents to GitHub Repo ---
-            String commitMessage = "DeCo Zero AI: Initial document drafts for " + String.join(", ", selectedAreas) + " areas (Tx: " + transactionId + ")";
-            for (Map.Entry<String, String> entry : generatedDocs.entrySet()) {
+            stage = DeCoJob.STAGE_COMMIT;
+            stageStart = System.nanoTime();
+            job.stage(stage, "running");
+            // All documents go into a single commit on the branch.
+            String commitMessage = "DeCo Zero AI: Initial document drafts for " + String.join(", ", generatedDocs.keySet()) + " areas (Tx: " + transactionId + ")";
+            Map<String, String> files = new LinkedHashMap<>();
+            for (Map.Entry<String, AreaGenerator.AreaResult> entry : generatedDocs.entrySet()) {
                 String area = entry.getKey();
-                String content = entry.getValue();
+                AreaGenerator.AreaResult result = entry.getValue();
                 String filePath = area.toUpperCase() + "/" + area.toLowerCase().replace("_", "-") + "_initial_draft.md"; // e.g., LEGAL/legal-initial-draft.md
 
-                // Handle BOARD branch specifically
-                if (area.equalsIgnoreCase("board")) {
-                    String elevatorPitchContent = extractElevatorPitch(content); // Extract if AI generates multiple parts
-                    String visionStatementContent = extractVisionStatement(content);
-                    
-                    if (elevatorPitchContent != null && !elevatorPitchContent.trim().isEmpty()) {
-                        commitFileToGitHub(repo, "BOARD/elevator_pitch.md", elevatorPitchContent, "DeCo Zero AI: Initial Elevator Pitch");
+                // Areas such as BOARD have their sections split into separate files while generating.
+                Map<String, String> sectionFiles = AREA_SECTION_FILES.get(area.toLowerCase());
+                if (sectionFiles == null) {
+                    files.put(filePath, result.content);
+                    continue;
+                }
+                boolean complete = true;
+                for (Map.Entry<String, String> section : sectionFiles.entrySet()) {
+                    String sectionContent = result.sections.get(section.getKey());
+                    if (sectionContent != null) {
+                        files.put(section.getValue(), sectionContent);
                     } else {
-                        logger.warning("Could not extract Elevator Pitch for BOARD. Committing full content to general board file.");
-                        commitFileToGitHub(repo, filePath, content, commitMessage); // Fallback to committing full content
-                    }
-                    if (visionStatementContent != null && !visionStatementContent.trim().isEmpty()) {
-                         commitFileToGitHub(repo, "BOARD/vision_statement.md", visionStatementContent, "DeCo Zero AI: Initial Vision Statement");
-                    } else if (elevatorPitchContent == null || elevatorPitchContent.trim().isEmpty()) { // Only commit full content if neither specific piece was extracted
-                        // If elevator pitch was not extracted, we already committed full content above. Avoid double commit.
-                        logger.warning("Could not extract Vision Statement for BOARD. Full content already handled or will be skipped.");
+                        logger.log(Level.WARNING, "Could not extract {0} for {1}.", new Object[] {section.getKey(), area.toUpperCase()});
+                        complete = false;
                     }
-                } else {
-                    commitFileToGitHub(repo, filePath, content, commitMessage);
+                }
+                if (!complete) {
+                    // Keep the full draft so nothing generated is lost.
+                    files.put(filePath, result.content);
                 }
             }
+            gitTreeCommitter.commitFiles(repo, "main", files, commitMessage);
             
-            logger.info("Documents committed to GitHub for " + githubRepoUrl);
+            logger.log(Level.INFO, "Documents committed to GitHub for {0}", githubRepoUrl);
+            stageDone(job, stage, stageStart);
+            gitHubHealth.success();
 
             // --- 5. (Optional) Update NEAR Contract with Completion Status ---
             // In a more advanced system, this oracle might call a function on the
             // DeCo Zero Service Contract (Contract 1) to mark the request as complete,
             // or call a function on the individual DeCo's contract to confirm completion.
             // This is mocked for now.
-            logger.info("MOCK: Notifying NEAR blockchain of service completion for Tx: " + transactionId);
+            logger.log(Level.INFO, "MOCK: Notifying NEAR blockchain of service completion for Tx: {0}", transactionId);
 
 
-            res.status(200);
-            return gson.toJson(Collections.singletonMap("status", "success: Documents generated and committed."));
+            if (generatedDocs.size() == prompts.size()) {
+                job.transition(DeCoJob.State.SUCCEEDED, "success: Documents generated and committed.");
+            } else {
+                job.transition(DeCoJob.State.PARTIAL,
+                        "partial: " + generatedDocs.size() + " of " + prompts.size() + " documents generated and committed.");
+            }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, stage, "error: interrupted", false);
         } catch (Exception e) {
-            logger.severe("Error processing DeCo service request: " + e.getMessage());
-            res.status(500);
-            return gson.toJson(Collections.singletonMap("status", "error: " + e.getMessage()));
+            logger.log(Level.SEVERE, "Error processing DeCo service request: {0}", e.getMessage());
+            fail(job, stage, "error: " + e.getMessage(), isDependencyError(e));
         }
     }
 
-    // --- Helper for fetching GitHub App Installation Token ---
-    private String getGitHubAppInstallationToken(String repoUrl, String appId, String privateKey) throws IOException {
-        try {
-            GHApp app = new GitHubBuilder().withAppInstallationToken(privateKey).build().getApp();
-            GHAppInstallation installation = app.getInstallationByRepository(repoUrl.split("/")[0], repoUrl.split("/")[1]);
-            GHAppInstallationToken token = installation.createToken().create();
-            return token.getToken();
-        } catch (Exception e) {
-            logger.severe("Error getting GitHub App installation token: " + e.getMessage());
-            return null;
+    // --- Helper for marking a stage done and recording its latency ---
+    private void stageDone(DeCoJob job, String stage, long startNanos) {
+        stageLatency.labels(stage).observeSince(startNanos);
+        job.stage(stage, "done");
+    }
+
+    // --- Helper for parsing and validating a request payload into a job ---
+    // Every field is type-checked, so a malformed payload is a 400 rather than a getAs* exception.
+    private static DeCoJob parseJob(String body) {
+        JsonElement parsed = gson.fromJson(body, JsonElement.class);
+        if (parsed == null || !parsed.isJsonObject()) {
+            throw new IllegalArgumentException("payload is not a JSON object");
+        }
+        JsonObject payload = parsed.getAsJsonObject();
+
+        // --- Extract Data from Payload ---
+        String requesterId = requireString(payload, "requester_id");
+        String githubRepoUrl = requireString(payload, "github_repo_url");
+        String transactionId = requireString(payload, "transaction_id");
+        JsonElement areas = payload.get("selected_areas");
+        if (areas == null || !areas.isJsonArray()) {
+            throw new IllegalArgumentException("selected_areas must be an array of strings");
+        }
+        String[] selectedAreas = new String[areas.getAsJsonArray().size()];
+        for (int i = 0; i < selectedAreas.length; i++) {
+            JsonElement area = areas.getAsJsonArray().get(i);
+            if (!area.isJsonPrimitive() || !area.getAsJsonPrimitive().isString()) {
+                throw new IllegalArgumentException("selected_areas must be an array of strings");
+            }
+            selectedAreas[i] = area.getAsString();
         }
+        // Optional: "use_cache": false forces fresh generations for this request.
+        JsonElement useCache = payload.get("use_cache");
+        if (useCache != null && !useCache.isJsonNull()
+                && (!useCache.isJsonPrimitive() || !useCache.getAsJsonPrimitive().isBoolean())) {
+            throw new IllegalArgumentException("use_cache must be a boolean");
+        }
+        return new DeCoJob(transactionId, requesterId, githubRepoUrl, selectedAreas, body,
+                useCache == null || useCache.isJsonNull() || useCache.getAsBoolean());
     }
 
-    // --- Helper for fetching README.md from GitHub ---
-    private String fetchReadmeContent(GHRepository repo) throws IOException {
-        return repo.getReadme().getContent();
+    private static String requireString(JsonObject payload, String field) {
+        JsonElement value = payload.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new IllegalArgumentException("missing field " + field);
+        }
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException(field + " must be a string");
+        }
+        return value.getAsString();
     }
 
-    // --- Helper for committing files to GitHub ---
-    private void commitFileToGitHub(GHRepository repo, String filePath, String content, String commitMessage) throws IOException {
-        repo.createContent().path(filePath).content(content).message(commitMessage).branch("main").commit();
+    // --- Helper for marking a job and its current stage as failed ---
+    // A dependency error counts against the dependency the stage calls; errors caused by the request
+    // itself (app not installed, no README, bad URL) say nothing about the dependency's health.
+    private void fail(DeCoJob job, String stage, String message, boolean dependencyError) {
+        stageErrors.increment(stage);
+        if (dependencyError) {
+            (DeCoJob.STAGE_GENERATION.equals(stage) ? modelHealth : gitHubHealth).failure();
+        }
+        job.stage(stage, "failed");
+        job.transition(DeCoJob.State.FAILED, message);
     }
 
-    // --- Helper to extract Elevator Pitch from generated Board document ---
-    private String extractElevatorPitch(String boardDocContent) {
-        // This is a simple regex-based extraction. A more robust solution might use LLM parsing or structured output.
-        // Assumes a markdown section like "## Elevator Pitch"
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("##\\s*Elevator Pitch\\s*\\n(.*?)(\\n##|\\n---|$)", java.util.regex.Pattern.DOTALL);
-        java.util.regex.Matcher matcher = pattern.matcher(boardDocContent);
-        if (matcher.find()) {
-            return matcher.group(1).trim();
+    // --- Helper for telling dependency errors (5xx, I/O, timeouts) from 4xx answers about the request ---
+    private static boolean isDependencyError(Throwable e) {
+        if (e instanceof HttpException) {
+            int status = ((HttpException) e).getResponseCode();
+            return status < 400 || status >= 500 || status == 429;
         }
-        return null;
+        // github-api reports a 404 as a GHFileNotFoundException, not an HttpException.
+        return !(e instanceof FileNotFoundException) && e instanceof IOException;
     }
 
-    // --- Helper to extract Vision Statement from generated Board document ---
-    private String extractVisionStatement(String boardDocContent) {
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("##\\s*Vision Statement\\s*\\n(.*?)(\\n##|\\n---|$)", java.util.regex.Pattern.DOTALL);
-        java.util.regex.Matcher matcher = pattern.matcher(boardDocContent);
-        if (matcher.find()) {
-            return matcher.group(1).trim();
+    // --- Helper for building the 202 response of a queued request ---
+    private static Map<String, Object> accepted(DeCoJob job, String status) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", status);
+        body.put("transaction_id", job.transactionId);
+        body.put("state", job.state().name().toLowerCase());
+        body.put("status_url", "/requests/" + job.transactionId);
+        return body;
+    }
+
+    // --- Helper for minting a GitHub App Installation Token ---
+    // The app-level client is built once and reused for every mint. It authenticates with a JWT
+    // signed by the app's private key, which JWTTokenProvider re-signs before the 10 minutes GitHub
+    // allows a JWT are up.
+    private InstallationTokenCache.MintedToken mintInstallationToken(String owner, String repo) throws IOException {
+        GHApp app = gitHubApp;
+        if (app == null) {
+            synchronized (this) {
+                if (gitHubApp == null) {
+                    JWTTokenProvider jwt;
+                    try {
+                        jwt = new JWTTokenProvider(GITHUB_APP_ID, GitHubAppKey.parse(GITHUB_APP_PRIVATE_KEY));
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Unusable GitHub App private key: " + e.getMessage(), e);
+                    }
+                    gitHubApp = GitHubClients.builder(GITHUB_API_URL).withAuthorizationProvider(jwt).build().getApp();
+                }
+                app = gitHubApp;
+            }
         }
-        return null;
+        GHAppInstallation installation = app.getInstallationByRepository(owner, repo);
+        GHAppInstallationToken token = installation.createToken().create();
+        return new InstallationTokenCache.MintedToken(token.getToken(), token.getExpiresAt().getTime());
     }
 }
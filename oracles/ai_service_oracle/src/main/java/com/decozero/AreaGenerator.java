@@ -0,0 +1,218 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Generates the documents of several functional areas concurrently.
+ *
+ * All requests share one bounded pool, so the number of model calls in flight across the whole
+ * process never exceeds {@code maxInFlight}. Each area has its own deadline and its own outcome,
+ * so one slow or failing area does not discard the others.
+ */
+class AreaGenerator {
+
+    private static final Logger logger = Logger.getLogger(AreaGenerator.class.getName());
+
+    /** Outcome of generating one area. */
+    static final class AreaResult {
+        enum Status { GENERATED, EMPTY, FAILED, TIMED_OUT }
+
+        final Status status;
+        final String content;
+        // Configured sections found in the content, by heading; empty for areas without sections.
+        final Map<String, String> sections;
+        final String error;
+
+        private AreaResult(Status status, String content, Map<String, String> sections, String error) {
+            this.status = status;
+            this.content = content;
+            this.sections = sections;
+            this.error = error;
+        }
+
+        boolean isGenerated() {
+            return status == Status.GENERATED;
+        }
+
+        /** Short description for the per-area section of the HTTP response. */
+        String describe() {
+            switch (status) {
+                case GENERATED:
+                    return "generated";
+                case EMPTY:
+                    return "failed: empty model response";
+                case TIMED_OUT:
+                    return "failed: timed out";
+                default:
+                    return "failed: " + error;
+            }
+        }
+    }
+
+    /** Generated text of one area together with its extracted sections. */
+    private static final class Generated {
+        final String content;
+        final Map<String, String> sections;
+
+        Generated(String content, Map<String, String> sections) {
+            this.content = content;
+            this.sections = sections;
+        }
+    }
+
+    private final PredictionClient predictionClient;
+    private final GenerationCache cache;
+    private final Map<String, List<String>> sectionHeadings;
+    private final ExecutorService executor;
+    private final long areaTimeoutMillis;
+
+    // --- Metrics ---
+    private final Metrics.HistogramFamily callLatency;
+    private final Metrics.CounterFamily outcomes;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder promptChars;
+    private final LongAdder responseChars;
+
+    /**
+     * @param cache           Cache of model responses, or null to always call the model.
+     * @param sectionHeadings Per area (lower case), the "## Heading" sections to extract while the
+     *                        document streams in. Areas not listed are generated without extraction.
+     * @param metrics         Registry for the model call latency by area, calls in flight and outcomes.
+     */
+    AreaGenerator(PredictionClient predictionClient, GenerationCache cache, Map<String, List<String>> sectionHeadings,
+                  int maxInFlight, long areaTimeout, TimeUnit unit, Metrics metrics) {
+        this.predictionClient = predictionClient;
+        this.cache = cache;
+        this.sectionHeadings = sectionHeadings;
+        this.areaTimeoutMillis = unit.toMillis(areaTimeout);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "area-generator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+
+        this.callLatency = metrics.histogram("deco_generation_call_seconds", "Latency of model calls by area.", "area");
+        this.outcomes = metrics.counter("deco_generation_results_total", "Area generations by outcome, cache hits included.", "status");
+        metrics.gauge("deco_generation_calls_in_flight", "Model calls currently running.", inFlight::get);
+        metrics.gauge("deco_generation_areas_queued", "Area generations waiting for an in-flight slot.",
+                () -> ((ThreadPoolExecutor) executor).getQueue().size());
+        this.promptChars = metrics.counter("deco_generation_prompt_chars_total", "Characters of prompts sent to the model.");
+        this.responseChars = metrics.counter("deco_generation_response_chars_total", "Characters of model responses received.");
+    }
+
+    /**
+     * Runs one generation per area and waits for all of them, each up to the area timeout.
+     *
+     * @param prompts Prompt per area, in the order results should be reported.
+     * @param modelId  The model to use.
+     * @param useCache Whether cached responses may be used; fresh responses are cached either way.
+     * @return Result per area, in the order of {@code prompts}.
+     */
+    Map<String, AreaResult> generateAll(Map<String, String> prompts, String modelId, boolean useCache) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(areaTimeoutMillis);
+        Map<String, Future<Generated>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : prompts.entrySet()) {
+            String area = entry.getKey();
+            String prompt = entry.getValue();
+            List<String> headings = sectionHeadings.getOrDefault(area.toLowerCase(Locale.ROOT), Collections.emptyList());
+            String key = cache == null ? null : GenerationCache.key(modelId, prompt);
+            String cached = useCache && key != null ? cache.get(key) : null;
+            if (cached != null) {
+                // Served without taking an in-flight slot or calling the model.
+                futures.put(area, CompletableFuture.completedFuture(new Generated(cached, split(cached, headings))));
+                continue;
+            }
+            futures.put(area, executor.submit(() -> generate(area, prompt, modelId, key, headings)));
+        }
+
+        Map<String, AreaResult> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Generated>> entry : futures.entrySet()) {
+            String area = entry.getKey();
+            Future<Generated> future = entry.getValue();
+            AreaResult result;
+            try {
+                Generated generated = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                result = generated.content == null || generated.content.trim().isEmpty()
+                        ? new AreaResult(AreaResult.Status.EMPTY, null, Collections.emptyMap(), null)
+                        : new AreaResult(AreaResult.Status.GENERATED, generated.content, generated.sections, null);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                result = new AreaResult(AreaResult.Status.TIMED_OUT, null, Collections.emptyMap(), null);
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                result = new AreaResult(AreaResult.Status.FAILED, null, Collections.emptyMap(), cause.getMessage());
+            } catch (InterruptedException e) {
+                futures.values().forEach(f -> f.cancel(true));
+                throw e;
+            }
+            if (!result.isGenerated()) {
+                logger.warning("Failed to generate content for area: " + area + " (" + result.describe() + ")");
+            }
+            outcomes.increment(result.status.name().toLowerCase(Locale.ROOT));
+            results.put(area, result);
+        }
+        return results;
+    }
+
+    private Generated generate(String area, String prompt, String modelId, String cacheKey, List<String> headings) throws IOException {
+        long start = System.nanoTime();
+        String content;
+        Map<String, String> sections = Collections.emptyMap();
+        inFlight.incrementAndGet();
+        promptChars.add(prompt.length());
+        try {
+            if (headings.isEmpty()) {
+                content = predictionClient.generate(prompt, modelId);
+            } else {
+                // Sections are split off as the text streams in rather than searched for afterwards.
+                MarkdownSectionSplitter splitter = new MarkdownSectionSplitter(headings);
+                content = predictionClient.generateStreaming(prompt, modelId, splitter::accept);
+                splitter.finish();
+                sections = splitter.sections();
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            callLatency.labels(area.toLowerCase(Locale.ROOT)).observeSince(start);
+        }
+        if (content != null) {
+            responseChars.add(content.length());
+        }
+        if (cacheKey != null && content != null && !content.trim().isEmpty()) {
+            cache.put(cacheKey, content, System.nanoTime() - start);
+        }
+        return new Generated(content, sections);
+    }
+
+    private static Map<String, String> split(String content, List<String> headings) {
+        if (headings.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        MarkdownSectionSplitter splitter = new MarkdownSectionSplitter(headings);
+        splitter.accept(content);
+        splitter.finish();
+        return splitter.sections();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,114 @@
+package com.decozero;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One accepted document generation request and its progress.
+ * Progress is updated by the worker processing the job and read by status polling.
+ */
+class DeCoJob {
+
+    enum State { QUEUED, RUNNING, SUCCEEDED, PARTIAL, FAILED }
+
+    /** Pipeline stages, in processing order. */
+    static final String STAGE_GITHUB_AUTH = "github_auth";
+    static final String STAGE_README_FETCH = "readme_fetch";
+    static final String STAGE_GENERATION = "generation";
+    static final String STAGE_COMMIT = "commit";
+    static final List<String> STAGES = Collections.unmodifiableList(
+            Arrays.asList(STAGE_GITHUB_AUTH, STAGE_README_FETCH, STAGE_GENERATION, STAGE_COMMIT));
+
+    final String transactionId;
+    final String requesterId;
+    final String githubRepoUrl;
+    final String[] selectedAreas;
+    // The original request body, journaled so the job can be re-run after a restart.
+    final String payloadJson;
+    // False when the requester opted out of cached model responses.
+    final boolean useGenerationCache;
+    final long acceptedAtMillis;
+
+    private State state = State.QUEUED;
+    private String message = "queued";
+    private long updatedAtMillis;
+    // When a worker picked the job up; 0 while queued.
+    private long startedAtMillis;
+    private final Map<String, String> stages = new LinkedHashMap<>();
+    // Time spent in each stage that has ended, and the start of the one running.
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private final Map<String, Long> stageStartNanos = new LinkedHashMap<>();
+    private final Map<String, String> areas = new LinkedHashMap<>();
+
+    DeCoJob(String transactionId, String requesterId, String githubRepoUrl, String[] selectedAreas, String payloadJson,
+            boolean useGenerationCache) {
+        this.transactionId = transactionId;
+        this.requesterId = requesterId;
+        this.githubRepoUrl = githubRepoUrl;
+        this.selectedAreas = selectedAreas;
+        this.payloadJson = payloadJson;
+        this.useGenerationCache = useGenerationCache;
+        this.acceptedAtMillis = System.currentTimeMillis();
+        this.updatedAtMillis = acceptedAtMillis;
+        for (String stage : STAGES) {
+            stages.put(stage, "pending");
+        }
+    }
+
+    synchronized void stage(String stage, String status) {
+        if ("running".equals(status)) {
+            stageStartNanos.put(stage, System.nanoTime());
+        } else {
+            Long start = stageStartNanos.remove(stage);
+            if (start != null) {
+                stageMillis.put(stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        stages.put(stage, status);
+        updatedAtMillis = System.currentTimeMillis();
+    }
+
+    synchronized void area(String area, String status) {
+        areas.put(area, status);
+        updatedAtMillis = System.currentTimeMillis();
+    }
+
+    synchronized void transition(State state, String message) {
+        this.state = state;
+        this.message = message;
+        this.updatedAtMillis = System.currentTimeMillis();
+        if (state == State.RUNNING) {
+            this.startedAtMillis = updatedAtMillis;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.PARTIAL || state == State.FAILED;
+    }
+
+    /** Snapshot of the job's progress for the status endpoint. */
+    synchronized Map<String, Object> toStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("transaction_id", transactionId);
+        status.put("state", state.name().toLowerCase());
+        status.put("status", message);
+        status.put("github_repo_url", githubRepoUrl);
+        status.put("stages", new LinkedHashMap<>(stages));
+        status.put("stage_millis", new LinkedHashMap<>(stageMillis));
+        status.put("areas", new LinkedHashMap<>(areas));
+        status.put("accepted_at", acceptedAtMillis);
+        if (startedAtMillis > 0) {
+            status.put("started_at", startedAtMillis);
+        }
+        status.put("updated_at", updatedAtMillis);
+        return status;
+    }
+}
@@ -0,0 +1,42 @@
+package com.decozero;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consecutive failures of one dependency, as /health reports them.
+ *
+ * A dependency counts as down once it has failed {@code maxFailures} times in a row, but only until
+ * the quiet period has passed since its last failure. After that the instance reports ready again,
+ * the next job probes the dependency, and its first success resets the count. An unready instance
+ * gets no traffic, so without the quiet period it would never see that success.
+ */
+final class DependencyHealth {
+
+    private final int maxFailures;
+    private final long quietNanos;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long lastFailureNanos;
+
+    DependencyHealth(int maxFailures, long quietPeriod, TimeUnit unit) {
+        this.maxFailures = maxFailures;
+        this.quietNanos = unit.toNanos(quietPeriod);
+    }
+
+    void failure() {
+        lastFailureNanos = System.nanoTime();
+        failures.incrementAndGet();
+    }
+
+    void success() {
+        failures.set(0);
+    }
+
+    int consecutiveFailures() {
+        return failures.get();
+    }
+
+    boolean isUp() {
+        return failures.get() < maxFailures || System.nanoTime() - lastFailureNanos >= quietNanos;
+    }
+}
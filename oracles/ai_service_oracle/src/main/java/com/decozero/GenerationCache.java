@@ -0,0 +1,373 @@
+package com.decozero;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed cache of model responses.
+ *
+ * Responses are keyed by the SHA-256 of the model id and the full prompt, so identical requests
+ * (retries, duplicate NEAR events, forks sharing a README) are answered without calling the model.
+ * A bounded in-memory LRU tier sits in front of an optional on-disk tier with one file per key.
+ * Entries older than the TTL are ignored in both tiers. The disk tier holds at most
+ * {@code maxDiskBytes}, least recently used files deleted first; an expired file is deleted when it
+ * is found, and by a sweep every {@code sweepInterval}.
+ */
+class GenerationCache {
+
+    private static final Logger logger = Logger.getLogger(GenerationCache.class.getName());
+
+    private static final class Entry {
+        final String content;
+        final long createdAtMillis;
+        // How long the model took to produce the content; credited as saved on every hit.
+        final long latencyNanos;
+
+        Entry(String content, long createdAtMillis, long latencyNanos) {
+            this.content = content;
+            this.createdAtMillis = createdAtMillis;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    // A file of the disk tier.
+    private static final class DiskFile {
+        final long bytes;
+        final long createdAtMillis;
+
+        DiskFile(long bytes, long createdAtMillis) {
+            this.bytes = bytes;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+
+    private final Map<String, Entry> memory;
+    private final Path directory;
+    private final long ttlMillis;
+    private final long maxDiskBytes;
+    // Files of the disk tier in access order, and their total size; guarded by diskFiles.
+    private final LinkedHashMap<String, DiskFile> diskFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private final ScheduledExecutorService sweeper;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedLatencyNanos = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    /** A cache kept in memory only. */
+    GenerationCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, null, 0, ttl, 0, unit);
+    }
+
+    /**
+     * @param maxEntries    Size of the in-memory tier.
+     * @param directory     Directory of the on-disk tier, or null for memory only. If it cannot be
+     *                      created the cache falls back to memory only.
+     * @param maxDiskBytes  Total size of the files of the on-disk tier.
+     * @param sweepInterval Time between sweeps of the expired files; 0 to only delete them when found.
+     */
+    GenerationCache(int maxEntries, Path directory, long maxDiskBytes, long ttl, long sweepInterval, TimeUnit unit) {
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.ttlMillis = unit.toMillis(ttl);
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                logger.warning("Could not create generation cache directory " + directory + ", caching in memory only: " + e.getMessage());
+                directory = null;
+            }
+        }
+        this.directory = directory;
+        if (directory != null) {
+            scanDisk();
+        }
+        if (directory != null && sweepInterval > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "generation-cache-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweepExpired, sweepInterval, sweepInterval, unit);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    /** Computes the cache key of a prompt sent to a model. */
+    static String key(String modelId, String prompt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /** Returns the cached response for a key, or null on a miss. */
+    String get(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+            if (entry != null && now - entry.createdAtMillis > ttlMillis) {
+                memory.remove(key);
+            }
+        }
+        boolean fromDisk = false;
+        if (entry == null && directory != null) {
+            entry = readFromDisk(key);
+            fromDisk = entry != null;
+        }
+        if (entry == null || now - entry.createdAtMillis > ttlMillis) {
+            if (entry != null && directory != null) {
+                deleteFromDisk(key, entry.createdAtMillis);
+            }
+            misses.increment();
+            return null;
+        }
+        if (fromDisk) {
+            diskHits.increment();
+            synchronized (memory) {
+                memory.put(key, entry);
+            }
+        }
+        hits.increment();
+        savedLatencyNanos.add(entry.latencyNanos);
+        return entry.content;
+    }
+
+    /** Stores a model response, with the time the model took to produce it. */
+    void put(String key, String content, long latencyNanos) {
+        Entry entry = new Entry(content, System.currentTimeMillis(), latencyNanos);
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        if (directory != null) {
+            writeToDisk(key, entry);
+        }
+    }
+
+    /** Deletes the files of the disk tier older than the TTL. */
+    void sweepExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        int deleted = 0;
+        synchronized (diskFiles) {
+            Iterator<Map.Entry<String, DiskFile>> it = diskFiles.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, DiskFile> file = it.next();
+                if (file.getValue().createdAtMillis < cutoff) {
+                    it.remove();
+                    diskBytes -= file.getValue().bytes;
+                    delete(file.getKey());
+                    deleted++;
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted " + deleted + " expired generation cache file(s)");
+        }
+    }
+
+    void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // --- Disk tier ---
+
+    // Indexes the files a previous process left, oldest first, and deletes its unfinished writes.
+    private void scanDisk() {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not list generation cache directory " + directory + ": " + e.getMessage());
+            return;
+        }
+        List<Map.Entry<String, DiskFile>> found = new ArrayList<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            try {
+                if (name.contains(".tmp")) {
+                    Files.deleteIfExists(path);
+                } else if (Files.isRegularFile(path)) {
+                    found.add(new AbstractMap.SimpleImmutableEntry<>(name, new DiskFile(Files.size(path), createdAt(path))));
+                }
+            } catch (IOException e) {
+                logger.warning("Skipping generation cache file " + name + ": " + e.getMessage());
+            }
+        }
+        found.sort(Comparator.comparingLong(file -> file.getValue().createdAtMillis));
+        synchronized (diskFiles) {
+            for (Map.Entry<String, DiskFile> file : found) {
+                diskFiles.put(file.getKey(), file.getValue());
+                diskBytes += file.getValue().bytes;
+            }
+            evictOverBudget();
+        }
+        sweepExpired();
+    }
+
+    private static long createdAt(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            return Long.parseLong(header.substring(0, header.indexOf(' ')));
+        } catch (RuntimeException e) {
+            // Unreadable, so as good as expired.
+            return 0;
+        }
+    }
+
+    // Deletes the least recently used files until the tier fits its budget. Called holding diskFiles.
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, DiskFile>> it = diskFiles.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, DiskFile> eldest = it.next();
+            it.remove();
+            diskBytes -= eldest.getValue().bytes;
+            delete(eldest.getKey());
+            diskEvictions.increment();
+        }
+    }
+
+    // Unless the file was replaced by a newer entry since it was read.
+    private void deleteFromDisk(String key, long createdAtMillis) {
+        synchronized (diskFiles) {
+            DiskFile file = diskFiles.get(key);
+            if (file != null && file.createdAtMillis > createdAtMillis) {
+                return;
+            }
+            if (file != null) {
+                diskFiles.remove(key);
+                diskBytes -= file.bytes;
+            }
+            delete(key);
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            logger.warning("Could not delete generation cache file " + key + ": " + e.getMessage());
+        }
+    }
+
+    // File layout: first line "<createdAtMillis> <latencyNanos>", then the content.
+    private Entry readFromDisk(String key) {
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(key), StandardCharsets.UTF_8)) {
+            String[] header = reader.readLine().split(" ");
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                content.append(buffer, 0, read);
+            }
+            Entry entry = new Entry(content.toString(), Long.parseLong(header[0]), Long.parseLong(header[1]));
+            synchronized (diskFiles) {
+                // Marks the file as recently used.
+                diskFiles.get(key);
+            }
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Ignoring unreadable generation cache file " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        Path target = directory.resolve(key);
+        Path temp = directory.resolve(key + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(entry.createdAtMillis + " " + entry.latencyNanos + "\n");
+                writer.write(entry.content);
+            }
+            long bytes = Files.size(temp);
+            synchronized (diskFiles) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                DiskFile replaced = diskFiles.put(key, new DiskFile(bytes, entry.createdAtMillis));
+                diskBytes += bytes - (replaced == null ? 0 : replaced.bytes);
+                evictOverBudget();
+            }
+        } catch (IOException e) {
+            logger.warning("Could not write generation cache file " + key + ": " + e.getMessage());
+        }
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long diskHitCount() {
+        return diskHits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    /** Files of the disk tier deleted to keep it within its byte budget. */
+    long diskEvictionCount() {
+        return diskEvictions.sum();
+    }
+
+    long diskBytes() {
+        synchronized (diskFiles) {
+            return diskBytes;
+        }
+    }
+
+    /** Model time avoided by cache hits, in nanoseconds. */
+    long savedLatencyNanos() {
+        return savedLatencyNanos.sum();
+    }
+
+    double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
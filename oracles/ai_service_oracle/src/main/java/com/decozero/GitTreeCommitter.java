@@ -0,0 +1,107 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHRef;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTreeBuilder;
+import org.kohsuke.github.HttpException;
+
+/**
+ * Writes a set of files to a branch as a single commit through the Git Data API.
+ *
+ * Blobs are uploaded in parallel, then one tree and one commit are created on top of the branch
+ * head and the branch ref is fast-forwarded to it. The ref update is not forced: if the branch moved
+ * in the meantime, the tree and commit are rebuilt on the new head (reusing the uploaded blobs)
+ * and the update is retried.
+ */
+class GitTreeCommitter {
+
+    private static final Logger logger = Logger.getLogger(GitTreeCommitter.class.getName());
+    private static final int MAX_REF_UPDATE_ATTEMPTS = 3;
+
+    private final ExecutorService blobUploads;
+
+    GitTreeCommitter(int uploadThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.blobUploads = Executors.newFixedThreadPool(uploadThreads, r -> {
+            Thread thread = new Thread(r, "blob-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Commits files to a branch.
+     *
+     * @param files   Content per repository path.
+     * @param message The commit message.
+     * @return SHA of the created commit.
+     */
+    String commitFiles(GHRepository repo, String branch, Map<String, String> files, String message) throws IOException {
+        Map<String, String> blobShas = uploadBlobs(repo, files);
+        String refName = "heads/" + branch;
+
+        for (int attempt = 1; ; attempt++) {
+            GHRef ref = repo.getRef(refName);
+            String headSha = ref.getObject().getSha();
+            String baseTreeSha = repo.getCommit(headSha).getCommitShortInfo().getTreeSHA1();
+
+            GHTreeBuilder tree = repo.createTree().baseTree(baseTreeSha);
+            for (Map.Entry<String, String> blob : blobShas.entrySet()) {
+                tree.entry(blob.getKey(), "100644", "blob", blob.getValue(), null);
+            }
+            String treeSha = tree.create().getSha();
+            GHCommit commit = repo.createCommit().message(message).tree(treeSha).parent(headSha).create();
+
+            try {
+                ref.updateTo(commit.getSHA1(), false);
+                logger.info("Committed " + files.size() + " file(s) to " + repo.getFullName() + "@" + branch + " as " + commit.getSHA1());
+                return commit.getSHA1();
+            } catch (HttpException e) {
+                // 422: not a fast-forward, the branch moved since we read it.
+                if (e.getResponseCode() != 422 || attempt >= MAX_REF_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warning("Branch " + branch + " of " + repo.getFullName() + " moved during commit, retrying (attempt " + attempt + ").");
+            }
+        }
+    }
+
+    private Map<String, String> uploadBlobs(GHRepository repo, Map<String, String> files) throws IOException {
+        List<Future<String>> uploads = new ArrayList<>(files.size());
+        for (String content : files.values()) {
+            uploads.add(blobUploads.submit(() -> repo.createBlob().textContent(content).create().getSha()));
+        }
+        Map<String, String> blobShas = new LinkedHashMap<>();
+        int i = 0;
+        try {
+            for (String path : files.keySet()) {
+                blobShas.put(path, uploads.get(i++).get());
+            }
+        } catch (InterruptedException e) {
+            uploads.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading blobs", e);
+        } catch (ExecutionException e) {
+            uploads.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        return blobShas;
+    }
+
+    void shutdown() {
+        blobUploads.shutdownNow();
+    }
+}
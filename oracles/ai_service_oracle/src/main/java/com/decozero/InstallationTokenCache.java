@@ -0,0 +1,206 @@
+package com.decozero;
+
+import com.decozero.github.GitHubClients;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.kohsuke.github.GitHub;
+
+/**
+ * Cache of GitHub App installation tokens and the GitHub clients built on them, keyed by "owner/repo".
+ *
+ * A token is minted once per repository and shared by all requests until shortly before it expires.
+ * Concurrent misses for the same repository wait on a single mint (single-flight). Tokens of
+ * repositories that were used since their last refresh are re-minted in the background ahead of
+ * expiry, so requests normally never wait for GitHub's token endpoint.
+ */
+class InstallationTokenCache {
+
+    private static final Logger logger = Logger.getLogger(InstallationTokenCache.class.getName());
+    private static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Mints a new installation token for a repository. */
+    interface TokenMinter {
+        MintedToken mint(String owner, String repo) throws IOException;
+    }
+
+    static final class MintedToken {
+        final String token;
+        final long expiresAtMillis;
+
+        MintedToken(String token, long expiresAtMillis) {
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static final class Entry {
+        final MintedToken token;
+        final GitHub client;
+        volatile boolean usedSinceRefresh;
+
+        Entry(MintedToken token, GitHub client) {
+            this.token = token;
+            this.client = client;
+        }
+    }
+
+    private final TokenMinter minter;
+    private final String apiUrl;
+    private final long refreshAheadMillis;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "installation-token-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /**
+     * @param apiUrl       GitHub API endpoint of the clients, or null for github.com.
+     * @param refreshAhead How long before expiry a token is refreshed, and considered unusable.
+     */
+    InstallationTokenCache(TokenMinter minter, String apiUrl, long refreshAhead, TimeUnit unit) {
+        this.minter = minter;
+        this.apiUrl = apiUrl;
+        this.refreshAheadMillis = unit.toMillis(refreshAhead);
+    }
+
+    /** Returns a GitHub client authenticated as the app installation of a repository. */
+    GitHub client(String ownerRepo) throws IOException {
+        return entry(ownerRepo).client;
+    }
+
+    /** Returns a valid installation token for a repository. */
+    String token(String ownerRepo) throws IOException {
+        return entry(ownerRepo).token.token;
+    }
+
+    private Entry entry(String ownerRepo) throws IOException {
+        CompletableFuture<Entry> current = entries.get(ownerRepo);
+        if (current != null) {
+            if (!current.isDone()) {
+                coalesced.increment();
+                return await(ownerRepo, current);
+            }
+            Entry entry = current.getNow(null);
+            if (entry != null && isUsable(entry)) {
+                hits.increment();
+                entry.usedSinceRefresh = true;
+                return entry;
+            }
+        }
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> winner = current == null
+                ? entries.putIfAbsent(ownerRepo, mine)
+                : (entries.replace(ownerRepo, current, mine) ? null : entries.get(ownerRepo));
+        if (winner != null) {
+            // Another request started minting first.
+            coalesced.increment();
+            return await(ownerRepo, winner);
+        }
+
+        misses.increment();
+        try {
+            Entry entry = mint(ownerRepo);
+            entry.usedSinceRefresh = true;
+            mine.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            entries.remove(ownerRepo, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Entry mint(String ownerRepo) throws IOException {
+        String[] parts = ownerRepo.split("/", 2);
+        if (parts.length != 2) {
+            throw new IOException("Expected owner/repo but got: " + ownerRepo);
+        }
+        MintedToken token = minter.mint(parts[0], parts[1]);
+        Entry entry = new Entry(token, GitHubClients.builder(apiUrl).withAppInstallationToken(token.token).build());
+        scheduleRefresh(ownerRepo, entry, token.expiresAtMillis - refreshAheadMillis - System.currentTimeMillis());
+        return entry;
+    }
+
+    private void scheduleRefresh(String ownerRepo, Entry entry, long delayMillis) {
+        refresher.schedule(() -> refresh(ownerRepo, entry), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(String ownerRepo, Entry entry) {
+        CompletableFuture<Entry> current = entries.get(ownerRepo);
+        if (current == null || current.getNow(null) != entry) {
+            // Already replaced by a newer token.
+            return;
+        }
+        if (!entry.usedSinceRefresh) {
+            // Idle repository: let the token lapse instead of refreshing it forever.
+            entries.remove(ownerRepo, current);
+            return;
+        }
+        try {
+            Entry refreshed = mint(ownerRepo);
+            entries.replace(ownerRepo, current, CompletableFuture.completedFuture(refreshed));
+            refreshes.increment();
+        } catch (IOException | RuntimeException e) {
+            refreshFailures.increment();
+            logger.warning("Failed to refresh installation token for " + ownerRepo + ": " + e.getMessage());
+            if (isUsable(entry)) {
+                scheduleRefresh(ownerRepo, entry, RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private boolean isUsable(Entry entry) {
+        return entry.token.expiresAtMillis - System.currentTimeMillis() > refreshAheadMillis / 2;
+    }
+
+    private static Entry await(String ownerRepo, CompletableFuture<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for installation token of " + ownerRepo, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    long refreshCount() {
+        return refreshes.sum();
+    }
+
+    long refreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,220 @@
+package com.decozero;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Append-only local journal of accepted and finished jobs.
+ *
+ * Each line is a small JSON record. An "accepted" record carries the original request payload and
+ * is forced to disk before the request is acknowledged; a "finished" record marks the job done.
+ * On startup, accepted jobs without a finished record are returned for re-processing.
+ *
+ * The transaction ids of the last {@code finishedLimit} jobs that finished without failing are
+ * kept through compaction, so that a redelivery of one is not run again after a restart. The
+ * journal is compacted to them and the unfinished jobs on recovery, and while running whenever it
+ * has doubled since the last compaction and is past a minimum size.
+ */
+class JobJournal implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(JobJournal.class.getName());
+    private static final Gson gson = new Gson();
+
+    static final int DEFAULT_FINISHED_LIMIT = 10_000;
+    static final long DEFAULT_COMPACT_MIN_BYTES = 1 << 20;
+
+    private final Path path;
+    private final int finishedLimit;
+    private final long compactMinBytes;
+    private FileChannel channel;
+    private Writer writer;
+    // Size of the journal right after it was last compacted.
+    private long compactedBytes;
+    // Unfinished jobs, transaction id to payload, in acceptance order.
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    // Jobs finished without failing, transaction id to final state, oldest first.
+    private final Map<String, DeCoJob.State> finished = new LinkedHashMap<>();
+
+    JobJournal(Path path) {
+        this(path, DEFAULT_FINISHED_LIMIT, DEFAULT_COMPACT_MIN_BYTES);
+    }
+
+    /**
+     * @param finishedLimit   Finished transaction ids remembered.
+     * @param compactMinBytes Size below which the journal is never compacted while running.
+     */
+    JobJournal(Path path, int finishedLimit, long compactMinBytes) {
+        this.path = path;
+        this.finishedLimit = finishedLimit;
+        this.compactMinBytes = compactMinBytes;
+    }
+
+    /**
+     * Reads the journal, compacts it and opens it for appending.
+     *
+     * @return Payloads of jobs accepted but not finished before the last shutdown, in acceptance order.
+     */
+    synchronized List<String> recover() throws IOException {
+        read();
+        rewrite();
+        open();
+        if (!pending.isEmpty()) {
+            logger.info("Recovered " + pending.size() + " unfinished job(s) from " + path);
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /** Durably records an accepted job. Returns only once the record is on disk. */
+    synchronized void accepted(String transactionId, String payloadJson) throws IOException {
+        pending.put(transactionId, payloadJson);
+        writer.write(acceptedRecord(transactionId, payloadJson));
+        writer.write('\n');
+        writer.flush();
+        channel.force(false);
+    }
+
+    /** Records a finished job. Not forced; at worst the job is re-run after a crash. */
+    synchronized void finished(String transactionId, DeCoJob.State state) throws IOException {
+        pending.remove(transactionId);
+        remember(transactionId, state);
+        writer.write(finishedRecord(transactionId, state));
+        writer.write('\n');
+        writer.flush();
+        compactIfGrown();
+    }
+
+    /** The final state of a job recorded as finished without failing, or null if none is. */
+    synchronized DeCoJob.State finishedState(String transactionId) {
+        return finished.get(transactionId);
+    }
+
+    // --- Compaction ---
+
+    private void read() throws IOException {
+        pending.clear();
+        finished.clear();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonObject record = gson.fromJson(line, JsonObject.class);
+                    String tx = record.get("tx").getAsString();
+                    if ("accepted".equals(record.get("op").getAsString())) {
+                        pending.put(tx, record.get("payload").getAsString());
+                    } else {
+                        pending.remove(tx);
+                        remember(tx, DeCoJob.State.valueOf(record.get("state").getAsString()));
+                    }
+                } catch (JsonParseException | NullPointerException | IllegalStateException e) {
+                    // A torn last line from a crash mid-write; everything before it is intact.
+                    logger.warning("Skipping unreadable journal line in " + path);
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Skipping journal line with an unknown job state in " + path);
+                }
+            }
+        }
+    }
+
+    // A failed job may be submitted again, so only the others are remembered.
+    private void remember(String transactionId, DeCoJob.State state) {
+        finished.remove(transactionId);
+        if (state == DeCoJob.State.FAILED) {
+            return;
+        }
+        finished.put(transactionId, state);
+        Iterator<String> eldest = finished.keySet().iterator();
+        while (finished.size() > finishedLimit) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void rewrite() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, DeCoJob.State> entry : finished.entrySet()) {
+                out.write(finishedRecord(entry.getKey(), entry.getValue()));
+                out.write('\n');
+            }
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                out.write(acceptedRecord(entry.getKey(), entry.getValue()));
+                out.write('\n');
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+        compactedBytes = channel.size();
+    }
+
+    // Compaction only saves space: if it fails, the full journal stays in place and open for appending.
+    private void compactIfGrown() throws IOException {
+        long size = channel.size();
+        if (size < compactMinBytes || size < 2 * compactedBytes) {
+            return;
+        }
+        try {
+            rewrite();
+        } catch (IOException e) {
+            logger.warning("Could not compact job journal " + path + ": " + e.getMessage());
+            compactedBytes = size;
+            return;
+        }
+        // The writer still points at the replaced file; reopen it on the compacted one.
+        try {
+            writer.close();
+        } finally {
+            open();
+        }
+        logger.info("Compacted job journal " + path + " from " + size + " to " + compactedBytes + " bytes");
+    }
+
+    private static String acceptedRecord(String transactionId, String payloadJson) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "accepted");
+        record.addProperty("tx", transactionId);
+        record.addProperty("payload", payloadJson);
+        return gson.toJson(record);
+    }
+
+    private static String finishedRecord(String transactionId, DeCoJob.State state) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "finished");
+        record.addProperty("tx", transactionId);
+        record.addProperty("state", state.name());
+        return gson.toJson(record);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
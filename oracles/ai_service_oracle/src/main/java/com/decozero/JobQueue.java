@@ -0,0 +1,207 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of document generation jobs drained by a fixed pool of workers.
+ *
+ * Jobs are deduplicated by transaction id, rejected when the queue is full, and journaled before
+ * they are acknowledged so that accepted jobs survive a restart. A failed job can be submitted again
+ * under the same transaction id and replaces the failed one. Finished jobs stay queryable until the
+ * history limit is reached, oldest first; past that, or after a restart, the journal still knows
+ * the ones that did not fail and their redeliveries are answered as duplicates.
+ */
+class JobQueue {
+
+    private static final Logger logger = Logger.getLogger(JobQueue.class.getName());
+
+    enum SubmitResult { ACCEPTED, DUPLICATE, QUEUE_FULL }
+
+    private final BlockingQueue<DeCoJob> queue;
+    private final ConcurrentHashMap<String, DeCoJob> jobs = new ConcurrentHashMap<>();
+    private final Deque<DeCoJob> finishedOrder = new ArrayDeque<>();
+    private final int historyLimit;
+    private final int workers;
+    private final JobJournal journal;
+    private final Consumer<DeCoJob> processor;
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile ExecutorService workerPool;
+
+    /**
+     * @param capacity     Maximum number of queued (not yet running) jobs.
+     * @param workers      Number of jobs processed concurrently.
+     * @param historyLimit Number of finished jobs kept for status polling and deduplication.
+     * @param journal      Journal of accepted jobs, or null to keep jobs in memory only.
+     * @param processor    Runs a job to completion, recording its outcome on the job.
+     */
+    JobQueue(int capacity, int workers, int historyLimit, JobJournal journal, Consumer<DeCoJob> processor) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.workers = workers;
+        this.historyLimit = historyLimit;
+        this.journal = journal;
+        this.processor = processor;
+    }
+
+    /**
+     * Starts the workers. Jobs recovered from the journal are queued ahead of new submissions.
+     *
+     * @param recovered Jobs to resume, typically parsed from {@link JobJournal#recover()}.
+     */
+    void start(Iterable<DeCoJob> recovered) {
+        for (DeCoJob job : recovered) {
+            if (jobs.putIfAbsent(job.transactionId, job) == null && !queue.offer(job)) {
+                jobs.remove(job.transactionId);
+                logger.warning("Queue full while recovering, dropping job " + job.transactionId);
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "deco-job-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::drain);
+        }
+    }
+
+    /**
+     * Queues a job unless the queue is full or a job with the same transaction id is known and has
+     * not failed. A failed one is replaced, so the request can be retried.
+     */
+    SubmitResult submit(DeCoJob job) throws IOException {
+        DeCoJob.State finished = journal == null || jobs.containsKey(job.transactionId)
+                ? null : journal.finishedState(job.transactionId);
+        if (finished != null) {
+            // Stands in for the job that ran, so that its status can be polled again.
+            job.transition(finished, "finished before the job history was lost");
+            if (jobs.putIfAbsent(job.transactionId, job) == null) {
+                remember(job);
+            }
+            return SubmitResult.DUPLICATE;
+        }
+        DeCoJob previous = jobs.putIfAbsent(job.transactionId, job);
+        if (previous != null && (previous.state() != DeCoJob.State.FAILED || !jobs.replace(job.transactionId, previous, job))) {
+            return SubmitResult.DUPLICATE;
+        }
+        // Serialized so that a journaled job always finds a free slot; workers only ever free slots.
+        synchronized (queue) {
+            if (queue.remainingCapacity() == 0) {
+                restore(job, previous);
+                return SubmitResult.QUEUE_FULL;
+            }
+            if (journal != null) {
+                try {
+                    journal.accepted(job.transactionId, job.payloadJson);
+                } catch (IOException e) {
+                    restore(job, previous);
+                    throw e;
+                }
+            }
+            queue.add(job);
+        }
+        if (previous != null) {
+            logger.info("Retrying failed job " + job.transactionId);
+        }
+        return SubmitResult.ACCEPTED;
+    }
+
+    // Undoes the registration of a job that was not queued, bringing back the failed job it replaced.
+    private void restore(DeCoJob job, DeCoJob previous) {
+        if (previous != null) {
+            jobs.replace(job.transactionId, job, previous);
+        } else {
+            jobs.remove(job.transactionId, job);
+        }
+    }
+
+    DeCoJob get(String transactionId) {
+        return jobs.get(transactionId);
+    }
+
+    /** Number of jobs waiting for a worker. */
+    int depth() {
+        return queue.size();
+    }
+
+    /** Number of jobs currently being processed. */
+    int running() {
+        return running.get();
+    }
+
+    /** Maximum number of queued jobs. */
+    int capacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    /** True once the workers are started and until {@link #shutdown()}. */
+    boolean isRunning() {
+        ExecutorService pool = workerPool;
+        return pool != null && !pool.isShutdown();
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            DeCoJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            running.incrementAndGet();
+            try {
+                job.transition(DeCoJob.State.RUNNING, "running");
+                processor.accept(job);
+            } catch (RuntimeException | LinkageError e) {
+                // A class missing from the jar fails the job, not the worker: a dead worker would leave
+                // this job RUNNING and stop draining the queue.
+                logger.log(Level.SEVERE, "Unexpected error processing job " + job.transactionId, e);
+                job.transition(DeCoJob.State.FAILED, "error: " + e.getMessage());
+            } finally {
+                running.decrementAndGet();
+                finish(job);
+            }
+        }
+    }
+
+    private void finish(DeCoJob job) {
+        if (journal != null) {
+            try {
+                journal.finished(job.transactionId, job.state());
+            } catch (IOException e) {
+                logger.warning("Could not journal completion of job " + job.transactionId + ": " + e.getMessage());
+            }
+        }
+        remember(job);
+    }
+
+    // Keeps a finished job queryable until the history limit pushes it out.
+    private void remember(DeCoJob job) {
+        synchronized (finishedOrder) {
+            finishedOrder.addLast(job);
+            while (finishedOrder.size() > historyLimit) {
+                DeCoJob evicted = finishedOrder.removeFirst();
+                // Only if not replaced by a retry since.
+                jobs.remove(evicted.transactionId, evicted);
+            }
+        }
+    }
+
+    void shutdown() {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.decozero;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental extractor of named "## Heading" sections from Markdown text.
+ *
+ * Text is fed in arbitrary chunks as it is generated, and each line is examined once when it
+ * completes, so sections are captured while the document streams in and nothing is re-scanned
+ * afterwards. A section runs from the line after its heading to the next "##" heading or "---"
+ * rule. Only the first occurrence of each heading is kept; headings match case-insensitively.
+ */
+final class MarkdownSectionSplitter {
+
+    // Lower-cased heading -> heading as configured.
+    private final Map<String, String> wanted = new LinkedHashMap<>();
+    private final Map<String, String> sections = new LinkedHashMap<>();
+    private final StringBuilder line = new StringBuilder();
+    private StringBuilder capture;
+    private String capturing;
+
+    MarkdownSectionSplitter(Collection<String> headings) {
+        for (String heading : headings) {
+            wanted.put(heading.trim().toLowerCase(Locale.ROOT), heading);
+        }
+    }
+
+    /** Feeds the next chunk of the document. */
+    void accept(CharSequence chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (c == '\n') {
+                endLine();
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    /** Signals the end of the document, closing any open section. */
+    void finish() {
+        if (line.length() > 0) {
+            endLine();
+        }
+        closeSection();
+    }
+
+    /** Returns the captured sections by configured heading, trimmed. Call after {@link #finish()}. */
+    Map<String, String> sections() {
+        return sections;
+    }
+
+    private void endLine() {
+        if (startsWith(line, "##")) {
+            closeSection();
+            String heading = headingTitle(line);
+            String configured = wanted.get(heading.toLowerCase(Locale.ROOT));
+            if (configured != null && !sections.containsKey(configured)) {
+                capturing = configured;
+                capture = new StringBuilder();
+            }
+        } else if (startsWith(line, "---")) {
+            closeSection();
+        } else if (capture != null) {
+            capture.append(line).append('\n');
+        }
+        line.setLength(0);
+    }
+
+    private void closeSection() {
+        if (capture != null) {
+            String content = capture.toString().trim();
+            if (!content.isEmpty()) {
+                sections.put(capturing, content);
+            }
+            capture = null;
+            capturing = null;
+        }
+    }
+
+    private static boolean startsWith(StringBuilder text, String prefix) {
+        if (text.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headingTitle(StringBuilder heading) {
+        int start = 0;
+        while (start < heading.length() && heading.charAt(start) == '#') {
+            start++;
+        }
+        return heading.substring(start).trim();
+    }
+}
@@ -0,0 +1,219 @@
+package com.decozero;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the oracle's metrics, rendered in the Prometheus text exposition format.
+ *
+ * Recording only touches {@link LongAdder}s, so it is cheap and contention free on the job and
+ * generation threads; all formatting happens when {@link #render()} is called for a scrape.
+ * Counters and gauges that components already keep are registered as suppliers and read at
+ * scrape time. Labelled families are bounded: values beyond {@link #MAX_LABEL_VALUES} are
+ * recorded under {@code "other"}, since some label values (such as area names) come from requests.
+ */
+final class Metrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final int MAX_LABEL_VALUES = 64;
+    private static final String OVERFLOW_LABEL = "other";
+
+    // Latency bucket upper bounds in seconds, from a cached lookup to a slow model call.
+    private static final double[] LATENCY_BUCKETS_SECONDS =
+            {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+    private interface Metric {
+        void write(StringBuilder out);
+    }
+
+    private final List<Metric> metrics = new ArrayList<>();
+
+    /** Latency histogram with fixed buckets. */
+    static final class Histogram {
+        private final long[] boundsNanos;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(double[] boundsSeconds) {
+            boundsNanos = new long[boundsSeconds.length];
+            for (int i = 0; i < boundsSeconds.length; i++) {
+                boundsNanos[i] = (long) (boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+            }
+            // One extra bucket for observations above the largest bound (+Inf).
+            buckets = new LongAdder[boundsNanos.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observeNanos(long nanos) {
+            int index = Arrays.binarySearch(boundsNanos, nanos);
+            buckets[index >= 0 ? index : -index - 1].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+        void observeSince(long startNanos) {
+            observeNanos(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        private void write(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < boundsNanos.length ? formatDouble(boundsNanos[i] / 1e9) : "+Inf";
+                out.append(name).append("_bucket{").append(labels).append(labels.isEmpty() ? "" : ",")
+                        .append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(suffix).append(' ').append(formatDouble(sumNanos.sum() / 1e9)).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+    /** A histogram per value of one label. */
+    final class HistogramFamily implements Metric {
+        private final String name;
+        private final String help;
+        private final String label;
+        private final Map<String, Histogram> children = new ConcurrentHashMap<>();
+
+        private HistogramFamily(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+
+        Histogram labels(String value) {
+            Histogram histogram = children.get(value);
+            if (histogram == null) {
+                String key = children.size() < MAX_LABEL_VALUES ? value : OVERFLOW_LABEL;
+                histogram = children.computeIfAbsent(key, k -> new Histogram(LATENCY_BUCKETS_SECONDS));
+            }
+            return histogram;
+        }
+
+        @Override
+        public void write(StringBuilder out) {
+            header(out, name, help, "histogram");
+            children.forEach((value, histogram) -> histogram.write(out, name, label + "=\"" + escape(value) + "\""));
+        }
+    }
+
+    /** A monotonic counter per value of one label. */
+    final class CounterFamily implements Metric {
+        private final String name;
+        private final String help;
+        private final String label;
+        private final Map<String, LongAdder> children = new ConcurrentHashMap<>();
+
+        private CounterFamily(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+
+        void increment(String value) {
+            add(value, 1);
+        }
+
+        void add(String value, long amount) {
+            LongAdder adder = children.get(value);
+            if (adder == null) {
+                String key = children.size() < MAX_LABEL_VALUES ? value : OVERFLOW_LABEL;
+                adder = children.computeIfAbsent(key, k -> new LongAdder());
+            }
+            adder.add(amount);
+        }
+
+        long get(String value) {
+            LongAdder adder = children.get(value);
+            return adder == null ? 0 : adder.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out) {
+            header(out, name, help, "counter");
+            children.forEach((value, adder) ->
+                    out.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+                            .append(adder.sum()).append('\n'));
+        }
+    }
+
+    synchronized HistogramFamily histogram(String name, String help, String label) {
+        HistogramFamily family = new HistogramFamily(name, help, label);
+        metrics.add(family);
+        return family;
+    }
+
+    synchronized CounterFamily counter(String name, String help, String label) {
+        CounterFamily family = new CounterFamily(name, help, label);
+        metrics.add(family);
+        return family;
+    }
+
+    /** A counter without labels. */
+    LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        counter(name, help, adder::sum);
+        return adder;
+    }
+
+    /** A counter kept elsewhere, read at scrape time. */
+    synchronized void counter(String name, String help, LongSupplier value) {
+        metrics.add(out -> {
+            header(out, name, help, "counter");
+            out.append(name).append(' ').append(value.getAsLong()).append('\n');
+        });
+    }
+
+    /** A gauge read at scrape time. */
+    synchronized void gauge(String name, String help, DoubleSupplier value) {
+        metrics.add(out -> {
+            header(out, name, help, "gauge");
+            out.append(name).append(' ').append(formatDouble(value.getAsDouble())).append('\n');
+        });
+    }
+
+    /** Renders every registered metric. */
+    String render() {
+        List<Metric> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(metrics);
+        }
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : snapshot) {
+            metric.write(out);
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,40 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Text generation backend used by the oracle. The production implementation calls Gemini on
+ * Vertex AI; tests and load runs can substitute a local stub.
+ */
+interface PredictionClient extends AutoCloseable {
+
+    /**
+     * Generates a completion for a prompt.
+     *
+     * @param prompt  The full prompt text.
+     * @param modelId The model to use (e.g. "gemini-1.0-pro").
+     * @return The generated text, or null if the model returned no content.
+     * @throws IOException If the call to the model failed.
+     */
+    String generate(String prompt, String modelId) throws IOException;
+
+    /**
+     * Generates a completion, handing the text to {@code onChunk} as it is produced.
+     * {@link VertexPredictionClient} streams it; backends without server streaming deliver the
+     * whole completion as a single chunk.
+     *
+     * @return The complete generated text, or null if the model returned no content.
+     */
+    default String generateStreaming(String prompt, String modelId, Consumer<CharSequence> onChunk) throws IOException {
+        String content = generate(prompt, modelId);
+        if (content != null) {
+            onChunk.accept(content);
+        }
+        return content;
+    }
+
+    @Override
+    default void close() {
+    }
+}
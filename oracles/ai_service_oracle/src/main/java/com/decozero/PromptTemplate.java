@@ -0,0 +1,83 @@
+package com.decozero;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A prompt template compiled once into literal segments and named placeholders.
+ *
+ * Rendering appends the segments into a builder sized exactly for the result, so the (possibly
+ * large) README is copied once per prompt, with no format-string parsing or buffer regrowth.
+ * Placeholders are written as {@code {name}}.
+ */
+final class PromptTemplate {
+
+    /** Placeholder for the functional area name. */
+    static final String AREA = "area";
+    /** Placeholder for the repository README. */
+    static final String README = "readme";
+
+    private final String[] literals;
+    // Placeholder following literals[i]; one fewer than literals.
+    private final boolean[] isReadme;
+    private final int literalLength;
+    private final int areaCount;
+
+    private PromptTemplate(String[] literals, boolean[] isReadme) {
+        this.literals = literals;
+        this.isReadme = isReadme;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        int areas = 0;
+        for (boolean readme : isReadme) {
+            if (!readme) {
+                areas++;
+            }
+        }
+        this.literalLength = length;
+        this.areaCount = areas;
+    }
+
+    /**
+     * Compiles a template containing {@code {area}} and {@code {readme}} placeholders.
+     *
+     * @throws IllegalArgumentException If the template contains an unknown placeholder.
+     */
+    static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Boolean> placeholders = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = template.indexOf('{', start)) >= 0) {
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                break;
+            }
+            String name = template.substring(open + 1, close);
+            if (!AREA.equals(name) && !README.equals(name)) {
+                throw new IllegalArgumentException("Unknown placeholder {" + name + "} in prompt template");
+            }
+            literals.add(template.substring(start, open));
+            placeholders.add(README.equals(name));
+            start = close + 1;
+        }
+        literals.add(template.substring(start));
+        boolean[] isReadme = new boolean[placeholders.size()];
+        for (int i = 0; i < isReadme.length; i++) {
+            isReadme[i] = placeholders.get(i);
+        }
+        return new PromptTemplate(literals.toArray(new String[0]), isReadme);
+    }
+
+    /** Renders the prompt for one area. */
+    String render(String area, String readme) {
+        int readmeCount = isReadme.length - areaCount;
+        StringBuilder prompt = new StringBuilder(literalLength + areaCount * area.length() + readmeCount * readme.length());
+        for (int i = 0; i < isReadme.length; i++) {
+            prompt.append(literals[i]).append(isReadme[i] ? readme : area);
+        }
+        return prompt.append(literals[literals.length - 1]).toString();
+    }
+}
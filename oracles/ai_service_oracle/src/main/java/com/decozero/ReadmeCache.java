@@ -0,0 +1,130 @@
+package com.decozero;
+
+import com.decozero.github.ResilientGitHubConnector;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.kohsuke.github.HttpException;
+
+/**
+ * Cache of repository READMEs, revalidated with ETag conditional requests.
+ *
+ * Every lookup asks GitHub whether the README changed, sending the cached ETag in If-None-Match.
+ * An unchanged README costs a body-less 304 (which does not count against the rate limit) and is
+ * served from memory; only a changed README is downloaded, as raw text rather than base64 JSON.
+ * Requests go through the shared GitHub connector, so concurrent lookups of one README are a single call.
+ */
+class ReadmeCache {
+
+    private static final class Entry {
+        final String etag;
+        final String content;
+
+        Entry(String etag, String content) {
+            this.etag = etag;
+            this.content = content;
+        }
+    }
+
+    private final ResilientGitHubConnector github;
+    private final String apiBaseUrl;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder downloads = new LongAdder();
+
+    /**
+     * @param apiBaseUrl GitHub REST API base, e.g. "https://api.github.com".
+     * @param maxRepos   Number of READMEs kept, least recently used evicted first.
+     */
+    ReadmeCache(ResilientGitHubConnector github, String apiBaseUrl, int maxRepos) {
+        this.github = github;
+        this.apiBaseUrl = apiBaseUrl.endsWith("/") ? apiBaseUrl.substring(0, apiBaseUrl.length() - 1) : apiBaseUrl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxRepos;
+            }
+        };
+    }
+
+    /**
+     * Returns the current README of a repository.
+     *
+     * @param ownerRepo Repository in "owner/repo" form.
+     * @param token     Token authorizing read access to the repository.
+     * @return The README text, or null if the repository has none.
+     */
+    String fetch(String ownerRepo, String token) throws IOException {
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(ownerRepo);
+        }
+        HttpResponse<byte[]> response = github.send(request(ownerRepo, token, cached == null ? null : cached.etag, false));
+        if (response.statusCode() == 304 && cached == null) {
+            // Not modified, but nothing to serve: an intermediate cache answered; ask past it for the body.
+            response = github.send(request(ownerRepo, token, null, true));
+        }
+
+        switch (response.statusCode()) {
+            case 304:
+                if (cached == null) {
+                    break;
+                }
+                notModified.increment();
+                return cached.content;
+            case 200:
+                downloads.increment();
+                String content = new String(response.body(), StandardCharsets.UTF_8);
+                String etag = response.headers().firstValue("ETag").orElse(null);
+                if (etag != null) {
+                    synchronized (entries) {
+                        entries.put(ownerRepo, new Entry(etag, content));
+                    }
+                }
+                return content;
+            case 404:
+                synchronized (entries) {
+                    entries.remove(ownerRepo);
+                }
+                return null;
+            default:
+                break;
+        }
+        // An HttpException carries the status, so callers can tell GitHub's errors from the request's.
+        throw new HttpException("Unexpected status " + response.statusCode() + " fetching README of " + ownerRepo,
+                response.statusCode(), null, response.uri().toString());
+    }
+
+    // Conditional on the ETag if one is given; noCache bypasses caches between here and GitHub.
+    private HttpRequest request(String ownerRepo, String token, String etag, boolean noCache) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(apiBaseUrl + "/repos/" + ownerRepo + "/readme"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Accept", "application/vnd.github.raw")
+                .header("Authorization", "token " + token)
+                .GET();
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (noCache) {
+            request.header("Cache-Control", "no-cache");
+        }
+        return request.build();
+    }
+
+    /** Number of lookups answered with 304 Not Modified. */
+    long notModifiedCount() {
+        return notModified.sum();
+    }
+
+    /** Number of lookups that downloaded the README. */
+    long downloadCount() {
+        return downloads.sum();
+    }
+}
@@ -0,0 +1,118 @@
+package com.decozero;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.aiplatform.v1.Candidate;
+import com.google.cloud.aiplatform.v1.Content;
+import com.google.cloud.aiplatform.v1.GenerateContentRequest;
+import com.google.cloud.aiplatform.v1.GenerateContentResponse;
+import com.google.cloud.aiplatform.v1.Part;
+import com.google.cloud.aiplatform.v1.PredictionServiceClient;
+import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
+import io.grpc.ManagedChannelBuilder;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * {@link PredictionClient} backed by Gemini on Vertex AI, through the prediction service's
+ * GenerateContent and StreamGenerateContent methods.
+ */
+class VertexPredictionClient implements PredictionClient {
+
+    private static final Logger logger = Logger.getLogger(VertexPredictionClient.class.getName());
+
+    private final PredictionServiceClient client;
+    private final String projectId;
+    private final String location;
+
+    private VertexPredictionClient(PredictionServiceClient client, String projectId, String location) {
+        this.client = client;
+        this.projectId = projectId;
+        this.location = location;
+    }
+
+    /**
+     * Creates a client for the regional Vertex AI endpoint.
+     *
+     * @param endpointOverride Optional "host:port" of a local plaintext stub prediction service,
+     *                         or null to use {@code <location>-aiplatform.googleapis.com:443}.
+     */
+    static VertexPredictionClient create(String projectId, String location, String endpointOverride) throws IOException {
+        PredictionServiceSettings.Builder settings = PredictionServiceSettings.newBuilder();
+        if (endpointOverride != null && !endpointOverride.isEmpty()) {
+            settings.setEndpoint(endpointOverride)
+                    .setCredentialsProvider(NoCredentialsProvider.create())
+                    .setTransportChannelProvider(InstantiatingGrpcChannelProvider.newBuilder()
+                            .setEndpoint(endpointOverride)
+                            .setChannelConfigurator(ManagedChannelBuilder::usePlaintext)
+                            .build());
+            logger.info("Using stub prediction service at " + endpointOverride);
+        } else {
+            settings.setEndpoint(location + "-aiplatform.googleapis.com:443");
+        }
+        return new VertexPredictionClient(PredictionServiceClient.create(settings.build()), projectId, location);
+    }
+
+    @Override
+    public String generate(String prompt, String modelId) throws IOException {
+        try {
+            StringBuilder content = new StringBuilder();
+            appendText(client.generateContent(request(prompt, modelId)), content);
+            return content.length() == 0 ? null : content.toString();
+        } catch (RuntimeException e) {
+            // gax surfaces RPC failures as unchecked ApiExceptions
+            throw new IOException("Generation call failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** Streams the completion, handing each response's text to {@code onChunk} as it arrives. */
+    @Override
+    public String generateStreaming(String prompt, String modelId, Consumer<CharSequence> onChunk) throws IOException {
+        ServerStream<GenerateContentResponse> stream = null;
+        try {
+            stream = client.streamGenerateContentCallable().call(request(prompt, modelId));
+            StringBuilder content = new StringBuilder();
+            for (GenerateContentResponse response : stream) {
+                int start = content.length();
+                appendText(response, content);
+                if (content.length() > start) {
+                    onChunk.accept(content.subSequence(start, content.length()));
+                }
+            }
+            return content.length() == 0 ? null : content.toString();
+        } catch (RuntimeException e) {
+            if (stream != null) {
+                stream.cancel();
+            }
+            throw new IOException("Streaming generation call failed: " + e.getMessage(), e);
+        }
+    }
+
+    private GenerateContentRequest request(String prompt, String modelId) {
+        String model = String.format("projects/%s/locations/%s/publishers/google/models/%s", projectId, location, modelId);
+        return GenerateContentRequest.newBuilder()
+                .setModel(model)
+                .addContents(Content.newBuilder().setRole("user").addParts(Part.newBuilder().setText(prompt)))
+                .build();
+    }
+
+    // Text of the first candidate; a blocked prompt or response has no candidate or no parts.
+    private static void appendText(GenerateContentResponse response, StringBuilder content) {
+        if (response.getCandidatesCount() == 0) {
+            return;
+        }
+        Candidate candidate = response.getCandidates(0);
+        for (Part part : candidate.getContent().getPartsList()) {
+            if (part.hasText()) {
+                content.append(part.getText());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
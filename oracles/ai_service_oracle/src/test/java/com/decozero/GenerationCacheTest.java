@@ -0,0 +1,86 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GenerationCacheTest {
+
+    // Each file is a header of about 16 bytes and this content.
+    private static final String CONTENT = new String(new char[100]).replace('\0', 'x');
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void diskTierStaysWithinItsBudget() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        GenerationCache cache = new GenerationCache(1, directory, 500, 1, 0, TimeUnit.HOURS);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key-" + i, CONTENT, 0);
+        }
+        assertTrue("disk bytes: " + cache.diskBytes(), cache.diskBytes() <= 500);
+        assertEquals(cache.diskBytes(), directorySize(directory));
+        assertTrue(cache.diskEvictionCount() > 0);
+        assertFalse(Files.exists(directory.resolve("key-0")));
+        assertEquals(CONTENT, cache.get("key-9"));
+
+        // A restart indexes what is left, within a smaller budget.
+        GenerationCache restarted = new GenerationCache(1, directory, 250, 1, 0, TimeUnit.HOURS);
+        assertTrue(restarted.diskBytes() <= 250);
+        assertEquals(restarted.diskBytes(), directorySize(directory));
+        assertEquals(CONTENT, restarted.get("key-9"));
+    }
+
+    @Test
+    public void expiredFilesAreDeleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        GenerationCache cache = new GenerationCache(1, directory, 1 << 20, 100, 0, TimeUnit.MILLISECONDS);
+        cache.put("found", CONTENT, 0);
+        cache.put("swept", CONTENT, 0);
+        cache.put("memory", CONTENT, 0);
+        Thread.sleep(150);
+
+        assertNull(cache.get("found"));
+        assertFalse(Files.exists(directory.resolve("found")));
+        // The only one in memory, which must not keep it on disk.
+        assertNull(cache.get("memory"));
+        assertFalse(Files.exists(directory.resolve("memory")));
+
+        cache.sweepExpired();
+        assertFalse(Files.exists(directory.resolve("swept")));
+        assertEquals(0, cache.diskBytes());
+    }
+
+    @Test
+    public void sweeperDeletesExpiredFilesInTheBackground() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        GenerationCache cache = new GenerationCache(1, directory, 1 << 20, 50, 20, TimeUnit.MILLISECONDS);
+        try {
+            cache.put("key", CONTENT, 0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (Files.exists(directory.resolve("key")) && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertFalse(Files.exists(directory.resolve("key")));
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.decozero.github.CircuitBreaker;
+import com.decozero.github.FakeGitHub;
+import com.decozero.github.GitHubClients;
+import com.decozero.github.ResilientGitHubConnector;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.HttpException;
+
+public class GitTreeCommitterTest {
+
+    private static final String REPOSITORY = "deco-org/project";
+    private static final String BRANCH = "main";
+
+    private FakeGitHub github;
+
+    @Before
+    public void startGitHub() throws IOException {
+        github = new FakeGitHub(0, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void stopGitHub() {
+        github.close();
+    }
+
+    @Test
+    public void commitIsRebuiltOnTheMovedBranch() throws IOException {
+        github.moveBranch(1);
+        String movedFrom = github.headSha();
+        String sha = commit(files(3));
+
+        assertFalse(sha == null || sha.isEmpty());
+        assertEquals(1, github.refConflictCount());
+        assertEquals(1, github.refUpdateCount());
+        assertNotEquals(movedFrom, github.headSha());
+        assertEquals(github.headSha(), github.lastCommitParent());
+        assertEquals(2, github.commitsCreatedCount());
+        assertEquals(2, github.treesCreatedCount());
+        // The retry reuses the blobs already uploaded.
+        assertEquals(3, github.blobsCreatedCount());
+    }
+
+    @Test
+    public void commitFailsOnceTheBranchKeptMoving() throws IOException {
+        github.moveBranch(10);
+        try {
+            commit(files(2));
+            fail("commit succeeded on a branch that kept moving");
+        } catch (HttpException e) {
+            assertEquals(422, e.getResponseCode());
+        }
+        assertEquals(3, github.refConflictCount());
+        assertEquals(0, github.refUpdateCount());
+    }
+
+    @Test
+    public void failedBlobUploadLeavesTheBranchAlone() {
+        github.failBlobUploads(1);
+        try {
+            commit(files(4));
+            fail("commit succeeded without one of its blobs");
+        } catch (IOException e) {
+            // Expected: the upload's failure.
+        }
+        assertEquals(0, github.treesCreatedCount());
+        assertEquals(0, github.commitsCreatedCount());
+        assertEquals(0, github.refUpdateCount());
+        assertTrue(github.blobsCreatedCount() <= 3);
+    }
+
+    // Commits through a connector of its own, so that one test's failures do not open another's circuit.
+    private String commit(Map<String, String> files) throws IOException {
+        ResilientGitHubConnector connector = new ResilientGitHubConnector(
+                HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build(), Duration.ofSeconds(10),
+                1000, 100, new CircuitBreaker(5, 2, TimeUnit.SECONDS), 4, 10, 100, 5_000, TimeUnit.MILLISECONDS);
+        GHRepository repo = GitHubClients.builder(github.url(), connector).build().getRepository(REPOSITORY);
+        GitTreeCommitter committer = new GitTreeCommitter(4);
+        try {
+            return committer.commitFiles(repo, BRANCH, files, "Update DeCo documents");
+        } finally {
+            committer.shutdown();
+        }
+    }
+
+    private static Map<String, String> files(int count) {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            files.put("docs/area-" + i + ".md", "# Area " + i + "\n");
+        }
+        return files;
+    }
+}
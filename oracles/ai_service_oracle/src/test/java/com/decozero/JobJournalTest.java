@@ -0,0 +1,109 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void finishedTransactionsOutliveCompaction() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("jobs.journal");
+        try (JobJournal journal = new JobJournal(path, 2, JobJournal.DEFAULT_COMPACT_MIN_BYTES)) {
+            journal.recover();
+            for (String tx : new String[] {"a", "b", "c", "d", "e"}) {
+                journal.accepted(tx, "{}");
+            }
+            journal.finished("a", DeCoJob.State.SUCCEEDED);
+            journal.finished("b", DeCoJob.State.FAILED);
+            journal.finished("c", DeCoJob.State.PARTIAL);
+            journal.finished("d", DeCoJob.State.SUCCEEDED);
+        }
+        try (JobJournal journal = new JobJournal(path, 2, JobJournal.DEFAULT_COMPACT_MIN_BYTES)) {
+            assertEquals(Collections.singletonList("{}"), journal.recover());
+            // Past the limit.
+            assertNull(journal.finishedState("a"));
+            // A failed job may be retried.
+            assertNull(journal.finishedState("b"));
+            assertEquals(DeCoJob.State.PARTIAL, journal.finishedState("c"));
+            assertEquals(DeCoJob.State.SUCCEEDED, journal.finishedState("d"));
+            assertNull(journal.finishedState("e"));
+        }
+    }
+
+    @Test
+    public void journalIsCompactedWhileRunning() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("jobs.journal");
+        try (JobJournal journal = new JobJournal(path, 5, 4096)) {
+            journal.recover();
+            journal.accepted("unfinished", "{\"n\": 0}");
+            for (int i = 0; i < 500; i++) {
+                journal.accepted("tx-" + i, "{}");
+                journal.finished("tx-" + i, DeCoJob.State.SUCCEEDED);
+            }
+            assertTrue("journal bytes: " + Files.size(path), Files.size(path) < 2 * 4096);
+        }
+        try (JobJournal journal = new JobJournal(path, 5, 4096)) {
+            assertEquals(Collections.singletonList("{\"n\": 0}"), journal.recover());
+            assertEquals(DeCoJob.State.SUCCEEDED, journal.finishedState("tx-499"));
+            assertNull(journal.finishedState("tx-494"));
+        }
+    }
+
+    @Test
+    public void redeliveryOfAFinishedJobIsNotRunAfterARestart() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("jobs.journal");
+        AtomicInteger runs = new AtomicInteger();
+        try (JobJournal journal = new JobJournal(path)) {
+            journal.recover();
+            JobQueue queue = queue(journal, runs);
+            queue.start(Collections.emptyList());
+            assertEquals(JobQueue.SubmitResult.ACCEPTED, queue.submit(job("tx-1")));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!queue.get("tx-1").isFinished() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            queue.shutdown();
+        }
+        assertEquals(1, runs.get());
+
+        try (JobJournal journal = new JobJournal(path)) {
+            assertTrue(journal.recover().isEmpty());
+            JobQueue queue = queue(journal, runs);
+            queue.start(Collections.emptyList());
+            try {
+                assertEquals(JobQueue.SubmitResult.DUPLICATE, queue.submit(job("tx-1")));
+                assertEquals(DeCoJob.State.SUCCEEDED, queue.get("tx-1").state());
+                assertEquals(JobQueue.SubmitResult.DUPLICATE, queue.submit(job("tx-1")));
+            } finally {
+                queue.shutdown();
+            }
+        }
+        assertEquals(1, runs.get());
+    }
+
+    private static JobQueue queue(JobJournal journal, AtomicInteger runs) {
+        return new JobQueue(10, 1, 10, journal, job -> {
+            runs.incrementAndGet();
+            job.transition(DeCoJob.State.SUCCEEDED, "done");
+        });
+    }
+
+    private static DeCoJob job(String transactionId) {
+        return new DeCoJob(transactionId, "alice.testnet", "https://github.com/deco-org/project",
+                new String[] {"legal"}, "{}", true);
+    }
+}
@@ -0,0 +1,69 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+
+import com.decozero.github.GitHubClients;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadmeCacheTest {
+
+    private static final String ETAG = "\"readme-1\"";
+
+    // The headers each request came with: If-None-Match, then Cache-Control.
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer github;
+
+    @Before
+    public void startGitHub() throws Exception {
+        github = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Answers like a cache that wrongly takes a plain request as revalidated, unless told not to.
+        github.createContext("/repos/o/r/readme", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String cacheControl = exchange.getRequestHeaders().getFirst("Cache-Control");
+            requests.add(ifNoneMatch + "," + cacheControl);
+            if (!"no-cache".equals(cacheControl)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = "# Project".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        github.start();
+    }
+
+    @After
+    public void stopGitHub() {
+        github.stop(0);
+    }
+
+    @Test
+    public void notModifiedWithNothingCachedIsFetchedAgain() throws Exception {
+        ReadmeCache cache = new ReadmeCache(GitHubClients.connector(),
+                "http://127.0.0.1:" + github.getAddress().getPort(), 10);
+
+        assertEquals("# Project", cache.fetch("o/r", "token"));
+        assertEquals(1, cache.downloadCount());
+        assertEquals(0, cache.notModifiedCount());
+
+        assertEquals("# Project", cache.fetch("o/r", "token"));
+        assertEquals(1, cache.notModifiedCount());
+        assertEquals(3, requests.size());
+        assertEquals("null,null", requests.get(0));
+        assertEquals("null,no-cache", requests.get(1));
+        assertEquals(ETAG + ",null", requests.get(2));
+    }
+}
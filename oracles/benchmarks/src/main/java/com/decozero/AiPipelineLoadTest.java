@@ -0,0 +1,388 @@
+package com.decozero;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of the AI oracle, from the contract's service request event to the commit
+ * of the generated documents, with every cloud dependency replaced by a local stand-in.
+ *
+ * Starts a {@link FakeGitHub} (app authentication, README and Git Data API), a {@link
+ * FakePredictionService} (Vertex AI over gRPC, with a configurable latency distribution) and the
+ * oracle in a separate JVM pointed at both. A {@link NearEventEmitter} then produces {@code
+ * request_document_generation} events that are posted to /process-deco-request, as the event
+ * listener does, at {@code --rps} with Poisson arrivals: an open model, so a slow oracle does not
+ * slow the arrivals down, and submit latency is measured from when each request was due rather than
+ * sent. Once the arrivals stop, the status of every accepted job is collected, waiting up to {@code
+ * --drain} seconds for the queue to empty.
+ *
+ * The report gives, per stage (submit, queue, github_auth, readme_fetch, generation, commit and the
+ * whole job), the count, throughput, error rate and p50/p99/p999 latency. Submit throughput is over
+ * the arrival window; the others are over the time from the first job accepted to the last one
+ * finished, since an overloaded oracle keeps working through its queue after the arrivals stop. Usage:
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.decozero.AiPipelineLoadTest \
+ *       --jar ../ai_service_oracle/target/deco-ai-service-oracle-1.0.0.jar \
+ *       [--rps 2] [--warmup 10] [--duration 60] [--drain 120] [--repos 200] [--areas legal,marketing,board] \
+ *       [--model-latency lognormal] [--model-median-ms 1500] [--model-sigma 0.5] [--model-error-share 0] \
+ *       [--github-latency-ms 20] [--port 18082] [--out ai-pipeline-load.json] [--log oracle.log]
+ * </pre>
+ *
+ * {@code --model-latency} is one of fixed, uniform, exponential or lognormal. Any other {@code
+ * --NAME value} pair is passed to the oracle as an environment variable, e.g. {@code --JOB_WORKERS 8}.
+ */
+public final class AiPipelineLoadTest {
+
+    private static final String SUBMIT = "submit";
+    private static final String QUEUE = "queue";
+    private static final String JOB = "job";
+    private static final String[] STAGES = {"github_auth", "readme_fetch", "generation", "commit"};
+    private static final String CONTRACT_ID = "deco-zero-service.testnet";
+    private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    /** Results of one stage. */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean error) {
+            count.increment();
+            if (error) {
+                errors.increment();
+            } else {
+                latency.record(nanos);
+            }
+        }
+    }
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final Map<Integer, LongAdder> submitStatuses = new ConcurrentHashMap<>();
+    private final Queue<String> accepted = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<?>> submits = new ConcurrentLinkedQueue<>();
+    // Span of the collected jobs, by the oracle's clock.
+    private long firstAcceptedMillis = Long.MAX_VALUE;
+    private long lastUpdatedMillis;
+
+    private AiPipelineLoadTest(int port, ExecutorService executor) {
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        this.baseUrl = "http://localhost:" + port;
+        stats.put(SUBMIT, new Stats());
+        stats.put(QUEUE, new Stats());
+        for (String stage : STAGES) {
+            stats.put(stage, new Stats());
+        }
+        stats.put(JOB, new Stats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        String jar = options.remove("--jar");
+        if (jar == null) {
+            System.err.println("Usage: AiPipelineLoadTest --jar <oracle jar> [--rps N] [--warmup S] [--duration S] [--drain S]"
+                    + " [--repos N] [--areas a,b] [--model-latency fixed|uniform|exponential|lognormal] [--model-median-ms MS]"
+                    + " [--model-sigma F] [--model-error-share F] [--github-latency-ms MS] [--port P] [--out file] [--log file]"
+                    + " [--ENV_VAR value...]");
+            System.exit(1);
+            return;
+        }
+        double rps = Double.parseDouble(options.getOrDefault("--rps", "2"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("--warmup", "10"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("--duration", "60"));
+        long drainSeconds = Long.parseLong(options.getOrDefault("--drain", "120"));
+        int repos = Integer.parseInt(options.getOrDefault("--repos", "200"));
+        String[] areas = options.getOrDefault("--areas", "legal,marketing,board").split(",");
+        FakePredictionService.Distribution distribution =
+                FakePredictionService.Distribution.parse(options.getOrDefault("--model-latency", "lognormal"));
+        long modelMedianMillis = Long.parseLong(options.getOrDefault("--model-median-ms", "1500"));
+        double modelSigma = Double.parseDouble(options.getOrDefault("--model-sigma", "0.5"));
+        double modelErrorShare = Double.parseDouble(options.getOrDefault("--model-error-share", "0"));
+        long githubLatencyMillis = Long.parseLong(options.getOrDefault("--github-latency-ms", "20"));
+        int port = Integer.parseInt(options.getOrDefault("--port", "18082"));
+        String out = options.getOrDefault("--out", "ai-pipeline-load.json");
+
+        Path dir = Files.createTempDirectory("deco-ai-pipeline");
+        // The oracle's output is kept only if asked for.
+        Path log = options.containsKey("--log") ? Paths.get(options.get("--log")) : dir.resolve("oracle.log");
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FakeGitHub github = new FakeGitHub(Fixtures.bytes("values.csv"), githubLatencyMillis, TimeUnit.MILLISECONDS);
+             FakePredictionService model = new FakePredictionService(Fixtures.text("board.md"), distribution,
+                     modelMedianMillis, modelSigma, TimeUnit.MILLISECONDS)) {
+            model.fail(modelErrorShare);
+            Path logging = dir.resolve("logging.properties");
+            // The oracle logs every stage of every job at INFO.
+            Files.write(logging, Arrays.asList("handlers=java.util.logging.ConsoleHandler", ".level=WARNING"));
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder builder = new ProcessBuilder(java, "-Djava.util.logging.config.file=" + logging,
+                    "-cp", jar, "com.decozero.AiServiceOracle")
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile());
+            Map<String, String> env = builder.environment();
+            env.put("PORT", Integer.toString(port));
+            env.put("GITHUB_API_URL", github.url());
+            env.put("GITHUB_APP_ID", "1");
+            env.put("GITHUB_APP_PRIVATE_KEY", github.appPrivateKeyPem());
+            env.put("PREDICTION_ENDPOINT", model.endpoint());
+            env.put("GCP_PROJECT_ID", "deco-load-test");
+            env.put("GCP_LOCATION", "us-central1");
+            env.put("GEMINI_MODEL_ID", "gemini-1.5-flash-001");
+            env.put("JOB_JOURNAL_PATH", dir.resolve("jobs.journal").toString());
+            // Every job's status is read back at the end.
+            env.put("JOB_HISTORY_LIMIT", "1000000");
+            // Every repository has the same README, so cached generations would skip the model entirely.
+            env.put("GENERATION_CACHE_MAX_ENTRIES", "0");
+            env.put("GITHUB_HTTP_REQUESTS_PER_SECOND", "100000");
+            env.put("GITHUB_HTTP_BURST", "1000");
+            options.forEach((name, value) -> {
+                if (name.startsWith("--") && name.substring(2).equals(name.substring(2).toUpperCase(Locale.ROOT))) {
+                    env.put(name.substring(2), value);
+                }
+            });
+
+            Process oracle = builder.start();
+            try {
+                AiPipelineLoadTest test = new AiPipelineLoadTest(port, executor);
+                test.awaitReady(oracle);
+                test.run(new NearEventEmitter(CONTRACT_ID, repos, areas), rps, warmupSeconds, durationSeconds);
+                int unfinished = test.collect(drainSeconds);
+                String json = test.report(rps, durationSeconds, areas.length, distribution, modelMedianMillis, unfinished,
+                        github, model);
+                Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+                System.out.print(json);
+            } finally {
+                oracle.destroy();
+                if (!oracle.waitFor(30, TimeUnit.SECONDS)) {
+                    oracle.destroyForcibly().waitFor();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            deleteRecursively(dir);
+        }
+    }
+
+    // Sends one event every exponentially distributed interval, without waiting for the responses
+    // until the last one has been sent.
+    private void run(NearEventEmitter events, double rps, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        for (long due = start; due < end; due += (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos)) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            submit(NearEventEmitter.payload(events.next(random)), due, due >= warmupEnd);
+        }
+        CompletableFuture.allOf(submits.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    }
+
+    private void submit(String payload, long dueNanos, boolean recorded) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/process-deco-request"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(payload))
+                .build();
+        submits.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            if (!recorded) {
+                return;
+            }
+            long nanos = System.nanoTime() - dueNanos;
+            int status = response == null ? 0 : response.statusCode();
+            submitStatuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            stats.get(SUBMIT).record(nanos, status != 202);
+            if (status == 202) {
+                accepted.add(NearEventEmitter.transactionId(payload));
+            }
+        }));
+    }
+
+    /**
+     * Reads back the status of every accepted job, waiting for unfinished ones until the drain timeout.
+     *
+     * @return Jobs still unfinished at the timeout.
+     */
+    private int collect(long drainSeconds) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        List<String> pending = new ArrayList<>(accepted);
+        while (true) {
+            List<String> unfinished = new ArrayList<>();
+            for (String transactionId : pending) {
+                JsonObject status = status(transactionId);
+                if (status == null || !finished(status)) {
+                    unfinished.add(transactionId);
+                } else {
+                    record(status);
+                }
+            }
+            pending = unfinished;
+            if (pending.isEmpty() || System.nanoTime() - deadline > 0) {
+                return pending.size();
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    private JsonObject status(String transactionId) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/requests/" + transactionId))
+                .GET().build(), HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == 200 ? JsonParser.parseString(response.body()).getAsJsonObject() : null;
+    }
+
+    private static boolean finished(JsonObject status) {
+        String state = status.get("state").getAsString();
+        return "succeeded".equals(state) || "partial".equals(state) || "failed".equals(state);
+    }
+
+    // A stage counts once it has a time; it is an error if it ended failed.
+    private void record(JsonObject status) {
+        long acceptedAt = status.get("accepted_at").getAsLong();
+        long updatedAt = status.get("updated_at").getAsLong();
+        firstAcceptedMillis = Math.min(firstAcceptedMillis, acceptedAt);
+        lastUpdatedMillis = Math.max(lastUpdatedMillis, updatedAt);
+        JsonElement startedAt = status.get("started_at");
+        if (startedAt != null) {
+            stats.get(QUEUE).record(TimeUnit.MILLISECONDS.toNanos(startedAt.getAsLong() - acceptedAt), false);
+        }
+        JsonObject stages = status.getAsJsonObject("stages");
+        JsonObject stageMillis = status.getAsJsonObject("stage_millis");
+        for (String stage : STAGES) {
+            JsonElement millis = stageMillis.get(stage);
+            if (millis != null) {
+                stats.get(stage).record(TimeUnit.MILLISECONDS.toNanos(millis.getAsLong()),
+                        "failed".equals(stages.get(stage).getAsString()));
+            }
+        }
+        stats.get(JOB).record(TimeUnit.MILLISECONDS.toNanos(updatedAt - acceptedAt),
+                "failed".equals(status.get("state").getAsString()));
+    }
+
+    private void awaitReady(Process oracle) throws Exception {
+        long start = System.nanoTime();
+        while (true) {
+            if (!oracle.isAlive()) {
+                throw new IllegalStateException("Oracle exited with status " + oracle.exitValue() + " before answering");
+            }
+            try {
+                HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/health")).GET().build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > STARTUP_TIMEOUT_MILLIS) {
+                throw new IllegalStateException("Oracle did not answer within " + STARTUP_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    // --- Report ---
+
+    private String report(double rps, long durationSeconds, int areas, FakePredictionService.Distribution distribution,
+                          long modelMedianMillis, int unfinished, FakeGitHub github, FakePredictionService model) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"targetRps\": ").append(rps).append(",\n");
+        json.append("  \"durationSeconds\": ").append(durationSeconds).append(",\n");
+        json.append("  \"areasPerRequest\": ").append(areas).append(",\n");
+        json.append("  \"modelLatency\": \"").append(distribution.name().toLowerCase(Locale.ROOT))
+                .append("\", \"modelMedianMillis\": ").append(modelMedianMillis).append(",\n");
+        json.append("  \"submitStatuses\": {");
+        int i = 0;
+        for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(submitStatuses).entrySet()) {
+            json.append(i++ > 0 ? ", " : "").append('"').append(status.getKey()).append("\": ").append(status.getValue().sum());
+        }
+        json.append("},\n");
+        json.append("  \"unfinishedJobs\": ").append(unfinished).append(",\n");
+        double jobSeconds = Math.max(1, lastUpdatedMillis - firstAcceptedMillis) / 1000.0;
+        json.append("  \"jobSpanSeconds\": ").append(format(jobSeconds)).append(",\n");
+        json.append("  \"stages\": {\n");
+        i = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long count = s.count.sum();
+            double seconds = SUBMIT.equals(entry.getKey()) ? durationSeconds : jobSeconds;
+            json.append("    \"").append(entry.getKey()).append("\": {\"count\": ").append(count)
+                    .append(", \"perSecond\": ").append(format(s.latency.count() / seconds))
+                    .append(", \"errorRate\": ").append(format(count == 0 ? 0 : s.errors.sum() / (double) count))
+                    .append(", \"latencyMillis\": {\"p50\": ").append(millis(s.latency, 0.5))
+                    .append(", \"p99\": ").append(millis(s.latency, 0.99))
+                    .append(", \"p999\": ").append(millis(s.latency, 0.999)).append("}}")
+                    .append(++i < stats.size() ? "," : "").append('\n');
+        }
+        json.append("  },\n");
+        json.append("  \"modelCalls\": ").append(model.callCount()).append(",\n");
+        json.append("  \"modelErrors\": ").append(model.errorCount()).append(",\n");
+        json.append("  \"githubRequests\": ").append(github.requestCount()).append(",\n");
+        json.append("  \"githubTokensMinted\": ").append(github.tokensMintedCount()).append(",\n");
+        json.append("  \"githubAppAuthFailures\": ").append(github.appAuthFailureCount()).append(",\n");
+        json.append("  \"githubReadmeDownloads\": ").append(github.readmeDownloadCount()).append(",\n");
+        json.append("  \"githubCommits\": ").append(github.refUpdateCount()).append('\n');
+        return json.append("}\n").toString();
+    }
+
+    private static String millis(LatencyHistogram histogram, double quantile) {
+        return format(histogram.quantileNanos(quantile) / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
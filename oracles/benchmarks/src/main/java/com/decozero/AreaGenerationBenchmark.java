@@ -0,0 +1,91 @@
+package com.decozero;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The AI oracle's document generation for one request, from README to the files to commit:
+ * prompt rendering, concurrent {@link AreaGenerator} runs against a stub model and the board
+ * section split. GitHub reads and the commit itself are not included.
+ *
+ * {@code latencyMs} is the stub model's response time; with it set, the score shows how well the
+ * in-flight limit overlaps the areas. {@code cached} serves every area from the generation cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AreaGenerationBenchmark {
+
+    static final String[] AREAS = {"legal", "marketing", "board", "finance", "engineering", "operations"};
+    private static final String MODEL_ID = "gemini-bench";
+    private static final int MAX_IN_FLIGHT = 4;
+
+    @Param({"0", "20"})
+    long latencyMs;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    private String readme;
+    private PromptTemplate template;
+    private AreaGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        Fixtures.quietLogging();
+        readme = Fixtures.text("README.md");
+        template = PromptTemplate.compile(PromptBenchmark.TEMPLATE);
+        StubPredictionClient client = new StubPredictionClient(Fixtures.text("board.md"), BoardSectionBenchmark.CHUNK_CHARS,
+                latencyMs, TimeUnit.MILLISECONDS);
+        GenerationCache cache = new GenerationCache(AREAS.length * 2, 1, TimeUnit.HOURS);
+        Map<String, List<String>> headings = Collections.singletonMap("board", BoardSectionBenchmark.BOARD_HEADINGS);
+        generator = new AreaGenerator(client, cache, headings, MAX_IN_FLIGHT, 60, TimeUnit.SECONDS, new Metrics());
+        if (cached) {
+            generateFiles();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        generator.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, String> generateFiles() throws InterruptedException {
+        Map<String, String> prompts = new LinkedHashMap<>();
+        for (String area : AREAS) {
+            prompts.put(area, template.render(area, readme));
+        }
+        Map<String, String> files = new LinkedHashMap<>();
+        for (Map.Entry<String, AreaGenerator.AreaResult> entry : generator.generateAll(prompts, MODEL_ID, cached).entrySet()) {
+            AreaGenerator.AreaResult result = entry.getValue();
+            if (!result.isGenerated()) {
+                throw new IllegalStateException(entry.getKey() + ": " + result.describe());
+            }
+            String area = entry.getKey().toUpperCase();
+            files.put(area + "/" + entry.getKey() + "_draft.md", result.content);
+            result.sections.forEach((heading, content) ->
+                    files.put(area + "/" + heading.toLowerCase().replace(' ', '_') + ".md", content));
+        }
+        return files;
+    }
+}
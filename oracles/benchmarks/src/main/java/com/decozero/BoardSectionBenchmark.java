@@ -0,0 +1,67 @@
+package com.decozero;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Board section extraction from a generated BOARD draft: the incremental
+ * {@link MarkdownSectionSplitter} fed in streaming-sized chunks, against the two DOTALL regex
+ * searches over the finished document that it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoardSectionBenchmark {
+
+    static final List<String> BOARD_HEADINGS = Arrays.asList("Elevator Pitch", "Vision Statement");
+    static final int CHUNK_CHARS = 64;
+
+    private static final Pattern ELEVATOR_PITCH = Pattern.compile("##\\s*Elevator Pitch\\s*\\n(.*?)(\\n##|\\n---|$)", Pattern.DOTALL);
+    private static final Pattern VISION_STATEMENT = Pattern.compile("##\\s*Vision Statement\\s*\\n(.*?)(\\n##|\\n---|$)", Pattern.DOTALL);
+
+    private String document;
+
+    @Setup
+    public void setUp() {
+        document = Fixtures.text("board.md");
+    }
+
+    @Benchmark
+    public Map<String, String> splitterStreamed() {
+        MarkdownSectionSplitter splitter = new MarkdownSectionSplitter(BOARD_HEADINGS);
+        for (int start = 0; start < document.length(); start += CHUNK_CHARS) {
+            splitter.accept(document.subSequence(start, Math.min(document.length(), start + CHUNK_CHARS)));
+        }
+        splitter.finish();
+        return splitter.sections();
+    }
+
+    @Benchmark
+    public void regexAfterCompletion(Blackhole bh) {
+        bh.consume(extract(ELEVATOR_PITCH, document));
+        bh.consume(extract(VISION_STATEMENT, document));
+    }
+
+    private static String extract(Pattern pattern, String content) {
+        Matcher matcher = pattern.matcher(content);
+        return matcher.find() ? matcher.group(1).trim() : null;
+    }
+}
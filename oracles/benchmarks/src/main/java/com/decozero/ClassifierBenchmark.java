@@ -0,0 +1,69 @@
+package com.decozero;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifying a comment body: the {@link KeywordClassifier} automaton against the lower-cased
+ * {@code contains} checks it replaced, which copy the text once per keyword. Run with
+ * {@code -prof gc} to compare the allocation per classification as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifierBenchmark {
+
+    private static final String[] CONTAINS_KEYWORDS = {"suggestion", "idea:", "suggest", "proposal"};
+
+    /** Length of the comment, in repetitions of a 60-character sentence. */
+    @Param({"1", "50"})
+    int sentences;
+
+    /** Whether the comment ends with a keyword. Most comments contain none, and are then checked for every keyword. */
+    @Param({"true", "false"})
+    boolean suggestion;
+
+    private String text;
+    private KeywordClassifier classifier;
+
+    @Setup
+    public void setUp() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            body.append("The parser keeps failing on Windows paths with spaces in it. ");
+        }
+        // Any keyword comes last, so both approaches scan the whole comment.
+        text = body.append(suggestion ? "Suggestion: quote them." : "Quoting them would help.").toString();
+        classifier = KeywordClassifier.defaults();
+    }
+
+    /** The classification the oracle did before the keyword automaton. */
+    @Benchmark
+    public String lowerCaseContains() {
+        for (String keyword : CONTAINS_KEYWORDS) {
+            if (text.toLowerCase(Locale.ROOT).contains(keyword)) {
+                return "suggestion";
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String keywordAutomaton() {
+        return classifier.classify(ContributionClassifier.Subject.COMMENT, text);
+    }
+}
@@ -0,0 +1,335 @@
+package com.decozero;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold start of the value distribution function as a JVM jar and as a native executable.
+ *
+ * Each run starts a fresh {@link FunctionServer} process and measures the time until it answers a
+ * metrics scrape, the latency of the first webhook it serves (a signed issue edit, which is parsed
+ * and acknowledged without calling GitHub or NEAR) and its resident set size afterwards, read from
+ * /proc (Linux only). Usage:
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.decozero.ColdStartHarness \
+ *       --jar ../value_distribution_oracle/target/deco-value-distribution-oracle-1.0.0.jar \
+ *       [--native ../value_distribution_oracle/target/deco-value-distribution-oracle] \
+ *       [--runs 10] [--port 18080] [--out cold-start.json] \
+ *       [--agent-config-dir ../value_distribution_oracle/src/main/resources/META-INF/native-image/com.decozero/deco-value-distribution-oracle] \
+ *       [--agent-java $GRAALVM_HOME/bin/java]
+ * </pre>
+ *
+ * With {@code --agent-config-dir}, the jar is first run once under GraalVM's native-image tracing
+ * agent, which merges the reflection and resource configuration it observes into that directory.
+ * That run points the function at a {@link FakeGitHub}, scores an opened issue (reading values.csv
+ * through github-api) and lets the reaction poller list the issue's reactions, so the configuration
+ * covers the GitHub calls as well as startup. {@code --agent-java} must be a GraalVM java, which
+ * ships the agent; it defaults to the java running the harness.
+ */
+public final class ColdStartHarness {
+
+    // What the mock SecretManager returns for GITHUB_WEBHOOK_SECRET.
+    private static final String WEBHOOK_SECRET = "mock-GITHUB_WEBHOOK_SECRET";
+    private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+    private static final long POLL_INTERVAL_MILLIS = 2;
+    private static final long AGENT_POLL_WAIT_MILLIS = 3_000;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final byte[] webhook = issueEdit();
+    private final int port;
+
+    private ColdStartHarness(int port) {
+        this.port = port;
+    }
+
+    /** Measurements of one process. */
+    private static final class Run {
+        double readyMillis;
+        double firstRequestMillis;
+        double initMillis = -1;
+        long rssKb = -1;
+        long peakRssKb = -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String jar = options.get("--jar");
+        String nativeImage = options.get("--native");
+        if (jar == null && nativeImage == null) {
+            System.err.println("Usage: ColdStartHarness --jar <function jar> [--native <executable>] [--runs N] [--port P] [--out file]");
+            System.exit(1);
+            return;
+        }
+        int runs = Integer.parseInt(options.getOrDefault("--runs", "10"));
+        ColdStartHarness harness = new ColdStartHarness(Integer.parseInt(options.getOrDefault("--port", "18080")));
+
+        String agentConfigDir = options.get("--agent-config-dir");
+        if (agentConfigDir != null) {
+            if (jar == null) {
+                System.err.println("--agent-config-dir needs --jar");
+                System.exit(1);
+                return;
+            }
+            String agentJava = options.getOrDefault("--agent-java",
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            harness.traceWithAgent(agentJava, jar, Paths.get(agentConfigDir).toAbsolutePath());
+        }
+
+        Map<String, List<Run>> results = new LinkedHashMap<>();
+        if (jar != null) {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            results.put("jvm", harness.measure(Arrays.asList(java, "-cp", jar, "com.decozero.FunctionServer"), runs));
+        }
+        if (nativeImage != null) {
+            results.put("native", harness.measure(Arrays.asList(nativeImage), runs));
+        }
+
+        String json = toJson(results);
+        Files.write(Paths.get(options.getOrDefault("--out", "cold-start.json")), json.getBytes(StandardCharsets.UTF_8));
+        System.out.print(json);
+    }
+
+    private List<Run> measure(List<String> command, int runs) throws Exception {
+        List<Run> results = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            results.add(measureOnce(command));
+        }
+        return results;
+    }
+
+    private Run measureOnce(List<String> command) throws Exception {
+        Path dir = Files.createTempDirectory("deco-cold-start");
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("server.log").toFile());
+        // A fresh instance with nothing to replay: empty journals and no persisted delivery ids.
+        builder.environment().put("PORT", Integer.toString(port));
+        builder.environment().put("MINT_LOG_PATH", dir.resolve("mints.journal").toString());
+        builder.environment().put("LEDGER_PATH", dir.resolve("contributions.ledger").toString());
+        builder.environment().put("REACTION_JOURNAL_PATH", dir.resolve("reactions.journal").toString());
+        builder.environment().remove("DELIVERY_DEDUP_PATH");
+
+        Run run = new Run();
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            awaitReady(process, start);
+            run.readyMillis = millisSince(start);
+
+            long requestStart = System.nanoTime();
+            HttpResponse<String> response = client.send(webhookRequest(webhook), HttpResponse.BodyHandlers.ofString());
+            run.firstRequestMillis = millisSince(requestStart);
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Webhook answered " + response.statusCode() + ": " + response.body());
+            }
+
+            long[] memory = residentKb(process.pid());
+            run.rssKb = memory[0];
+            run.peakRssKb = memory[1];
+            run.initMillis = initMillis(scrape().body());
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            deleteRecursively(dir);
+        }
+        return run;
+    }
+
+    /**
+     * Runs the jar once under the native-image tracing agent, merging the configuration it records
+     * into {@code configDir}. The agent writes it when the process exits.
+     */
+    private void traceWithAgent(String java, String jar, Path configDir) throws Exception {
+        Files.createDirectories(configDir);
+        Path dir = Files.createTempDirectory("deco-agent");
+        ProcessBuilder builder = new ProcessBuilder(java, "-agentlib:native-image-agent=config-merge-dir=" + configDir,
+                "-cp", jar, "com.decozero.FunctionServer")
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("server.log").toFile());
+        try (FakeGitHub github = new FakeGitHub(Fixtures.bytes("values.csv"), 0, TimeUnit.MILLISECONDS)) {
+            builder.environment().put("PORT", Integer.toString(port));
+            builder.environment().put("GITHUB_API_URL", github.url());
+            builder.environment().put("MINT_LOG_PATH", dir.resolve("mints.journal").toString());
+            builder.environment().put("LEDGER_PATH", dir.resolve("contributions.ledger").toString());
+            builder.environment().put("REACTION_JOURNAL_PATH", dir.resolve("reactions.journal").toString());
+            builder.environment().put("REACTION_POLL_INTERVAL_SECONDS", "1");
+            builder.environment().remove("DELIVERY_DEDUP_PATH");
+            Process process = builder.start();
+            try {
+                awaitReady(process, System.nanoTime());
+                byte[] opened = Fixtures.text(Fixtures.ISSUES + ".json").getBytes(StandardCharsets.UTF_8);
+                HttpResponse<String> response = client.send(webhookRequest(opened), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Webhook answered " + response.statusCode() + ": " + response.body());
+                }
+                // A few poll intervals, for the poller to list the issue's reactions.
+                Thread.sleep(AGENT_POLL_WAIT_MILLIS);
+                scrape();
+            } finally {
+                // Exits through the shutdown hooks, when the agent writes its configuration.
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+            if (process.exitValue() != 0 && process.exitValue() != 143) {
+                throw new IllegalStateException("Traced server exited with status " + process.exitValue()
+                        + ", see " + dir.resolve("server.log"));
+            }
+        }
+        deleteRecursively(dir);
+        System.err.println("Merged native-image configuration into " + configDir);
+    }
+
+    // Polls the metrics endpoint until the server answers it.
+    private void awaitReady(Process process, long start) throws Exception {
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Server exited with status " + process.exitValue() + " before answering");
+            }
+            try {
+                if (scrape().statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            if (millisSince(start) > STARTUP_TIMEOUT_MILLIS) {
+                throw new IllegalStateException("Server did not answer within " + STARTUP_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    private HttpResponse<String> scrape() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/metrics")).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest webhookRequest(byte[] body) throws Exception {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
+                .header("Content-Type", "application/json")
+                .header("X-GitHub-Event", Fixtures.ISSUES)
+                .header("X-GitHub-Delivery", UUID.randomUUID().toString())
+                .header("X-Hub-Signature-256", WebhookPayloadBenchmark.sign(WEBHOOK_SECRET, body))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    // The recorded issue delivery, as an edit: scored actions would call GitHub for values.csv.
+    private static byte[] issueEdit() {
+        String body = Fixtures.text(Fixtures.ISSUES + ".json");
+        return body.replaceFirst("\"action\": \"opened\"", "\"action\": \"edited\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // VmRSS and VmHWM of a process in kB, or -1 where /proc is not available.
+    private static long[] residentKb(long pid) throws IOException {
+        long[] memory = {-1, -1};
+        Path status = Paths.get("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return memory;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                memory[0] = kilobytes(line);
+            } else if (line.startsWith("VmHWM:")) {
+                memory[1] = kilobytes(line);
+            }
+        }
+        return memory;
+    }
+
+    private static long kilobytes(String statusLine) {
+        return Long.parseLong(statusLine.replaceAll("[^0-9]", ""));
+    }
+
+    // deco_init_seconds, in milliseconds, from a metrics scrape.
+    private static double initMillis(String metrics) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith("deco_init_seconds ")) {
+                return Double.parseDouble(line.substring("deco_init_seconds ".length())) * 1000;
+            }
+        }
+        return -1;
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // --- JSON output: per target, the runs and the median, min and max of each measurement ---
+
+    private static String toJson(Map<String, List<Run>> results) {
+        StringBuilder json = new StringBuilder("{\n");
+        int t = 0;
+        for (Map.Entry<String, List<Run>> target : results.entrySet()) {
+            List<Run> runs = target.getValue();
+            json.append("  \"").append(target.getKey()).append("\": {\n");
+            json.append("    \"runs\": ").append(runs.size()).append(",\n");
+            stats(json, "readyMillis", runs.stream().mapToDouble(r -> r.readyMillis).toArray(), false);
+            stats(json, "firstRequestMillis", runs.stream().mapToDouble(r -> r.firstRequestMillis).toArray(), false);
+            stats(json, "initMillis", runs.stream().mapToDouble(r -> r.initMillis).toArray(), false);
+            stats(json, "rssKb", runs.stream().mapToDouble(r -> r.rssKb).toArray(), false);
+            stats(json, "peakRssKb", runs.stream().mapToDouble(r -> r.peakRssKb).toArray(), true);
+            json.append("  }").append(++t < results.size() ? "," : "").append('\n');
+        }
+        return json.append("}\n").toString();
+    }
+
+    private static void stats(StringBuilder json, String name, double[] values, boolean last) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double median = sorted.length % 2 == 1
+                ? sorted[sorted.length / 2]
+                : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+        json.append("    \"").append(name).append("\": {")
+                .append("\"median\": ").append(round(median))
+                .append(", \"min\": ").append(round(sorted[0]))
+                .append(", \"max\": ").append(round(sorted[sorted.length - 1]))
+                .append('}').append(last ? "" : ",").append('\n');
+    }
+
+    private static String round(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
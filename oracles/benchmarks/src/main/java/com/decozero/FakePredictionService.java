@@ -0,0 +1,196 @@
+package com.decozero;
+
+import com.google.cloud.aiplatform.v1.Candidate;
+import com.google.cloud.aiplatform.v1.Content;
+import com.google.cloud.aiplatform.v1.GenerateContentRequest;
+import com.google.cloud.aiplatform.v1.GenerateContentResponse;
+import com.google.cloud.aiplatform.v1.Part;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the Vertex AI prediction service, for load tests that point the AI oracle at it
+ * with PREDICTION_ENDPOINT.
+ *
+ * Serves the Gemini GenerateContent and StreamGenerateContent methods in plaintext and answers
+ * every prompt with the same document, after a latency drawn from a {@link Distribution} around a
+ * median. A streamed answer arrives in {@value #STREAM_CHUNKS} chunks spread evenly over that
+ * latency, the last at the same time a unary answer would. A share of calls can be failed with
+ * UNAVAILABLE, as Vertex AI does under overload. Answers are scheduled rather than slept on, so any
+ * number of calls can wait at once, as they would on the real service.
+ */
+final class FakePredictionService implements AutoCloseable {
+
+    static final String SERVICE = "google.cloud.aiplatform.v1.PredictionService";
+
+    static final int STREAM_CHUNKS = 8;
+
+    private static final MethodDescriptor<GenerateContentRequest, GenerateContentResponse> GENERATE_CONTENT =
+            method(MethodDescriptor.MethodType.UNARY, "GenerateContent");
+    private static final MethodDescriptor<GenerateContentRequest, GenerateContentResponse> STREAM_GENERATE_CONTENT =
+            method(MethodDescriptor.MethodType.SERVER_STREAMING, "StreamGenerateContent");
+
+    /** Shapes of model latency. */
+    enum Distribution {
+        /** Always the median. */
+        FIXED,
+        /** Uniform between 0 and twice the median. */
+        UNIFORM,
+        /** Exponential with the given median, a memoryless service time. */
+        EXPONENTIAL,
+        /** Log-normal with the given median and shape {@code sigma}: the long right tail of LLM latency. */
+        LOGNORMAL;
+
+        long sampleNanos(long medianNanos, double sigma, ThreadLocalRandom random) {
+            switch (this) {
+                case UNIFORM:
+                    return (long) (random.nextDouble() * 2 * medianNanos);
+                case EXPONENTIAL:
+                    return (long) (-Math.log(1 - random.nextDouble()) / Math.log(2) * medianNanos);
+                case LOGNORMAL:
+                    return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+                default:
+                    return medianNanos;
+            }
+        }
+
+        static Distribution parse(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Server server;
+    private final ScheduledExecutorService answers;
+    private final GenerateContentResponse response;
+    private final GenerateContentResponse[] chunks;
+    private final Distribution distribution;
+    private final long medianNanos;
+    private final double sigma;
+    private volatile double errorShare;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * @param document Text returned for every prompt.
+     * @param sigma    Shape of {@link Distribution#LOGNORMAL}, ignored by the others.
+     */
+    FakePredictionService(String document, Distribution distribution, long median, double sigma, TimeUnit unit)
+            throws IOException {
+        this.response = response(document);
+        this.chunks = new GenerateContentResponse[STREAM_CHUNKS];
+        for (int i = 0; i < STREAM_CHUNKS; i++) {
+            chunks[i] = response(document.substring(document.length() * i / STREAM_CHUNKS,
+                    document.length() * (i + 1) / STREAM_CHUNKS));
+        }
+        this.distribution = distribution;
+        this.medianNanos = unit.toNanos(median);
+        this.sigma = sigma;
+        this.answers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fake-prediction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ServerServiceDefinition service = ServerServiceDefinition.builder(SERVICE)
+                .addMethod(GENERATE_CONTENT, ServerCalls.asyncUnaryCall(this::generateContent))
+                .addMethod(STREAM_GENERATE_CONTENT, ServerCalls.asyncServerStreamingCall(this::streamGenerateContent))
+                .build();
+        this.server = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0))
+                .addService(service)
+                .build()
+                .start();
+    }
+
+    /** Address to set as PREDICTION_ENDPOINT. */
+    String endpoint() {
+        return "localhost:" + server.getPort();
+    }
+
+    /** Fails a share of calls with UNAVAILABLE. */
+    void fail(double share) {
+        this.errorShare = share;
+    }
+
+    long callCount() {
+        return calls.sum();
+    }
+
+    long errorCount() {
+        return errors.sum();
+    }
+
+    private void generateContent(GenerateContentRequest request, StreamObserver<GenerateContentResponse> observer) {
+        calls.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean error = errorShare > 0 && random.nextDouble() < errorShare;
+        answers.schedule(() -> {
+            if (error) {
+                errors.increment();
+                observer.onError(Status.UNAVAILABLE.withDescription("Injected failure").asRuntimeException());
+            } else {
+                observer.onNext(response);
+                observer.onCompleted();
+            }
+        }, Math.max(0, distribution.sampleNanos(medianNanos, sigma, random)), TimeUnit.NANOSECONDS);
+    }
+
+    private void streamGenerateContent(GenerateContentRequest request, StreamObserver<GenerateContentResponse> observer) {
+        calls.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = Math.max(0, distribution.sampleNanos(medianNanos, sigma, random));
+        if (errorShare > 0 && random.nextDouble() < errorShare) {
+            answers.schedule(() -> {
+                errors.increment();
+                observer.onError(Status.UNAVAILABLE.withDescription("Injected failure").asRuntimeException());
+            }, latency / STREAM_CHUNKS, TimeUnit.NANOSECONDS);
+            return;
+        }
+        for (int i = 0; i < STREAM_CHUNKS; i++) {
+            GenerateContentResponse chunk = chunks[i];
+            boolean last = i == STREAM_CHUNKS - 1;
+            // One thread sends every chunk, so chunks of a call go out in order.
+            answers.schedule(() -> {
+                observer.onNext(chunk);
+                if (last) {
+                    observer.onCompleted();
+                }
+            }, latency * (i + 1) / STREAM_CHUNKS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static GenerateContentResponse response(String text) {
+        return GenerateContentResponse.newBuilder()
+                .addCandidates(Candidate.newBuilder()
+                        .setContent(Content.newBuilder().setRole("model").addParts(Part.newBuilder().setText(text))))
+                .build();
+    }
+
+    private static MethodDescriptor<GenerateContentRequest, GenerateContentResponse> method(
+            MethodDescriptor.MethodType type, String name) {
+        return MethodDescriptor.<GenerateContentRequest, GenerateContentResponse>newBuilder()
+                .setType(type)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE, name))
+                .setRequestMarshaller(ProtoUtils.marshaller(GenerateContentRequest.getDefaultInstance()))
+                .setResponseMarshaller(ProtoUtils.marshaller(GenerateContentResponse.getDefaultInstance()))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        answers.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Recorded inputs shared by the benchmarks.
+ *
+ * The webhook payloads under {@code fixtures/} are GitHub deliveries in their full recorded shape
+ * (20-commit push, merged pull request, opened issue, issue comment), so parsing cost includes the
+ * repository and user objects that the oracles skip over.
+ */
+final class Fixtures {
+
+    static final String PUSH = "push";
+    static final String PULL_REQUEST = "pull_request";
+    static final String ISSUES = "issues";
+    static final String ISSUE_COMMENT = "issue_comment";
+
+    private Fixtures() {
+    }
+
+    /** Returns a fixture file from the classpath. */
+    static byte[] bytes(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown fixture " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String text(String name) {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+
+    /** Recorded webhook body of a GitHub event type. */
+    static byte[] webhook(String eventType) {
+        return bytes(eventType + ".json");
+    }
+
+    /**
+     * A values.csv with {@code types} contribution types for each of the three roles, the shape of
+     * a mature DeCo that prices many kinds of work.
+     */
+    static String syntheticValuesCsv(int types) {
+        StringBuilder csv = new StringBuilder(text("values.csv"));
+        String[] roles = {"maintainer", "contributor", "non_member"};
+        for (int t = 0; t < types; t++) {
+            for (int r = 0; r < roles.length; r++) {
+                csv.append("custom_type_").append(t).append(',').append(roles[r]).append(',')
+                        .append(10 + t % 90).append(",1.").append(r).append(",0.").append(t % 10).append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    /** Silences the oracles' per-request logging so that it does not dominate the measurements. */
+    static void quietLogging() {
+        LogManager.getLogManager().reset();
+        Logger.getLogger("").setLevel(Level.OFF);
+    }
+}
@@ -0,0 +1,239 @@
+package com.decozero;
+
+import com.decozero.github.CircuitBreaker;
+import com.decozero.github.GitHubClients;
+import com.decozero.github.ResilientGitHubConnector;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+
+/**
+ * Compares GitHub clients on a {@link FakeGitHub} that throttles, rate limits and fails.
+ *
+ * Runs the same closed-loop workload twice, each time on a fresh fake: once with a stock github-api
+ * client, whose handlers sleep until a limit is over, and once with one built by {@link
+ * GitHubClients} on a {@link ResilientGitHubConnector}. Each operation reads a random repository and
+ * its values.csv, as the value oracle does on a cache miss. The report gives, per client, the share
+ * of operations that succeeded, their latency percentiles, the failures by exception, the calls the
+ * fake received and refused, and the connector's own counters. Usage:
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.decozero.GitHubThrottleHarness \
+ *       [--clients 16] [--duration 20] [--repos 100] [--github-latency-ms 5] \
+ *       [--throttle-share 0.05] [--retry-after 1] [--error-share 0.01] \
+ *       [--rate-limit 0] [--window 10] [--outage-at 5] [--outage-seconds 0] \
+ *       [--failure-pause-ms 100] [--rps 1000] [--burst 100] [--out github-throttle.json]
+ * </pre>
+ *
+ * {@code --rate-limit} is the primary limit in calls per {@code --window} seconds, 0 for none;
+ * {@code --outage-seconds} fails every call for that long, starting {@code --outage-at} seconds in.
+ * A client waits {@code --failure-pause-ms} after a failed operation, as a caller would before
+ * trying again, so that failing fast does not turn into a busy loop that inflates the failures.
+ */
+public final class GitHubThrottleHarness {
+
+    private static final String STOCK = "stock";
+    private static final String RESILIENT = "resilient";
+
+    /** Results of one client. */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        final LongAdder operations = new LongAdder();
+        long githubRequests;
+        long githubThrottled;
+        long githubFailed;
+        ResilientGitHubConnector connector;
+
+        void fail(Exception e) {
+            operations.increment();
+            failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+    }
+
+    private final int clients;
+    private final long durationSeconds;
+    private final int repos;
+    private final long githubLatencyMillis;
+    private final double throttleShare;
+    private final long retryAfterSeconds;
+    private final double errorShare;
+    private final int rateLimit;
+    private final long windowSeconds;
+    private final long outageAtSeconds;
+    private final long outageSeconds;
+    private final long failurePauseMillis;
+
+    private GitHubThrottleHarness(Map<String, String> options) {
+        this.clients = Integer.parseInt(options.getOrDefault("--clients", "16"));
+        this.durationSeconds = Long.parseLong(options.getOrDefault("--duration", "20"));
+        this.repos = Integer.parseInt(options.getOrDefault("--repos", "100"));
+        this.githubLatencyMillis = Long.parseLong(options.getOrDefault("--github-latency-ms", "5"));
+        this.throttleShare = Double.parseDouble(options.getOrDefault("--throttle-share", "0.05"));
+        this.retryAfterSeconds = Long.parseLong(options.getOrDefault("--retry-after", "1"));
+        this.errorShare = Double.parseDouble(options.getOrDefault("--error-share", "0.01"));
+        this.rateLimit = Integer.parseInt(options.getOrDefault("--rate-limit", "0"));
+        this.windowSeconds = Long.parseLong(options.getOrDefault("--window", "10"));
+        this.outageAtSeconds = Long.parseLong(options.getOrDefault("--outage-at", "5"));
+        this.outageSeconds = Long.parseLong(options.getOrDefault("--outage-seconds", "0"));
+        this.failurePauseMillis = Long.parseLong(options.getOrDefault("--failure-pause-ms", "100"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        GitHubThrottleHarness harness = new GitHubThrottleHarness(options);
+        double rps = Double.parseDouble(options.getOrDefault("--rps", "1000"));
+        int burst = Integer.parseInt(options.getOrDefault("--burst", "100"));
+        String out = options.getOrDefault("--out", "github-throttle.json");
+
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        stats.put(STOCK, harness.run(url -> new GitHubBuilder().withEndpoint(url).build(), null));
+        ResilientGitHubConnector connector = new ResilientGitHubConnector(
+                HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build(), Duration.ofSeconds(10),
+                rps, burst, new CircuitBreaker(5, 2, TimeUnit.SECONDS), 4, 100, 2000, 20_000, TimeUnit.MILLISECONDS);
+        stats.put(RESILIENT, harness.run(url -> GitHubClients.builder(url, connector).build(), connector));
+
+        String json = harness.report(stats);
+        Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+        System.out.print(json);
+    }
+
+    private interface ClientFactory {
+        GitHub create(String url) throws IOException;
+    }
+
+    private Stats run(ClientFactory factory, ResilientGitHubConnector connector) throws Exception {
+        Stats stats = new Stats();
+        stats.connector = connector;
+        try (FakeGitHub github = new FakeGitHub(Fixtures.bytes("values.csv"), githubLatencyMillis, TimeUnit.MILLISECONDS)) {
+            github.throttle(throttleShare, retryAfterSeconds, TimeUnit.SECONDS);
+            github.fail(errorShare);
+            if (rateLimit > 0) {
+                github.rateLimit(rateLimit, windowSeconds, TimeUnit.SECONDS);
+            }
+            GitHub client = factory.create(github.url());
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            List<Thread> threads = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                Thread thread = new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        operation(client, stats);
+                    }
+                }, "github-client-" + c);
+                thread.start();
+                threads.add(thread);
+            }
+            if (outageSeconds > 0) {
+                sleepUntil(start + TimeUnit.SECONDS.toNanos(outageAtSeconds));
+                github.fail(1);
+                sleepUntil(start + TimeUnit.SECONDS.toNanos(outageAtSeconds + outageSeconds));
+                github.fail(errorShare);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            stats.githubRequests = github.requestCount();
+            stats.githubThrottled = github.throttledCount();
+            stats.githubFailed = github.failedCount();
+        }
+        return stats;
+    }
+
+    private void operation(GitHub client, Stats stats) {
+        String repository = "deco-org-" + ThreadLocalRandom.current().nextInt(repos) + "/project";
+        long start = System.nanoTime();
+        try {
+            client.getRepository(repository).getFileContent("values.csv").read().close();
+            stats.operations.increment();
+            stats.latency.record(System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            stats.fail(e);
+            try {
+                Thread.sleep(failurePauseMillis);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long sleep = TimeUnit.NANOSECONDS.toMillis(nanos - System.nanoTime());
+        if (sleep > 0) {
+            Thread.sleep(sleep);
+        }
+    }
+
+    // --- Report ---
+
+    private String report(Map<String, Stats> stats) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"clients\": ").append(clients).append(",\n");
+        json.append("  \"durationSeconds\": ").append(durationSeconds).append(",\n");
+        json.append("  \"throttleShare\": ").append(throttleShare).append(",\n");
+        json.append("  \"retryAfterSeconds\": ").append(retryAfterSeconds).append(",\n");
+        json.append("  \"errorShare\": ").append(errorShare).append(",\n");
+        json.append("  \"rateLimit\": ").append(rateLimit).append(",\n");
+        json.append("  \"windowSeconds\": ").append(windowSeconds).append(",\n");
+        json.append("  \"outageSeconds\": ").append(outageSeconds).append(",\n");
+        int n = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long operations = s.operations.sum();
+            json.append("  \"").append(entry.getKey()).append("\": {\n");
+            json.append("    \"operations\": ").append(operations).append(",\n");
+            json.append("    \"successRate\": ").append(format(operations == 0 ? 0 : s.latency.count() / (double) operations)).append(",\n");
+            json.append("    \"successesPerSecond\": ").append(format(s.latency.count() / (double) durationSeconds)).append(",\n");
+            json.append("    \"latencyMillis\": {\"p50\": ").append(millis(s.latency, 0.5))
+                    .append(", \"p99\": ").append(millis(s.latency, 0.99)).append("},\n");
+            json.append("    \"failures\": {");
+            int i = 0;
+            for (Map.Entry<String, LongAdder> failure : new TreeMap<>(s.failures).entrySet()) {
+                json.append(i++ > 0 ? ", " : "").append('"').append(failure.getKey()).append("\": ").append(failure.getValue().sum());
+            }
+            json.append("},\n");
+            json.append("    \"githubRequests\": ").append(s.githubRequests).append(",\n");
+            json.append("    \"githubThrottled\": ").append(s.githubThrottled).append(",\n");
+            json.append("    \"githubFailed\": ").append(s.githubFailed);
+            if (s.connector != null) {
+                ResilientGitHubConnector c = s.connector;
+                json.append(",\n    \"connector\": {\"requests\": ").append(c.requestCount())
+                        .append(", \"calls\": ").append(c.callCount())
+                        .append(", \"coalesced\": ").append(c.coalescedCount())
+                        .append(", \"retries\": ").append(c.retryCount())
+                        .append(", \"throttled\": ").append(c.throttledCount())
+                        .append(", \"limited\": ").append(c.limitedCount())
+                        .append(", \"circuitOpened\": ").append(c.circuitBreaker().openedCount())
+                        .append(", \"circuitRejected\": ").append(c.circuitBreaker().rejectedCount()).append('}');
+            }
+            json.append("\n  }").append(++n < stats.size() ? "," : "").append('\n');
+        }
+        return json.append("}\n").toString();
+    }
+
+    private static String millis(LatencyHistogram histogram, double quantile) {
+        return format(histogram.quantileNanos(quantile) / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
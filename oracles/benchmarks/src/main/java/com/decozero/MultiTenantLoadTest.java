@@ -0,0 +1,333 @@
+package com.decozero;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Load test of the value oracle's multi-tenant server with thousands of simulated DeCo repositories.
+ *
+ * Registers {@code --tenants} repositories, all reading their values.csv from a {@link FakeGitHub},
+ * and starts {@link FunctionServer} on them in a separate JVM. Closed-loop clients then send signed
+ * "issue opened" deliveries, each of which is scored and minted. A share of them ({@code
+ * --noisy-share}) goes to one noisy repository and the rest are spread evenly over the others.
+ * The server answers a delivery once it is spooled and processes it afterwards, so the report
+ * compares the noisy repository with the quiet ones on status codes, and on throughput and latency
+ * percentiles of the deliveries accepted; the awards minted show how many were processed. With fair
+ * scheduling the quiet repositories should see no 503s and a latency close to an unloaded server,
+ * while the noisy one fills its share of the spool and is refused. Usage:
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.decozero.MultiTenantLoadTest \
+ *       --jar ../value_distribution_oracle/target/deco-value-distribution-oracle-1.0.0.jar \
+ *       [--tenants 2000] [--clients 64] [--noisy-share 0.5] [--warmup 10] [--duration 30] \
+ *       [--github-latency-ms 20] [--port 18081] [--out multi-tenant-load.json]
+ * </pre>
+ *
+ * Any other {@code --NAME value} pair is passed to the server as an environment variable, e.g.
+ * {@code --TENANT_MAX_IN_FLIGHT 4}.
+ */
+public final class MultiTenantLoadTest {
+
+    private static final String NOISY = "noisy";
+    private static final String QUIET = "quiet";
+    private static final String[] ISSUE_TITLES = {"Crash bug in the parser", "Improve the docs", "Error on startup", "Typo in README"};
+    private static final int CONTRIBUTORS = 50;
+    private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+
+    /** Results of one class of repositories. Latency is that of the deliveries accepted, not refused. */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(int status, long nanos) {
+            requests.increment();
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status == 200 || status == 202) {
+                latency.record(nanos);
+            }
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+    private final String baseUrl;
+    private final int tenants;
+    private final double noisyShare;
+    private volatile boolean recording;
+
+    private MultiTenantLoadTest(int port, int tenants, double noisyShare) {
+        this.baseUrl = "http://localhost:" + port;
+        this.tenants = tenants;
+        this.noisyShare = noisyShare;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        String jar = options.remove("--jar");
+        if (jar == null) {
+            System.err.println("Usage: MultiTenantLoadTest --jar <function jar> [--tenants N] [--clients N] [--noisy-share F]"
+                    + " [--warmup S] [--duration S] [--github-latency-ms MS] [--port P] [--out file] [--ENV_VAR value...]");
+            System.exit(1);
+            return;
+        }
+        int tenants = Integer.parseInt(options.getOrDefault("--tenants", "2000"));
+        int clients = Integer.parseInt(options.getOrDefault("--clients", "64"));
+        double noisyShare = Double.parseDouble(options.getOrDefault("--noisy-share", "0.5"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("--warmup", "10"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("--duration", "30"));
+        long githubLatencyMillis = Long.parseLong(options.getOrDefault("--github-latency-ms", "20"));
+        int port = Integer.parseInt(options.getOrDefault("--port", "18081"));
+        String out = options.getOrDefault("--out", "multi-tenant-load.json");
+
+        Path dir = Files.createTempDirectory("deco-multi-tenant");
+        try (FakeGitHub github = new FakeGitHub(Fixtures.bytes("values.csv"), githubLatencyMillis, TimeUnit.MILLISECONDS)) {
+            Path tenantsFile = writeTenants(dir, tenants, github.valuesCsvSha());
+            Path logging = dir.resolve("logging.properties");
+            // The function logs every delivery at INFO; at this rate that would be most of the work.
+            Files.write(logging, Arrays.asList("handlers=java.util.logging.ConsoleHandler", ".level=WARNING"));
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder builder = new ProcessBuilder(java, "-Djava.util.logging.config.file=" + logging,
+                    "-cp", jar, "com.decozero.FunctionServer")
+                    .redirectErrorStream(true)
+                    .redirectOutput(dir.resolve("server.log").toFile());
+            Map<String, String> env = builder.environment();
+            env.put("PORT", Integer.toString(port));
+            env.put("TENANTS_PATH", tenantsFile.toString());
+            env.put("GITHUB_API_URL", github.url());
+            // The fake has no rate limit to keep; every tenant's values.csv is fetched at once on startup.
+            env.put("GITHUB_HTTP_REQUESTS_PER_SECOND", "100000");
+            env.put("GITHUB_HTTP_BURST", Integer.toString(tenants));
+            env.put("MINT_LOG_DIR", dir.resolve("mints").toString());
+            env.put("LEDGER_DIR", dir.resolve("ledgers").toString());
+            env.put("DELIVERY_SPOOL_DIR", dir.resolve("spool").toString());
+            env.put("VALUES_CSV_CACHE_MAX_REPOS", Integer.toString(tenants));
+            env.put("DELIVERY_DEDUP_MAX_ENTRIES", "1000000");
+            env.remove("DELIVERY_DEDUP_PATH");
+            options.forEach((name, value) -> {
+                if (name.startsWith("--") && name.substring(2).equals(name.substring(2).toUpperCase(Locale.ROOT))) {
+                    env.put(name.substring(2), value);
+                }
+            });
+
+            Process server = builder.start();
+            try {
+                MultiTenantLoadTest test = new MultiTenantLoadTest(port, tenants, noisyShare);
+                test.awaitReady(server);
+                Map<String, Stats> stats = test.run(clients, warmupSeconds, durationSeconds);
+                String json = report(stats, durationSeconds, tenants, clients, noisyShare, github, test.scrape());
+                Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+                System.out.print(json);
+            } finally {
+                server.destroy();
+                if (!server.waitFor(30, TimeUnit.SECONDS)) {
+                    server.destroyForcibly().waitFor();
+                }
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // Repository i is deco-org-i/project, minting on deco-i.testnet with secret WEBHOOK_SECRET_i.
+    private static Path writeTenants(Path dir, int tenants, String valuesCsvSha) throws IOException {
+        List<String> lines = new ArrayList<>(tenants + 1);
+        lines.add("repository,contract_id,webhook_secret_name,values_csv_sha");
+        for (int i = 0; i < tenants; i++) {
+            lines.add(repository(i) + ",deco-" + i + ".testnet,WEBHOOK_SECRET_" + i + "," + valuesCsvSha);
+        }
+        Path file = dir.resolve("tenants.csv");
+        Files.write(file, lines);
+        return file;
+    }
+
+    private static String repository(int tenant) {
+        return "deco-org-" + tenant + "/project";
+    }
+
+    private Map<String, Stats> run(int clients, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        stats.put(NOISY, new Stats());
+        stats.put(QUIET, new Stats());
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    send(stats);
+                }
+            }, "load-client-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        long sleep = TimeUnit.NANOSECONDS.toMillis(warmupEnd - System.nanoTime());
+        if (sleep > 0) {
+            Thread.sleep(sleep);
+        }
+        recording = true;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return stats;
+    }
+
+    private void send(Map<String, Stats> stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int tenant = random.nextDouble() < noisyShare || tenants == 1 ? 0 : 1 + random.nextInt(tenants - 1);
+        Stats target = stats.get(tenant == 0 ? NOISY : QUIET);
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(delivery(tenant, random), HttpResponse.BodyHandlers.discarding());
+            if (recording) {
+                target.record(response.statusCode(), System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            if (recording) {
+                target.errors.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest delivery(int tenant, ThreadLocalRandom random) throws Exception {
+        String repo = repository(tenant);
+        String login = "dev-" + random.nextInt(CONTRIBUTORS);
+        int number = random.nextInt(1, 100_000);
+        String body = "{\"action\": \"opened\","
+                + " \"issue\": {\"html_url\": \"https://github.com/" + repo + "/issues/" + number + "\","
+                + " \"number\": " + number + ", \"title\": \"" + ISSUE_TITLES[random.nextInt(ISSUE_TITLES.length)] + "\","
+                + " \"user\": {\"login\": \"" + login + "\"}},"
+                + " \"repository\": {\"full_name\": \"" + repo + "\", \"html_url\": \"https://github.com/" + repo + "\"},"
+                + " \"sender\": {\"login\": \"" + login + "\"}}";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/webhooks/" + repo))
+                .header("Content-Type", "application/json")
+                .header("X-GitHub-Event", Fixtures.ISSUES)
+                .header("X-GitHub-Delivery", UUID.randomUUID().toString())
+                // The mock SecretManager resolves a secret name to "mock-" + name.
+                .header("X-Hub-Signature-256", WebhookPayloadBenchmark.sign("mock-WEBHOOK_SECRET_" + tenant, bytes))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(bytes))
+                .build();
+    }
+
+    private void awaitReady(Process server) throws Exception {
+        long start = System.nanoTime();
+        while (true) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with status " + server.exitValue() + " before answering");
+            }
+            try {
+                if (scrapeResponse().statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > STARTUP_TIMEOUT_MILLIS) {
+                throw new IllegalStateException("Server did not answer within " + STARTUP_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private HttpResponse<String> scrapeResponse() throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/metrics")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String scrape() throws IOException, InterruptedException {
+        return scrapeResponse().body();
+    }
+
+    // --- Report ---
+
+    private static String report(Map<String, Stats> stats, long durationSeconds, int tenants, int clients, double noisyShare,
+                                 FakeGitHub github, String metrics) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"tenants\": ").append(tenants).append(",\n");
+        json.append("  \"clients\": ").append(clients).append(",\n");
+        json.append("  \"noisyShare\": ").append(noisyShare).append(",\n");
+        json.append("  \"durationSeconds\": ").append(durationSeconds).append(",\n");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            json.append("  \"").append(entry.getKey()).append("\": {\n");
+            json.append("    \"requests\": ").append(s.requests.sum()).append(",\n");
+            json.append("    \"acceptedPerSecond\": ").append(format(s.latency.count() / (double) durationSeconds)).append(",\n");
+            json.append("    \"statuses\": {");
+            Map<Integer, LongAdder> statuses = new TreeMap<>(s.statuses);
+            int i = 0;
+            for (Map.Entry<Integer, LongAdder> status : statuses.entrySet()) {
+                json.append(i++ > 0 ? ", " : "").append('"').append(status.getKey()).append("\": ").append(status.getValue().sum());
+            }
+            json.append("},\n");
+            json.append("    \"ioErrors\": ").append(s.errors.sum()).append(",\n");
+            json.append("    \"latencyMillis\": {\"p50\": ").append(millis(s.latency, 0.5))
+                    .append(", \"p99\": ").append(millis(s.latency, 0.99))
+                    .append(", \"p999\": ").append(millis(s.latency, 0.999)).append("}\n");
+            json.append("  },\n");
+        }
+        json.append("  \"githubRequests\": ").append(github.requestCount()).append(",\n");
+        json.append("  \"valuesCsvReads\": ").append(github.valuesCsvReadCount()).append(",\n");
+        json.append("  \"awards\": ").append(metric(metrics, "deco_awards_total")).append('\n');
+        return json.append("}\n").toString();
+    }
+
+    private static String millis(LatencyHistogram histogram, double quantile) {
+        return format(histogram.quantileNanos(quantile) / 1e6);
+    }
+
+    private static String metric(String metrics, String name) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(name + " ")) {
+                return line.substring(name.length() + 1);
+            }
+        }
+        return "null";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
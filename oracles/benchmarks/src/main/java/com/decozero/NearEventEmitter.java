@@ -0,0 +1,71 @@
+package com.decozero;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Synthetic source of the events the deco_zero_service contract logs from {@code
+ * request_document_generation}, and the listener side that turns them into AI oracle requests.
+ *
+ * Log lines have the contract's exact shape, {@code EVENT_SERVICE_REQUESTED: { ... }}, with a
+ * transaction id made of the contract account and the block timestamp. Requesters and repositories
+ * are drawn from fixed pools, so repeated repositories exercise the oracle's per-repository caches.
+ */
+final class NearEventEmitter {
+
+    static final String EVENT_PREFIX = "EVENT_SERVICE_REQUESTED: ";
+    private static final String FEE_PAID = "1000000000000000000000000";
+
+    private final String contractId;
+    private final int repositories;
+    private final String[] areas;
+    // Block timestamps in nanoseconds, strictly increasing so transaction ids are unique.
+    private final AtomicLong timestamp = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()));
+
+    /**
+     * @param repositories Size of the repository pool.
+     * @param areas        Functional areas selected by every request.
+     */
+    NearEventEmitter(String contractId, int repositories, String[] areas) {
+        this.contractId = contractId;
+        this.repositories = repositories;
+        this.areas = areas.clone();
+    }
+
+    /** The log line of the next service request, as the contract would emit it. */
+    String next(Random random) {
+        int repo = random.nextInt(repositories);
+        long now = timestamp.updateAndGet(t -> Math.max(t + 1, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())));
+        StringBuilder log = new StringBuilder(EVENT_PREFIX)
+                .append("{ \"requester_id\": \"founder-").append(repo).append(".testnet\",")
+                .append(" \"github_repo_url\": \"https://github.com/deco-org-").append(repo).append("/project\",")
+                .append(" \"selected_areas\": [");
+        for (int i = 0; i < areas.length; i++) {
+            log.append(i > 0 ? ", " : "").append('"').append(areas[i]).append('"');
+        }
+        return log.append("], \"timestamp\": ").append(now)
+                .append(", \"transaction_id\": \"").append(contractId).append(now).append('"')
+                .append(", \"fee_paid\": \"").append(FEE_PAID).append("\" }")
+                .toString();
+    }
+
+    /**
+     * What the event listener posts to /process-deco-request for a log line: the event's JSON.
+     *
+     * @throws IllegalArgumentException If the line is not a service request event.
+     */
+    static String payload(String log) {
+        if (!log.startsWith(EVENT_PREFIX)) {
+            throw new IllegalArgumentException("Not a service request event: " + log);
+        }
+        return log.substring(EVENT_PREFIX.length());
+    }
+
+    /** The transaction id of a request payload, without parsing the rest. */
+    static String transactionId(String payload) {
+        String key = "\"transaction_id\": \"";
+        int start = payload.indexOf(key) + key.length();
+        return payload.substring(start, payload.indexOf('"', start));
+    }
+}
@@ -0,0 +1,72 @@
+package com.decozero;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Area prompt assembly: the compiled {@link PromptTemplate} against the {@code String.format} call
+ * it replaced, for the repository README and for a README repeated to {@code readmeKb} KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBenchmark {
+
+    // Same text as AiServiceOracle's area prompt.
+    static final String TEMPLATE =
+            "You are an expert AI agent tasked with drafting initial documents for a new Decentralized Autonomous Company (DeCo). " +
+            "Based on the provided README.md, generate a concise, professional, and foundational draft for the '{area}' functional area. " +
+            "Focus on key elements relevant to starting such a company. The output should be in Markdown format.\n\n" +
+            "DeCo Idea (from README.md):\n{readme}\n\n" +
+            "Draft for {area} area:";
+    private static final String FORMAT = TEMPLATE.replace("{area}", "%s").replace("{readme}", "%s");
+
+    @Param({"0", "64"})
+    int readmeKb;
+
+    private String readme;
+    private PromptTemplate template;
+    private final String area = "marketing";
+
+    @Setup
+    public void setUp() {
+        readme = readme(readmeKb);
+        template = PromptTemplate.compile(TEMPLATE);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format(FORMAT, area, readme, area);
+    }
+
+    @Benchmark
+    public String promptTemplate() {
+        return template.render(area, readme);
+    }
+
+    /** The repository README, or that README repeated up to {@code kb} KB when {@code kb > 0}. */
+    static String readme(int kb) {
+        String readme = Fixtures.text("README.md");
+        if (kb <= 0) {
+            return readme;
+        }
+        StringBuilder large = new StringBuilder(kb * 1024 + readme.length());
+        while (large.length() < kb * 1024) {
+            large.append(readme);
+        }
+        return large.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.decozero;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Instrumentation cost the value oracle adds to one delivery: the clock reads, six stage
+ * recordings, the payload and award counters and the request recording of a minted push. The
+ * budget is 1 µs per request; {@code clockOnly} is the share of it spent reading the clock, and
+ * the 4-thread variant shows the cost under contention (given at least 4 CPUs).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestMetricsBenchmark {
+
+    @Param({Fixtures.PUSH, Fixtures.ISSUE_COMMENT})
+    String event;
+
+    private RequestMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        metrics = new RequestMetrics();
+    }
+
+    @Benchmark
+    public long instrumentDelivery() {
+        return record();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long instrumentDeliveryContended() {
+        return record();
+    }
+
+    /** The same eight clock reads without recording anything. */
+    @Benchmark
+    public long clockOnly() {
+        long total = 0;
+        for (int i = 0; i < 8; i++) {
+            total += System.nanoTime();
+        }
+        return total;
+    }
+
+    /** Rendering for a scrape, once every series has data. */
+    @Benchmark
+    public String render() {
+        record();
+        return metrics.render();
+    }
+
+    // Mirrors the calls DeCoValueDistributionFunction makes for a delivery that mints.
+    private long record() {
+        long start = System.nanoTime();
+        int index = RequestMetrics.eventIndex(event);
+        long stageStart = System.nanoTime();
+        metrics.payloadBytes(20_000);
+        for (RequestMetrics.Stage stage : RequestMetrics.Stage.values()) {
+            long now = System.nanoTime();
+            metrics.stage(index, stage, now - stageStart);
+            stageStart = now;
+        }
+        metrics.awards(2);
+        long elapsed = System.nanoTime() - start;
+        metrics.request(index, RequestMetrics.Outcome.MINTED, elapsed);
+        return elapsed;
+    }
+}
@@ -0,0 +1,94 @@
+package com.decozero;
+
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rule lookup per scored contribution: the compiled {@link RuleTable} against the map keyed by
+ * {@code type + "_" + role} that it replaced, including its fallback to the contributor rule.
+ * The lookups mix exact hits, fallbacks and unknown types in the proportions of a busy repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleLookupBenchmark {
+
+    private static final String[][] LOOKUPS = {
+            {"commit", "maintainer"},
+            {"commit", "contributor"},
+            {"commit", "non_member"},
+            {"pull_request_merged", "contributor"},
+            {"pull_request_merged", "maintainer"},
+            {"issue_report_critical", "non_member"},
+            {"issue_report_minor", "maintainer"},
+            {"suggestion", "non_member"},
+            {"documentation_update", "contributor"},
+            {"release", "contributor"},
+    };
+
+    private Map<String, ContributionRule> rulesByKey;
+    private RuleTable table;
+    private String[] types;
+    private String[] roles;
+
+    @Setup
+    public void setUp() throws IOException, CsvValidationException {
+        Fixtures.quietLogging();
+        rulesByKey = ValuesCsv.parse(new StringReader(Fixtures.text("values.csv")));
+        table = RuleTable.compile(rulesByKey.values(), "bench");
+        types = new String[LOOKUPS.length];
+        roles = new String[LOOKUPS.length];
+        for (int i = 0; i < LOOKUPS.length; i++) {
+            // Fresh instances, as they arrive from a parsed payload rather than interned literals.
+            types[i] = new String(LOOKUPS[i][0]);
+            roles[i] = new String(LOOKUPS[i][1]);
+        }
+    }
+
+    /** The lookup the oracle did before values.csv was compiled. */
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public double stringKeyedMap() {
+        double total = 0;
+        for (int i = 0; i < types.length; i++) {
+            ContributionRule rule = rulesByKey.get(types[i] + "_" + roles[i]);
+            if (rule == null && !"contributor".equals(roles[i])) {
+                rule = rulesByKey.get(types[i] + "_contributor");
+            }
+            if (rule != null) {
+                total += rule.baseValue;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public double ruleTable() {
+        double total = 0;
+        for (int i = 0; i < types.length; i++) {
+            int slot = table.resolve(table.typeId(types[i]), table.roleId(roles[i]));
+            if (slot >= 0) {
+                total += table.baseValue(slot);
+            }
+        }
+        return total;
+    }
+}
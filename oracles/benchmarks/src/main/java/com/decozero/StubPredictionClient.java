@@ -0,0 +1,59 @@
+package com.decozero;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Prediction client that answers every prompt with a recorded document, optionally after a fixed
+ * latency, and streams it in chunks the size of a model's incremental responses.
+ */
+final class StubPredictionClient implements PredictionClient {
+
+    private final String document;
+    private final int chunkChars;
+    private final long latencyNanos;
+    private final LongAdder calls = new LongAdder();
+
+    StubPredictionClient(String document, int chunkChars, long latency, TimeUnit unit) {
+        this.document = document;
+        this.chunkChars = chunkChars;
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    @Override
+    public String generate(String prompt, String modelId) {
+        calls.increment();
+        pause();
+        return document;
+    }
+
+    @Override
+    public String generateStreaming(String prompt, String modelId, Consumer<CharSequence> onChunk) {
+        calls.increment();
+        pause();
+        for (int start = 0; start < document.length(); start += chunkChars) {
+            onChunk.accept(document.subSequence(start, Math.min(document.length(), start + chunkChars)));
+        }
+        return document;
+    }
+
+    long callCount() {
+        return calls.sum();
+    }
+
+    private void pause() {
+        if (latencyNanos > 0) {
+            long deadline = System.nanoTime() + latencyNanos;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.decozero;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One webhook delivery through the value oracle, stage for stage as in
+ * {@link DeCoValueDistributionFunction#service}: redelivery check, signature, streaming parse,
+ * cached rule table, cached roles, scoring, the durable mint log append and the ledger record.
+ *
+ * The function's own dependencies are static and reach GitHub, so the same components are built
+ * here over in-memory sources: values.csv and collaborator permissions are served locally, and
+ * mints go to {@link FakeNearRpc}. The mint log and ledger are real files in a temporary directory,
+ * so the per-delivery fsync is part of the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueRequestBenchmark {
+
+    private static final String REPO = "deco-zero/sample-deco";
+    private static final String CONTRACT_ID = "sample-deco.testnet";
+
+    @Param({Fixtures.PUSH, Fixtures.PULL_REQUEST, Fixtures.ISSUES, Fixtures.ISSUE_COMMENT})
+    String event;
+
+    private byte[] body;
+    private String signatureHeader;
+    private final AtomicLong deliveries = new AtomicLong();
+
+    private Path directory;
+    private DeliveryDeduplicator deduplicator;
+    private WebhookSignature signature;
+    private RuleTableCache ruleTables;
+    private RoleResolver roles;
+    private ReactionScorer reactions;
+    private MintBatcher mintBatcher;
+    private ContributionLedger ledger;
+    private final ContributionClassifier classifier = KeywordClassifier.defaults();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Fixtures.quietLogging();
+        body = Fixtures.webhook(event);
+        signatureHeader = WebhookPayloadBenchmark.sign(WebhookPayloadBenchmark.SECRET, body);
+        directory = Files.createTempDirectory("deco-bench");
+
+        byte[] valuesCsv = Fixtures.bytes("values.csv");
+        Map<String, String> permissions = new HashMap<>();
+        permissions.put("alice", "admin");
+        permissions.put("bob", "write");
+        permissions.put("carol", "triage");
+
+        deduplicator = new DeliveryDeduplicator(3, TimeUnit.DAYS, 100_000, null);
+        signature = new WebhookSignature(WebhookPayloadBenchmark.SECRET);
+        ruleTables = new RuleTableCache(repo -> new RuleTableCache.VersionedCsv("bench", valuesCsv), 1, TimeUnit.HOURS, 256);
+        roles = new RoleResolver(repo -> permissions, () -> 256, 1, TimeUnit.HOURS);
+        reactions = new ReactionScorer(100_000);
+        mintBatcher = new MintBatcher(new FakeNearRpc(0, TimeUnit.MILLISECONDS, 0), CONTRACT_ID,
+                new MintLog(directory.resolve("mints.journal")), 18, 100, 1, TimeUnit.SECONDS);
+        mintBatcher.start();
+        ledger = new ContributionLedger(directory.resolve("contributions.ledger"));
+
+        // Measure the steady state: roles loaded and rules compiled.
+        roles.role(REPO, "alice");
+        while (roles.loadCount() == 0) {
+            Thread.sleep(1);
+        }
+        ruleTables.get(REPO, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mintBatcher.close();
+        ledger.close();
+        roles.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int handleDelivery() throws Exception {
+        String deliveryId = "bench-" + deliveries.incrementAndGet();
+        if (deduplicator.isDuplicate(deliveryId) || !signature.matches(signatureHeader, body) || !deduplicator.claim(deliveryId)) {
+            throw new IllegalStateException("Delivery " + deliveryId + " rejected");
+        }
+        WebhookPayload payload = WebhookPayloadReader.read(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+
+        String repoUrl;
+        String contributor;
+        String contributionType;
+        String subjectUrl;
+        switch (event) {
+            case Fixtures.PUSH:
+                repoUrl = payload.repositoryHtmlUrl;
+                contributor = payload.pusherName;
+                contributionType = PushBatchScorer.COMMIT_TYPE;
+                subjectUrl = null;
+                if (payload.touchesValuesCsv()) {
+                    ruleTables.invalidate(REPO);
+                }
+                break;
+            case Fixtures.PULL_REQUEST:
+                repoUrl = payload.pullRequestRepoHtmlUrl;
+                contributor = payload.pullRequestUserLogin;
+                contributionType = payload.pullRequestMerged ? "pull_request_merged" : "";
+                subjectUrl = payload.pullRequestHtmlUrl;
+                break;
+            case Fixtures.ISSUES:
+                repoUrl = payload.issueRepoHtmlUrl != null ? payload.issueRepoHtmlUrl : payload.repositoryHtmlUrl;
+                contributor = payload.issueUserLogin;
+                contributionType = orDefault(classifier.classify(ContributionClassifier.Subject.ISSUE, payload.issueTitle),
+                        ContributionClassifier.Subject.ISSUE.defaultType);
+                subjectUrl = payload.issueHtmlUrl;
+                break;
+            case Fixtures.ISSUE_COMMENT:
+                repoUrl = payload.issueRepoHtmlUrl != null ? payload.issueRepoHtmlUrl : payload.repositoryHtmlUrl;
+                contributor = payload.commentUserLogin;
+                contributionType = orDefault(classifier.classify(ContributionClassifier.Subject.COMMENT, payload.commentBody), "");
+                subjectUrl = payload.issueHtmlUrl;
+                break;
+            default:
+                throw new IllegalStateException("Unhandled event " + event);
+        }
+        String repoFullName = repoUrl.replace("https://github.com/", "");
+        RuleTable rules = ruleTables.get(repoFullName, null);
+
+        List<MintAward> awards;
+        if (Fixtures.PUSH.equals(event)) {
+            awards = PushBatchScorer.score(payload.commits, contributor, rules, login -> roles.role(repoFullName, login), reactions,
+                    CONTRACT_ID);
+        } else {
+            String role = roles.role(repoFullName, contributor);
+            int slot = rules.resolve(rules.typeId(contributionType), rules.roleId(role));
+            if (slot < 0) {
+                throw new IllegalStateException("No rule for " + contributionType);
+            }
+            reactions.track(CONTRACT_ID, subjectUrl, contributor, role, rules, slot);
+            awards = Collections.singletonList(new MintAward(contributor, role, rules.baseValue(slot), 1));
+        }
+
+        mintBatcher.submit(awards);
+        long now = System.currentTimeMillis();
+        for (MintAward award : awards) {
+            ledger.append(new ContributionLedger.Entry(now, deliveryId, award.contributor, contributionType,
+                    award.role, award.amount, award.contributions, rules.version()));
+        }
+        return awards.size();
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.decozero;
+
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a values.csv cache miss: parsing the file and compiling it into a {@link RuleTable}.
+ * {@code types=0} is the repository's own values.csv; larger values add synthetic rule rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValuesCsvBenchmark {
+
+    @Param({"0", "500"})
+    int types;
+
+    private String csv;
+    private Map<String, ContributionRule> parsed;
+
+    @Setup
+    public void setUp() throws IOException, CsvValidationException {
+        Fixtures.quietLogging();
+        csv = types == 0 ? Fixtures.text("values.csv") : Fixtures.syntheticValuesCsv(types);
+        parsed = ValuesCsv.parse(new StringReader(csv));
+    }
+
+    @Benchmark
+    public Map<String, ContributionRule> parse() throws IOException, CsvValidationException {
+        return ValuesCsv.parse(new StringReader(csv));
+    }
+
+    @Benchmark
+    public RuleTable compile() {
+        return RuleTable.compile(parsed.values(), "bench");
+    }
+
+    @Benchmark
+    public RuleTable parseAndCompile() throws IOException, CsvValidationException {
+        return RuleTable.compile(ValuesCsv.parse(new StringReader(csv)).values(), "bench");
+    }
+}
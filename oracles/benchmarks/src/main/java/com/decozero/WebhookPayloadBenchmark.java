@@ -0,0 +1,123 @@
+package com.decozero;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Webhook payload extraction per event type: the streaming {@link WebhookPayloadReader} against
+ * the String plus {@link JsonObject} tree the oracle built before, and the signature check that
+ * now precedes parsing. Run with {@code -prof gc} to compare allocation per delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookPayloadBenchmark {
+
+    static final String SECRET = "benchmark-webhook-secret";
+
+    @Param({Fixtures.PUSH, Fixtures.PULL_REQUEST, Fixtures.ISSUES, Fixtures.ISSUE_COMMENT})
+    String event;
+
+    private byte[] body;
+    private String signatureHeader;
+    private WebhookSignature signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixtures.quietLogging();
+        body = Fixtures.webhook(event);
+        signature = new WebhookSignature(SECRET);
+        signatureHeader = sign(SECRET, body);
+    }
+
+    @Benchmark
+    public WebhookPayload streamingReader() throws IOException {
+        return WebhookPayloadReader.read(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    /** The pre-streaming path: the body as a String, a full tree, then the same fields read from it. */
+    @Benchmark
+    public void gsonTree(Blackhole bh) {
+        JsonObject payload = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        switch (event) {
+            case Fixtures.PUSH:
+                bh.consume(payload.getAsJsonObject("repository").get("html_url").getAsString());
+                bh.consume(payload.getAsJsonObject("pusher").get("name").getAsString());
+                bh.consume(payload.get("ref").getAsString());
+                for (JsonElement element : payload.getAsJsonArray("commits")) {
+                    JsonObject commit = element.getAsJsonObject();
+                    bh.consume(commit.get("distinct").getAsBoolean());
+                    bh.consume(commit.getAsJsonObject("author").get("username").getAsString());
+                    for (String key : new String[] {"added", "modified", "removed"}) {
+                        for (JsonElement path : commit.getAsJsonArray(key)) {
+                            bh.consume("values.csv".equals(path.getAsString()));
+                        }
+                    }
+                }
+                break;
+            case Fixtures.PULL_REQUEST:
+                JsonObject pr = payload.getAsJsonObject("pull_request");
+                bh.consume(pr.getAsJsonObject("base").getAsJsonObject("repo").get("html_url").getAsString());
+                bh.consume(pr.getAsJsonObject("user").get("login").getAsString());
+                bh.consume(pr.get("html_url").getAsString());
+                bh.consume(pr.get("merged").getAsBoolean());
+                bh.consume(payload.get("action").getAsString());
+                break;
+            case Fixtures.ISSUES:
+            case Fixtures.ISSUE_COMMENT:
+                JsonObject issue = payload.getAsJsonObject("issue");
+                bh.consume(payload.getAsJsonObject("repository").get("html_url").getAsString());
+                bh.consume(issue.getAsJsonObject("user").get("login").getAsString());
+                bh.consume(issue.get("html_url").getAsString());
+                bh.consume(issue.get("title").getAsString());
+                bh.consume(payload.get("action").getAsString());
+                if (payload.has("comment")) {
+                    JsonObject comment = payload.getAsJsonObject("comment");
+                    bh.consume(comment.getAsJsonObject("user").get("login").getAsString());
+                    bh.consume(comment.get("body").getAsString());
+                }
+                break;
+            default:
+                throw new IllegalStateException("No extraction for " + event);
+        }
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return signature.matches(signatureHeader, body);
+    }
+
+    /** Returns the X-Hub-Signature-256 header GitHub would send for {@code body}. */
+    static String sign(String secret, byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        StringBuilder header = new StringBuilder("sha256=");
+        for (byte b : mac.doFinal(body)) {
+            header.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.decozero.github;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker in front of GitHub.
+ *
+ * After {@code failureThreshold} consecutive failures (server errors or no response at all) the
+ * circuit opens and calls are refused at once, instead of each one waiting for timeouts and
+ * retries while GitHub is down. After {@code openDuration} a single probe is let through: if it
+ * succeeds the circuit closes, otherwise it stays open for another period.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        /** Open period over, one probe in flight. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    // Guarded by this.
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Returns true if a call may be made now; every allowed call must report its success or failure,
+     * or be cancelled.
+     */
+    public synchronized boolean allow() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public synchronized void success() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void failure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            opened.increment();
+        }
+    }
+
+    /**
+     * Reports an allowed call that was not made, or whose outcome says nothing about GitHub, such as
+     * an interrupted one. A probe gives its turn to the next call.
+     */
+    public synchronized void cancel() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime() - openNanos;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /** Calls refused while the circuit was open. */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Times the circuit opened. */
+    public long openedCount() {
+        return opened.sum();
+    }
+}
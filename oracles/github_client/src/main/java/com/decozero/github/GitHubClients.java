@@ -0,0 +1,108 @@
+package com.decozero.github;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.github.GitHubAbuseLimitHandler;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.GitHubRateLimitHandler;
+import org.kohsuke.github.HttpException;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+
+/**
+ * Entry point of the shared GitHub client layer: the process-wide {@link ResilientGitHubConnector},
+ * configured from the environment, and GitHub clients built on it.
+ *
+ * <pre>
+ * GITHUB_HTTP_TIMEOUT_SECONDS         Timeout of one call (30)
+ * GITHUB_HTTP_REQUESTS_PER_SECOND     Sustained calls per credential (15, GitHub's 900 per minute)
+ * GITHUB_HTTP_BURST                   Calls per credential at once (50)
+ * GITHUB_HTTP_MAX_ATTEMPTS            Calls per request, retries included (4)
+ * GITHUB_HTTP_BACKOFF_BASE_MS         First retry backoff ceiling (200)
+ * GITHUB_HTTP_BACKOFF_MAX_MS          Largest retry backoff ceiling (5000)
+ * GITHUB_HTTP_MAX_RETRY_WAIT_SECONDS  Longest wait for GitHub's rate limit before failing (20)
+ * GITHUB_CIRCUIT_FAILURE_THRESHOLD    Consecutive failures opening the circuit (5)
+ * GITHUB_CIRCUIT_OPEN_SECONDS         How long the circuit stays open (30)
+ * </pre>
+ */
+public final class GitHubClients {
+
+    private static volatile ResilientGitHubConnector connector;
+
+    private GitHubClients() {
+    }
+
+    /** The connector shared by every GitHub client of the process. */
+    public static ResilientGitHubConnector connector() {
+        ResilientGitHubConnector shared = connector;
+        if (shared == null) {
+            synchronized (GitHubClients.class) {
+                if (connector == null) {
+                    connector = fromEnvironment();
+                }
+                shared = connector;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Returns a builder of GitHub clients using the shared connector.
+     *
+     * Rate limits are waited out by the connector, within its bounds; a limited response that still
+     * reaches github-api fails the call at once instead of blocking the thread until the window resets.
+     *
+     * @param apiUrl GitHub API endpoint, or null or empty for github.com.
+     */
+    public static GitHubBuilder builder(String apiUrl) {
+        return builder(apiUrl, connector());
+    }
+
+    /** Returns a builder of GitHub clients using the given connector rather than the shared one. */
+    public static GitHubBuilder builder(String apiUrl, ResilientGitHubConnector connector) {
+        GitHubBuilder builder = new GitHubBuilder()
+                .withConnector(connector)
+                .withRateLimitHandler(new GitHubRateLimitHandler() {
+                    @Override
+                    public void onError(GitHubConnectorResponse response) throws IOException {
+                        throw limited("rate limit", response);
+                    }
+                })
+                .withAbuseLimitHandler(new GitHubAbuseLimitHandler() {
+                    @Override
+                    public void onError(GitHubConnectorResponse response) throws IOException {
+                        throw limited("secondary rate limit", response);
+                    }
+                });
+        if (apiUrl != null && !apiUrl.isEmpty()) {
+            builder.withEndpoint(apiUrl);
+        }
+        return builder;
+    }
+
+    private static HttpException limited(String limit, GitHubConnectorResponse response) {
+        return new HttpException("GitHub " + limit + " exceeded", response.statusCode(), null,
+                response.request().url().toString());
+    }
+
+    private static ResilientGitHubConnector fromEnvironment() {
+        long timeoutSeconds = Long.parseLong(System.getenv().getOrDefault("GITHUB_HTTP_TIMEOUT_SECONDS", "30"));
+        HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(Math.min(timeoutSeconds, 10)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        CircuitBreaker breaker = new CircuitBreaker(
+                Integer.parseInt(System.getenv().getOrDefault("GITHUB_CIRCUIT_FAILURE_THRESHOLD", "5")),
+                Long.parseLong(System.getenv().getOrDefault("GITHUB_CIRCUIT_OPEN_SECONDS", "30")), TimeUnit.SECONDS);
+        return new ResilientGitHubConnector(http, Duration.ofSeconds(timeoutSeconds),
+                Double.parseDouble(System.getenv().getOrDefault("GITHUB_HTTP_REQUESTS_PER_SECOND", "15")),
+                Integer.parseInt(System.getenv().getOrDefault("GITHUB_HTTP_BURST", "50")),
+                breaker,
+                Integer.parseInt(System.getenv().getOrDefault("GITHUB_HTTP_MAX_ATTEMPTS", "4")),
+                Long.parseLong(System.getenv().getOrDefault("GITHUB_HTTP_BACKOFF_BASE_MS", "200")),
+                Long.parseLong(System.getenv().getOrDefault("GITHUB_HTTP_BACKOFF_MAX_MS", "5000")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(System.getenv().getOrDefault("GITHUB_HTTP_MAX_RETRY_WAIT_SECONDS", "20"))),
+                TimeUnit.MILLISECONDS);
+    }
+}
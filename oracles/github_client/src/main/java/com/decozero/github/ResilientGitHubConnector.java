@@ -0,0 +1,363 @@
+package com.decozero.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.kohsuke.github.connector.GitHubConnectorRequest;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+
+/**
+ * Connector for github-api that keeps GitHub's limits and survives its bad moments.
+ *
+ * Every request of the process goes through one {@link HttpClient}, which keeps its connections
+ * alive and reuses them. Around each request:
+ * <ul>
+ *   <li>Identical GETs in flight at the same time (same URL and headers, so the same credential) are
+ *       coalesced into one call whose response every caller gets.</li>
+ *   <li>A {@link TokenBucket} per credential paces the calls, following the X-RateLimit-Remaining and
+ *       X-RateLimit-Reset headers of the responses.</li>
+ *   <li>Throttled responses (429, or 403 with Retry-After or an exhausted window) are retried once
+ *       GitHub's requested wait is over, if that is within {@code maxRetryWait}; any method is retried,
+ *       as GitHub did not process the request.</li>
+ *   <li>Server errors and calls without a response are retried with full-jitter exponential backoff,
+ *       for idempotent methods only.</li>
+ *   <li>A {@link CircuitBreaker} refuses calls at once while GitHub keeps failing.</li>
+ * </ul>
+ * A response that is still throttled or failing after the last attempt is returned as it is, for
+ * github-api to raise its usual exception.
+ *
+ * {@link #send(HttpRequest)} offers the same handling to code calling the REST API directly.
+ */
+public final class ResilientGitHubConnector implements GitHubConnector {
+
+    private static final Logger logger = Logger.getLogger(ResilientGitHubConnector.class.getName());
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+    private static final Set<Integer> RETRIED_STATUSES = new HashSet<>(Arrays.asList(500, 502, 503, 504));
+    // Set by HttpClient itself, which refuses them.
+    private static final Set<String> RESTRICTED_HEADERS =
+            new HashSet<>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+    private static final int MAX_CREDENTIALS = 1024;
+
+    private final HttpClient http;
+    private final Duration requestTimeout;
+    private final double requestsPerSecond;
+    private final int burst;
+    private final CircuitBreaker breaker;
+    private final int maxAttempts;
+    private final long backoffBaseNanos;
+    private final long backoffMaxNanos;
+    private final long maxRetryWaitNanos;
+
+    private final ConcurrentHashMap<String, CompletableFuture<HttpResponse<byte[]>>> inFlight = new ConcurrentHashMap<>();
+    // Rate limits are per credential; least recently used buckets are dropped past MAX_CREDENTIALS.
+    private final Map<String, TokenBucket> buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > MAX_CREDENTIALS;
+        }
+    };
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * @param requestsPerSecond Sustained rate of calls per credential, before GitHub's headers lower it.
+     * @param burst             Calls per credential that may be made at once.
+     * @param maxAttempts       Calls made for one request, including the first.
+     * @param backoffBase       Backoff ceiling after the first failed call, doubled after each further one.
+     * @param backoffMax        Largest backoff ceiling.
+     * @param maxRetryWait      Longest wait for a rate limit or Retry-After before giving up on a request.
+     */
+    public ResilientGitHubConnector(HttpClient http, Duration requestTimeout, double requestsPerSecond, int burst,
+                                    CircuitBreaker breaker, int maxAttempts, long backoffBase, long backoffMax,
+                                    long maxRetryWait, TimeUnit unit) {
+        this.http = http;
+        this.requestTimeout = requestTimeout;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.breaker = breaker;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseNanos = unit.toNanos(backoffBase);
+        this.backoffMaxNanos = unit.toNanos(backoffMax);
+        this.maxRetryWaitNanos = unit.toNanos(maxRetryWait);
+    }
+
+    @Override
+    public GitHubConnectorResponse send(GitHubConnectorRequest connectorRequest) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(connectorRequest.url().toURI()).timeout(requestTimeout);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid GitHub URL " + connectorRequest.url(), e);
+        }
+        for (Map.Entry<String, List<String>> header : connectorRequest.allHeaders().entrySet()) {
+            if (header.getKey() != null && !RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+        if (connectorRequest.hasBody()) {
+            if (connectorRequest.header("Content-Type") == null && connectorRequest.contentType() != null) {
+                builder.header("Content-Type", connectorRequest.contentType());
+            }
+            try (InputStream in = connectorRequest.body()) {
+                body = HttpRequest.BodyPublishers.ofByteArray(in.readAllBytes());
+            }
+        }
+        HttpResponse<byte[]> response = send(builder.method(connectorRequest.method(), body).build());
+        return new Response(connectorRequest, response.statusCode(), response.headers().map(), response.body());
+    }
+
+    /**
+     * Sends a request to GitHub with the pacing, retries, coalescing and circuit breaker of this
+     * connector.
+     *
+     * @return The final response, which may still be an error or throttled response.
+     * @throws IOException If no response was received, or the circuit is open, or the credential's
+     *                     rate limit would not allow the request within {@code maxRetryWait}.
+     */
+    public HttpResponse<byte[]> send(HttpRequest request) throws IOException {
+        requests.increment();
+        if (!"GET".equals(request.method())) {
+            return execute(request);
+        }
+        String key = request.uri() + "\n" + request.headers().map();
+        CompletableFuture<HttpResponse<byte[]>> mine = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<byte[]>> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalesced.increment();
+            return await(request, leader);
+        }
+        try {
+            HttpResponse<byte[]> response = execute(request);
+            mine.complete(response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private HttpResponse<byte[]> execute(HttpRequest request) throws IOException {
+        TokenBucket bucket = bucket(request.headers().firstValue("Authorization").orElse(""));
+        boolean idempotent = IDEMPOTENT_METHODS.contains(request.method());
+        for (int attempt = 1; ; attempt++) {
+            // The circuit first, so that a refused call does not spend a rate-limit token.
+            if (!breaker.allow()) {
+                throw new IOException("GitHub circuit breaker open, not calling " + request.uri());
+            }
+            try {
+                if (!bucket.acquire(maxRetryWaitNanos, TimeUnit.NANOSECONDS)) {
+                    breaker.cancel();
+                    limited.increment();
+                    throw new IOException("GitHub rate limit leaves no request for " + request.uri() + " within "
+                            + TimeUnit.NANOSECONDS.toSeconds(maxRetryWaitNanos) + "s");
+                }
+            } catch (InterruptedException e) {
+                breaker.cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the GitHub rate limit", e);
+            }
+
+            calls.increment();
+            HttpResponse<byte[]> response = null;
+            boolean interrupted = false;
+            try {
+                response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            } catch (IOException e) {
+                if (!idempotent || attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.fine("Retrying " + request.method() + " " + request.uri() + " after " + e);
+            } catch (InterruptedException e) {
+                // The caller's own interrupt, not GitHub failing.
+                interrupted = true;
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while calling GitHub", e);
+            } finally {
+                // Whatever happened, so that a probe never leaves the circuit half-open.
+                if (interrupted) {
+                    breaker.cancel();
+                } else if (response == null || response.statusCode() >= 500) {
+                    breaker.failure();
+                } else {
+                    breaker.success();
+                }
+            }
+            if (response == null) {
+                backoff(attempt);
+                continue;
+            }
+
+            int status = response.statusCode();
+            observe(bucket, response);
+
+            long throttleNanos = throttleNanos(response);
+            if (throttleNanos >= 0) {
+                throttled.increment();
+                if (attempt >= maxAttempts || throttleNanos > maxRetryWaitNanos) {
+                    return response;
+                }
+                // The bucket holds the next attempt back for as long as GitHub asked.
+                bucket.pause(throttleNanos, TimeUnit.NANOSECONDS);
+                if (throttleNanos == 0) {
+                    backoff(attempt);
+                } else {
+                    retries.increment();
+                }
+                continue;
+            }
+            if (!RETRIED_STATUSES.contains(status) || !idempotent || attempt >= maxAttempts) {
+                return response;
+            }
+            logger.fine("Retrying " + request.method() + " " + request.uri() + " after HTTP " + status);
+            backoff(attempt);
+        }
+    }
+
+    // How long GitHub asks to wait before the next request, 0 if throttled without saying, -1 if not throttled.
+    private static long throttleNanos(HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        if (status != 429 && status != 403) {
+            return -1;
+        }
+        long retryAfter = header(response, "Retry-After");
+        if (retryAfter >= 0) {
+            return TimeUnit.SECONDS.toNanos(retryAfter);
+        }
+        if (header(response, "X-RateLimit-Remaining") == 0) {
+            long reset = header(response, "X-RateLimit-Reset");
+            return reset < 0 ? 0 : Math.max(0, TimeUnit.MILLISECONDS.toNanos(reset * 1000 - System.currentTimeMillis()));
+        }
+        // A 403 without either header is a permission error, not a rate limit.
+        return status == 429 ? 0 : -1;
+    }
+
+    private static void observe(TokenBucket bucket, HttpResponse<byte[]> response) {
+        long remaining = header(response, "X-RateLimit-Remaining");
+        long reset = header(response, "X-RateLimit-Reset");
+        if (remaining >= 0 && reset > 0) {
+            bucket.update(remaining, reset);
+        }
+    }
+
+    private static long header(HttpResponse<byte[]> response, String name) {
+        String value = response.headers().firstValue(name).orElse(null);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Sleeps a random time up to the attempt's backoff ceiling ("full jitter"), so retries of many
+    // callers failing together spread out instead of arriving together again.
+    private void backoff(int attempt) throws IOException {
+        retries.increment();
+        long ceiling = Math.min(backoffMaxNanos, backoffBaseNanos << Math.min(attempt - 1, 30));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while backing off from GitHub", e);
+        }
+    }
+
+    private TokenBucket bucket(String credential) {
+        synchronized (buckets) {
+            return buckets.computeIfAbsent(credential, c -> new TokenBucket(requestsPerSecond, burst));
+        }
+    }
+
+    private static HttpResponse<byte[]> await(HttpRequest request, CompletableFuture<HttpResponse<byte[]>> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + request.uri(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /** Requests made, whether coalesced or not. */
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /** Calls actually sent to GitHub, retries included. */
+    public long callCount() {
+        return calls.sum();
+    }
+
+    /** GETs answered by an identical call already in flight. */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long retryCount() {
+        return retries.sum();
+    }
+
+    /** Responses that were rate limited by GitHub. */
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    /** Requests refused because the credential's rate limit left none within the longest wait. */
+    public long limitedCount() {
+        return limited.sum();
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return breaker;
+    }
+
+    // A buffered response; body() is decompressed by the superclass if GitHub gzipped it.
+    private static final class Response extends GitHubConnectorResponse.ByteArrayResponse {
+        private final byte[] body;
+
+        Response(GitHubConnectorRequest request, int statusCode, Map<String, List<String>> headers, byte[] body) {
+            super(request, statusCode, headers);
+            this.body = body;
+        }
+
+        @Override
+        protected InputStream rawBodyStream() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.decozero.github;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the requests made with one GitHub credential.
+ *
+ * The bucket refills at a configured rate up to a burst size, and also follows what GitHub reports
+ * in its rate limit headers: while a window has {@code remaining} requests left, the bucket holds at
+ * most that many tokens and refills no faster than spreads them evenly until the window resets, so a
+ * credential slows down gradually instead of running dry and then failing for the rest of the hour.
+ * When GitHub asks for a pause (Retry-After, or an exhausted window), no token is handed out until it
+ * is over.
+ */
+public final class TokenBucket {
+
+    private final double burst;
+    private final double configuredRefillPerNano;
+
+    // Guarded by this.
+    private double tokens;
+    private double refillPerNano;
+    private long lastRefillNanos;
+    // Requests left in GitHub's current window, counted down locally between responses; -1 if unknown.
+    private long serverRemaining = -1;
+    private long serverResetNanos;
+    private long pausedUntilNanos;
+
+    /**
+     * @param requestsPerSecond Sustained request rate.
+     * @param burst             Requests that may be made at once after a quiet period.
+     */
+    public TokenBucket(double requestsPerSecond, int burst) {
+        this.burst = Math.max(1, burst);
+        this.configuredRefillPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.refillPerNano = configuredRefillPerNano;
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting for one if necessary.
+     *
+     * @return False, without taking a token, if none would be available within {@code maxWait}.
+     */
+    public boolean acquire(long maxWait, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(maxWait);
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                waitNanos = waitNanos(now);
+                if (waitNanos == 0) {
+                    tokens -= 1;
+                    if (serverRemaining > 0) {
+                        serverRemaining--;
+                    }
+                    return true;
+                }
+                if (now + waitNanos - deadline > 0) {
+                    return false;
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Time until a token can be taken, 0 if one can be taken now. Guarded by this.
+    private long waitNanos(long now) {
+        if (pausedUntilNanos - now > 0) {
+            return pausedUntilNanos - now;
+        }
+        if (serverRemaining >= 0 && serverResetNanos - now <= 0) {
+            // The window reset: back to the configured pace until GitHub reports the new one.
+            serverRemaining = -1;
+            refillPerNano = configuredRefillPerNano;
+        }
+        if (serverRemaining == 0) {
+            return Math.max(1, serverResetNanos - now);
+        }
+        tokens = Math.min(ceiling(), tokens + (now - lastRefillNanos) * refillPerNano);
+        lastRefillNanos = now;
+        if (tokens >= 1) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / refillPerNano));
+    }
+
+    private double ceiling() {
+        return serverRemaining < 0 ? burst : Math.min(burst, serverRemaining);
+    }
+
+    /**
+     * Applies GitHub's X-RateLimit-Remaining and X-RateLimit-Reset of a response.
+     *
+     * @param resetEpochSeconds When the window resets, in seconds since the epoch.
+     */
+    public synchronized void update(long remaining, long resetEpochSeconds) {
+        long now = System.nanoTime();
+        long untilReset = TimeUnit.SECONDS.toNanos(resetEpochSeconds) - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        if (untilReset <= 0 || remaining < 0) {
+            return;
+        }
+        serverRemaining = remaining;
+        serverResetNanos = now + untilReset;
+        refillPerNano = Math.min(configuredRefillPerNano, Math.max(remaining, 1) / (double) untilReset);
+        tokens = Math.min(tokens, ceiling());
+    }
+
+    /** Hands out no token for the given time, as asked by a Retry-After header. */
+    public synchronized void pause(long duration, TimeUnit unit) {
+        long until = System.nanoTime() + unit.toNanos(duration);
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+    }
+
+    /** Requests GitHub last reported as left in its window, counted down since; -1 if unknown. */
+    public synchronized long serverRemaining() {
+        return serverRemaining;
+    }
+}
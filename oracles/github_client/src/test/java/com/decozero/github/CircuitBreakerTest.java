@@ -0,0 +1,88 @@
+package com.decozero.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 200;
+    private static final int CONCURRENT_CALLERS = 8;
+
+    @Test
+    public void halfOpenCircuitAllowsASingleProbe() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        assertFalse(breaker.allow());
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+            Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (breaker.allow()) {
+                    allowed.incrementAndGet();
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(1, allowed.get());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allow());
+        Thread.sleep(OPEN_MILLIS + 50);
+        assertTrue(breaker.allow());
+        breaker.success();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.allow() && breaker.allow());
+    }
+
+    @Test
+    public void cancelledProbeLetsTheNextCallProbe() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_MILLIS + 50);
+        assertTrue(breaker.allow());
+        assertFalse(breaker.allow());
+
+        breaker.cancel();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.allow());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    public void cancelLeavesAClosedCircuitClosed() {
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(breaker.allow());
+        breaker.cancel();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+        breaker.failure();
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1, breaker.openedCount());
+        return breaker;
+    }
+}
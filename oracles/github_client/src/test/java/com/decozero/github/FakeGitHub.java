@@ -0,0 +1,265 @@
+package com.decozero.github;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the parts of the GitHub REST API the client layer and the Git Data API writers
+ * use, for tests. Shared with the oracles' tests through this module's test jar.
+ *
+ * Every repository exists. Other GETs under /repos are answered with a small JSON object, and Git
+ * Data API writes (blobs, trees, commits, ref updates) are accepted and answered with made-up SHAs.
+ * Each response can be delayed to simulate the API's latency, and faults can be injected: secondary
+ * rate limits ({@link #throttle}), server errors ({@link #fail}), failed blob uploads
+ * ({@link #failBlobUploads}) and a branch that moves under a commit ({@link #moveBranch}).
+ */
+public final class FakeGitHub implements AutoCloseable {
+
+    private static final String HEAD_SHA = "5d0c6bd5e2a6c1f0b1d4e8a9f7c3b2a1d0e9f8c7";
+    private static final String BASE_TREE_SHA = "9a8b7c6d5e4f3a2b1c0d9e8f7a6b5c4d3e2f1a0b";
+    private static final String SIGNATURE =
+            "{\"name\": \"DeCo Dev\", \"email\": \"dev@deco.example\", \"date\": \"2024-01-01T00:00:00Z\"}";
+    private static final Pattern COMMIT_PARENT = Pattern.compile("\"parents\"\\s*:\\s*\\[\\s*\"([0-9a-f]+)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blobsCreated = new LongAdder();
+    private final LongAdder treesCreated = new LongAdder();
+    private final LongAdder commitsCreated = new LongAdder();
+    private final LongAdder refUpdates = new LongAdder();
+    private final LongAdder refConflicts = new LongAdder();
+
+    // Injected faults.
+    private volatile double throttleShare;
+    private volatile long retryAfterSeconds;
+    private volatile double failureShare;
+    private volatile long throttledUntilMillis;
+    private final AtomicInteger blobFailuresLeft = new AtomicInteger();
+    private final AtomicInteger branchMovesLeft = new AtomicInteger();
+    private volatile String headSha = HEAD_SHA;
+    private volatile String lastCommitParent;
+
+    public FakeGitHub(long latency, TimeUnit unit) throws IOException {
+        this.latencyMillis = unit.toMillis(latency);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newFixedThreadPool(8, r -> {
+            Thread thread = new Thread(r, "fake-github");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** Base URL of the API. */
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Trips a secondary rate limit on a share of requests: like GitHub, that request and every
+     * other one until Retry-After has passed are answered with 403 and the seconds left.
+     */
+    public void throttle(double share, long retryAfter, TimeUnit unit) {
+        this.retryAfterSeconds = Math.max(0, unit.toSeconds(retryAfter));
+        this.throttleShare = share;
+    }
+
+    /** Answers a share of requests with 502 Bad Gateway; 1 for an outage. */
+    public void fail(double share) {
+        this.failureShare = share;
+    }
+
+    /** Answers the next {@code count} blob uploads with 502 Bad Gateway. */
+    public void failBlobUploads(int count) {
+        blobFailuresLeft.set(count);
+    }
+
+    /**
+     * Moves the branch to a new head before each of the next {@code count} ref updates, which are
+     * then refused with 422 as not a fast-forward, as GitHub does when another writer got there first.
+     */
+    public void moveBranch(int count) {
+        branchMovesLeft.set(count);
+    }
+
+    /** The head every branch points at, which only {@link #moveBranch} changes. */
+    public String headSha() {
+        return headSha;
+    }
+
+    /** The parent of the last commit created, or null if none was. */
+    public String lastCommitParent() {
+        return lastCommitParent;
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /** Responses refused by the secondary rate limit. */
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public long blobsCreatedCount() {
+        return blobsCreated.sum();
+    }
+
+    public long treesCreatedCount() {
+        return treesCreated.sum();
+    }
+
+    public long commitsCreatedCount() {
+        return commitsCreated.sum();
+    }
+
+    /** Branch updates, one per commit written. */
+    public long refUpdateCount() {
+        return refUpdates.sum();
+    }
+
+    /** Ref updates refused as not a fast-forward. */
+    public long refConflictCount() {
+        return refConflicts.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        // Read the whole request so the connection can be reused.
+        byte[] requestBody = exchange.getRequestBody().readAllBytes();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failureShare > 0 && ThreadLocalRandom.current().nextDouble() < failureShare) {
+            failed.increment();
+            respond(exchange, 502, "{\"message\": \"Server Error\"}");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long throttledUntil = throttledUntilMillis;
+        if (throttledUntil <= now && throttleShare > 0 && ThreadLocalRandom.current().nextDouble() < throttleShare) {
+            throttledUntil = now + TimeUnit.SECONDS.toMillis(retryAfterSeconds);
+            throttledUntilMillis = throttledUntil;
+        }
+        if (throttledUntil > now) {
+            throttled.increment();
+            exchange.getResponseHeaders().set("Retry-After", Long.toString((throttledUntil - now + 999) / 1000));
+            respond(exchange, 403, "{\"message\": \"You have exceeded a secondary rate limit.\"}");
+            return;
+        }
+        // /repos/{owner}/{name}[/...]
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (path.length < 4 || !"repos".equals(path[1])) {
+            respond(exchange, 404, "{\"message\": \"Not Found\"}");
+            return;
+        }
+        String owner = path[2];
+        String name = path[3];
+        String base = url() + "/repos/" + owner + "/" + name;
+        if (path.length == 4) {
+            respond(exchange, 200, "{\"id\": 1, \"name\": \"" + name + "\", \"full_name\": \"" + owner + "/" + name + "\","
+                    + " \"url\": \"" + base + "\", \"html_url\": \"https://github.com/" + owner + "/" + name + "\","
+                    + " \"owner\": {\"login\": \"" + owner + "\", \"id\": 1, \"type\": \"Organization\"},"
+                    + " \"default_branch\": \"main\", \"private\": false}");
+        } else if (path.length == 6 && "commits".equals(path[4])) {
+            respond(exchange, 200, "{\"sha\": \"" + path[5] + "\", \"url\": \"" + base + "/commits/" + path[5] + "\","
+                    + " \"commit\": {\"message\": \"Initial commit\", \"tree\": {\"sha\": \"" + BASE_TREE_SHA + "\"},"
+                    + " \"author\": " + SIGNATURE + ", \"committer\": " + SIGNATURE + "},"
+                    + " \"parents\": [], \"files\": []}");
+        } else if (path.length >= 6 && "git".equals(path[4])) {
+            gitData(exchange, path, base, new String(requestBody, StandardCharsets.UTF_8));
+        } else if ("GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 200, "{\"path\": \"" + exchange.getRequestURI().getPath() + "\"}");
+        } else {
+            respond(exchange, 404, "{\"message\": \"Not Found\"}");
+        }
+    }
+
+    // /repos/{owner}/{name}/git/...: the branch points at the same head unless moved, so every other commit is
+    // a fast-forward.
+    private void gitData(HttpExchange exchange, String[] path, String base, String requestBody) throws IOException {
+        String kind = path[5];
+        boolean post = "POST".equals(exchange.getRequestMethod());
+        if (post && path.length == 6 && "blobs".equals(kind) && blobFailuresLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            failed.increment();
+            respond(exchange, 502, "{\"message\": \"Server Error\"}");
+        } else if (post && path.length == 6 && ("blobs".equals(kind) || "trees".equals(kind))) {
+            ("blobs".equals(kind) ? blobsCreated : treesCreated).increment();
+            String sha = randomSha();
+            respond(exchange, 201, "{\"sha\": \"" + sha + "\", \"url\": \"" + base + "/git/" + kind + "/" + sha + "\","
+                    + " \"tree\": [], \"truncated\": false}");
+        } else if (post && path.length == 6 && "commits".equals(kind)) {
+            commitsCreated.increment();
+            Matcher parent = COMMIT_PARENT.matcher(requestBody);
+            String parentSha = parent.find() ? parent.group(1) : headSha;
+            lastCommitParent = parentSha;
+            String sha = randomSha();
+            respond(exchange, 201, "{\"sha\": \"" + sha + "\", \"url\": \"" + base + "/git/commits/" + sha + "\","
+                    + " \"message\": \"\", \"tree\": {\"sha\": \"" + BASE_TREE_SHA + "\"},"
+                    + " \"parents\": [{\"sha\": \"" + parentSha + "\"}], \"author\": " + SIGNATURE + ", \"committer\": " + SIGNATURE + "}");
+        } else if ("refs".equals(kind) && path.length == 8) {
+            String ref = "refs/" + path[6] + "/" + path[7];
+            String sha = headSha;
+            if ("PATCH".equals(exchange.getRequestMethod())) {
+                if (branchMovesLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    refConflicts.increment();
+                    headSha = randomSha();
+                    respond(exchange, 422, "{\"message\": \"Update is not a fast forward\"}");
+                    return;
+                }
+                refUpdates.increment();
+                sha = randomSha();
+            }
+            respond(exchange, 200, "{\"ref\": \"" + ref + "\", \"url\": \"" + base + "/git/" + ref + "\","
+                    + " \"object\": {\"sha\": \"" + sha + "\", \"type\": \"commit\", \"url\": \"" + base + "/git/commits/" + sha + "\"}}");
+        } else {
+            respond(exchange, 404, "{\"message\": \"Not Found\"}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String randomSha() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return String.format("%016x%016x%08x", random.nextLong(), random.nextLong(), random.nextInt());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
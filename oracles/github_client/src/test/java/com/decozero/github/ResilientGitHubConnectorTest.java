@@ -0,0 +1,199 @@
+package com.decozero.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResilientGitHubConnectorTest {
+
+    private static final long OPEN_MILLIS = 200;
+    // Long enough for concurrent requests to overlap at the fake.
+    private static final long GITHUB_LATENCY_MILLIS = 200;
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    // Not the common pool, which may run one task at a time on a small machine.
+    private final ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+
+    @After
+    public void stopCallers() {
+        callers.shutdownNow();
+    }
+
+    // --- Circuit breaker ---
+
+    @Test
+    public void halfOpenCircuitSendsASingleProbeToGitHub() throws Exception {
+        try (FakeGitHub github = new FakeGitHub(GITHUB_LATENCY_MILLIS, TimeUnit.MILLISECONDS)) {
+            ResilientGitHubConnector connector = connector(2, 1, 5_000);
+            openCircuit(github, connector);
+
+            long before = github.requestCount();
+            List<CompletableFuture<Integer>> requests = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                // Distinct URLs, so that coalescing does not hide extra calls.
+                requests.add(sendAsync(connector, get(github, "/repos/o/probe" + i, "token a"), null));
+            }
+            int succeeded = 0;
+            for (CompletableFuture<Integer> request : requests) {
+                succeeded += request.get() == 200 ? 1 : 0;
+            }
+            assertEquals(1, github.requestCount() - before);
+            assertEquals(1, succeeded);
+            assertEquals(CircuitBreaker.State.CLOSED, connector.circuitBreaker().state());
+        }
+    }
+
+    @Test
+    public void interruptedProbeDoesNotLeaveTheCircuitHalfOpen() throws Exception {
+        try (FakeGitHub github = new FakeGitHub(GITHUB_LATENCY_MILLIS, TimeUnit.MILLISECONDS)) {
+            ResilientGitHubConnector connector = connector(2, 1, 5_000);
+            openCircuit(github, connector);
+
+            Thread prober = Thread.currentThread();
+            CompletableFuture<?> interrupt = CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(GITHUB_LATENCY_MILLIS / 2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                prober.interrupt();
+            }, callers);
+            try {
+                connector.send(get(github, "/repos/o/probe", "token a"));
+                fail("interrupted probe returned a response");
+            } catch (IOException e) {
+                assertTrue(Thread.interrupted());
+            }
+            interrupt.get();
+            assertEquals(CircuitBreaker.State.OPEN, connector.circuitBreaker().state());
+
+            // The next call probes at once, without waiting for another open period.
+            assertEquals(200, connector.send(get(github, "/repos/o/probe", "token a")).statusCode());
+            assertEquals(CircuitBreaker.State.CLOSED, connector.circuitBreaker().state());
+        }
+    }
+
+    // --- Retry-After ---
+
+    @Test
+    public void throttledRequestIsRetriedAfterRetryAfter() throws Exception {
+        try (FakeGitHub github = new FakeGitHub(0, TimeUnit.MILLISECONDS)) {
+            ResilientGitHubConnector connector = connector(5, 4, 5_000);
+            github.throttle(1, 1, TimeUnit.SECONDS);
+            long start = System.nanoTime();
+            CompletableFuture<Integer> response = sendAsync(connector, get(github, "/repos/o/r", "token a"), null);
+            // Only the first request trips the limit; the retry must still wait for it to pass.
+            while (github.throttledCount() == 0 && !response.isDone()) {
+                Thread.sleep(1);
+            }
+            github.throttle(0, 0, TimeUnit.SECONDS);
+            int status = response.get();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(200, status);
+            assertEquals(1, github.throttledCount());
+            assertEquals(1, connector.throttledCount());
+            assertEquals(2, github.requestCount());
+            assertTrue("retried after " + elapsedMillis + " ms", elapsedMillis >= 900);
+        }
+    }
+
+    @Test
+    public void retryAfterBeyondTheLongestWaitIsNotWaitedOut() throws Exception {
+        try (FakeGitHub github = new FakeGitHub(0, TimeUnit.MILLISECONDS)) {
+            ResilientGitHubConnector connector = connector(5, 4, 2_000);
+            github.throttle(1, 30, TimeUnit.SECONDS);
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = connector.send(get(github, "/repos/o/r", "token a"));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(403, response.statusCode());
+            assertEquals("30", response.headers().firstValue("Retry-After").orElse(null));
+            assertEquals(1, github.requestCount());
+            assertTrue("gave up after " + elapsedMillis + " ms", elapsedMillis < 1_000);
+        }
+    }
+
+    // --- Coalescing ---
+
+    @Test
+    public void identicalGetsInFlightAreCoalesced() throws Exception {
+        coalescing("token a", "token a", 1);
+    }
+
+    @Test
+    public void getsWithOtherHeadersAreNotCoalesced() throws Exception {
+        coalescing("token a", "token b", 2);
+    }
+
+    private void coalescing(String firstAuthorization, String secondAuthorization, long expectedCalls) throws Exception {
+        try (FakeGitHub github = new FakeGitHub(GITHUB_LATENCY_MILLIS, TimeUnit.MILLISECONDS)) {
+            ResilientGitHubConnector connector = connector(5, 1, 5_000);
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<Integer>> requests = new ArrayList<>();
+            for (String authorization : new String[] {firstAuthorization, secondAuthorization}) {
+                requests.add(sendAsync(connector, get(github, "/repos/o/r/contents/values.csv", authorization), start));
+            }
+            start.countDown();
+            for (CompletableFuture<Integer> request : requests) {
+                assertEquals(200, (int) request.get());
+            }
+            assertEquals(expectedCalls, github.requestCount());
+            assertEquals(2 - expectedCalls, connector.coalescedCount());
+        }
+    }
+
+    // --- Helpers ---
+
+    // Fails enough calls to open the circuit, then lets its open period pass with GitHub back up.
+    private static void openCircuit(FakeGitHub github, ResilientGitHubConnector connector) throws Exception {
+        github.fail(1);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(502, connector.send(get(github, "/repos/o/r" + i, "token a")).statusCode());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, connector.circuitBreaker().state());
+        github.fail(0);
+        Thread.sleep(OPEN_MILLIS + 50);
+    }
+
+    // The status of the request sent on one of the callers, -1 if it failed; after start, if given.
+    private CompletableFuture<Integer> sendAsync(ResilientGitHubConnector connector, HttpRequest request, CountDownLatch start) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (start != null) {
+                    start.await();
+                }
+                return connector.send(request).statusCode();
+            } catch (IOException | InterruptedException e) {
+                return -1;
+            }
+        }, callers);
+    }
+
+    private static ResilientGitHubConnector connector(int failureThreshold, int maxAttempts, long maxRetryWaitMillis) {
+        return new ResilientGitHubConnector(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build(),
+                Duration.ofSeconds(10), 1000, 100, new CircuitBreaker(failureThreshold, OPEN_MILLIS, TimeUnit.MILLISECONDS),
+                maxAttempts, 10, 100, maxRetryWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static HttpRequest get(FakeGitHub github, String path, String authorization) {
+        return HttpRequest.newBuilder(URI.create(github.url() + path)).GET()
+                .header("Authorization", authorization)
+                .header("Accept", "application/vnd.github+json")
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Locally cached copy of the DeCo contract's active member set ({@code is_active_member}).
+ *
+ * The whole set is loaded page by page with {@code get_active_members(from_index, limit)} view calls
+ * and kept as an immutable hash set, so membership checks are a lock-free lookup. After the TTL the
+ * next check reloads the set; if that fails, the previous set keeps being used. Members added or
+ * removed while the pages are read may be missed until the next reload.
+ */
+class ActiveMembers {
+
+    private static final Logger logger = Logger.getLogger(ActiveMembers.class.getName());
+
+    /** Reads the active member set of a DeCo contract, a page at a time. */
+    interface Source {
+        /**
+         * Returns up to {@code limit} members starting at {@code fromIndex}; fewer than {@code limit}
+         * only on the last page.
+         */
+        List<String> activeMembers(String contractId, long fromIndex, int limit) throws IOException;
+    }
+
+    // The contract's largest page.
+    static final int PAGE_SIZE = 500;
+
+    private final Source source;
+    private final String contractId;
+    private final long ttlNanos;
+    private volatile Set<String> members = Collections.emptySet();
+    private volatile long loadedAtNanos;
+    private volatile boolean loaded;
+
+    ActiveMembers(Source source, String contractId, long ttl, TimeUnit unit) {
+        this.source = source;
+        this.contractId = contractId;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    boolean isMember(String accountId) {
+        if (!loaded || System.nanoTime() - loadedAtNanos >= ttlNanos) {
+            reload();
+        }
+        return members.contains(accountId);
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    private synchronized void reload() {
+        long now = System.nanoTime();
+        if (loaded && now - loadedAtNanos < ttlNanos) {
+            return; // Reloaded by another thread meanwhile.
+        }
+        try {
+            Set<String> loadedMembers = new HashSet<>();
+            List<String> page;
+            do {
+                page = source.activeMembers(contractId, loadedMembers.size(), PAGE_SIZE);
+                loadedMembers.addAll(page);
+            } while (page.size() == PAGE_SIZE);
+            members = Collections.unmodifiableSet(loadedMembers);
+            logger.info("Loaded " + members.size() + " active member(s) of " + contractId);
+        } catch (IOException e) {
+            logger.warning("Could not load active members of " + contractId + ", keeping previous set: " + e.getMessage());
+        }
+        // Also on failure, so that an unreachable RPC is retried once per TTL rather than per check.
+        loadedAtNanos = now;
+        loaded = true;
+    }
+}
@@ -0,0 +1,339 @@
+package com.decozero;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Offline backfill: scores a repository's existing history against values.csv and writes an
+ * aggregated per-contributor ledger.
+ *
+ * History is read as a stream, either commits from {@code git log} of a local clone or events from
+ * a JSONL export with one {"type": ..., "author": ...} object per line, where type is a values.csv
+ * contribution type (e.g. "pull_request_merged") and author a GitHub login. Mints go to logins, so a
+ * commit is credited by its author email (after the clone's .mailmap): a GitHub noreply address
+ * carries the login, and other addresses are looked up in the optional logins file of "email,login"
+ * lines. Commits whose email maps to no login are skipped and counted, never credited to the author's
+ * display name. Lines are cut into fixed-size batches and scored
+ * on a fork/join pool; only a bounded number of batches is in flight, so memory stays proportional
+ * to the number of contributors rather than the length of the history.
+ *
+ * <pre>
+ * java -cp deco-value-distribution-oracle-1.0.0.jar com.decozero.Backfill \
+ *     --values values.csv (--git &lt;clone&gt; [--logins logins.csv] | --events &lt;events.jsonl&gt;) \
+ *     --out ledger.csv [--roles roles.csv] [--parallelism N]
+ * </pre>
+ *
+ * The optional roles file has "login,permission" lines (admin, write, read, ...) mapped as by
+ * {@link RoleResolver}; without it every author gets the fallback contributor role.
+ */
+public final class Backfill {
+
+    private static final Logger logger = Logger.getLogger(Backfill.class.getName());
+
+    private static final int BATCH_LINES = 8192;
+    // Lines scored sequentially by one fork/join leaf.
+    private static final int LEAF_LINES = 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // Author email with the .mailmap applied; the display name is not a login and is not read.
+    private static final String GIT_LOG_FORMAT = "--format=%H%x09%aE";
+    private static final String NOREPLY_DOMAIN = "@users.noreply.github.com";
+
+    /** Aggregated score of one contributor. */
+    static final class Totals {
+        final String role;
+        double amount;
+        long contributions;
+
+        Totals(String role) {
+            this.role = role;
+        }
+
+        void add(Totals other) {
+            amount += other.amount;
+            contributions += other.contributions;
+        }
+    }
+
+    /** Totals of one scored range of lines. */
+    static final class Partial {
+        final Map<String, Totals> byAuthor = new HashMap<>();
+        long skipped;
+        // Commits among the skipped whose author email maps to no login.
+        long unmapped;
+
+        Partial merge(Partial other) {
+            other.byAuthor.forEach((author, totals) -> byAuthor.merge(author, totals, (a, b) -> {
+                a.add(b);
+                return a;
+            }));
+            skipped += other.skipped;
+            unmapped += other.unmapped;
+            return this;
+        }
+    }
+
+    private final RuleTable rules;
+    private final Map<String, String> roles;
+    // Lower-cased author email to login, for commits.
+    private final Map<String, String> logins;
+    private final boolean gitLog;
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+
+    private final Map<String, Totals> ledger = new HashMap<>();
+    private long events;
+    private long skipped;
+    private long unmapped;
+
+    Backfill(RuleTable rules, Map<String, String> roles, Map<String, String> logins, boolean gitLog, int parallelism) {
+        this.rules = rules;
+        this.roles = roles;
+        this.logins = logins;
+        this.gitLog = gitLog;
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxInFlight = parallelism * 2;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        String values = options.get("--values");
+        String out = options.get("--out");
+        if (values == null || out == null || options.containsKey("--git") == options.containsKey("--events")) {
+            System.err.println("usage: Backfill --values values.csv (--git <clone> [--logins logins.csv] | --events <events.jsonl>)"
+                    + " --out ledger.csv [--roles roles.csv] [--parallelism N]");
+            System.exit(2);
+        }
+
+        RuleTable rules;
+        try (Reader reader = Files.newBufferedReader(Paths.get(values), StandardCharsets.UTF_8)) {
+            rules = RuleTable.compile(ValuesCsv.parse(reader).values());
+        }
+        Map<String, String> roles = options.containsKey("--roles")
+                ? readRoles(Paths.get(options.get("--roles"))) : Collections.emptyMap();
+        Map<String, String> logins = options.containsKey("--logins")
+                ? readLogins(Paths.get(options.get("--logins"))) : Collections.emptyMap();
+        int parallelism = Integer.parseInt(options.getOrDefault("--parallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        Backfill backfill = new Backfill(rules, roles, logins, options.containsKey("--git"), parallelism);
+        long start = System.nanoTime();
+        if (options.containsKey("--git")) {
+            Process git = new ProcessBuilder("git", "-C", options.get("--git"), "log", "--no-merges", GIT_LOG_FORMAT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(git.getInputStream(), StandardCharsets.UTF_8))) {
+                backfill.run(reader);
+            }
+            if (git.waitFor() != 0) {
+                throw new IOException("git log exited with " + git.exitValue());
+            }
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(options.get("--events")), StandardCharsets.UTF_8)) {
+                backfill.run(reader);
+            }
+        }
+        backfill.writeLedger(Paths.get(out));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("Backfilled %d event(s) (%d skipped) for %d contributor(s) in %.1f s, %.0f events/s.",
+                backfill.events, backfill.skipped, backfill.ledger.size(), seconds, backfill.events / seconds));
+        if (backfill.unmapped > 0) {
+            logger.warning(backfill.unmapped + " commit(s) were skipped because their author email maps to no GitHub login;"
+                    + " list those emails in --logins to credit them.");
+        }
+    }
+
+    /** Scores every line of the reader into the ledger. */
+    void run(BufferedReader reader) throws IOException {
+        Deque<ForkJoinTask<Partial>> inFlight = new ArrayDeque<>();
+        long started = System.nanoTime();
+        long lastProgress = started;
+        long read = 0;
+        List<String> batch = new ArrayList<>(BATCH_LINES);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            batch.add(line);
+            read++;
+            if (batch.size() == BATCH_LINES) {
+                if (inFlight.size() == maxInFlight) {
+                    merge(inFlight.removeFirst().join());
+                }
+                inFlight.addLast(pool.submit(new ScoreTask(batch, 0, batch.size())));
+                batch = new ArrayList<>(BATCH_LINES);
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    logger.info(String.format("Read %d line(s), %.0f lines/s.", read, read / ((now - started) / 1e9)));
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            inFlight.addLast(pool.submit(new ScoreTask(batch, 0, batch.size())));
+        }
+        while (!inFlight.isEmpty()) {
+            merge(inFlight.removeFirst().join());
+        }
+        pool.shutdown();
+    }
+
+    private void merge(Partial partial) {
+        partial.byAuthor.forEach((author, totals) -> {
+            events += totals.contributions;
+            ledger.computeIfAbsent(author, k -> new Totals(totals.role)).add(totals);
+        });
+        skipped += partial.skipped;
+        unmapped += partial.unmapped;
+    }
+
+    /** Writes "contributor,role,amount,contributions" rows, largest amount first. */
+    void writeLedger(Path path) throws IOException {
+        List<Map.Entry<String, Totals>> rows = new ArrayList<>(ledger.entrySet());
+        rows.sort((a, b) -> Double.compare(b.getValue().amount, a.getValue().amount));
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("contributor,role,amount,contributions");
+            out.newLine();
+            for (Map.Entry<String, Totals> row : rows) {
+                Totals totals = row.getValue();
+                out.write(csvField(row.getKey()) + "," + totals.role + "," + totals.amount + "," + totals.contributions);
+                out.newLine();
+            }
+        }
+    }
+
+    /** Scores a range of lines, splitting it until it is small enough to score in one go. */
+    private final class ScoreTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final int from;
+        private final int to;
+
+        ScoreTask(List<String> lines, int from, int to) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > LEAF_LINES) {
+                int mid = (from + to) >>> 1;
+                ScoreTask left = new ScoreTask(lines, from, mid);
+                left.fork();
+                Partial right = new ScoreTask(lines, mid, to).compute();
+                return left.join().merge(right);
+            }
+            Partial partial = new Partial();
+            for (int i = from; i < to; i++) {
+                String[] event = gitLog ? parseGitLogLine(lines.get(i)) : parseEventLine(lines.get(i));
+                if (event == null || event[1] == null) {
+                    partial.skipped++;
+                    if (event != null) {
+                        partial.unmapped++;
+                    }
+                    continue;
+                }
+                String role = roles.getOrDefault(event[1], RuleTable.FALLBACK_ROLE);
+                int slot = rules.resolve(rules.typeId(event[0]), rules.roleId(role));
+                if (slot < 0) {
+                    partial.skipped++;
+                    continue;
+                }
+                Totals totals = partial.byAuthor.computeIfAbsent(event[1], k -> new Totals(role));
+                totals.amount += rules.baseValue(slot);
+                totals.contributions++;
+            }
+            return partial;
+        }
+    }
+
+    // "sha<TAB>author email" -> {"commit", login}, with a null login if the email maps to none
+    private String[] parseGitLogLine(String line) {
+        String[] fields = line.split("\t", 2);
+        if (fields.length < 2 || fields[1].isEmpty()) {
+            return null;
+        }
+        return new String[] {PushBatchScorer.COMMIT_TYPE, login(fields[1].trim().toLowerCase(Locale.ROOT))};
+    }
+
+    // "login@users.noreply.github.com" or "id+login@users.noreply.github.com", else the logins file
+    private String login(String email) {
+        String login = logins.get(email);
+        if (login == null && email.endsWith(NOREPLY_DOMAIN)) {
+            String local = email.substring(0, email.length() - NOREPLY_DOMAIN.length());
+            login = local.substring(local.indexOf('+') + 1);
+        }
+        return login == null || login.isEmpty() ? null : login;
+    }
+
+    // {"type": "...", "author": "..."} -> {type, author}
+    private static String[] parseEventLine(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonObject event = JsonParser.parseString(line).getAsJsonObject();
+            if (!event.has("type") || !event.has("author")) {
+                return null;
+            }
+            return new String[] {event.get("type").getAsString(), event.get("author").getAsString()};
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> readRoles(Path path) throws IOException {
+        Map<String, String> roles = new HashMap<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",", 2);
+            if (fields.length == 2 && !line.startsWith("#")) {
+                roles.put(fields[0].trim(), RoleResolver.roleFor(fields[1].trim()));
+            }
+        }
+        return roles;
+    }
+
+    // "email,login" lines; emails are matched case-insensitively
+    private static Map<String, String> readLogins(Path path) throws IOException {
+        Map<String, String> logins = new HashMap<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",", 2);
+            if (fields.length == 2 && !line.startsWith("#")) {
+                logins.put(fields[0].trim().toLowerCase(Locale.ROOT), fields[1].trim());
+            }
+        }
+        return logins;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,47 @@
+package com.decozero;
+
+import java.util.Locale;
+
+/**
+ * Decides which values.csv contribution type a piece of free text earns: the title of an opened
+ * issue or the body of a comment.
+ *
+ * The default is a {@link KeywordClassifier}; a {@link ModelClassifier} can be put in front of it.
+ */
+interface ContributionClassifier {
+
+    /** What the text is, with the type it earns when nothing more specific matches. */
+    enum Subject {
+        /** Title of an opened issue. Every issue is at least a minor report. */
+        ISSUE("issue_report_minor"),
+        /** Body of an issue or pull request comment. Only classified comments are scored. */
+        COMMENT(null);
+
+        final String defaultType;
+
+        Subject(String defaultType) {
+            this.defaultType = defaultType;
+        }
+
+        /** Name used in configuration files and model requests. */
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** Parses a {@link #label()}, or returns null if it names no subject. */
+        static Subject fromLabel(String label) {
+            for (Subject subject : values()) {
+                if (subject.label().equalsIgnoreCase(label)) {
+                    return subject;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the contribution type the text earns, or null if it earns none beyond the subject's
+     * {@link Subject#defaultType default}.
+     */
+    String classify(Subject subject, String text);
+}
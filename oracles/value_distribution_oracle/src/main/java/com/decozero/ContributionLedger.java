@@ -0,0 +1,363 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Append-only local ledger of scored contributions, stored in a memory-mapped binary file.
+ *
+ * The file is a sequence of fixed-size mapped segments. Each record holds the delivery id,
+ * contributor, contribution type, role, amount and values.csv version, plus the offset of the
+ * same contributor's previous record. Opening the ledger scans it once to rebuild an in-memory
+ * index of each contributor's total, count and latest record; histories are then read by following
+ * the back-pointers, so neither totals nor histories scan the file.
+ *
+ * Record layout: int length, long previous offset, long timestamp millis, double amount,
+ * int contributions, then five (unsigned short length, UTF-8 bytes) strings. The length is written
+ * last, so a record torn by a crash reads as the end of the ledger. A length of -1 marks the
+ * unused tail of a segment.
+ */
+class ContributionLedger implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ContributionLedger.class.getName());
+
+    static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int FIXED_BYTES = 4 + 8 + 8 + 8 + 4;
+    private static final int SEGMENT_END = -1;
+    static final String COMPACTED_TYPE = "compacted";
+
+    /** One ledger record. */
+    static final class Entry {
+        final long timestampMillis;
+        final String deliveryId;
+        final String contributor;
+        final String contributionType;
+        final String role;
+        final double amount;
+        final int contributions;
+        final String rulesVersion;
+
+        Entry(long timestampMillis, String deliveryId, String contributor, String contributionType, String role,
+              double amount, int contributions, String rulesVersion) {
+            this.timestampMillis = timestampMillis;
+            this.deliveryId = deliveryId;
+            this.contributor = contributor;
+            this.contributionType = contributionType;
+            this.role = role;
+            this.amount = amount;
+            this.contributions = contributions;
+            this.rulesVersion = rulesVersion;
+        }
+    }
+
+    /** On-chain balance of an account in the token's smallest units, e.g. via {@code ft_balance_of}. */
+    interface BalanceSource {
+        BigInteger balanceOf(String accountId) throws IOException;
+    }
+
+    /** A contributor whose ledger total and on-chain balance differ. */
+    static final class Discrepancy {
+        final String contributor;
+        final BigInteger ledgerUnits;
+        final BigInteger chainUnits;
+
+        Discrepancy(String contributor, BigInteger ledgerUnits, BigInteger chainUnits) {
+            this.contributor = contributor;
+            this.ledgerUnits = ledgerUnits;
+            this.chainUnits = chainUnits;
+        }
+
+        @Override
+        public String toString() {
+            return contributor + ": ledger " + ledgerUnits + ", chain " + chainUnits;
+        }
+    }
+
+    private static final class Index {
+        long lastOffset = -1;
+        long count;
+        double total;
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Index> index = new HashMap<>();
+    private long position;
+    private long records;
+
+    ContributionLedger(Path path) throws IOException {
+        this.path = path;
+        open();
+    }
+
+    // Maps the file and rebuilds the index in one sequential pass, finding the append position.
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int existing = (int) ((channel.size() + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        for (int i = 0; i < Math.max(1, existing); i++) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT_BYTES, SEGMENT_BYTES));
+        }
+        long offset = 0;
+        while (true) {
+            ByteBuffer segment = segments.get(segmentOf(offset));
+            int at = (int) (offset % SEGMENT_BYTES);
+            int length = SEGMENT_BYTES - at < 4 ? SEGMENT_END : segment.getInt(at);
+            if (length == SEGMENT_END) {
+                if (segmentOf(offset) + 1 >= segments.size()) {
+                    break;
+                }
+                offset = (long) (segmentOf(offset) + 1) * SEGMENT_BYTES;
+                continue;
+            }
+            if (length < FIXED_BYTES || at + length > SEGMENT_BYTES) {
+                break; // Unwritten or torn tail.
+            }
+            Entry entry = read(offset);
+            indexEntry(entry.contributor, entry.amount, offset);
+            offset += length;
+        }
+        position = offset;
+        if (records > 0) {
+            logger.info("Opened contribution ledger " + path + " with " + records + " record(s) for " + index.size() + " contributor(s).");
+        }
+    }
+
+    /** Appends one record. Written through the page cache; see {@link #force()}. */
+    synchronized void append(Entry entry) throws IOException {
+        byte[][] strings = {
+                utf8(entry.deliveryId), utf8(entry.contributor), utf8(entry.contributionType), utf8(entry.role), utf8(entry.rulesVersion)};
+        int length = FIXED_BYTES;
+        for (byte[] string : strings) {
+            length += 2 + string.length;
+        }
+        int at = (int) (position % SEGMENT_BYTES);
+        if (at + length > SEGMENT_BYTES) {
+            if (SEGMENT_BYTES - at >= 4) {
+                segments.get(segmentOf(position)).putInt(at, SEGMENT_END);
+            }
+            position = (long) (segmentOf(position) + 1) * SEGMENT_BYTES;
+            at = 0;
+        }
+        if (segmentOf(position) >= segments.size()) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_BYTES, SEGMENT_BYTES));
+        }
+        Index previous = index.get(entry.contributor);
+        ByteBuffer record = segments.get(segmentOf(position)).duplicate();
+        record.position(at + 4);
+        record.putLong(previous == null ? -1 : previous.lastOffset);
+        record.putLong(entry.timestampMillis);
+        record.putDouble(entry.amount);
+        record.putInt(entry.contributions);
+        for (byte[] string : strings) {
+            record.putShort((short) string.length);
+            record.put(string);
+        }
+        record.putInt(at, length);
+        indexEntry(entry.contributor, entry.amount, position);
+        position += length;
+    }
+
+    /** Returns the total amount recorded for a contributor. */
+    synchronized double total(String contributor) {
+        Index entry = index.get(contributor);
+        return entry == null ? 0 : entry.total;
+    }
+
+    /** Returns the number of records of a contributor. */
+    synchronized long count(String contributor) {
+        Index entry = index.get(contributor);
+        return entry == null ? 0 : entry.count;
+    }
+
+    /** Returns up to {@code limit} of a contributor's records, newest first. */
+    synchronized List<Entry> history(String contributor, int limit) {
+        List<Entry> history = new ArrayList<>();
+        Index entry = index.get(contributor);
+        long offset = entry == null ? -1 : entry.lastOffset;
+        while (offset >= 0 && history.size() < limit) {
+            history.add(read(offset));
+            offset = segments.get(segmentOf(offset)).getLong((int) (offset % SEGMENT_BYTES) + 4);
+        }
+        return history;
+    }
+
+    synchronized long recordCount() {
+        return records;
+    }
+
+    synchronized int contributorCount() {
+        return index.size();
+    }
+
+    /**
+     * Compares every contributor's ledger total with their on-chain balance. The ledger is read in
+     * one sequential pass; amounts are converted to smallest units per record, as they are minted.
+     * Awards still waiting in the mint log show up as a ledger total above the balance, and a
+     * {@value #COMPACTED_TYPE} record, converted as one, may be off by its rounding.
+     */
+    synchronized List<Discrepancy> reconcile(BalanceSource balances, int tokenDecimals) throws IOException {
+        Map<String, BigInteger> units = new LinkedHashMap<>();
+        scan(entry -> units.merge(entry.contributor, toUnits(entry.amount, tokenDecimals), BigInteger::add));
+        List<Discrepancy> discrepancies = new ArrayList<>();
+        for (Map.Entry<String, BigInteger> total : units.entrySet()) {
+            BigInteger chain = balances.balanceOf(total.getKey());
+            if (!total.getValue().equals(chain)) {
+                discrepancies.add(new Discrepancy(total.getKey(), total.getValue(), chain));
+            }
+        }
+        return discrepancies;
+    }
+
+    /**
+     * Rewrites the ledger with the records older than {@code beforeMillis} collapsed into one
+     * {@value #COMPACTED_TYPE} record per contributor. Totals are preserved.
+     *
+     * @return False if there was nothing to collapse and the ledger was left as it is.
+     */
+    synchronized boolean compact(long beforeMillis) throws IOException {
+        Map<String, Entry> summaries = new LinkedHashMap<>();
+        List<Entry> recent = new ArrayList<>();
+        long[] old = {0};
+        scan(entry -> {
+            if (entry.timestampMillis >= beforeMillis) {
+                recent.add(entry);
+                return;
+            }
+            old[0]++;
+            Entry summary = summaries.get(entry.contributor);
+            summaries.put(entry.contributor, new Entry(entry.timestampMillis, "", entry.contributor, COMPACTED_TYPE, entry.role,
+                    (summary == null ? 0 : summary.amount) + entry.amount,
+                    (summary == null ? 0 : summary.contributions) + entry.contributions, ""));
+        });
+        if (old[0] == summaries.size()) {
+            return false;
+        }
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(compacted);
+        try (ContributionLedger target = new ContributionLedger(compacted)) {
+            for (Entry summary : summaries.values()) {
+                target.append(summary);
+            }
+            for (Entry entry : recent) {
+                target.append(entry);
+            }
+            target.force();
+        }
+        long before = records;
+        close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // The compacted file if it was moved, else the original one: appends go on either way.
+            reopen();
+        }
+        logger.info("Compacted contribution ledger " + path + " from " + before + " to " + records + " record(s).");
+        return true;
+    }
+
+    /** Flushes appended records to disk. */
+    synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void reopen() throws IOException {
+        // Segments of the replaced file are unmapped once unreachable.
+        segments.clear();
+        index.clear();
+        records = 0;
+        open();
+    }
+
+    private interface EntryVisitor {
+        void visit(Entry entry);
+    }
+
+    private void scan(EntryVisitor visitor) {
+        long offset = 0;
+        while (offset < position) {
+            int at = (int) (offset % SEGMENT_BYTES);
+            int length = SEGMENT_BYTES - at < 4 ? SEGMENT_END : segments.get(segmentOf(offset)).getInt(at);
+            if (length == SEGMENT_END) {
+                offset = (long) (segmentOf(offset) + 1) * SEGMENT_BYTES;
+                continue;
+            }
+            visitor.visit(read(offset));
+            offset += length;
+        }
+    }
+
+    private Entry read(long offset) {
+        ByteBuffer record = segments.get(segmentOf(offset)).duplicate();
+        record.position((int) (offset % SEGMENT_BYTES) + 4 + 8);
+        try {
+            long timestamp = record.getLong();
+            double amount = record.getDouble();
+            int contributions = record.getInt();
+            String deliveryId = string(record);
+            String contributor = string(record);
+            String type = string(record);
+            String role = string(record);
+            String rulesVersion = string(record);
+            return new Entry(timestamp, deliveryId, contributor, type, role, amount, contributions, rulesVersion);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("Corrupt ledger record at " + offset, e);
+        }
+    }
+
+    private void indexEntry(String contributor, double amount, long offset) {
+        Index entry = index.computeIfAbsent(contributor, k -> new Index());
+        entry.lastOffset = offset;
+        entry.count++;
+        entry.total += amount;
+        records++;
+    }
+
+    private static int segmentOf(long offset) {
+        return (int) (offset / SEGMENT_BYTES);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Ledger field longer than 65535 bytes");
+        }
+        return bytes;
+    }
+
+    private static BigInteger toUnits(double amount, int decimals) {
+        return BigDecimal.valueOf(amount).movePointRight(decimals).setScale(0, RoundingMode.DOWN).toBigInteger();
+    }
+}
@@ -0,0 +1,22 @@
+package com.decozero;
+
+// Represents a row in the values.csv file
+class ContributionRule {
+    String contributionType;
+    String role;
+    double baseValue;
+    double memberReactionMultiplier;
+    double nonMemberReactionMultiplier;
+    // Optional '|'-separated keywords that classify text as this type, see KeywordClassifier
+    String keywords;
+
+    // Constructor to parse a CSV row
+    public ContributionRule(String[] csvLine) {
+        this.contributionType = csvLine[0].trim();
+        this.role = csvLine[1].trim();
+        this.baseValue = Double.parseDouble(csvLine[2].trim());
+        this.memberReactionMultiplier = Double.parseDouble(csvLine[3].trim());
+        this.nonMemberReactionMultiplier = Double.parseDouble(csvLine[4].trim());
+        this.keywords = csvLine.length > 5 ? csvLine[5].trim() : "";
+    }
+}
@@ -1,88 +1,377 @@
 package com.decozero;
 
+import com.decozero.github.GitHubClients;
 import com.decozero.secrets.SecretManager;
 import com.google.cloud.functions.HttpFunction;
 import com.google.cloud.functions.HttpRequest;
 import com.google.cloud.functions.HttpResponse;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.opencsv.CSVReader;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.opencsv.exceptions.CsvValidationException;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHReaction;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
-
-// --- Data Models for CSV and GitHub Payload ---
-
-// Represents a row in the values.csv file
-class ContributionRule {
-    String contributionType;
-    String role;
-    double baseValue;
-    double memberReactionMultiplier;
-    double nonMemberReactionMultiplier;
-
-    // Constructor to parse a CSV row
-    public ContributionRule(String[] csvLine) {
-        this.contributionType = csvLine[0].trim();
-        this.role = csvLine[1].trim();
-        this.baseValue = Double.parseDouble(csvLine[2].trim());
-        this.memberReactionMultiplier = Double.parseDouble(csvLine[3].trim());
-        this.nonMemberReactionMultiplier = Double.parseDouble(csvLine[4].trim());
-    }
-}
 
 // --- Main Cloud Function Class ---
 public class DeCoValueDistributionFunction implements HttpFunction {
 
+    // Start of class initialization, to report how much of a cold start the static setup below takes.
+    private static final long CLASS_INIT_START_NANOS = System.nanoTime();
+
     private static final Logger logger = Logger.getLogger(DeCoValueDistributionFunction.class.getName());
-    private static final Gson gson = new Gson();
 
     // Environment variable for GitHub Webhook Secret (for verification)
     private static final String GITHUB_WEBHOOK_SECRET = SecretManager.getSecret("GITHUB_WEBHOOK_SECRET");
+    // Deliveries to a tenant without a webhook secret are rejected, unless this is set for local testing.
+    private static final boolean WEBHOOK_ALLOW_UNSIGNED =
+            Boolean.parseBoolean(System.getenv().getOrDefault("WEBHOOK_ALLOW_UNSIGNED", "false"));
     // Environment variable for the NEAR Individual DeCo Contract's Account ID
     // This oracle instance will be deployed for a specific DeCo, so it knows its contract ID.
     private static final String NEAR_DECO_CONTRACT_ID = System.getenv("NEAR_DECO_CONTRACT_ID");
     // Environment variable for the NEAR private key of the oracle's account to sign transactions
     // In a real scenario, this should be handled with KMS or similar secure methods, not raw env var.
     private static final String NEAR_ORACLE_PRIVATE_KEY = SecretManager.getSecret("NEAR_ORACLE_PRIVATE_KEY");
+    // With TENANTS_PATH set, one deployment serves every DeCo listed in that file (see TenantRegistry)
+    // instead of NEAR_DECO_CONTRACT_ID alone; deliveries are routed by the repository in their URL path.
+    private static final String TENANTS_PATH = System.getenv("TENANTS_PATH");
+    private static final boolean MULTI_TENANT = TENANTS_PATH != null && !TENANTS_PATH.isEmpty();
+
+    // Cache of compiled values.csv rule tables, shared by all invocations of this instance.
+    private static final long VALUES_CSV_CACHE_TTL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("VALUES_CSV_CACHE_TTL_SECONDS", "300"));
+    private static final int VALUES_CSV_CACHE_MAX_REPOS =
+            Integer.parseInt(System.getenv().getOrDefault("VALUES_CSV_CACHE_MAX_REPOS", "256"));
+    private static final RuleTableCache ruleTableCache = new RuleTableCache(
+            DeCoValueDistributionFunction::fetchValuesCsv, VALUES_CSV_CACHE_TTL_SECONDS, TimeUnit.SECONDS, VALUES_CSV_CACHE_MAX_REPOS);
+    private static volatile GitHub github;
+    // GitHub API endpoint, for GitHub Enterprise Server or a local stand-in; github.com if unset.
+    private static final String GITHUB_API_URL = System.getenv("GITHUB_API_URL");
+
+    // Window and bound of the X-GitHub-Delivery ids remembered to drop redeliveries.
+    private static final long DELIVERY_DEDUP_WINDOW_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("DELIVERY_DEDUP_WINDOW_SECONDS", "259200"));
+    private static final int DELIVERY_DEDUP_MAX_ENTRIES =
+            Integer.parseInt(System.getenv().getOrDefault("DELIVERY_DEDUP_MAX_ENTRIES", "100000"));
+    // Optional append-only file keeping delivery ids across instance restarts.
+    private static final String DELIVERY_DEDUP_PATH = System.getenv("DELIVERY_DEDUP_PATH");
+    private static final DeliveryDeduplicator deliveries = new DeliveryDeduplicator(
+            DELIVERY_DEDUP_WINDOW_SECONDS, TimeUnit.SECONDS, DELIVERY_DEDUP_MAX_ENTRIES,
+            DELIVERY_DEDUP_PATH == null || DELIVERY_DEDUP_PATH.isEmpty()
+                    ? null : new DeliveryDeduplicator.FileStore(Paths.get(DELIVERY_DEDUP_PATH)));
+    // Awards are coalesced per account and minted in batches, logged to MINT_LOG_PATH until minted.
+    private static final String MINT_LOG_PATH = System.getenv().getOrDefault("MINT_LOG_PATH", "deco-mints.journal");
+    // Pending accounts that trigger an immediate mint batch.
+    private static final int MINT_BATCH_MAX_ACCOUNTS =
+            Integer.parseInt(System.getenv().getOrDefault("MINT_BATCH_MAX_ACCOUNTS", "100"));
+    private static final long MINT_FLUSH_INTERVAL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("MINT_FLUSH_INTERVAL_SECONDS", "10"));
+    private static final int NEAR_TOKEN_DECIMALS =
+            Integer.parseInt(System.getenv().getOrDefault("NEAR_TOKEN_DECIMALS", "18"));
+    // Local NEAR stand-in; NEAR_ACTIVE_MEMBERS seeds its member set (comma-separated account ids).
+    private static final FakeNearRpc nearRpc = createNearRpc();
+    // No client signs NEAR transactions yet, so awards stay in the mint log, unminted, unless
+    // NEAR_MINT_CLIENT=fake mints them to the local stand-in for a trial run (its balances are lost).
+    private static final String NEAR_MINT_CLIENT = System.getenv().getOrDefault("NEAR_MINT_CLIENT", "");
+    private static final NearMintClient mintClient = "fake".equals(NEAR_MINT_CLIENT) ? nearRpc : null;
+    private static final MintBatcher mintBatcher = MULTI_TENANT ? null : createMintBatcher();
+
+    // Local audit ledger of every scored contribution; a multi-tenant deployment keeps one per contract
+    // in LEDGER_DIR, so that each contract's totals only count its own contributions.
+    private static final String LEDGER_PATH = System.getenv().getOrDefault("LEDGER_PATH", "deco-contributions.ledger");
+    private static final String LEDGER_DIR = System.getenv().getOrDefault("LEDGER_DIR", "deco-ledgers");
+    private static final ContributionLedger ledger = MULTI_TENANT ? null : openLedger();
+    // Once a day, records older than LEDGER_RETENTION_DAYS are collapsed into one per contributor, keeping
+    // the totals but not the history; 0 keeps every record.
+    private static final long LEDGER_RETENTION_DAYS =
+            Long.parseLong(System.getenv().getOrDefault("LEDGER_RETENTION_DAYS", "0"));
+
+    // Collaborator role snapshots, reconciled with GitHub every ROLE_RECONCILE_INTERVAL_SECONDS. At least
+    // one per tenant is kept, and at least ROLE_RESOLVER_MAX_REPOS, the least recently used evicted first.
+    private static final long ROLE_RECONCILE_INTERVAL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("ROLE_RECONCILE_INTERVAL_SECONDS", "600"));
+    private static final int ROLE_RESOLVER_MAX_REPOS =
+            Integer.parseInt(System.getenv().getOrDefault("ROLE_RESOLVER_MAX_REPOS", "256"));
+    private static final RoleResolver roleResolver = new RoleResolver(DeCoValueDistributionFunction::fetchCollaboratorPermissions,
+            () -> Math.max(ROLE_RESOLVER_MAX_REPOS, DeCoValueDistributionFunction.tenants == null
+                    ? 0 : DeCoValueDistributionFunction.tenants.size()),
+            ROLE_RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
 
+    private static final String REACTION_EVENT = "reaction";
+    // Contributions remembered for reaction scoring, journaled to REACTION_JOURNAL_PATH.
+    private static final int REACTION_TRACKED_CONTRIBUTIONS =
+            Integer.parseInt(System.getenv().getOrDefault("REACTION_TRACKED_CONTRIBUTIONS", "100000"));
+    private static final String REACTION_JOURNAL_PATH =
+            System.getenv().getOrDefault("REACTION_JOURNAL_PATH", "deco-reactions.journal");
+    private static final ReactionScorer reactionScorer = openReactionScorer();
+    // Every REACTION_POLL_INTERVAL_SECONDS, the reactions to REACTION_POLL_BATCH of the issues and pull
+    // requests tracked in the last REACTION_POLL_WINDOW_DAYS are polled; 0 disables polling.
+    private static final long REACTION_POLL_INTERVAL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("REACTION_POLL_INTERVAL_SECONDS", "300"));
+    private static final long REACTION_POLL_WINDOW_DAYS =
+            Long.parseLong(System.getenv().getOrDefault("REACTION_POLL_WINDOW_DAYS", "7"));
+    private static final int REACTION_POLL_BATCH =
+            Integer.parseInt(System.getenv().getOrDefault("REACTION_POLL_BATCH", "100"));
+    // How long the cached copy of the contract's active member set is used before reloading.
+    private static final long NEAR_MEMBERS_CACHE_TTL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("NEAR_MEMBERS_CACHE_TTL_SECONDS", "60"));
+    private static final ActiveMembers activeMembers = MULTI_TENANT ? null
+            : new ActiveMembers(nearRpc, NEAR_DECO_CONTRACT_ID, NEAR_MEMBERS_CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+    // GitHub caps webhook payloads at 25 MB.
+    static final int WEBHOOK_MAX_BODY_BYTES = 25 * 1024 * 1024;
+    private static final WebhookSignature webhookSignature =
+            GITHUB_WEBHOOK_SECRET == null || GITHUB_WEBHOOK_SECRET.isEmpty() ? null : new WebhookSignature(GITHUB_WEBHOOK_SECRET);
+
+    // Tenants of a multi-tenant deployment. Their mint logs are kept in MINT_LOG_DIR, one per contract,
+    // and flushed by MINT_FLUSH_THREADS shared threads.
+    private static final String MINT_LOG_DIR = System.getenv().getOrDefault("MINT_LOG_DIR", "deco-mints");
+    private static final int MINT_FLUSH_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("MINT_FLUSH_THREADS", "4"));
+    private static final long TENANTS_RELOAD_INTERVAL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("TENANTS_RELOAD_INTERVAL_SECONDS", "30"));
+    private static final TenantRegistry tenants = MULTI_TENANT ? openTenants() : null;
+    // The only tenant of a single-tenant deployment, taking deliveries for any repository.
+    private static final Tenant singleTenant = MULTI_TENANT ? null
+            : new Tenant(null, NEAR_DECO_CONTRACT_ID, webhookSignature, null, () -> mintBatcher, () -> ledger, activeMembers);
+
+    // Issue titles and comments are classified by the keywords of the repository's values.csv, else by
+    // those of the CLASSIFIER_KEYWORDS_PATH sidecar file or the built-in ones. With CLASSIFIER_MODEL_URL
+    // set, a model answers first, within CLASSIFIER_LATENCY_BUDGET_MS, with its answers cached by content.
+    private static final String CLASSIFIER_KEYWORDS_PATH = System.getenv("CLASSIFIER_KEYWORDS_PATH");
+    private static final String CLASSIFIER_MODEL_URL = System.getenv("CLASSIFIER_MODEL_URL");
+    private static final long CLASSIFIER_LATENCY_BUDGET_MS =
+            Long.parseLong(System.getenv().getOrDefault("CLASSIFIER_LATENCY_BUDGET_MS", "50"));
+    private static final int CLASSIFIER_CACHE_MAX_ENTRIES =
+            Integer.parseInt(System.getenv().getOrDefault("CLASSIFIER_CACHE_MAX_ENTRIES", "10000"));
+    private static final KeywordClassifier keywordClassifier = loadKeywordClassifier();
+    private static final ModelClassifier modelClassifier = CLASSIFIER_MODEL_URL == null || CLASSIFIER_MODEL_URL.isEmpty()
+            ? null
+            : new ModelClassifier(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build(),
+                    URI.create(CLASSIFIER_MODEL_URL), keywordClassifier, CLASSIFIER_CACHE_MAX_ENTRIES,
+                    CLASSIFIER_LATENCY_BUDGET_MS, TimeUnit.MILLISECONDS);
+
+    // Latency by event type, stage and outcome, served in the Prometheus text format on GET METRICS_PATH.
+    private static final String METRICS_PATH = System.getenv().getOrDefault("METRICS_PATH", "/metrics");
+    private static final RequestMetrics metrics = new RequestMetrics();
+
+    static {
+        if (!MULTI_TENANT && webhookSignature == null) {
+            logger.warning(WEBHOOK_ALLOW_UNSIGNED
+                    ? "GITHUB_WEBHOOK_SECRET is not set; unsigned webhook deliveries are accepted (WEBHOOK_ALLOW_UNSIGNED)."
+                    : "GITHUB_WEBHOOK_SECRET is not set; every webhook delivery will be rejected.");
+        }
+        if (LEDGER_RETENTION_DAYS > 0) {
+            scheduleLedgerCompaction();
+        }
+        if (REACTION_POLL_INTERVAL_SECONDS > 0) {
+            new ReactionPoller(reactionScorer, DeCoValueDistributionFunction::fetchReactions,
+                    DeCoValueDistributionFunction::scoreReaction, TimeUnit.DAYS.toSeconds(REACTION_POLL_WINDOW_DAYS),
+                    REACTION_POLL_BATCH, REACTION_POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+        metrics.gitHub(GitHubClients.connector());
+        metrics.initialized(System.nanoTime() - CLASS_INIT_START_NANOS);
+    }
 
     @Override
     public void service(HttpRequest request, HttpResponse response) throws Exception {
+        // Webhooks are always POSTed, so a GET can only be a metrics scrape.
+        if ("GET".equals(request.getMethod()) && request.getPath().endsWith(METRICS_PATH)) {
+            response.setStatusCode(200);
+            response.setContentType(RequestMetrics.CONTENT_TYPE);
+            response.getWriter().write(metrics.render());
+            return;
+        }
+        long start = System.nanoTime();
+        String eventType = request.getFirstHeader("X-GitHub-Event").orElse("");
+        int event = RequestMetrics.eventIndex(eventType);
+        RequestMetrics.Outcome outcome = RequestMetrics.Outcome.FAILED;
+        try {
+            outcome = handle(request, response, eventType, event);
+        } finally {
+            metrics.request(event, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns true if a webhook POSTed to {@code path} carries the signature of the tenant it is
+     * addressed to, or that tenant has no secret and WEBHOOK_ALLOW_UNSIGNED is set. False if no
+     * tenant is registered for the path.
+     */
+    static boolean isAuthentic(String path, String signatureHeader, byte[] body) {
+        Tenant tenant = singleTenant;
+        if (MULTI_TENANT) {
+            tenant = tenants == null ? null : tenants.tenant(TenantRegistry.repositoryFromPath(path));
+        }
+        return tenant != null && isSigned(tenant, signatureHeader, body);
+    }
+
+    private static boolean isSigned(Tenant tenant, String signatureHeader, byte[] body) {
+        return tenant.signature == null ? WEBHOOK_ALLOW_UNSIGNED : tenant.signature.matches(signatureHeader, body);
+    }
+
+    // Processes one delivery and reports how it ended.
+    private static RequestMetrics.Outcome handle(HttpRequest request, HttpResponse response, String eventType, int event) throws Exception {
         logger.info("Received request.");
 
         // --- 1. GitHub Webhook Validation ---
-        // (Highly Recommended for Production)
-        // For simplicity, this basic example skips full signature verification.
-        // In production, you'd verify the 'X-Hub-Signature-256' header.
-        String eventType = request.getFirstHeader("X-GitHub-Event").orElse("");
+        // Redeliveries are dropped by id and signatures verified before the payload is parsed.
         if (eventType.isEmpty()) {
             response.setStatusCode(400);
             response.getWriter().write("Missing X-GitHub-Event header.");
             logger.warning("Missing X-GitHub-Event header.");
-            return;
+            return RequestMetrics.Outcome.REJECTED;
+        }
+        String deliveryId = request.getFirstHeader("X-GitHub-Delivery").orElse("");
+        if (!deliveryId.isEmpty() && deliveries.isDuplicate(deliveryId)) {
+            response.setStatusCode(200);
+            response.getWriter().write("Duplicate delivery " + deliveryId + " ignored.");
+            logger.info("Ignoring redelivery " + deliveryId + " of " + eventType + " event.");
+            return RequestMetrics.Outcome.DUPLICATE;
+        }
+
+        // Unhandled events are acknowledged before their payload is read at all.
+        switch (eventType) {
+            case "push":
+            case "pull_request":
+            case "issues":
+            case "issue_comment":
+            // GitHub sends no webhook for reactions; ReactionPoller polls them in process. A "reaction"
+            // event with the reaction, its subject's html_url and the repository, e.g. from an external
+            // poller, is scored the same way.
+            case REACTION_EVENT:
+            // Collaborator changes keep the role snapshots current.
+            case "member":
+            case "membership":
+                break;
+            default:
+                response.setStatusCode(200); // Acknowledge but don't process unknown events
+                response.getWriter().write("Unhandled GitHub event type: " + eventType);
+                logger.info("Unhandled GitHub event type: " + eventType);
+                return RequestMetrics.Outcome.NO_AWARD;
+        }
+
+        Tenant tenant = singleTenant;
+        if (MULTI_TENANT) {
+            if (tenants == null) {
+                response.setStatusCode(503);
+                response.getWriter().write("Tenant registry unavailable.");
+                return RequestMetrics.Outcome.FAILED;
+            }
+            tenant = tenants.tenant(TenantRegistry.repositoryFromPath(request.getPath()));
+            if (tenant == null) {
+                response.setStatusCode(404);
+                response.getWriter().write("No DeCo is registered for this webhook URL.");
+                logger.warning("Rejected " + eventType + " delivery " + deliveryId + " to unregistered path " + request.getPath());
+                return RequestMetrics.Outcome.REJECTED;
+            }
         }
 
+        long stageStart = System.nanoTime();
+        byte[] body;
+        try (InputStream in = request.getInputStream()) {
+            body = in.readNBytes(WEBHOOK_MAX_BODY_BYTES + 1);
+        }
+        if (body.length > WEBHOOK_MAX_BODY_BYTES) {
+            response.setStatusCode(413);
+            response.getWriter().write("Payload too large.");
+            logger.warning("Rejected " + eventType + " payload larger than " + WEBHOOK_MAX_BODY_BYTES + " bytes.");
+            return RequestMetrics.Outcome.REJECTED;
+        }
+        if (!isSigned(tenant, request.getFirstHeader("X-Hub-Signature-256").orElse(null), body)) {
+            response.setStatusCode(401);
+            if (tenant.signature == null) {
+                response.getWriter().write("No webhook secret is configured.");
+                logger.warning("Rejected " + eventType + " delivery " + deliveryId + " to a tenant without a webhook secret.");
+            } else {
+                response.getWriter().write("Invalid webhook signature.");
+                logger.warning("Rejected " + eventType + " delivery " + deliveryId + " with a missing or invalid signature.");
+            }
+            return RequestMetrics.Outcome.REJECTED;
+        }
+        metrics.payloadBytes(body.length);
+        // Only verified deliveries are claimed, so forged requests cannot shadow real ids.
+        if (deliveryId.isEmpty()) {
+            logger.warning("Missing X-GitHub-Delivery header, redeliveries of this event cannot be detected.");
+        } else if (!deliveries.claim(deliveryId)) {
+            response.setStatusCode(200);
+            response.getWriter().write("Duplicate delivery " + deliveryId + " ignored.");
+            logger.info("Ignoring concurrent redelivery " + deliveryId + " of " + eventType + " event.");
+            return RequestMetrics.Outcome.DUPLICATE;
+        }
+
+        stageStart = stage(event, RequestMetrics.Stage.VERIFY, stageStart);
+
+        // Anything short of queued awards, a failure or an exception alike, gives the claim back so
+        // that GitHub's retry is processed.
+        AtomicBoolean queued = new AtomicBoolean();
+        RequestMetrics.Outcome outcome = RequestMetrics.Outcome.FAILED;
+        try {
+            outcome = process(response, eventType, event, tenant, deliveryId, body, stageStart, queued);
+            return outcome;
+        } finally {
+            if (outcome == RequestMetrics.Outcome.FAILED && !queued.get()) {
+                releaseDelivery(deliveryId);
+            }
+        }
+    }
+
+    // Parses, scores and queues the awards of a verified and claimed delivery. Sets queued once
+    // the awards are logged for minting, after which the delivery must not be processed again.
+    private static RequestMetrics.Outcome process(HttpResponse response, String eventType, int event, Tenant tenant,
+                                                  String deliveryId, byte[] body, long stageStart, AtomicBoolean queued)
+            throws Exception {
         // --- 2. Parse GitHub Webhook Payload ---
-        String requestBody = request.getReader().lines().collect(Collectors.joining(System.lineSeparator()));
-        JsonObject payload;
+        // The body is streamed and only the fields used below are kept.
+        WebhookPayload payload;
         try {
-            payload = gson.fromJson(requestBody, JsonObject.class);
+            payload = WebhookPayloadReader.read(
+                    new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
             logger.info("Parsed GitHub payload. Event Type: " + eventType);
         } catch (Exception e) {
             response.setStatusCode(400);
             response.getWriter().write("Invalid JSON payload.");
             logger.severe("Error parsing JSON payload: " + e.getMessage());
-            return;
+            return RequestMetrics.Outcome.REJECTED;
+        }
+        stage(event, RequestMetrics.Stage.PARSE, stageStart);
+
+        if ("member".equals(eventType) || "membership".equals(eventType)) {
+            if ("member".equals(eventType) && payload.memberLogin != null && payload.repositoryHtmlUrl != null) {
+                String memberRepo = payload.repositoryHtmlUrl.replace("https://github.com/", "");
+                if (!tenant.serves(memberRepo)) {
+                    response.setStatusCode(400);
+                    response.getWriter().write("Delivery is for another repository than its webhook URL.");
+                    return RequestMetrics.Outcome.REJECTED;
+                }
+                roleResolver.memberEvent(memberRepo, orEmpty(payload.action), payload.memberLogin, payload.memberPermission);
+            } else if ("membership".equals(eventType) && payload.organizationLogin != null) {
+                roleResolver.membershipEvent(payload.organizationLogin);
+            }
+            response.setStatusCode(200);
+            response.getWriter().write("Collaborator change applied.");
+            logger.info("Applied " + eventType + " event (action: " + payload.action + ") for " + payload.memberLogin);
+            return RequestMetrics.Outcome.NO_AWARD;
         }
 
         // Extract repository URL and contributor from payload
@@ -92,34 +381,32 @@ public class DeCoValueDistributionFunction implements HttpFunction {
         String gitRef = ""; // For push events
         String prUrl = ""; // For pull_request events
         String issueUrl = ""; // For issue_comment events
-        String reactionType = ""; // For reaction events (if GitHub webhook for reactions is granular enough)
+        boolean valuesCsvChanged = false; // Set when a push touched values.csv, to drop the cached rules
+        // Text whose contribution type is classified once the repository's rules are loaded
+        ContributionClassifier.Subject subject = null;
+        String text = "";
 
         // Determine relevant data based on event type
         switch (eventType) {
             case "push":
                 // For push events, this signifies a commit
-                if (payload.has("repository") && payload.get("repository").isJsonObject()) {
-                    repoUrl = payload.getAsJsonObject("repository").get("html_url").getAsString();
-                }
-                if (payload.has("pusher") && payload.get("pusher").isJsonObject()) {
-                    contributorUsername = payload.getAsJsonObject("pusher").get("name").getAsString();
-                }
+                repoUrl = orEmpty(payload.repositoryHtmlUrl);
+                contributorUsername = orEmpty(payload.pusherName);
                 contributionType = "commit"; // Each push contains commits
-                gitRef = payload.get("ref").getAsString(); // e.g., "refs/heads/main"
+                gitRef = orEmpty(payload.ref); // e.g., "refs/heads/main"
+                valuesCsvChanged = payload.touchesValuesCsv();
                 logger.info("Push event detected for repo: " + repoUrl + ", Pusher: " + contributorUsername);
-                // In a real scenario, you would iterate through 'commits' array in payload
-                // and process each commit individually. For simplicity, we treat a push as 'a commit'.
+                // Each commit in the 'commits' array is scored individually and credited to its author below.
                 break;
             case "pull_request":
                 // PR opened, closed, merged etc.
-                if (payload.has("pull_request") && payload.get("pull_request").isJsonObject()) {
-                    JsonObject pr = payload.getAsJsonObject("pull_request");
-                    repoUrl = pr.getAsJsonObject("base").getAsJsonObject("repo").get("html_url").getAsString();
-                    contributorUsername = pr.getAsJsonObject("user").get("login").getAsString();
-                    prUrl = pr.get("html_url").getAsString();
-                    String action = payload.get("action").getAsString();
-
-                    if ("closed".equals(action) && pr.get("merged").getAsBoolean()) {
+                if (payload.hasPullRequest) {
+                    repoUrl = orEmpty(payload.pullRequestRepoHtmlUrl);
+                    contributorUsername = orEmpty(payload.pullRequestUserLogin);
+                    prUrl = orEmpty(payload.pullRequestHtmlUrl);
+                    String action = orEmpty(payload.action);
+
+                    if ("closed".equals(action) && payload.pullRequestMerged) {
                         contributionType = "pull_request_merged";
                         logger.info("Pull Request MERGED event for repo: " + repoUrl + ", PR by: " + contributorUsername);
                     } else {
@@ -127,177 +414,534 @@ public class DeCoValueDistributionFunction implements HttpFunction {
                         logger.info("Pull Request event (action: " + action + ") for repo: " + repoUrl + ", PR by: " + contributorUsername);
                         response.setStatusCode(200); // Acknowledge but don't process for tokens if not merged
                         response.getWriter().write("PR action not configured for token distribution: " + action);
-                        return;
+                        return RequestMetrics.Outcome.NO_AWARD;
                     }
                 }
                 break;
             case "issues":
                  // Issue opened, closed, reopened
-                if (payload.has("issue") && payload.get("issue").isJsonObject()) {
-                    JsonObject issue = payload.getAsJsonObject("issue");
-                    repoUrl = issue.getAsJsonObject("repository").get("html_url").getAsString();
-                    contributorUsername = issue.getAsJsonObject("user").get("login").getAsString();
-                    issueUrl = issue.get("html_url").getAsString();
-                    String action = payload.get("action").getAsString();
-                    // For simplicity, we'll map 'opened' to 'issue_report_critical' or 'minor' based on keywords/labels
-                    // A more robust system would involve AI analysis or manual labeling.
+                if (payload.hasIssue) {
+                    repoUrl = issueRepoUrl(payload);
+                    contributorUsername = orEmpty(payload.issueUserLogin);
+                    issueUrl = orEmpty(payload.issueHtmlUrl);
+                    String action = orEmpty(payload.action);
+                    // Opened issues are classified by their title, as 'issue_report_critical' or another
+                    // configured type, or else 'issue_report_minor'; see classify() below.
                     if ("opened".equals(action)) {
-                         String title = issue.get("title").getAsString();
-                         // Simple heuristic: if title contains "bug", "error", "critical", categorize as critical
-                         if (title.toLowerCase().contains("bug") || title.toLowerCase().contains("error") || title.toLowerCase().contains("critical")) {
-                             contributionType = "issue_report_critical";
-                         } else {
-                             contributionType = "issue_report_minor";
-                         }
-                         logger.info("Issue opened for repo: " + repoUrl + ", Issue by: " + contributorUsername + ", Type: " + contributionType);
+                         subject = ContributionClassifier.Subject.ISSUE;
+                         text = orEmpty(payload.issueTitle);
+                         logger.info("Issue opened for repo: " + repoUrl + ", Issue by: " + contributorUsername);
                     } else {
                         logger.info("Issue event (action: " + action + ") for repo: " + repoUrl + ", Issue by: " + contributorUsername);
                         response.setStatusCode(200);
                         response.getWriter().write("Issue action not configured for token distribution: " + action);
-                        return;
+                        return RequestMetrics.Outcome.NO_AWARD;
                     }
                 }
                 break;
             case "issue_comment":
                 // Comment on an issue or PR
-                if (payload.has("comment") && payload.has("issue")) { // Check for issue comments, PR comments also come as issue_comment sometimes
-                    JsonObject comment = payload.getAsJsonObject("comment");
-                    JsonObject issueOrPull = payload.getAsJsonObject("issue"); // Could be issue or pull_request object
-                    
-                    repoUrl = issueOrPull.getAsJsonObject("repository").get("html_url").getAsString();
-                    contributorUsername = comment.getAsJsonObject("user").get("login").getAsString();
+                if (payload.hasComment && payload.hasIssue) { // Check for issue comments, PR comments also come as issue_comment sometimes
+                    repoUrl = issueRepoUrl(payload);
+                    contributorUsername = orEmpty(payload.commentUserLogin);
                     
-                    String commentBody = comment.get("body").getAsString();
-                    // This is a very simplistic way to detect a 'suggestion'
-                    if (commentBody.toLowerCase().contains("suggestion") || commentBody.toLowerCase().contains("idea:")) {
-                        contributionType = "suggestion";
-                        logger.info("Suggestion detected in comment for repo: " + repoUrl + ", Comment by: " + contributorUsername);
-                    } else {
-                        logger.info("Comment event detected, but not classified as suggestion for repo: " + repoUrl + ", Comment by: " + contributorUsername);
-                        response.setStatusCode(200);
-                        response.getWriter().write("Comment not classified for token distribution.");
-                        return;
-                    }
+                    // Comments only earn tokens when classified, e.g. as a 'suggestion'; see classify() below.
+                    subject = ContributionClassifier.Subject.COMMENT;
+                    text = orEmpty(payload.commentBody);
+                    logger.info("Comment event detected for repo: " + repoUrl + ", Comment by: " + contributorUsername);
+                }
+                break;
+            case REACTION_EVENT:
+                if (payload.hasReaction && "created".equals(payload.action)) {
+                    repoUrl = orEmpty(payload.repositoryHtmlUrl);
+                    contributorUsername = orEmpty(payload.reactionUserLogin);
+                    contributionType = ReactionScorer.reactionType(orEmpty(payload.reactionContent));
+                    logger.info("Reaction " + payload.reactionContent + " by " + contributorUsername + " on " + payload.reactionSubjectHtmlUrl);
+                } else {
+                    response.setStatusCode(200);
+                    response.getWriter().write("Reaction action not configured for token distribution: " + payload.action);
+                    return RequestMetrics.Outcome.NO_AWARD;
                 }
                 break;
-            // Reactions are tricky. GitHub webhooks for reactions are often on IssueCommentEvent, PullRequestReviewCommentEvent, etc.
-            // A direct 'reaction' event type is less common for specific reactions like thumbs up/heart on arbitrary content.
-            // You might need to infer reactions from issue_comment or pull_request_review_comment events
-            // or use specific GitHub API polling for reactions if webhooks don't provide sufficient granularity.
-            // For this initial draft, we'll focus on primary contribution types.
             default:
-                response.setStatusCode(200); // Acknowledge but don't process unknown events
-                response.getWriter().write("Unhandled GitHub event type: " + eventType);
-                logger.info("Unhandled GitHub event type: " + eventType);
-                return;
+                // Filtered out before parsing.
+                return RequestMetrics.Outcome.NO_AWARD;
         }
 
-        if (repoUrl.isEmpty() || contributorUsername.isEmpty() || contributionType.isEmpty()) {
+        if (repoUrl.isEmpty() || contributorUsername.isEmpty() || (contributionType.isEmpty() && subject == null)) {
             response.setStatusCode(400);
             response.getWriter().write("Could not extract essential data from webhook payload.");
             logger.warning("Could not extract essential data from webhook payload for event: " + eventType);
-            return;
+            return RequestMetrics.Outcome.REJECTED;
         }
 
         // --- 3. Fetch values.csv from the specific DeCo's repository ---
-        Map<String, ContributionRule> rules = new HashMap<>();
+        // Compiled rule tables are cached per repository and only re-parsed when the file's SHA changes.
+        String repoFullName = repoUrl.replace("https://github.com/", "");
+        // A tenant's secret only vouches for deliveries about its own repository.
+        if (!tenant.serves(repoFullName)) {
+            response.setStatusCode(400);
+            response.getWriter().write("Delivery is for another repository than its webhook URL.");
+            logger.warning("Rejected " + eventType + " delivery " + deliveryId + " about " + repoFullName
+                    + " sent to the webhook of " + tenant.repoFullName);
+            return RequestMetrics.Outcome.REJECTED;
+        }
+        if (valuesCsvChanged) {
+            ruleTableCache.invalidate(repoFullName);
+        }
+        RuleTable rules;
+        stageStart = System.nanoTime();
         try {
-            GitHub github = new GitHubBuilder().withOAuthToken(SecretManager.getSecret("GITHUB_TOKEN")).build();
-            GHRepository repo = github.getRepository(repoUrl.replace("https://github.com/", ""));
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(repo.getFileContent("values.csv").read(), StandardCharsets.UTF_8));
-                 CSVReader csvReader = new CSVReader(reader)) {
-                String[] nextLine;
-                // Skip header and comment lines starting with '#'
-                while ((nextLine = csvReader.readNext()) != null) {
-                    if (nextLine.length > 0 && !nextLine[0].trim().startsWith("#")) {
-                        try {
-                            ContributionRule rule = new ContributionRule(nextLine);
-                            rules.put(rule.contributionType + "_" + rule.role, rule);
-                        } catch (NumberFormatException e) {
-                            logger.warning("Skipping malformed CSV line (number format error): " + String.join(",", nextLine));
-                        }
-                    }
-                }
-            }
+            // The expected version is only known for registered tenants that publish it; otherwise
+            // the cached rules are revalidated after their TTL.
+            rules = ruleTableCache.get(repoFullName, tenant.valuesCsvVersion);
         } catch (IOException | CsvValidationException e) {
             logger.severe("Error fetching or parsing values.csv from " + repoUrl + ": " + e.getMessage());
             response.setStatusCode(500);
             response.getWriter().write("Error fetching or parsing values.csv.");
-            return;
+            return RequestMetrics.Outcome.FAILED;
         }
 
         if (rules.isEmpty()) {
             response.setStatusCode(500);
             response.getWriter().write("values.csv loaded, but no valid rules found. Check CSV format.");
             logger.severe("values.csv loaded, but no valid rules found.");
-            return;
+            return RequestMetrics.Outcome.FAILED;
+        }
+        logger.info("Values.csv loaded. Rules count: " + rules.ruleCount()
+                + " (cache hits: " + ruleTableCache.hitCount() + ", misses: " + ruleTableCache.missCount() + ")");
+
+        stageStart = stage(event, RequestMetrics.Stage.VALUES_CSV, stageStart);
+
+        if (subject != null) {
+            contributionType = classify(subject, text, rules);
+            stageStart = stage(event, RequestMetrics.Stage.CLASSIFY, stageStart);
+            if (contributionType == null) {
+                logger.info("Comment not classified for token distribution in repo: " + repoUrl + ", Comment by: " + contributorUsername);
+                response.setStatusCode(200);
+                response.getWriter().write("Comment not classified for token distribution.");
+                return RequestMetrics.Outcome.NO_AWARD;
+            }
+            logger.info("Classified " + subject.label() + " by " + contributorUsername + " as " + contributionType);
+        }
+
+        // --- 4. Determine Contributor Role and Score the Contribution(s) ---
+        // Roles come from the repository's cached collaborator permissions, see RoleResolver.
+        // Contributions earn their base value when made; every scored contribution is tracked so
+        // that later reactions to it mint only their weighted delta, see ReactionScorer.
+        List<MintAward> awards;
+        if (REACTION_EVENT.equals(eventType)) {
+            // Like the repository above, the reacted-to contribution must be the tenant's own.
+            String subjectUrl = orEmpty(payload.reactionSubjectHtmlUrl);
+            if (!subjectUrl.regionMatches(true, 0, repoUrl + "/", 0, repoUrl.length() + 1)) {
+                response.setStatusCode(400);
+                response.getWriter().write("Reaction subject is not in the delivery's repository.");
+                logger.warning("Rejected reaction delivery " + deliveryId + " to " + subjectUrl + " outside " + repoUrl);
+                return RequestMetrics.Outcome.REJECTED;
+            }
+            boolean reactorIsMember = tenant.activeMembers().isMember(contributorUsername);
+            MintAward award = reactionScorer.react(tenant.key(), subjectUrl, contributorUsername,
+                    orEmpty(payload.reactionContent), reactorIsMember, rules);
+            awards = award == null ? Collections.emptyList() : Collections.singletonList(award);
+        } else if ("push".equals(eventType)) {
+            // Every commit of the push is credited to its author in one pass, aggregated per author.
+            awards = PushBatchScorer.score(payload.commits, contributorUsername, rules, login -> roleResolver.role(repoFullName, login),
+                    reactionScorer, tenant.key());
+            logger.info(String.format("Scored %d commit(s) of push to %s into %d award(s).",
+                    payload.commits.size(), gitRef, awards.size()));
+        } else {
+            String contributorRole = roleResolver.role(repoFullName, contributorUsername);
+            // If not found in rules for specific role, the table falls back to the general contributor rule
+            int typeId = rules.typeId(contributionType);
+            int roleId = rules.roleId(contributorRole);
+            int ruleSlot = rules.resolve(typeId, roleId);
+            if (ruleSlot < 0) {
+                logger.warning(String.format("No rule found for contribution type '%s' at all. Skipping token minting.", contributionType));
+                response.setStatusCode(200);
+                response.getWriter().write(String.format("No rule found for '%s'. No tokens minted.", contributionType));
+                return RequestMetrics.Outcome.NO_AWARD;
+            }
+            if (!rules.hasExactRule(typeId, roleId)) {
+                logger.warning(String.format("No specific rule found for type '%s' and role '%s'. Using general '%s' rule.",
+                        contributionType, contributorRole, RuleTable.FALLBACK_ROLE));
+            }
+            reactionScorer.track(tenant.key(), prUrl.isEmpty() ? issueUrl : prUrl, contributorUsername, contributorRole, rules, ruleSlot);
+            awards = Collections.singletonList(new MintAward(contributorUsername, contributorRole, rules.baseValue(ruleSlot), 1));
+        }
+
+        stage(event, RequestMetrics.Stage.SCORE, stageStart);
+
+        if (awards.isEmpty()) {
+            response.setStatusCode(200);
+            response.getWriter().write(String.format("No rule matched '%s' contributions. No tokens minted.", contributionType));
+            logger.info("No awards computed for event " + eventType + " from " + repoUrl);
+            return RequestMetrics.Outcome.NO_AWARD;
+        }
+
+        // --- 5. Calculate Tokens to Mint ---
+        // One aggregated mint per contributor, however many contributions the event carried.
+        for (MintAward award : awards) {
+            logger.info(String.format("Calculated %f tokens for %s (%s) of type %s over %d contribution(s).",
+                    award.amount, award.contributor, award.role, contributionType, award.contributions));
         }
-        logger.info("Values.csv loaded. Rules count: " + rules.size());
-
-        // --- 4. Determine Contributor Role (Simplified for this example) ---
-        // In a real scenario, you'd fetch roles from GitHub API (repo collaborators)
-        // For simplicity, we'll use a placeholder logic for roles based on username.
-        // Or you might need to extend the webhook payload with roles if DeCo Cero can fetch this.
-        String contributorRole = "contributor"; // Default role
-        if (contributorUsername.equals("maintainer_username_placeholder")) { // Replace with actual maintainer logic
-            contributorRole = "maintainer";
-        }
-        // If not found in rules for specific role, try a general contributor rule
-        ContributionRule rule = rules.get(contributionType + "_" + contributorRole);
-        if (rule == null) {
-             logger.warning(String.format("No specific rule found for type '%s' and role '%s'. Attempting general 'contributor' rule.", contributionType, contributorRole));
-             rule = rules.get(contributionType + "_contributor"); // Fallback to general contributor rule
-             if (rule == null) {
-                 logger.warning(String.format("No rule found for contribution type '%s' at all. Skipping token minting.", contributionType));
-                 response.setStatusCode(200);
-                 response.getWriter().write(String.format("No rule found for '%s'. No tokens minted.", contributionType));
-                 return;
-             }
-        }
-       
-        // --- 5. Calculate Tokens to Mint (Simplified) ---
-        // This calculation does NOT include reactions yet for simplicity,
-        // as GitHub webhooks for reactions are more complex to get granularly.
-        // It's a base value per contribution.
-        double tokensToMint = rule.baseValue;
-        logger.info(String.format("Calculated %f tokens for %s (%s) of type %s.",
-                tokensToMint, contributorUsername, contributorRole, contributionType));
 
         // --- 6. Call Individual DeCo Smart Contract (NEAR) to Mint Tokens ---
-        // THIS IS A MOCK IMPLEMENTATION.
-        // In a real scenario, you would use a NEAR SDK (e.g., near-api-js for Node.js,
-        // or a Rust/Python client that interacts with the blockchain) to sign and send a transaction
-        // to the `mint` function of the specific DeCo's contract (NEAR_DECO_CONTRACT_ID).
-
-        logger.info(String.format("MOCK: Attempting to mint %f tokens to %s on DeCo contract %s...",
-                tokensToMint, contributorUsername, NEAR_DECO_CONTRACT_ID));
-        
-        // Example of what a real NEAR SDK call might look like conceptually (not actual Java SDK code):
-        /*
+        // Awards are logged durably here and minted by the batcher, summed per account, in batched
+        // transactions calling the `mint` function of the tenant's DeCo contract (NEAR_DECO_CONTRACT_ID
+        // in a single-tenant deployment).
+        // Without a NEAR client (see NEAR_MINT_CLIENT) they are only logged, to be minted by a process
+        // that has one.
+        MintBatcher batcher = tenant.mintBatcher();
+        if (batcher == null) {
+            response.setStatusCode(503);
+            response.getWriter().write("Mint log unavailable.");
+            return RequestMetrics.Outcome.FAILED;
+        }
+        stageStart = System.nanoTime();
         try {
-            // Initialize NEAR connection
-            Near near = new Near(new JsonRpcProvider("[https://rpc.testnet.near.org](https://rpc.testnet.near.org)"), new KeyPair(NEAR_ORACLE_PRIVATE_KEY));
-            Account oracleAccount = near.account("oracle_account_id_on_near"); // The oracle's account
-            Contract contract = new Contract(oracleAccount, NEAR_DECO_CONTRACT_ID);
-
-            // Call the 'mint' function on the DeCo's contract
-            contract.call("mint", new JsonObject() {{
-                addProperty("account_id", contributorUsername);
-                addProperty("amount", (long) (tokensToMint * Math.pow(10, contract.getDecimals()))); // Convert to yoctoTokens
-            }});
-            logger.info("Successfully MINTED tokens on NEAR blockchain (MOCK transaction)!");
+            batcher.submit(awards);
+            queued.set(true);
+        } catch (IOException e) {
+            logger.severe("Error logging awards for minting: " + e.getMessage());
+            response.setStatusCode(503);
+            response.getWriter().write("Failed to queue tokens for minting.");
+            return RequestMetrics.Outcome.FAILED;
+        }
 
-        } catch (Exception e) {
-            logger.severe("Error minting tokens on NEAR blockchain (MOCK): " + e.getMessage());
-            response.setStatusCode(500);
-            response.getWriter().write("Failed to mint tokens on blockchain.");
-            return;
+        stageStart = stage(event, RequestMetrics.Stage.MINT, stageStart);
+        metrics.awards(awards.size());
+
+        // --- 7. Record the Scored Contributions in the Tenant's Ledger ---
+        ContributionLedger tenantLedger = tenant.ledger();
+        if (tenantLedger != null) {
+            long now = System.currentTimeMillis();
+            try {
+                for (MintAward award : awards) {
+                    tenantLedger.append(new ContributionLedger.Entry(now, deliveryId, award.contributor, contributionType,
+                            award.role, award.amount, award.contributions, rules.version()));
+                }
+            } catch (IOException | RuntimeException e) {
+                // The awards are already queued for minting; a missing audit record must not fail the delivery.
+                logger.warning("Could not record contributions in the ledger: " + e.getMessage());
+            }
+            stage(event, RequestMetrics.Stage.LEDGER, stageStart);
         }
-        */
-        
-        // Simulate success
+
         response.setStatusCode(200);
-        response.getWriter().write("Tokens calculation initiated for " + contributorUsername + ". Check blockchain for minting status.");
+        response.getWriter().write("Tokens queued for minting to " + awards.size() + " contributor(s). Check blockchain for minting status.");
         logger.info("Function execution complete for event " + eventType + " from " + repoUrl);
+        return RequestMetrics.Outcome.MINTED;
+    }
+
+    // --- Helper to record a stage that started at startNanos; returns the end, where the next stage starts ---
+    private static long stage(int event, RequestMetrics.Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        metrics.stage(event, stage, now - startNanos);
+        return now;
+    }
+
+    // --- Helper to classify an issue title or comment, or return null for an unclassified comment ---
+    private static String classify(ContributionClassifier.Subject subject, String text, RuleTable rules) {
+        KeywordClassifier repoKeywords = rules.classifier();
+        KeywordClassifier fastPath = repoKeywords != null && repoKeywords.covers(subject) ? repoKeywords : keywordClassifier;
+        String type = modelClassifier == null
+                ? fastPath.classify(subject, text) : modelClassifier.classify(subject, text, fastPath);
+        return type != null ? type : subject.defaultType;
+    }
+
+    // --- Helper to load the sidecar keyword file; the built-in keywords are used without it ---
+    private static KeywordClassifier loadKeywordClassifier() {
+        if (CLASSIFIER_KEYWORDS_PATH == null || CLASSIFIER_KEYWORDS_PATH.isEmpty()) {
+            return KeywordClassifier.defaults();
+        }
+        try (Reader reader = Files.newBufferedReader(Paths.get(CLASSIFIER_KEYWORDS_PATH), StandardCharsets.UTF_8)) {
+            KeywordClassifier loaded = KeywordClassifier.compile(KeywordClassifier.parse(reader));
+            logger.info("Loaded " + loaded.keywordCount() + " classifier keywords from " + CLASSIFIER_KEYWORDS_PATH);
+            return loaded;
+        } catch (IOException | CsvValidationException e) {
+            logger.severe("Could not load classifier keywords from " + CLASSIFIER_KEYWORDS_PATH
+                    + ", using the built-in ones: " + e.getMessage());
+            return KeywordClassifier.defaults();
+        }
+    }
+
+    private static FakeNearRpc createNearRpc() {
+        FakeNearRpc rpc = new FakeNearRpc(0, TimeUnit.MILLISECONDS, 0);
+        String members = System.getenv().getOrDefault("NEAR_ACTIVE_MEMBERS", "");
+        if (!members.trim().isEmpty()) {
+            rpc.setActiveMembers(Arrays.asList(members.trim().split("\\s*,\\s*")));
+        }
+        return rpc;
+    }
+
+    // --- Helper to start the mint batcher, replaying awards left unminted by a previous instance ---
+    private static MintBatcher createMintBatcher() {
+        MintBatcher batcher = new MintBatcher(mintClient, NEAR_DECO_CONTRACT_ID,
+                new MintLog(Paths.get(MINT_LOG_PATH)), NEAR_TOKEN_DECIMALS,
+                MINT_BATCH_MAX_ACCOUNTS, MINT_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            batcher.start();
+        } catch (IOException e) {
+            logger.severe("Could not open mint log " + MINT_LOG_PATH + ": " + e.getMessage());
+            return null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                batcher.close();
+            } catch (IOException e) {
+                logger.warning("Awards left pending at shutdown: " + e.getMessage());
+            }
+        }, "mint-batcher-shutdown"));
+        return batcher;
+    }
+
+    // --- Helper to load the tenant registry; without it every delivery is refused with a 503 ---
+    private static TenantRegistry openTenants() {
+        TenantRegistry registry = new TenantRegistry(Paths.get(TENANTS_PATH), mintClient, nearRpc, Paths.get(MINT_LOG_DIR),
+                Paths.get(LEDGER_DIR), NEAR_TOKEN_DECIMALS, MINT_BATCH_MAX_ACCOUNTS, MINT_FLUSH_INTERVAL_SECONDS, NEAR_MEMBERS_CACHE_TTL_SECONDS,
+                TimeUnit.SECONDS, MINT_FLUSH_THREADS);
+        try {
+            registry.start(TENANTS_RELOAD_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            logger.severe("Could not load tenants from " + TENANTS_PATH + ": " + e.getMessage());
+            return null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                registry.close();
+            } catch (IOException e) {
+                logger.warning("Awards left pending at shutdown: " + e.getMessage());
+            }
+        }, "tenant-registry-shutdown"));
+        return registry;
+    }
+
+    // --- Helper to open the contribution ledger; scoring continues without it if it cannot be opened ---
+    private static ContributionLedger openLedger() {
+        try {
+            ContributionLedger opened = new ContributionLedger(Paths.get(LEDGER_PATH));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    logger.warning("Could not close contribution ledger: " + e.getMessage());
+                }
+            }, "ledger-shutdown"));
+            return opened;
+        } catch (IOException e) {
+            logger.severe("Could not open contribution ledger " + LEDGER_PATH + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // --- Helper to compact every open ledger once a day, beyond the retention period ---
+    private static void scheduleLedgerCompaction() {
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ledger-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            long before = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(LEDGER_RETENTION_DAYS);
+            List<ContributionLedger> open = tenants != null ? tenants.ledgers()
+                    : ledger != null ? Collections.singletonList(ledger) : Collections.emptyList();
+            for (ContributionLedger compacted : open) {
+                try {
+                    compacted.compact(before);
+                } catch (IOException | RuntimeException e) {
+                    logger.warning("Could not compact a contribution ledger: " + e.getMessage());
+                }
+            }
+        }, 1, 24, TimeUnit.HOURS);
+    }
+
+    // --- Helper for the shared GitHub client, paced and retried by the shared connector (see GitHubClients) ---
+    private static GitHub gitHub() throws IOException {
+        GitHub client = github;
+        if (client == null) {
+            synchronized (DeCoValueDistributionFunction.class) {
+                if (github == null) {
+                    github = GitHubClients.builder(GITHUB_API_URL).withOAuthToken(SecretManager.getSecret("GITHUB_TOKEN")).build();
+                }
+                client = github;
+            }
+        }
+        return client;
+    }
+
+    // --- Helper to fetch values.csv and its blob SHA ---
+    private static RuleTableCache.VersionedCsv fetchValuesCsv(String repoFullName) throws IOException {
+        GHContent content = gitHub().getRepository(repoFullName).getFileContent("values.csv");
+        try (InputStream in = content.read()) {
+            return new RuleTableCache.VersionedCsv(content.getSha(), in.readAllBytes());
+        }
     }
-}
\ No newline at end of file
+
+    // --- Helper to open the reaction scorer; it keeps tracking in memory only if the journal cannot be opened ---
+    private static ReactionScorer openReactionScorer() {
+        try {
+            ReactionScorer opened = new ReactionScorer(REACTION_TRACKED_CONTRIBUTIONS, Paths.get(REACTION_JOURNAL_PATH));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    logger.warning("Could not close reaction journal: " + e.getMessage());
+                }
+            }, "reaction-journal-shutdown"));
+            return opened;
+        } catch (IOException e) {
+            logger.severe("Could not open reaction journal " + REACTION_JOURNAL_PATH
+                    + ", tracked contributions will not survive a restart: " + e.getMessage());
+            return new ReactionScorer(REACTION_TRACKED_CONTRIBUTIONS);
+        }
+    }
+
+    // --- Helper to list the reactions to an issue or pull request ---
+    private static List<ReactionPoller.Reaction> fetchReactions(String repoFullName, int number) throws IOException {
+        List<ReactionPoller.Reaction> reactions = new ArrayList<>();
+        for (GHReaction reaction : gitHub().getRepository(repoFullName).getIssue(number).listReactions()) {
+            reactions.add(new ReactionPoller.Reaction(reaction.getUser().getLogin(), reaction.getContent().getContent()));
+        }
+        return reactions;
+    }
+
+    // --- Helper to score a polled reaction and queue its award, taking the reaction back if that fails ---
+    private static void scoreReaction(String tenantKey, String repoFullName, String url, ReactionPoller.Reaction reaction) throws Exception {
+        Tenant tenant = singleTenant;
+        if (MULTI_TENANT) {
+            tenant = tenants == null ? null : tenants.tenant(repoFullName);
+        }
+        // The repository may have moved to another tenant since the contribution was tracked.
+        MintBatcher batcher = tenant == null || !tenant.key().equals(tenantKey) ? null : tenant.mintBatcher();
+        if (batcher == null) {
+            return;
+        }
+        RuleTable rules = ruleTableCache.get(repoFullName, tenant.valuesCsvVersion);
+        MintAward award = reactionScorer.react(tenantKey, url, reaction.reactor, reaction.content,
+                tenant.activeMembers().isMember(reaction.reactor), rules);
+        if (award == null) {
+            return;
+        }
+        try {
+            batcher.submit(Collections.singletonList(award));
+        } catch (IOException e) {
+            reactionScorer.unreact(tenantKey, url, reaction.reactor, reaction.content, award.amount);
+            throw e;
+        }
+        logger.info("Reaction " + reaction.content + " by " + reaction.reactor + " on " + url + " earned " + award.amount
+                + " for " + award.contributor);
+        ContributionLedger tenantLedger = tenant.ledger();
+        if (tenantLedger != null) {
+            try {
+                tenantLedger.append(new ContributionLedger.Entry(System.currentTimeMillis(), "", award.contributor,
+                        ReactionScorer.reactionType(reaction.content), award.role, award.amount, award.contributions,
+                        rules.version()));
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Could not record a reaction in the ledger: " + e.getMessage());
+            }
+        }
+    }
+
+    // --- Helper to fetch the permission of every collaborator of a repository ---
+    // One call per page of 100 collaborators, whose permissions are listed with them. github-api drops
+    // those, so the list is read through the shared connector directly.
+    private static Map<String, String> fetchCollaboratorPermissions(String repoFullName) throws IOException {
+        String apiUrl = GITHUB_API_URL == null || GITHUB_API_URL.isEmpty() ? "https://api.github.com" : GITHUB_API_URL;
+        String token = SecretManager.getSecret("GITHUB_TOKEN");
+        Map<String, String> permissions = new HashMap<>();
+        String next = apiUrl.replaceAll("/+$", "") + "/repos/" + repoFullName + "/collaborators?per_page=100";
+        while (next != null) {
+            java.net.http.HttpRequest.Builder request = java.net.http.HttpRequest.newBuilder(URI.create(next)).GET()
+                    .header("Accept", "application/vnd.github+json");
+            if (token != null && !token.isEmpty()) {
+                request.header("Authorization", "token " + token);
+            }
+            java.net.http.HttpResponse<byte[]> response = GitHubClients.connector().send(request.build());
+            if (response.statusCode() != 200) {
+                throw new IOException("Listing collaborators of " + repoFullName + " failed with HTTP " + response.statusCode());
+            }
+            readCollaborators(new InputStreamReader(new ByteArrayInputStream(response.body()), StandardCharsets.UTF_8), permissions);
+            next = nextPage(response.headers().firstValue("Link").orElse(null));
+        }
+        return permissions;
+    }
+
+    // Reads the highest permission of each collaborator of a listing page. "permissions" always holds
+    // the base permissions; role_name may instead name a custom role, so it is only the fallback.
+    private static void readCollaborators(Reader page, Map<String, String> permissions) throws IOException {
+        JsonReader reader = new JsonReader(page);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String login = null;
+            String permission = null;
+            String roleName = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("login".equals(name) && reader.peek() == JsonToken.STRING) {
+                    login = reader.nextString();
+                } else if ("role_name".equals(name) && reader.peek() == JsonToken.STRING) {
+                    roleName = reader.nextString();
+                } else if ("permissions".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    permission = highestPermission(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (login != null) {
+                permissions.put(login, permission != null ? permission : roleName != null ? roleName : "read");
+            }
+        }
+        reader.endArray();
+    }
+
+    // The flags of a collaborator's "permissions", highest first, and the permission each stands for.
+    private static final List<String> PERMISSION_FLAGS = Arrays.asList("admin", "maintain", "push", "triage", "pull");
+    private static final List<String> PERMISSION_NAMES = Arrays.asList("admin", "maintain", "write", "triage", "read");
+
+    private static String highestPermission(JsonReader reader) throws IOException {
+        int highest = PERMISSION_FLAGS.size();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int rank = PERMISSION_FLAGS.indexOf(reader.nextName());
+            if (reader.peek() != JsonToken.BOOLEAN) {
+                reader.skipValue();
+            } else if (reader.nextBoolean() && rank >= 0) {
+                highest = Math.min(highest, rank);
+            }
+        }
+        reader.endObject();
+        return highest < PERMISSION_NAMES.size() ? PERMISSION_NAMES.get(highest) : null;
+    }
+
+    // The rel="next" URL of a Link header, or null on the last page.
+    private static String nextPage(String link) {
+        if (link == null) {
+            return null;
+        }
+        for (String part : link.split(",")) {
+            int end = part.indexOf('>');
+            if (part.contains("rel=\"next\"") && part.indexOf('<') >= 0 && end > 0) {
+                return part.substring(part.indexOf('<') + 1, end);
+            }
+        }
+        return null;
+    }
+
+    private static void releaseDelivery(String deliveryId) {
+        if (!deliveryId.isEmpty()) {
+            deliveries.release(deliveryId);
+        }
+    }
+
+    // --- Helpers for optional payload fields ---
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    // Issue payloads carry the repository at the top level; older fixtures nest it in the issue.
+    private static String issueRepoUrl(WebhookPayload payload) {
+        return orEmpty(payload.issueRepoHtmlUrl != null ? payload.issueRepoHtmlUrl : payload.repositoryHtmlUrl);
+    }
+}
@@ -0,0 +1,247 @@
+package com.decozero;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Bounded, time-windowed record of processed webhook deliveries, keyed by X-GitHub-Delivery.
+ *
+ * GitHub redelivers a webhook when a response is slow, so the same delivery id can arrive several
+ * times. A delivery is claimed once its signature is verified and released again if processing
+ * fails in a way GitHub should retry. Ids older than the window, or beyond the size bound, are
+ * forgotten oldest first. An optional {@link Store} keeps claims across instance restarts; it is
+ * compacted to the live claims once more changes have been recorded since the last compaction
+ * than there are live claims, and at least {@code compactMinRecords}.
+ */
+class DeliveryDeduplicator {
+
+    private static final Logger logger = Logger.getLogger(DeliveryDeduplicator.class.getName());
+
+    /** Persistent backend of claimed deliveries. */
+    interface Store {
+        /** Returns the recorded claims, delivery id to claim time in millis, oldest first. */
+        Map<String, Long> load() throws IOException;
+
+        void claimed(String deliveryId, long atMillis) throws IOException;
+
+        void released(String deliveryId) throws IOException;
+
+        /** Replaces the recorded claims with {@code live}, oldest first. */
+        void compact(Map<String, Long> live) throws IOException;
+    }
+
+    static final int DEFAULT_COMPACT_MIN_RECORDS = 10_000;
+
+    private final long windowMillis;
+    private final int maxEntries;
+    private final Store store;
+    private final int compactMinRecords;
+    // Delivery id -> claim time, in claim order.
+    private final LinkedHashMap<String, Long> claims = new LinkedHashMap<>();
+    // Claims and releases recorded in the store since it was last compacted.
+    private int recordsSinceCompaction;
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+
+    /**
+     * @param store Persistent backend, or null to keep claims in memory only.
+     */
+    DeliveryDeduplicator(long window, TimeUnit unit, int maxEntries, Store store) {
+        this(window, unit, maxEntries, store, DEFAULT_COMPACT_MIN_RECORDS);
+    }
+
+    /** @param compactMinRecords Recorded changes below which the store is never compacted while running. */
+    DeliveryDeduplicator(long window, TimeUnit unit, int maxEntries, Store store, int compactMinRecords) {
+        this.windowMillis = unit.toMillis(window);
+        this.maxEntries = maxEntries;
+        this.store = store;
+        this.compactMinRecords = compactMinRecords;
+        if (store != null) {
+            try {
+                claims.putAll(store.load());
+                expire(System.currentTimeMillis());
+                logger.info("Loaded " + claims.size() + " webhook delivery id(s).");
+            } catch (IOException e) {
+                logger.warning("Could not load webhook delivery ids, starting empty: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Returns true if the delivery was already claimed within the window. Records nothing. */
+    synchronized boolean isDuplicate(String deliveryId) {
+        expire(System.currentTimeMillis());
+        if (claims.containsKey(deliveryId)) {
+            duplicates.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Claims a delivery for processing.
+     *
+     * @return False if the delivery was already claimed, e.g. by a concurrent redelivery.
+     */
+    synchronized boolean claim(String deliveryId) {
+        long now = System.currentTimeMillis();
+        if (claims.putIfAbsent(deliveryId, now) != null) {
+            duplicates.increment();
+            return false;
+        }
+        expire(now);
+        accepted.increment();
+        if (store != null) {
+            try {
+                store.claimed(deliveryId, now);
+                recorded();
+            } catch (IOException e) {
+                // Still deduplicated by this instance; only a restart could let a redelivery through.
+                logger.warning("Could not persist webhook delivery id " + deliveryId + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /** Releases a claimed delivery so that GitHub's redelivery of it is processed. */
+    synchronized void release(String deliveryId) {
+        if (claims.remove(deliveryId) != null && store != null) {
+            try {
+                store.released(deliveryId);
+                recorded();
+            } catch (IOException e) {
+                logger.warning("Could not persist release of webhook delivery id " + deliveryId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    long acceptedCount() {
+        return accepted.sum();
+    }
+
+    synchronized int size() {
+        return claims.size();
+    }
+
+    // Compaction only saves space: if it fails, the store keeps every record and is tried again later.
+    private void recorded() {
+        if (++recordsSinceCompaction < Math.max(compactMinRecords, claims.size())) {
+            return;
+        }
+        recordsSinceCompaction = 0;
+        try {
+            store.compact(claims);
+            logger.fine("Compacted webhook delivery ids to " + claims.size());
+        } catch (IOException e) {
+            logger.warning("Could not compact webhook delivery ids: " + e.getMessage());
+        }
+    }
+
+    // Claims are in time order, so expired and excess ids are all at the head.
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Long>> it = claims.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (claims.size() <= maxEntries && now - eldest.getValue() < windowMillis) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Append-only local file of claims, one "+ millis id" or "- id" line per change, each forced to
+     * disk. Compacted to the live claims when loaded and when asked to.
+     */
+    static final class FileStore implements Store {
+
+        private final Path path;
+        private FileChannel channel;
+        private Writer writer;
+
+        FileStore(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public Map<String, Long> load() throws IOException {
+            Map<String, Long> live = new LinkedHashMap<>();
+            if (Files.exists(path)) {
+                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    String[] parts = line.split(" ");
+                    try {
+                        if (parts.length == 3 && "+".equals(parts[0])) {
+                            live.put(parts[2], Long.parseLong(parts[1]));
+                        } else if (parts.length == 2 && "-".equals(parts[0])) {
+                            live.remove(parts[1]);
+                        }
+                    } catch (NumberFormatException e) {
+                        // Torn last line after a crash.
+                        logger.warning("Skipping malformed delivery record: " + line);
+                    }
+                }
+                compact(live);
+            }
+            return live;
+        }
+
+        @Override
+        public void compact(Map<String, Long> live) throws IOException {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> claim : live.entrySet()) {
+                    out.write("+ " + claim.getValue() + " " + claim.getKey());
+                    out.newLine();
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // The writer still points at the replaced file; the next append reopens it on the compacted one.
+            if (writer != null) {
+                Writer replaced = writer;
+                writer = null;
+                channel = null;
+                replaced.close();
+            }
+        }
+
+        @Override
+        public void claimed(String deliveryId, long atMillis) throws IOException {
+            append("+ " + atMillis + " " + deliveryId);
+        }
+
+        @Override
+        public void released(String deliveryId) throws IOException {
+            append("- " + deliveryId);
+        }
+
+        private void append(String line) throws IOException {
+            if (writer == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+            }
+            writer.write(line + "\n");
+            writer.flush();
+            channel.force(false);
+        }
+    }
+}
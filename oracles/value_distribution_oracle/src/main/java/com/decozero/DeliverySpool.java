@@ -0,0 +1,350 @@
+package com.decozero;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Webhook deliveries accepted by the multi-tenant server and not yet processed, one file per
+ * delivery in a directory.
+ *
+ * GitHub does not redeliver a webhook it got an answer to, so the server answers a verified delivery
+ * only once it is in the spool, forced to disk, and processes it afterwards. A delivery stays spooled
+ * until processed, so the ones a full worker queue could not take, the ones whose processing failed
+ * in a way worth retrying and the ones a crash interrupted are all replayed from here, in the order
+ * they arrived per key. Each key (a repository) may hold a bounded number of deliveries; past it new
+ * ones are refused, which only affects that key. A delivery whose processing failed is set aside
+ * until its next attempt is due, with a backoff chosen by the caller, so that the newer deliveries of
+ * its key go ahead in the meantime.
+ */
+final class DeliverySpool {
+
+    private static final Logger logger = Logger.getLogger(DeliverySpool.class.getName());
+
+    private static final String SUFFIX = ".delivery";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String FAILED_DIR = "failed";
+
+    /** A spooled delivery. Its content is only held in memory while it is queued for processing. */
+    static final class Delivery {
+        final String id;
+        final String key;
+        // Size of the content, as held in memory while the delivery is processed.
+        final long bytes;
+        // Processing attempts that failed; not persisted, so a restart grants a fresh set.
+        int attempts;
+        // When the next attempt is due, after a failed one.
+        long retryAtNanos;
+
+        Delivery(String id, String key, long bytes) {
+            this.id = id;
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    /** Returned by {@link #accept} for a delivery id that is already spooled. */
+    static final Delivery DUPLICATE = new Delivery("", "", 0);
+
+    /** What is replayed to the function: the request URI, its headers and its body. */
+    static final class Content {
+        final String uri;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+
+        Content(String uri, Map<String, List<String>> headers, byte[] body) {
+            this.uri = uri;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private final Path dir;
+    private final int maxPerKey;
+    // Guarded by this: ids and number per key of the deliveries spooled, those waiting to be queued
+    // again, oldest first per key, and those waiting for their next attempt, the earliest due first.
+    private final Set<String> ids = new HashSet<>();
+    private final Map<String, Integer> spooled = new HashMap<>();
+    private final Map<String, ArrayDeque<Delivery>> deferred = new LinkedHashMap<>();
+    private final PriorityQueue<Delivery> retries = new PriorityQueue<>(Comparator.comparingLong(d -> d.retryAtNanos));
+
+    DeliverySpool(Path dir, int maxPerKey) {
+        this.dir = dir;
+        this.maxPerKey = maxPerKey;
+    }
+
+    /**
+     * Creates the directory and defers whatever a previous process left in it, to be replayed.
+     *
+     * @return The number of deliveries recovered.
+     */
+    synchronized int recover() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> modified = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path file : entries) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // Never acknowledged, so GitHub shows the delivery as failed.
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    files.add(file);
+                    modified.put(file, Files.getLastModifiedTime(file));
+                }
+            }
+        }
+        files.sort(Comparator.comparing(modified::get));
+        int recovered = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String key;
+            try (DataInputStream in = open(file)) {
+                key = in.readUTF();
+            } catch (IOException e) {
+                logger.severe("Unreadable spooled delivery " + file + ", moving it aside: " + e.getMessage());
+                moveToFailed(file);
+                continue;
+            }
+            Delivery delivery = new Delivery(name.substring(0, name.length() - SUFFIX.length()), key, Files.size(file));
+            ids.add(delivery.id);
+            spooled.merge(key, 1, Integer::sum);
+            deferred.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(delivery);
+            recovered++;
+        }
+        return recovered;
+    }
+
+    /**
+     * Writes a delivery to the spool and forces it to disk, unless one with the same id is spooled
+     * already, including one still being written.
+     *
+     * @param deliveryId X-GitHub-Delivery id, or empty if the delivery has none.
+     * @return The spooled delivery, {@link #DUPLICATE} if its id is spooled already, or null if its
+     *         key already holds {@code maxPerKey} deliveries.
+     * @throws IOException If it could not be written; nothing is then spooled.
+     */
+    Delivery accept(String deliveryId, String key, Content content) throws IOException {
+        Delivery delivery = new Delivery(deliveryId.isEmpty() ? UUID.randomUUID().toString() : fileName(deliveryId), key,
+                content.body.length);
+        synchronized (this) {
+            if (ids.contains(delivery.id)) {
+                return DUPLICATE;
+            }
+            if (spooled.getOrDefault(key, 0) >= maxPerKey) {
+                return null;
+            }
+            ids.add(delivery.id);
+            spooled.merge(key, 1, Integer::sum);
+        }
+        Path temp = dir.resolve(delivery.id + TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeUTF(key);
+                out.writeUTF(content.uri);
+                out.writeInt(content.headers.size());
+                for (Map.Entry<String, List<String>> header : content.headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeInt(header.getValue().size());
+                    for (String value : header.getValue()) {
+                        out.writeUTF(value);
+                    }
+                }
+                out.writeInt(content.body.length);
+                out.write(content.body);
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(temp, file(delivery.id + SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            release(delivery);
+            throw e;
+        }
+        return delivery;
+    }
+
+    /** Reads a spooled delivery back. */
+    Content read(Delivery delivery) throws IOException {
+        try (DataInputStream in = open(file(delivery.id + SUFFIX))) {
+            in.readUTF();
+            String uri = in.readUTF();
+            int headerCount = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                int valueCount = in.readInt();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int v = 0; v < valueCount; v++) {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, values);
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Content(uri, headers, body);
+        }
+    }
+
+    /** Returns true if the key has deliveries waiting to be queued again, which newer ones must not overtake. */
+    synchronized boolean hasDeferred(String key) {
+        return deferred.containsKey(key);
+    }
+
+    /** Keeps a delivery to be queued again by the next {@link #replay}. */
+    synchronized void defer(Delivery delivery) {
+        deferred.computeIfAbsent(delivery.key, k -> new ArrayDeque<>()).addLast(delivery);
+    }
+
+    /** Sets a delivery whose processing failed aside until {@code delay} from now. */
+    synchronized void retry(Delivery delivery, long delay, TimeUnit unit) {
+        delivery.retryAtNanos = System.nanoTime() + unit.toNanos(delay);
+        retries.add(delivery);
+    }
+
+    /** Deliveries set aside for a later attempt. */
+    synchronized int retryCount() {
+        return retries.size();
+    }
+
+    /**
+     * Offers the deliveries whose next attempt is due to {@code queue}, then the deferred ones,
+     * oldest first per key, until it refuses one of a key; that one and the rest of its key stay
+     * deferred.
+     */
+    void replay(Predicate<Delivery> queue) {
+        for (Delivery due = pollDueRetry(); due != null; due = pollDueRetry()) {
+            if (!queue.test(due)) {
+                synchronized (this) {
+                    retries.add(due);
+                }
+                break;
+            }
+        }
+        List<Delivery> heads = new ArrayList<>();
+        synchronized (this) {
+            heads.addAll(pollHeads());
+        }
+        while (!heads.isEmpty()) {
+            List<Delivery> next = new ArrayList<>();
+            for (Delivery delivery : heads) {
+                if (!queue.test(delivery)) {
+                    synchronized (this) {
+                        deferred.computeIfAbsent(delivery.key, k -> new ArrayDeque<>()).addFirst(delivery);
+                    }
+                    continue;
+                }
+                synchronized (this) {
+                    ArrayDeque<Delivery> waiting = deferred.get(delivery.key);
+                    if (waiting != null) {
+                        next.add(waiting.pollFirst());
+                        if (waiting.isEmpty()) {
+                            deferred.remove(delivery.key);
+                        }
+                    }
+                }
+            }
+            heads = next;
+        }
+    }
+
+    private synchronized Delivery pollDueRetry() {
+        Delivery next = retries.peek();
+        return next != null && next.retryAtNanos - System.nanoTime() <= 0 ? retries.poll() : null;
+    }
+
+    // Takes the oldest deferred delivery of every key; the key stays listed while more are waiting.
+    private List<Delivery> pollHeads() {
+        List<Delivery> heads = new ArrayList<>(deferred.size());
+        for (Iterator<ArrayDeque<Delivery>> it = deferred.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Delivery> waiting = it.next();
+            heads.add(waiting.pollFirst());
+            if (waiting.isEmpty()) {
+                it.remove();
+            }
+        }
+        return heads;
+    }
+
+    /** Removes a processed delivery. */
+    void done(Delivery delivery) throws IOException {
+        try {
+            Files.deleteIfExists(file(delivery.id + SUFFIX));
+        } finally {
+            release(delivery);
+        }
+    }
+
+    /** Moves a delivery that kept failing to the {@value #FAILED_DIR} directory, for an operator to look at. */
+    void failed(Delivery delivery) throws IOException {
+        try {
+            moveToFailed(file(delivery.id + SUFFIX));
+        } finally {
+            release(delivery);
+        }
+    }
+
+    /** Deliveries spooled, over all keys. */
+    synchronized int size() {
+        int size = 0;
+        for (int count : spooled.values()) {
+            size += count;
+        }
+        return size;
+    }
+
+    private synchronized void release(Delivery delivery) {
+        ids.remove(delivery.id);
+        spooled.computeIfPresent(delivery.key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void moveToFailed(Path file) throws IOException {
+        Path failed = Files.createDirectories(dir.resolve(FAILED_DIR));
+        Files.move(file, failed.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path file(String name) {
+        return dir.resolve(name);
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    }
+
+    // GitHub's delivery ids are GUIDs; anything else is reduced to characters safe in a file name.
+    private static String fileName(String deliveryId) {
+        StringBuilder name = new StringBuilder(deliveryId.length());
+        for (int i = 0; i < deliveryId.length() && name.length() < 128; i++) {
+            char c = deliveryId.charAt(i);
+            name.append(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' ? c : '_');
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package com.decozero;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Worker pool that shares its threads fairly between keys, here the tenants of a multi-tenant
+ * server.
+ *
+ * Each key has its own FIFO queue, and keys with queued work take turns round-robin: a worker runs
+ * one task of the key at the head of the ready ring and puts the key back at the tail. Every key is
+ * also a bulkhead. It never has more than {@code maxInFlightPerKey} tasks running, so a busy key
+ * cannot hold more than that share of the workers. Its queue is bounded, and tasks past the bound
+ * are refused rather than delaying the other keys. Each task also declares the bytes it holds in
+ * memory until it has run, and tasks past the overall byte bound are refused too.
+ * A key's queue is dropped once it is idle, so thousands of occasional keys cost nothing between
+ * their requests.
+ */
+final class FairShareExecutor {
+
+    private static final Logger logger = Logger.getLogger(FairShareExecutor.class.getName());
+
+    private static final class Task {
+        final Runnable runnable;
+        final long bytes;
+
+        Task(Runnable runnable, long bytes) {
+            this.runnable = runnable;
+            this.bytes = bytes;
+        }
+    }
+
+    // Queue and in-flight count of one key. Guarded by lock.
+    private static final class Lane {
+        final String key;
+        final ArrayDeque<Task> queue = new ArrayDeque<>();
+        int inFlight;
+        boolean ready;
+
+        Lane(String key) {
+            this.key = key;
+        }
+    }
+
+    private final int maxInFlightPerKey;
+    private final int maxQueuedPerKey;
+    private final long maxBytes;
+    private final Thread[] workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    // Lanes with queued tasks and room to run one, in turn order.
+    private final ArrayDeque<Lane> readyLanes = new ArrayDeque<>();
+    private int queued;
+    // Bytes held by the queued and running tasks.
+    private long bytes;
+    private boolean shutdown;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder rejectedByKey = new LongAdder();
+    private final LongAdder rejectedByTotal = new LongAdder();
+
+    /**
+     * @param maxBytes Bytes the queued and running tasks may hold together; a task larger than that
+     *                 is still taken when nothing else holds any.
+     */
+    FairShareExecutor(int threads, int maxInFlightPerKey, int maxQueuedPerKey, long maxBytes, String threadName) {
+        this.maxInFlightPerKey = maxInFlightPerKey;
+        this.maxQueuedPerKey = maxQueuedPerKey;
+        this.maxBytes = maxBytes;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, threadName + "-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a task behind the key's earlier ones.
+     *
+     * @param taskBytes Bytes the task holds in memory until it has run.
+     * @return False if the key's queue is full, the byte bound would be exceeded, or the executor is
+     *         shut down; the task is then not run.
+     */
+    boolean submit(String key, long taskBytes, Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return false;
+            }
+            if (bytes > 0 && bytes + taskBytes > maxBytes) {
+                rejectedByTotal.increment();
+                return false;
+            }
+            Lane lane = lanes.computeIfAbsent(key, Lane::new);
+            if (lane.queue.size() >= maxQueuedPerKey) {
+                rejectedByKey.increment();
+                return false;
+            }
+            lane.queue.addLast(new Task(task, taskBytes));
+            queued++;
+            bytes += taskBytes;
+            if (!lane.ready && lane.inFlight < maxInFlightPerKey) {
+                lane.ready = true;
+                readyLanes.addLast(lane);
+                workAvailable.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Lane lane;
+            Task task;
+            lock.lock();
+            try {
+                while (readyLanes.isEmpty() && !shutdown) {
+                    workAvailable.awaitUninterruptibly();
+                }
+                if (readyLanes.isEmpty()) {
+                    return;
+                }
+                lane = readyLanes.pollFirst();
+                task = lane.queue.pollFirst();
+                queued--;
+                lane.inFlight++;
+                // Back at the end of the ring for its next task, if it may run another.
+                lane.ready = !lane.queue.isEmpty() && lane.inFlight < maxInFlightPerKey;
+                if (lane.ready) {
+                    readyLanes.addLast(lane);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.runnable.run();
+            } catch (RuntimeException | Error e) {
+                logger.log(Level.SEVERE, "Task of " + lane.key + " failed", e);
+            }
+            executed.increment();
+
+            lock.lock();
+            try {
+                bytes -= task.bytes;
+                lane.inFlight--;
+                if (!lane.ready && !lane.queue.isEmpty()) {
+                    lane.ready = true;
+                    readyLanes.addLast(lane);
+                    workAvailable.signal();
+                } else if (lane.inFlight == 0 && lane.queue.isEmpty()) {
+                    lanes.remove(lane.key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Tasks waiting to run, over all keys. */
+    int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bytes held by the queued and running tasks. */
+    long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Keys with queued or running tasks. */
+    int activeKeys() {
+        lock.lock();
+        try {
+            return lanes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long executedCount() {
+        return executed.sum();
+    }
+
+    /** Tasks refused because their key's queue was full. */
+    long rejectedByKeyCount() {
+        return rejectedByKey.sum();
+    }
+
+    /** Tasks refused because they would have exceeded the byte bound. */
+    long rejectedByTotalCount() {
+        return rejectedByTotal.sum();
+    }
+
+    /** Refuses new tasks, runs the queued ones and waits up to {@code timeout} for the workers to finish. */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                worker.join(remaining);
+            }
+        }
+    }
+}
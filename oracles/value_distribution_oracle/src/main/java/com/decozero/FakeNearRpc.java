@@ -0,0 +1,100 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Local stand-in for the NEAR RPC, applying mints to in-memory balances.
+ *
+ * Used until the oracle signs real transactions, and to exercise batching offline. Each batch can
+ * be given a simulated finality latency and a failure rate. The active member set is set locally.
+ */
+final class FakeNearRpc implements NearMintClient, ActiveMembers.Source, ContributionLedger.BalanceSource {
+
+    private static final Logger logger = Logger.getLogger(FakeNearRpc.class.getName());
+
+    private final long latencyMillis;
+    private final double failureRate;
+    private final Map<String, BigInteger> balances = new HashMap<>();
+    private final AtomicLong nonce = new AtomicLong();
+    private volatile List<String> activeMembers = Collections.emptyList();
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    FakeNearRpc(long latency, TimeUnit unit, double failureRate) {
+        this.latencyMillis = unit.toMillis(latency);
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public String mintBatch(String contractId, Map<String, BigInteger> amounts) throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failures.increment();
+            throw new IOException("simulated RPC failure");
+        }
+        synchronized (balances) {
+            amounts.forEach((account, amount) -> balances.merge(account, amount, BigInteger::add));
+        }
+        transactions.increment();
+        actions.add(amounts.size());
+        String hash = "fake-tx-" + nonce.incrementAndGet();
+        logger.info(String.format("MOCK: Minted to %d account(s) on DeCo contract %s in transaction %s.",
+                amounts.size(), contractId, hash));
+        return hash;
+    }
+
+    /** Mirrors the contract's paginated {@code get_active_members} view. */
+    @Override
+    public List<String> activeMembers(String contractId, long fromIndex, int limit) {
+        List<String> members = activeMembers;
+        int from = (int) Math.min(fromIndex, members.size());
+        return members.subList(from, (int) Math.min((long) from + limit, members.size()));
+    }
+
+    /** Replaces the active member set, as {@code add_active_member}/{@code remove_active_member} would. */
+    void setActiveMembers(Collection<String> members) {
+        activeMembers = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(members)));
+    }
+
+    /** Mirrors the contract's {@code ft_balance_of} view. */
+    @Override
+    public BigInteger balanceOf(String accountId) {
+        synchronized (balances) {
+            return balances.getOrDefault(accountId, BigInteger.ZERO);
+        }
+    }
+
+    long transactionCount() {
+        return transactions.sum();
+    }
+
+    long actionCount() {
+        return actions.sum();
+    }
+
+    long failureCount() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,397 @@
+package com.decozero;
+
+import com.google.cloud.functions.HttpFunction;
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Standalone HTTP server for {@link DeCoValueDistributionFunction}, used as the entry point of the
+ * native executable and of the cold-start comparison with the JVM jar.
+ *
+ * Cloud Functions loads the function through the Functions Framework invoker, which finds it by
+ * reflection and runs it in Jetty; neither fits a native image. This adapter serves the function
+ * with the JDK's built-in HTTP server instead, on $PORT (default 8080), so the same code runs on
+ * Cloud Run as a native container.
+ *
+ * With TENANTS_PATH set, the function serves many DeCos (see {@link TenantRegistry}) and the server
+ * becomes their shared long-lived process. A webhook is then verified against its repository's
+ * secret as it arrives, written to a {@link DeliverySpool} and answered 202, and only processed
+ * afterwards, queued per repository on a {@link FairShareExecutor}. A repository flooding the server
+ * thus only fills its own queue and its own share of the spool, while the others keep their turns
+ * on the workers. GitHub does not redeliver on its own, so a delivery the queue cannot take yet
+ * stays in the spool and is replayed, rather than refused. Only a repository whose spool share is
+ * full gets a 503, which GitHub records as a failed delivery that can be redelivered by hand.
+ */
+public final class FunctionServer {
+
+    private static final Logger logger = Logger.getLogger(FunctionServer.class.getName());
+
+    private static final int PORT = Integer.parseInt(System.getenv().getOrDefault("PORT", "8080"));
+    // Threads running the function.
+    private static final int SERVER_THREADS = Integer.parseInt(System.getenv().getOrDefault("SERVER_THREADS", "16"));
+    private static final String TENANTS_PATH = System.getenv("TENANTS_PATH");
+    // Per repository: deliveries processed at once and deliveries queued in memory; more wait in the spool.
+    private static final int TENANT_MAX_IN_FLIGHT = Integer.parseInt(System.getenv().getOrDefault("TENANT_MAX_IN_FLIGHT", "2"));
+    private static final int TENANT_MAX_QUEUED = Integer.parseInt(System.getenv().getOrDefault("TENANT_MAX_QUEUED", "16"));
+    // Bytes of delivery content held in memory by queued and running deliveries, over all repositories.
+    private static final long SERVER_MAX_QUEUED_BYTES =
+            Long.parseLong(System.getenv().getOrDefault("SERVER_MAX_QUEUED_BYTES", "268435456"));
+    // Accepted deliveries are kept in DELIVERY_SPOOL_DIR until processed, at most TENANT_MAX_SPOOLED per
+    // repository. Spooled ones the queue could not take are offered again every SPOOL_REPLAY_INTERVAL_MS.
+    // Ones that failed with a 5xx are retried up to DELIVERY_MAX_ATTEMPTS times, the first time after
+    // SPOOL_REPLAY_INTERVAL_MS and then twice as late each time, up to DELIVERY_RETRY_MAX_BACKOFF_MS.
+    private static final String DELIVERY_SPOOL_DIR = System.getenv().getOrDefault("DELIVERY_SPOOL_DIR", "deco-deliveries");
+    private static final int TENANT_MAX_SPOOLED = Integer.parseInt(System.getenv().getOrDefault("TENANT_MAX_SPOOLED", "1000"));
+    private static final long SPOOL_REPLAY_INTERVAL_MS =
+            Long.parseLong(System.getenv().getOrDefault("SPOOL_REPLAY_INTERVAL_MS", "1000"));
+    private static final int DELIVERY_MAX_ATTEMPTS = Integer.parseInt(System.getenv().getOrDefault("DELIVERY_MAX_ATTEMPTS", "5"));
+    private static final long DELIVERY_RETRY_MAX_BACKOFF_MS =
+            Long.parseLong(System.getenv().getOrDefault("DELIVERY_RETRY_MAX_BACKOFF_MS", "300000"));
+    // Threads accepting requests, verifying and spooling them, in multi-tenant mode.
+    private static final int DISPATCH_THREADS = 2;
+
+    private FunctionServer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HttpFunction function = new DeCoValueDistributionFunction();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        if (TENANTS_PATH == null || TENANTS_PATH.isEmpty()) {
+            server.setExecutor(Executors.newFixedThreadPool(SERVER_THREADS));
+            server.createContext("/", exchange -> serve(function, exchange));
+        } else {
+            FairShareExecutor workers = new FairShareExecutor(SERVER_THREADS, TENANT_MAX_IN_FLIGHT, TENANT_MAX_QUEUED,
+                    SERVER_MAX_QUEUED_BYTES, "tenant-worker");
+            DeliverySpool spool = new DeliverySpool(Paths.get(DELIVERY_SPOOL_DIR), TENANT_MAX_SPOOLED);
+            int recovered = spool.recover();
+            if (recovered > 0) {
+                logger.info("Replaying " + recovered + " delivery(ies) left in " + DELIVERY_SPOOL_DIR);
+            }
+            ScheduledExecutorService replays = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "delivery-replay");
+                thread.setDaemon(true);
+                return thread;
+            });
+            replays.scheduleWithFixedDelay(() -> spool.replay(delivery -> queue(function, workers, spool, delivery, null)),
+                    0, SPOOL_REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            server.setExecutor(Executors.newFixedThreadPool(DISPATCH_THREADS));
+            server.createContext("/", exchange -> dispatch(function, workers, spool, exchange));
+        }
+        server.start();
+        logger.info("Value distribution function listening on port " + PORT);
+    }
+
+    // Spools verified webhooks and queues them by repository; everything else, such as metrics scrapes
+    // and deliveries that will be refused, is served right away.
+    private static void dispatch(HttpFunction function, FairShareExecutor workers, DeliverySpool spool,
+                                 HttpExchange exchange) throws IOException {
+        String repository = "POST".equals(exchange.getRequestMethod())
+                ? TenantRegistry.repositoryFromPath(exchange.getRequestURI().getPath()) : null;
+        if (repository == null) {
+            serve(function, exchange);
+            return;
+        }
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(DeCoValueDistributionFunction.WEBHOOK_MAX_BODY_BYTES + 1);
+        }
+        Map<String, List<String>> headers = caseInsensitive(exchange.getRequestHeaders());
+        DeliverySpool.Content content = new DeliverySpool.Content(exchange.getRequestURI().toString(), headers, body);
+        // Verified before it takes a place in a repository's queue, so only the repository can fill it.
+        String signature = first(headers, "X-Hub-Signature-256");
+        if (body.length > DeCoValueDistributionFunction.WEBHOOK_MAX_BODY_BYTES
+                || !DeCoValueDistributionFunction.isAuthentic(exchange.getRequestURI().getPath(), signature, body)) {
+            serve(function, new Request(exchange.getRequestMethod(), content), exchange);
+            return;
+        }
+        String deliveryId = Optional.ofNullable(first(headers, "X-GitHub-Delivery")).orElse("");
+        String key = repository.toLowerCase(Locale.ROOT);
+        DeliverySpool.Delivery delivery;
+        try {
+            delivery = spool.accept(deliveryId, key, content);
+        } catch (IOException e) {
+            logger.severe("Could not spool delivery " + deliveryId + " to " + repository + ": " + e.getMessage());
+            respond(exchange, 503, "Delivery could not be stored.");
+            return;
+        }
+        if (delivery == DeliverySpool.DUPLICATE) {
+            respond(exchange, 202, "Delivery " + deliveryId + " already accepted.");
+            return;
+        }
+        if (delivery == null) {
+            exchange.getResponseHeaders().set("Retry-After", "60");
+            respond(exchange, 503, "Too many deliveries pending for " + repository + ".");
+            return;
+        }
+        respond(exchange, 202, "Delivery accepted.");
+        // Behind the repository's deferred deliveries, if it has any, so they keep their order.
+        if (spool.hasDeferred(key) || !queue(function, workers, spool, delivery, content)) {
+            spool.defer(delivery);
+        }
+    }
+
+    // Queues a spooled delivery; its content is read back from the spool if not given.
+    private static boolean queue(HttpFunction function, FairShareExecutor workers, DeliverySpool spool,
+                                 DeliverySpool.Delivery delivery, DeliverySpool.Content content) {
+        return workers.submit(delivery.key, delivery.bytes, () -> process(function, spool, delivery, content));
+    }
+
+    // Runs the function on a spooled delivery, and drops it from the spool unless it failed in a way worth retrying.
+    private static void process(HttpFunction function, DeliverySpool spool, DeliverySpool.Delivery delivery,
+                                DeliverySpool.Content content) {
+        Response response = new Response();
+        try {
+            DeliverySpool.Content spooled = content != null ? content : spool.read(delivery);
+            function.service(new Request("POST", spooled), response);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Unhandled error processing delivery " + delivery.id, e);
+            response.setStatusCode(500);
+        }
+        try {
+            if (response.status < 500) {
+                spool.done(delivery);
+            } else if (++delivery.attempts < DELIVERY_MAX_ATTEMPTS) {
+                long backoff = Math.min(DELIVERY_RETRY_MAX_BACKOFF_MS, SPOOL_REPLAY_INTERVAL_MS << Math.min(delivery.attempts - 1, 30));
+                spool.retry(delivery, backoff, TimeUnit.MILLISECONDS);
+            } else {
+                logger.severe("Delivery " + delivery.id + " to " + delivery.key + " failed " + delivery.attempts
+                        + " times, moved to the spool's failed directory.");
+                spool.failed(delivery);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not remove delivery " + delivery.id + " from the spool: " + e.getMessage());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void serve(HttpFunction function, HttpExchange exchange) throws IOException {
+        serve(function, new Request(exchange), exchange);
+    }
+
+    private static void serve(HttpFunction function, Request request, HttpExchange exchange) throws IOException {
+        Response response = new Response();
+        try {
+            function.service(request, response);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Unhandled error in function", e);
+            response.reset();
+            response.setStatusCode(500);
+        }
+        response.send(exchange);
+    }
+
+    // Header lookups are case-insensitive, as in the Functions Framework.
+    private static Map<String, List<String>> caseInsensitive(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> copy.computeIfAbsent(name, k -> new ArrayList<>()).addAll(values));
+        return copy;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static final class Request implements HttpRequest {
+        private final String method;
+        private final URI uri;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        Request(HttpExchange exchange) {
+            this(exchange.getRequestMethod(), exchange.getRequestURI(), caseInsensitive(exchange.getRequestHeaders()),
+                    exchange.getRequestBody());
+        }
+
+        // A request whose body was already read, from the exchange or from the spool.
+        Request(String method, DeliverySpool.Content content) {
+            this(method, URI.create(content.uri), caseInsensitive(content.headers), new ByteArrayInputStream(content.body));
+        }
+
+        private Request(String method, URI uri, Map<String, List<String>> headers, InputStream body) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getUri() {
+            return uri.toString();
+        }
+
+        @Override
+        public String getPath() {
+            return uri.getPath();
+        }
+
+        @Override
+        public Optional<String> getQuery() {
+            return Optional.ofNullable(uri.getRawQuery());
+        }
+
+        @Override
+        public Map<String, List<String>> getQueryParameters() {
+            Map<String, List<String>> parameters = new TreeMap<>();
+            String query = uri.getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                    String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                    parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+                }
+            }
+            return parameters;
+        }
+
+        @Override
+        public Map<String, HttpPart> getParts() {
+            // Webhooks are JSON; multipart bodies are not parsed.
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Optional<String> getContentType() {
+            return getFirstHeader("Content-Type");
+        }
+
+        @Override
+        public long getContentLength() {
+            return getFirstHeader("Content-Length").map(Long::parseLong).orElse(-1L);
+        }
+
+        @Override
+        public Optional<String> getCharacterEncoding() {
+            return getContentType().flatMap(type -> {
+                int charset = type.toLowerCase().indexOf("charset=");
+                return charset < 0 ? Optional.empty() : Optional.of(type.substring(charset + "charset=".length()).trim());
+            });
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+    }
+
+    // Buffers the response so that its length is known when the headers are sent.
+    private static final class Response implements HttpResponse {
+        private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private BufferedWriter writer;
+        private int status = 200;
+
+        @Override
+        public void setStatusCode(int code) {
+            status = code;
+        }
+
+        @Override
+        public void setStatusCode(int code, String message) {
+            status = code;
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            headers.put("Content-Type", new ArrayList<>(Collections.singletonList(contentType)));
+        }
+
+        @Override
+        public Optional<String> getContentType() {
+            List<String> values = headers.get("Content-Type");
+            return values == null || values.isEmpty() ? Optional.empty() : Optional.of(values.get(0));
+        }
+
+        @Override
+        public void appendHeader(String header, String value) {
+            headers.computeIfAbsent(header, k -> new ArrayList<>()).add(value);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return body;
+        }
+
+        @Override
+        public BufferedWriter getWriter() {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+            }
+            return writer;
+        }
+
+        void reset() {
+            body = new ByteArrayOutputStream();
+            writer = null;
+        }
+
+        void send(HttpExchange exchange) throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            headers.forEach((name, values) -> exchange.getResponseHeaders().put(name, values));
+            byte[] bytes = body.toByteArray();
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.decozero;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Classifies text by keywords, with one Aho-Corasick automaton per {@link Subject}.
+ *
+ * Keywords are matched case-insensitively in a single pass over the text, without copying or
+ * lower-casing it, so classifying allocates nothing. A keyword matches whole words: "bug" does not
+ * match "debug", and "bug*" also matches "bugs" and "buggy". When several keywords match, the one
+ * configured first decides the type.
+ *
+ * Keywords are written as a '|'-separated list per contribution type, e.g. {@code bug*|crash*|critical}.
+ * They come from the optional {@code keywords} column of a repository's values.csv (see
+ * {@link #fromRules}), from a sidecar file of {@code subject,contribution_type,keywords} rows (see
+ * {@link #parse}), or from the built-in {@link #defaults()}.
+ */
+final class KeywordClassifier implements ContributionClassifier {
+
+    private static final Logger logger = Logger.getLogger(KeywordClassifier.class.getName());
+
+    /** Contribution types classified from issue titles; keywords of every other type apply to comments. */
+    static final String ISSUE_TYPE_PREFIX = "issue_report";
+
+    private static final String[][] DEFAULT_KEYWORDS = {
+            {"issue", "issue_report_critical", "bug*|error*|crash*|critical"},
+            {"comment", "suggestion", "suggestion*|suggest|idea:|proposal"},
+    };
+    private static final KeywordClassifier DEFAULTS = compile(defaultKeywords());
+
+    /** One configured keyword. */
+    static final class Keyword {
+        final Subject subject;
+        final String contributionType;
+        final String text;
+        /** Also matches longer words starting with the text. */
+        final boolean prefix;
+
+        Keyword(Subject subject, String contributionType, String text, boolean prefix) {
+            this.subject = subject;
+            this.contributionType = contributionType;
+            this.text = text;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Keyword)) {
+                return false;
+            }
+            Keyword other = (Keyword) o;
+            return subject == other.subject && prefix == other.prefix
+                    && contributionType.equals(other.contributionType) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return (subject.hashCode() * 31 + contributionType.hashCode()) * 31 + text.hashCode();
+        }
+    }
+
+    // Automata by Subject ordinal; null where a subject has no keywords.
+    private final Automaton[] automata = new Automaton[Subject.values().length];
+    // Contribution types with keywords, by Subject ordinal.
+    private final List<Set<String>> types = new ArrayList<>(Subject.values().length);
+    private final int keywordCount;
+
+    private KeywordClassifier(List<Keyword> keywords) {
+        for (Subject subject : Subject.values()) {
+            List<Keyword> own = new ArrayList<>();
+            Set<String> ownTypes = new HashSet<>();
+            for (Keyword keyword : keywords) {
+                if (keyword.subject == subject) {
+                    own.add(keyword);
+                    ownTypes.add(keyword.contributionType);
+                }
+            }
+            types.add(ownTypes);
+            if (!own.isEmpty()) {
+                automata[subject.ordinal()] = new Automaton(own);
+            }
+        }
+        this.keywordCount = keywords.size();
+    }
+
+    /** Compiles keywords, earlier ones taking precedence. Duplicates are dropped. */
+    static KeywordClassifier compile(List<Keyword> keywords) {
+        return new KeywordClassifier(new ArrayList<>(new LinkedHashSet<>(keywords)));
+    }
+
+    /** The built-in keywords, used when neither values.csv nor a sidecar file configures any. */
+    static KeywordClassifier defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Builds a classifier from the {@code keywords} column of values.csv rules, or returns null if
+     * no rule has keywords.
+     */
+    static KeywordClassifier fromRules(Iterable<ContributionRule> rules) {
+        List<Keyword> keywords = new ArrayList<>();
+        for (ContributionRule rule : rules) {
+            if (!rule.keywords.isEmpty()) {
+                Subject subject = rule.contributionType.startsWith(ISSUE_TYPE_PREFIX) ? Subject.ISSUE : Subject.COMMENT;
+                keywords.addAll(parseKeywords(subject, rule.contributionType, rule.keywords));
+            }
+        }
+        return keywords.isEmpty() ? null : compile(keywords);
+    }
+
+    /**
+     * Reads a sidecar keyword file: CSV rows of {@code subject,contribution_type,keywords}, where the
+     * subject is "issue" or "comment". Comment lines starting with '#', the header and malformed rows
+     * are skipped.
+     *
+     * @param reader Reader positioned at the start of the file. Not closed by this method.
+     */
+    static List<Keyword> parse(Reader reader) throws IOException, CsvValidationException {
+        List<Keyword> keywords = new ArrayList<>();
+        CSVReader csvReader = new CSVReader(reader);
+        String[] line;
+        while ((line = csvReader.readNext()) != null) {
+            if (line.length == 0 || line[0].trim().isEmpty() || line[0].trim().startsWith("#")) {
+                continue;
+            }
+            Subject subject = Subject.fromLabel(line[0].trim());
+            if (subject == null || line.length < 3 || line[1].trim().isEmpty()) {
+                if (!"subject".equalsIgnoreCase(line[0].trim())) {
+                    logger.warning("Skipping malformed keyword line: " + String.join(",", line));
+                }
+                continue;
+            }
+            keywords.addAll(parseKeywords(subject, line[1].trim(), line[2]));
+        }
+        return keywords;
+    }
+
+    // "bug*|crash*|critical" -> keywords, in order.
+    static List<Keyword> parseKeywords(Subject subject, String contributionType, String spec) {
+        List<Keyword> keywords = new ArrayList<>();
+        for (String token : spec.split("\\|")) {
+            String text = fold(token.trim());
+            boolean prefix = text.endsWith("*");
+            if (prefix) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (!text.isEmpty()) {
+                keywords.add(new Keyword(subject, contributionType, text, prefix));
+            }
+        }
+        return keywords;
+    }
+
+    private static List<Keyword> defaultKeywords() {
+        List<Keyword> keywords = new ArrayList<>();
+        for (String[] row : DEFAULT_KEYWORDS) {
+            keywords.addAll(parseKeywords(Subject.fromLabel(row[0]), row[1], row[2]));
+        }
+        return keywords;
+    }
+
+    @Override
+    public String classify(Subject subject, String text) {
+        Automaton automaton = automata[subject.ordinal()];
+        return automaton == null || text == null ? null : automaton.match(text);
+    }
+
+    /** Returns true if any keyword applies to the subject. */
+    boolean covers(Subject subject) {
+        return automata[subject.ordinal()] != null;
+    }
+
+    /** Returns true if some keyword classifies the subject as the contribution type. */
+    boolean produces(Subject subject, String contributionType) {
+        return types.get(subject.ordinal()).contains(contributionType);
+    }
+
+    int keywordCount() {
+        return keywordCount;
+    }
+
+    // Lower-cases char by char, as the text is folded while matching.
+    private static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Aho-Corasick automaton of one subject's keywords, compiled to a full transition table over the
+     * keywords' own characters; every other character is symbol 0 and leads back towards the root.
+     */
+    private static final class Automaton {
+        // Symbol of each ASCII character, upper case folded in, and the sorted non-ASCII characters
+        // (symbol = otherBase + index).
+        private final int[] asciiSymbol = new int[128];
+        private final char[] otherChars;
+        private final int otherBase;
+        private final int width;
+        // transitions[state * width + symbol] is the next state's row, next * width, or its complement
+        // if keywords end in the next state, so matching needs neither a multiply nor an output lookup
+        // per character.
+        private final int[] transitions;
+        // Per state, the keywords ending there (including through failure links), or null.
+        private final int[][] outputs;
+        private final Keyword[] keywords;
+        private final int[] lengths;
+
+        Automaton(List<Keyword> keywordList) {
+            this.keywords = keywordList.toArray(new Keyword[0]);
+            this.lengths = new int[keywords.length];
+
+            Set<Character> other = new TreeSet<>();
+            int ascii = 0;
+            for (Keyword keyword : keywords) {
+                for (char c : keyword.text.toCharArray()) {
+                    if (c < 128) {
+                        if (asciiSymbol[c] == 0) {
+                            asciiSymbol[c] = ++ascii;
+                        }
+                    } else {
+                        other.add(c);
+                    }
+                }
+            }
+            this.otherChars = new char[other.size()];
+            int i = 0;
+            for (char c : other) {
+                otherChars[i++] = c;
+            }
+            this.otherBase = ascii + 1;
+            this.width = otherBase + otherChars.length;
+            for (char c = 'A'; c <= 'Z'; c++) {
+                asciiSymbol[c] = asciiSymbol[Character.toLowerCase(c)];
+            }
+
+            // Trie, with its states numbered in creation order.
+            List<Map<Integer, Integer>> children = new ArrayList<>();
+            List<List<Integer>> terminals = new ArrayList<>();
+            children.add(new HashMap<>());
+            terminals.add(new ArrayList<>());
+            for (int k = 0; k < keywords.length; k++) {
+                int state = 0;
+                String text = keywords[k].text;
+                lengths[k] = text.length();
+                for (int j = 0; j < text.length(); j++) {
+                    int symbol = symbol(text.charAt(j));
+                    Integer next = children.get(state).get(symbol);
+                    if (next == null) {
+                        next = children.size();
+                        children.add(new HashMap<>());
+                        terminals.add(new ArrayList<>());
+                        children.get(state).put(symbol, next);
+                    }
+                    state = next;
+                }
+                terminals.get(state).add(k);
+            }
+
+            // Breadth-first, each state's failure link and missing transitions come from shallower states.
+            int states = children.size();
+            this.transitions = new int[states * width];
+            this.outputs = new int[states][];
+            int[] failure = new int[states];
+            outputs[0] = toArray(terminals.get(0), null);
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int symbol = 0; symbol < width; symbol++) {
+                Integer child = children.get(0).get(symbol);
+                if (child != null) {
+                    transitions[symbol] = child;
+                    failure[child] = 0;
+                    queue.add(child);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                outputs[state] = toArray(terminals.get(state), outputs[failure[state]]);
+                for (int symbol = 0; symbol < width; symbol++) {
+                    Integer child = children.get(state).get(symbol);
+                    int viaFailure = transitions[failure[state] * width + symbol];
+                    if (child != null) {
+                        transitions[state * width + symbol] = child;
+                        failure[child] = viaFailure;
+                        queue.add(child);
+                    } else {
+                        transitions[state * width + symbol] = viaFailure;
+                    }
+                }
+            }
+            for (int t = 0; t < transitions.length; t++) {
+                int next = transitions[t];
+                transitions[t] = outputs[next] == null ? next * width : ~(next * width);
+            }
+        }
+
+        private int symbol(char c) {
+            if (c < 128) {
+                return asciiSymbol[c];
+            }
+            int index = Arrays.binarySearch(otherChars, Character.toLowerCase(c));
+            return index < 0 ? 0 : otherBase + index;
+        }
+
+        // Returns the type of the earliest-configured keyword found in the text, or null.
+        String match(String text) {
+            int best = Integer.MAX_VALUE;
+            int row = 0;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                row = transitions[row + (c < 128 ? asciiSymbol[c] : symbol(c))];
+                if (row < 0) {
+                    row = ~row;
+                    for (int k : outputs[row / width]) {
+                        if (k < best && atWordBoundaries(k, text, i)) {
+                            best = k;
+                        }
+                    }
+                    if (best == 0) {
+                        break;
+                    }
+                }
+            }
+            return best == Integer.MAX_VALUE ? null : keywords[best].contributionType;
+        }
+
+        // A keyword starting or ending with a word character must not be part of a longer word there.
+        private boolean atWordBoundaries(int k, String text, int end) {
+            Keyword keyword = keywords[k];
+            int start = end - lengths[k] + 1;
+            if (start > 0 && isWordChar(keyword.text.charAt(0)) && isWordChar(text.charAt(start - 1))) {
+                return false;
+            }
+            return keyword.prefix || end + 1 >= text.length()
+                    || !isWordChar(keyword.text.charAt(lengths[k] - 1)) || !isWordChar(text.charAt(end + 1));
+        }
+
+        private static int[] toArray(List<Integer> own, int[] inherited) {
+            int inheritedCount = inherited == null ? 0 : inherited.length;
+            if (own.isEmpty() && inheritedCount == 0) {
+                return null;
+            }
+            int[] all = new int[own.size() + inheritedCount];
+            for (int i = 0; i < own.size(); i++) {
+                all[i] = own.get(i);
+            }
+            if (inheritedCount > 0) {
+                System.arraycopy(inherited, 0, all, own.size(), inheritedCount);
+            }
+            return all;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.decozero;
+
+/**
+ * Tokens to mint to one contributor, aggregated over one or more scored contributions.
+ */
+final class MintAward {
+    final String contributor;
+    final String role;
+    final double amount;
+    final int contributions;
+
+    MintAward(String contributor, String role, double amount, int contributions) {
+        this.contributor = contributor;
+        this.role = role;
+        this.amount = amount;
+        this.contributions = contributions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s): %f tokens for %d contribution(s)", contributor, role, amount, contributions);
+    }
+}
@@ -0,0 +1,254 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Coalesces mint awards per account and submits them as batched NEAR transactions.
+ *
+ * Submitted awards are written to the {@link MintLog} first and summed per account in memory. The
+ * pending batch is flushed when it covers {@code maxAccounts} accounts, and in any case every flush
+ * interval, in transactions of at most {@code maxAccounts} accounts each: a backlog that built up
+ * while NEAR was unreachable goes out as several transactions rather than one too large to land. A
+ * failed transaction stops the flush and leaves its awards and the rest pending for the next one.
+ *
+ * Without a client, awards are only logged: nothing is flushed, so none is marked minted and the
+ * log keeps them all for a process that can mint them.
+ */
+class MintBatcher implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(MintBatcher.class.getName());
+
+    private final NearMintClient client;
+    private final String contractId;
+    private final MintLog log;
+    private final int tokenDecimals;
+    private final int maxAccounts;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private volatile ScheduledFuture<?> periodicFlush;
+
+    // Pending amount per account, and the highest log sequence number they include.
+    private Map<String, BigInteger> pending = new LinkedHashMap<>();
+    private long pendingSeq;
+    private final Object flushLock = new Object();
+
+    private final LongAdder awards = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder mintedAccounts = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /**
+     * @param client        Client submitting the transactions, or null to only log the awards.
+     * @param tokenDecimals Decimals of the DeCo token; award amounts are converted to its smallest units.
+     * @param maxAccounts   Number of pending accounts that triggers an immediate flush, and the most
+     *                      accounts minted to in one transaction.
+     */
+    MintBatcher(NearMintClient client, String contractId, MintLog log, int tokenDecimals,
+                int maxAccounts, long flushInterval, TimeUnit unit) {
+        this(client, contractId, log, tokenDecimals, maxAccounts, flushInterval, unit, null);
+    }
+
+    /**
+     * @param scheduler Executor shared with other batchers for the flushes, or null for a thread of
+     *                  this batcher's own. A shared executor is not shut down by {@link #close()}.
+     */
+    MintBatcher(NearMintClient client, String contractId, MintLog log, int tokenDecimals,
+                int maxAccounts, long flushInterval, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.contractId = contractId;
+        this.log = log;
+        this.tokenDecimals = tokenDecimals;
+        this.maxAccounts = maxAccounts;
+        this.flushIntervalMillis = unit.toMillis(flushInterval);
+        this.ownsScheduler = scheduler == null;
+        this.scheduler = scheduler != null ? scheduler : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mint-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Re-queues awards left unminted by a previous run and starts the periodic flush.
+     */
+    void start() throws IOException {
+        List<MintLog.Entry> recovered = log.recover();
+        synchronized (this) {
+            for (MintLog.Entry entry : recovered) {
+                pending.merge(entry.account, entry.amount, BigInteger::add);
+                pendingSeq = Math.max(pendingSeq, entry.seq);
+            }
+        }
+        if (client == null) {
+            logger.warning("No NEAR client for contract " + contractId + "; awards are kept in the mint log, not minted");
+            return;
+        }
+        periodicFlush = scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Durably queues awards for minting. Returns once they are in the log, not once minted.
+     */
+    void submit(List<MintAward> batch) throws IOException {
+        List<String> accounts = new ArrayList<>(batch.size());
+        List<BigInteger> amounts = new ArrayList<>(batch.size());
+        for (MintAward award : batch) {
+            BigInteger amount = toUnits(award.amount);
+            if (amount.signum() > 0) {
+                accounts.add(award.contributor);
+                amounts.add(amount);
+            }
+        }
+        if (accounts.isEmpty()) {
+            return;
+        }
+        boolean full;
+        // Logging and queueing under one lock keeps pending in log order for the "flushed" mark.
+        synchronized (this) {
+            for (MintLog.Entry entry : log.append(accounts, amounts)) {
+                pending.merge(entry.account, entry.amount, BigInteger::add);
+                pendingSeq = entry.seq;
+            }
+            full = pending.size() >= maxAccounts;
+        }
+        awards.add(accounts.size());
+        if (full && client != null) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Submits everything pending, {@code maxAccounts} accounts per transaction. Does nothing without
+     * a client.
+     *
+     * @return Number of accounts minted to.
+     */
+    int flush() throws IOException {
+        if (client == null) {
+            return 0;
+        }
+        synchronized (flushLock) {
+            Map<String, BigInteger> batch;
+            long batchSeq;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                batchSeq = pendingSeq;
+                pending = new LinkedHashMap<>();
+            }
+            List<Map<String, BigInteger>> chunks = chunks(batch);
+            int sent = 0;
+            int minted = 0;
+            try {
+                for (Map<String, BigInteger> chunk : chunks) {
+                    String hash = client.mintBatch(contractId, chunk);
+                    sent++;
+                    // Every award up to batchSeq is in this batch, so the last chunk marks them all.
+                    if (sent == chunks.size()) {
+                        log.flushed(batchSeq);
+                    } else {
+                        log.flushed(batchSeq, chunk.keySet());
+                    }
+                    flushes.increment();
+                    mintedAccounts.add(chunk.size());
+                    minted += chunk.size();
+                    logger.info("Minted to " + chunk.size() + " account(s) in transaction " + hash);
+                }
+                return minted;
+            } catch (IOException | RuntimeException e) {
+                flushFailures.increment();
+                throw e;
+            } finally {
+                if (sent < chunks.size()) {
+                    requeue(chunks.subList(sent, chunks.size()));
+                }
+            }
+        }
+    }
+
+    private List<Map<String, BigInteger>> chunks(Map<String, BigInteger> batch) {
+        List<Map<String, BigInteger>> chunks = new ArrayList<>();
+        Map<String, BigInteger> chunk = null;
+        for (Map.Entry<String, BigInteger> entry : batch.entrySet()) {
+            if (chunk == null || chunk.size() >= maxAccounts) {
+                chunk = new LinkedHashMap<>();
+                chunks.add(chunk);
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+        }
+        return chunks;
+    }
+
+    // Puts unsent awards back ahead of those submitted since, so they go out first next time.
+    private synchronized void requeue(List<Map<String, BigInteger>> unsent) {
+        Map<String, BigInteger> requeued = new LinkedHashMap<>();
+        for (Map<String, BigInteger> chunk : unsent) {
+            requeued.putAll(chunk);
+        }
+        pending.forEach((account, amount) -> requeued.merge(account, amount, BigInteger::add));
+        pending = requeued;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Mint batch failed, will retry on the next flush: " + e.getMessage());
+        }
+    }
+
+    private BigInteger toUnits(double amount) {
+        return BigDecimal.valueOf(amount).movePointRight(tokenDecimals).setScale(0, RoundingMode.DOWN).toBigInteger();
+    }
+
+    synchronized int pendingAccounts() {
+        return pending.size();
+    }
+
+    long awardCount() {
+        return awards.sum();
+    }
+
+    long flushCount() {
+        return flushes.sum();
+    }
+
+    long mintedAccountCount() {
+        return mintedAccounts.sum();
+    }
+
+    long flushFailureCount() {
+        return flushFailures.sum();
+    }
+
+    /** Stops the periodic flush and makes a last attempt to mint what is pending. */
+    @Override
+    public void close() throws IOException {
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        } else if (periodicFlush != null) {
+            periodicFlush.cancel(false);
+        }
+        try {
+            flush();
+        } finally {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.decozero;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Write-ahead log of awards waiting to be minted.
+ *
+ * Awards are appended as "award seq account amount" lines and forced to disk before the webhook
+ * is acknowledged. The account is percent-escaped, so one with a space or a line break still reads
+ * back as four fields. After a batch transaction succeeds, a "flushed seq" line marks every award up
+ * to that sequence number as minted; "flushed seq account..." marks only those accounts' awards, for
+ * a batch minted in several transactions of which not all went through. A crash between a
+ * transaction and its "flushed" record mints those awards again on recovery, so delivery is at
+ * least once.
+ *
+ * The log is compacted to the unminted awards on recovery, and while running whenever it has
+ * doubled since the last compaction and is past a minimum size.
+ */
+class MintLog implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(MintLog.class.getName());
+
+    /** One logged award, in the token's smallest units. */
+    static final class Entry {
+        final long seq;
+        final String account;
+        final BigInteger amount;
+
+        Entry(long seq, String account, BigInteger amount) {
+            this.seq = seq;
+            this.account = account;
+            this.amount = amount;
+        }
+    }
+
+    static final long DEFAULT_COMPACT_MIN_BYTES = 1 << 20;
+
+    private final Path path;
+    private final long compactMinBytes;
+    private FileChannel channel;
+    private Writer writer;
+    private long lastSeq;
+    // Size of the log right after it was last compacted.
+    private long compactedBytes;
+
+    MintLog(Path path) {
+        this(path, DEFAULT_COMPACT_MIN_BYTES);
+    }
+
+    /** @param compactMinBytes Size below which the log is never compacted while running. */
+    MintLog(Path path, long compactMinBytes) {
+        this.path = path;
+        this.compactMinBytes = compactMinBytes;
+    }
+
+    /**
+     * Reads the log, compacts it to the unminted awards and opens it for appending.
+     *
+     * @return Awards logged but not yet minted, in sequence order.
+     */
+    synchronized List<Entry> recover() throws IOException {
+        List<Entry> pending = read();
+        rewrite(pending);
+        open();
+        if (!pending.isEmpty()) {
+            logger.info("Recovered " + pending.size() + " unminted award(s) from " + path);
+        }
+        return pending;
+    }
+
+    /**
+     * Durably appends awards. Returns only once they are on disk.
+     *
+     * @return The logged entries with their sequence numbers.
+     */
+    synchronized List<Entry> append(List<String> accounts, List<BigInteger> amounts) throws IOException {
+        List<Entry> logged = new ArrayList<>(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            Entry entry = new Entry(++lastSeq, accounts.get(i), amounts.get(i));
+            writer.write(awardRecord(entry));
+            logged.add(entry);
+        }
+        writer.flush();
+        channel.force(false);
+        return logged;
+    }
+
+    /** Marks every award up to {@code seq} as minted. Not forced; at worst they are minted again. */
+    synchronized void flushed(long seq) throws IOException {
+        writer.write("flushed " + seq + "\n");
+        writer.flush();
+        compactIfGrown();
+    }
+
+    /** Marks the awards up to {@code seq} to the given accounts as minted. */
+    synchronized void flushed(long seq, Collection<String> accounts) throws IOException {
+        StringBuilder record = new StringBuilder("flushed ").append(seq);
+        for (String account : accounts) {
+            record.append(' ').append(escape(account));
+        }
+        writer.write(record.append('\n').toString());
+        writer.flush();
+        compactIfGrown();
+    }
+
+    // --- Compaction ---
+
+    // Reads the awards not yet minted, and advances lastSeq past everything in the log.
+    private List<Entry> read() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long flushed = 0;
+        Map<String, Long> accountFlushed = new HashMap<>();
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                int number = 0;
+                while ((line = reader.readLine()) != null) {
+                    number++;
+                    String[] parts = line.split(" ");
+                    try {
+                        if (parts.length == 4 && "award".equals(parts[0])) {
+                            entries.add(new Entry(Long.parseLong(parts[1]), unescape(parts[2]), new BigInteger(parts[3])));
+                            continue;
+                        } else if (parts.length == 2 && "flushed".equals(parts[0])) {
+                            flushed = Math.max(flushed, Long.parseLong(parts[1]));
+                            continue;
+                        } else if (parts.length > 2 && "flushed".equals(parts[0])) {
+                            long seq = Long.parseLong(parts[1]);
+                            for (int i = 2; i < parts.length; i++) {
+                                accountFlushed.merge(unescape(parts[i]), seq, Math::max);
+                            }
+                            continue;
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // Unparseable number or escape; reported below.
+                    }
+                    // Normally only a torn last line from a crash mid-write; anything else is an award lost.
+                    logger.warning("Skipping unreadable line " + number + " of mint log " + path + ": " + line);
+                }
+            }
+        }
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.seq > flushed && entry.seq > accountFlushed.getOrDefault(entry.account, 0L)) {
+                pending.add(entry);
+            }
+            lastSeq = Math.max(lastSeq, entry.seq);
+        }
+        lastSeq = Math.max(lastSeq, flushed);
+        return pending;
+    }
+
+    private void rewrite(List<Entry> pending) throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Entry entry : pending) {
+                out.write(awardRecord(entry));
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+        compactedBytes = channel.size();
+    }
+
+    // Compaction only saves space: if it fails, the full log stays in place and open for appending.
+    private void compactIfGrown() throws IOException {
+        long size = channel.size();
+        if (size < compactMinBytes || size < 2 * compactedBytes) {
+            return;
+        }
+        List<Entry> pending = read();
+        try {
+            rewrite(pending);
+        } catch (IOException e) {
+            logger.warning("Could not compact mint log " + path + ": " + e.getMessage());
+            compactedBytes = size;
+            return;
+        }
+        // The writer still points at the replaced file; reopen it on the compacted one.
+        try {
+            writer.close();
+        } finally {
+            open();
+        }
+        logger.info("Compacted mint log " + path + " from " + size + " to " + compactedBytes + " bytes");
+    }
+
+
+    private static String awardRecord(Entry entry) {
+        return "award " + entry.seq + " " + escape(entry.account) + " " + entry.amount + "\n";
+    }
+
+    // Percent-escapes the characters that would break a record: '%' itself, spaces and line breaks.
+    static String escape(String account) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < account.length(); i++) {
+            char c = account.charAt(i);
+            if (c == '%' || c == ' ' || c == '\n' || c == '\r') {
+                if (escaped == null) {
+                    escaped = new StringBuilder(account.length() + 8).append(account, 0, i);
+                }
+                escaped.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+        return escaped == null ? account : escaped.toString();
+    }
+
+    /** @throws IllegalArgumentException If an escape is malformed. */
+    static String unescape(String field) {
+        int percent = field.indexOf('%');
+        if (percent < 0) {
+            return field;
+        }
+        StringBuilder account = new StringBuilder(field.length()).append(field, 0, percent);
+        for (int i = percent; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '%') {
+                account.append(c);
+                continue;
+            }
+            if (i + 2 >= field.length()) {
+                throw new IllegalArgumentException("Truncated escape in " + field);
+            }
+            int high = Character.digit(field.charAt(i + 1), 16);
+            int low = Character.digit(field.charAt(i + 2), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Malformed escape in " + field);
+            }
+            account.append((char) (high << 4 | low));
+            i += 2;
+        }
+        return account.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.decozero;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Classifies text with a model behind an HTTP endpoint, falling back to a fast classifier.
+ *
+ * The endpoint is POSTed {@code {"subject": "issue", "text": "..."}} and answers
+ * {@code {"contribution_type": "suggestion"}}, or a null or missing type when the text earns
+ * nothing specific. Answers are cached in a bounded LRU map keyed by the SHA-256 of subject and
+ * text, so redeliveries and repeated texts cost one model call; a text that comes in again while
+ * its call is still running waits on that call instead of making another. A call that takes longer
+ * than the latency budget, or fails, is answered by the fallback instead; a late answer still fills
+ * the cache for the next time the same text comes in.
+ *
+ * The text is written by whoever opened the issue or commented, so it can talk the model into any
+ * answer. A type is only taken if the subject can earn it: an {@code issue_report_*} type for an
+ * issue title, or a type the fast path has comment keywords for. Any other answer is ignored and
+ * the fast path decides.
+ */
+final class ModelClassifier implements ContributionClassifier {
+
+    private static final Logger logger = Logger.getLogger(ModelClassifier.class.getName());
+
+    // Cached answer of a model that found no specific type.
+    private static final String NO_TYPE = "";
+    // Longest text sent to the model; classification does not need more than the opening of a comment.
+    static final int MAX_TEXT_CHARS = 4096;
+
+    private final HttpClient http;
+    private final URI endpoint;
+    private final KeywordClassifier fallback;
+    private final long budgetNanos;
+    private final Map<String, String> cache;
+    // Model calls not answered yet, by cache key.
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param fallback Classifier answering when the model is slower than the budget or fails.
+     * @param budget   Longest a classification waits for the model.
+     */
+    ModelClassifier(HttpClient http, URI endpoint, KeywordClassifier fallback, int maxCacheEntries,
+                    long budget, TimeUnit unit) {
+        this.http = http;
+        this.endpoint = endpoint;
+        this.fallback = fallback;
+        this.budgetNanos = unit.toNanos(budget);
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxCacheEntries;
+            }
+        };
+    }
+
+    @Override
+    public String classify(Subject subject, String text) {
+        return classify(subject, text, fallback);
+    }
+
+    /**
+     * Classifies with the model, or with {@code fastPath} instead of the configured fallback when
+     * the model is over budget or fails; for a repository with keywords of its own.
+     */
+    String classify(Subject subject, String text, KeywordClassifier fastPath) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        String key = key(subject, text);
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            // Checked on every use: the cache is shared by repositories with different keywords.
+            return cached.isEmpty() ? null : admit(subject, text, cached, fastPath);
+        }
+        misses.increment();
+
+        CompletableFuture<String> answer = call(key, subject, text);
+        try {
+            String type = answer.get(budgetNanos, TimeUnit.NANOSECONDS);
+            return type == null ? null : admit(subject, text, type, fastPath);
+        } catch (TimeoutException e) {
+            fallbacks.increment();
+            logger.fine("Model classification over budget, using the fast path.");
+        } catch (ExecutionException e) {
+            failures.increment();
+            fallbacks.increment();
+            logger.warning("Model classification failed, using the fast path: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fallbacks.increment();
+        }
+        return fastPath.classify(subject, text);
+    }
+
+    // The model call in flight for the key, started if there is none.
+    private CompletableFuture<String> call(String key, Subject subject, String text) {
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, answer);
+        if (running != null) {
+            joined.increment();
+            return running;
+        }
+        request(subject, text).whenComplete((type, error) -> {
+            // Cached before the call is forgotten, so a text arriving in between still finds the answer.
+            if (error == null) {
+                synchronized (cache) {
+                    cache.put(key, type == null ? NO_TYPE : type);
+                }
+            }
+            inFlight.remove(key, answer);
+            if (error == null) {
+                answer.complete(type);
+            } else {
+                answer.completeExceptionally(error);
+            }
+        });
+        return answer;
+    }
+
+    private String admit(Subject subject, String text, String type, KeywordClassifier fastPath) {
+        boolean earnable = subject == Subject.ISSUE
+                ? type.startsWith(KeywordClassifier.ISSUE_TYPE_PREFIX) : fastPath.produces(subject, type);
+        if (earnable) {
+            return type;
+        }
+        rejected.increment();
+        logger.warning("Ignoring model type '" + type + "' for " + subject.label() + " text, using the fast path.");
+        return fastPath.classify(subject, text);
+    }
+
+    private CompletableFuture<String> request(Subject subject, String text) {
+        String body;
+        try {
+            StringWriter json = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(json)) {
+                writer.beginObject()
+                        .name("subject").value(subject.label())
+                        .name("text").value(text.length() > MAX_TEXT_CHARS ? text.substring(0, MAX_TEXT_CHARS) : text)
+                        .endObject();
+            }
+            body = json.toString();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Classifier returned HTTP " + response.statusCode());
+                    }
+                    try {
+                        return contributionType(response.body());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unreadable classifier response: " + e.getMessage(), e);
+                    }
+                });
+    }
+
+    // {"contribution_type": "..."} -> the type, or null if it is null, blank or missing.
+    static String contributionType(String json) throws IOException {
+        String type = null;
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("contribution_type".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString().trim();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return type == null || type.isEmpty() ? null : type;
+    }
+
+    private static String key(Subject subject, String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update((byte) subject.ordinal());
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    /** Misses that waited on a model call already in flight for the same text. */
+    long joinedCount() {
+        return joined.sum();
+    }
+
+    /** Classifications answered by the fallback, because the model was over budget or failed. */
+    long fallbackCount() {
+        return fallbacks.sum();
+    }
+
+    long failureCount() {
+        return failures.sum();
+    }
+
+    /** Model answers ignored because the subject cannot earn the type. */
+    long rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,22 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * Submits mints to an individual DeCo contract on NEAR.
+ */
+interface NearMintClient {
+
+    /**
+     * Mints to every account in one transaction, as one {@code mint(account_id, amount)} function
+     * call action per account. Returns once the transaction is final.
+     *
+     * @param contractId Account id of the individual DeCo contract.
+     * @param amounts    Amount per account, in the token's smallest units.
+     * @return The transaction hash.
+     * @throws IOException If the transaction was not executed. It may be retried as a whole.
+     */
+    String mintBatch(String contractId, Map<String, BigInteger> amounts) throws IOException;
+}
@@ -0,0 +1,94 @@
+package com.decozero;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Scores every commit of a push event in a single pass over the payload's {@code commits}.
+ *
+ * Each commit is attributed to its author, and the role and rule slot of each distinct author are
+ * resolved only once. The result is one aggregated {@link MintAward} per contributor, so a push of
+ * N commits by M authors produces M mints instead of N.
+ */
+final class PushBatchScorer {
+
+    static final String COMMIT_TYPE = "commit";
+
+    private PushBatchScorer() {
+    }
+
+    private static final class Accumulator {
+        final String role;
+        final int slot;
+        double amount;
+        int commits;
+
+        Accumulator(String role, int slot) {
+            this.role = role;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * @param commits        The push payload's commits.
+     * @param fallbackAuthor Login credited for commits whose email is not linked to a GitHub account
+     *                       (usually the pusher), or null to skip them.
+     * @param rules          Compiled rules of the repository.
+     * @param roleResolver   Maps a contributor login to its values.csv role.
+     * @param reactions      Scorer that starts tracking each scored commit for later reactions, or null.
+     * @param tenant         Tenant the commits are tracked for by {@code reactions}.
+     * @return One award per contributor with a non-zero rule, in order of first appearance.
+     */
+    static List<MintAward> score(List<WebhookPayload.PushCommit> commits, String fallbackAuthor, RuleTable rules, Function<String, String> roleResolver,
+                                 ReactionScorer reactions, String tenant) {
+        int typeId = rules.typeId(COMMIT_TYPE);
+        if (typeId < 0 || commits == null) {
+            return new ArrayList<>();
+        }
+        Map<String, Accumulator> byAuthor = new LinkedHashMap<>();
+        for (WebhookPayload.PushCommit commit : commits) {
+            // Commits already pushed to another branch of the repo were credited there.
+            if (!commit.distinct) {
+                continue;
+            }
+            String author = authorOf(commit, fallbackAuthor);
+            if (author == null) {
+                continue;
+            }
+            Accumulator acc = byAuthor.get(author);
+            if (acc == null) {
+                String role = roleResolver.apply(author);
+                acc = new Accumulator(role, rules.resolve(typeId, rules.roleId(role)));
+                byAuthor.put(author, acc);
+            }
+            if (acc.slot >= 0) {
+                acc.amount += rules.baseValue(acc.slot);
+                acc.commits++;
+                if (reactions != null) {
+                    reactions.track(tenant, commit.url, author, acc.role, rules, acc.slot);
+                }
+            }
+        }
+
+        List<MintAward> awards = new ArrayList<>(byAuthor.size());
+        for (Map.Entry<String, Accumulator> entry : byAuthor.entrySet()) {
+            Accumulator acc = entry.getValue();
+            if (acc.commits > 0) {
+                awards.add(new MintAward(entry.getKey(), acc.role, acc.amount, acc.commits));
+            }
+        }
+        return awards;
+    }
+
+    // The GitHub login linked to the commit email, else the pusher. Never the git author name: it is
+    // free text anyone can set, and crediting it would mint to whoever owns a login of that name.
+    private static String authorOf(WebhookPayload.PushCommit commit, String fallbackAuthor) {
+        if (commit.authorUsername != null && !commit.authorUsername.isEmpty()) {
+            return commit.authorUsername;
+        }
+        return fallbackAuthor == null || fallbackAuthor.isEmpty() ? null : fallbackAuthor;
+    }
+}
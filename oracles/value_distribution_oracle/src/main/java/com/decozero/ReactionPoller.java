@@ -0,0 +1,121 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Polls GitHub for reactions to the issues and pull requests the {@link ReactionScorer} tracks.
+ *
+ * GitHub sends no webhook for reactions, so every interval the poller takes the next batch of
+ * contributions tracked within the window, round-robin, lists their reactions and hands each one to
+ * the sink. Reactions already counted are ignored by the scorer, so listing them again is harmless.
+ * Commits are tracked too but skipped here: GitHub has no reactions on commits.
+ */
+class ReactionPoller implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ReactionPoller.class.getName());
+
+    // https://github.com/{owner}/{repo}/issues/{number} or .../pull/{number}
+    private static final Pattern SUBJECT_URL = Pattern.compile("https://github\\.com/([^/]+/[^/]+)/(?:issues|pull)/(\\d+)");
+
+    /** A reaction to an issue or pull request. */
+    static final class Reaction {
+        final String reactor;
+        // GitHub reaction content, e.g. "+1" or "heart".
+        final String content;
+
+        Reaction(String reactor, String content) {
+            this.reactor = reactor;
+            this.content = content;
+        }
+    }
+
+    /** Lists the reactions to an issue or pull request. */
+    interface Source {
+        List<Reaction> reactions(String repoFullName, int number) throws IOException;
+    }
+
+    /** Scores one reaction to a tracked contribution of a tenant. */
+    interface Sink {
+        void reaction(String tenant, String repoFullName, String url, Reaction reaction) throws Exception;
+    }
+
+    private final ReactionScorer scorer;
+    private final Source source;
+    private final Sink sink;
+    private final long windowMillis;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    // Where the next batch starts in the tracked contributions; only touched by the scheduler thread.
+    private int cursor;
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder pollFailures = new LongAdder();
+
+    /**
+     * @param window    How long after it was tracked a contribution is polled.
+     * @param batchSize Contributions polled per interval.
+     */
+    ReactionPoller(ReactionScorer scorer, Source source, Sink sink, long window, int batchSize, long interval, TimeUnit unit) {
+        this.scorer = scorer;
+        this.source = source;
+        this.sink = sink;
+        this.windowMillis = unit.toMillis(window);
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reaction-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, unit);
+    }
+
+    /** Polls the next batch of tracked contributions. */
+    void poll() {
+        List<ReactionScorer.Tracked> tracked = scorer.trackedSince(System.currentTimeMillis() - windowMillis);
+        if (tracked.isEmpty()) {
+            return;
+        }
+        if (cursor >= tracked.size()) {
+            cursor = 0;
+        }
+        int end = Math.min(tracked.size(), cursor + batchSize);
+        for (ReactionScorer.Tracked contribution : tracked.subList(cursor, end)) {
+            Matcher subject = SUBJECT_URL.matcher(contribution.url);
+            if (!subject.matches()) {
+                continue;
+            }
+            polls.increment();
+            try {
+                for (Reaction reaction : source.reactions(subject.group(1), Integer.parseInt(subject.group(2)))) {
+                    sink.reaction(contribution.tenant, subject.group(1), contribution.url, reaction);
+                }
+            } catch (Exception e) {
+                // Picked up again on the next round.
+                pollFailures.increment();
+                logger.warning("Could not poll reactions to " + contribution.url + ": " + e.getMessage());
+            }
+        }
+        cursor = end;
+    }
+
+    long pollCount() {
+        return polls.sum();
+    }
+
+    long pollFailureCount() {
+        return pollFailures.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,387 @@
+package com.decozero;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Incremental reaction scoring for contributions that have already been minted.
+ *
+ * When a commit, merged pull request or issue is scored, its base value and its member and
+ * non-member reaction multipliers from values.csv are recorded here. Each later reaction then adds
+ * {@code reactionBase * multiplier} to the contribution's running score, where reactionBase is the
+ * base value of the {@code reaction_<content>} rule for the reactor's membership and multiplier is
+ * the contribution's member or non-member reaction multiplier. Only that delta is minted to the
+ * contribution's author; reaction history is never rescanned. Contributions are tracked per tenant,
+ * so a reaction reported by one tenant never scores another's. The number of tracked contributions
+ * is bounded with LRU eviction.
+ *
+ * With a journal, every tracked contribution and counted reaction is appended to it as a
+ * "track tenant url author role trackedAt score memberMultiplier nonMemberMultiplier" or
+ * "react tenant url reactor:content delta" line ("unreact" to take one back), with fields
+ * percent-escaped as in {@link MintLog}. Opening replays the journal and rewrites it with only what
+ * is still tracked, so a restart neither forgets contributions nor counts their reactions again; it
+ * is rewritten the same way while running whenever it has doubled since and is past a minimum size.
+ * Lines are flushed to the OS as they are written but not forced, so a host crash may lose the last
+ * ones.
+ */
+class ReactionScorer implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ReactionScorer.class.getName());
+
+    static final String REACTION_TYPE_PREFIX = "reaction_";
+    static final String MEMBER_ROLE = "member";
+    static final String NON_MEMBER_ROLE = "non_member";
+    static final long DEFAULT_COMPACT_MIN_BYTES = 1 << 20;
+
+    /** A tracked contribution of a tenant. */
+    static final class Tracked {
+        final String tenant;
+        final String url;
+
+        Tracked(String tenant, String url) {
+            this.tenant = tenant;
+            this.url = url;
+        }
+    }
+
+    private static final class Contribution {
+        final String tenant;
+        final String url;
+        final String author;
+        final String role;
+        final long trackedAtMillis;
+        final double memberMultiplier;
+        final double nonMemberMultiplier;
+        // Reactor and content of each counted reaction, so a re-sent reaction is not counted twice.
+        final Set<String> reactions = new HashSet<>();
+        double score;
+
+        Contribution(String tenant, String url, String author, String role, long trackedAtMillis, double score,
+                     double memberMultiplier, double nonMemberMultiplier) {
+            this.tenant = tenant;
+            this.url = url;
+            this.author = author;
+            this.role = role;
+            this.trackedAtMillis = trackedAtMillis;
+            this.memberMultiplier = memberMultiplier;
+            this.nonMemberMultiplier = nonMemberMultiplier;
+            this.score = score;
+        }
+    }
+
+    // Keyed by tenant and url, see key().
+    private final Map<String, Contribution> contributions;
+    private final Path journal;
+    private final long compactMinBytes;
+    private BufferedWriter writer;
+    // Size of the journal right after it was last rewritten, and bytes appended since; guarded by contributions.
+    private long compactedBytes;
+    private long appendedBytes;
+    private final LongAdder reactionsScored = new LongAdder();
+    private final LongAdder reactionsIgnored = new LongAdder();
+
+    ReactionScorer(int maxContributions) {
+        this.contributions = lru(maxContributions);
+        this.journal = null;
+        this.compactMinBytes = 0;
+    }
+
+    /**
+     * A scorer that keeps its contributions in a journal, recovering those a previous process tracked.
+     *
+     * @throws IOException If the journal cannot be read or rewritten.
+     */
+    ReactionScorer(int maxContributions, Path journal) throws IOException {
+        this(maxContributions, journal, DEFAULT_COMPACT_MIN_BYTES);
+    }
+
+    /** @param compactMinBytes Size below which the journal is never rewritten while running. */
+    ReactionScorer(int maxContributions, Path journal, long compactMinBytes) throws IOException {
+        this.contributions = lru(maxContributions);
+        this.journal = journal;
+        this.compactMinBytes = compactMinBytes;
+        if (Files.exists(journal)) {
+            replay();
+        }
+        rewrite();
+        open();
+    }
+
+    private static Map<String, Contribution> lru(int maxContributions) {
+        return new LinkedHashMap<String, Contribution>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Contribution> eldest) {
+                return size() > maxContributions;
+            }
+        };
+    }
+
+    /**
+     * Starts tracking a scored contribution.
+     *
+     * @param tenant The tenant the contribution was scored for, e.g. its contract.
+     * @param url    The contribution's html_url, used as its key by reaction events.
+     * @param slot   Rule slot the contribution was scored with.
+     */
+    void track(String tenant, String url, String author, String role, RuleTable rules, int slot) {
+        if (url == null || url.isEmpty() || slot < 0) {
+            return;
+        }
+        Contribution contribution = new Contribution(tenant, url, author, role, System.currentTimeMillis(),
+                rules.baseValue(slot), rules.memberReactionMultiplier(slot), rules.nonMemberReactionMultiplier(slot));
+        synchronized (contributions) {
+            if (contributions.putIfAbsent(key(tenant, url), contribution) == null) {
+                write(trackRecord(contribution));
+            }
+        }
+    }
+
+    /**
+     * Scores one reaction to a tracked contribution.
+     *
+     * @param content         GitHub reaction content, e.g. "+1" or "heart".
+     * @param reactorIsMember Whether the reactor is an active member of the DeCo.
+     * @return The award to mint to the contribution's author, or null if the reaction adds nothing.
+     */
+    MintAward react(String tenant, String url, String reactor, String content, boolean reactorIsMember, RuleTable rules) {
+        int slot = rules.resolve(rules.typeId(reactionType(content)),
+                rules.roleId(reactorIsMember ? MEMBER_ROLE : NON_MEMBER_ROLE));
+        synchronized (contributions) {
+            Contribution contribution = contributions.get(key(tenant, url));
+            // Untracked, self-reactions and reactions already counted earn nothing.
+            if (slot < 0 || contribution == null || contribution.author.equals(reactor)
+                    || contribution.reactions.contains(reactionKey(reactor, content))) {
+                reactionsIgnored.increment();
+                return null;
+            }
+            double multiplier = reactorIsMember ? contribution.memberMultiplier : contribution.nonMemberMultiplier;
+            double delta = rules.baseValue(slot) * multiplier;
+            if (delta <= 0) {
+                reactionsIgnored.increment();
+                return null;
+            }
+            contribution.reactions.add(reactionKey(reactor, content));
+            contribution.score += delta;
+            reactionsScored.increment();
+            write(reactRecord("react", contribution, reactionKey(reactor, content), delta));
+            return new MintAward(contribution.author, contribution.role, delta, 1);
+        }
+    }
+
+    /** Takes back a reaction counted by {@link #react} whose award could not be minted, so it is scored again. */
+    void unreact(String tenant, String url, String reactor, String content, double delta) {
+        synchronized (contributions) {
+            Contribution contribution = contributions.get(key(tenant, url));
+            if (contribution != null && contribution.reactions.remove(reactionKey(reactor, content))) {
+                contribution.score -= delta;
+                write(reactRecord("unreact", contribution, reactionKey(reactor, content), delta));
+            }
+        }
+    }
+
+    /**
+     * Returns the contributions tracked since {@code sinceMillis}, oldest first, an order that
+     * reactions do not change.
+     */
+    List<Tracked> trackedSince(long sinceMillis) {
+        List<Contribution> since = new ArrayList<>();
+        synchronized (contributions) {
+            for (Contribution contribution : contributions.values()) {
+                if (contribution.trackedAtMillis >= sinceMillis) {
+                    since.add(contribution);
+                }
+            }
+        }
+        since.sort(Comparator.comparingLong(contribution -> contribution.trackedAtMillis));
+        List<Tracked> tracked = new ArrayList<>(since.size());
+        for (Contribution contribution : since) {
+            tracked.add(new Tracked(contribution.tenant, contribution.url));
+        }
+        return tracked;
+    }
+
+    /** Returns the running score of a tracked contribution, or NaN if it is not tracked. */
+    double score(String tenant, String url) {
+        synchronized (contributions) {
+            Contribution contribution = contributions.get(key(tenant, url));
+            return contribution == null ? Double.NaN : contribution.score;
+        }
+    }
+
+    long reactionsScoredCount() {
+        return reactionsScored.sum();
+    }
+
+    long reactionsIgnoredCount() {
+        return reactionsIgnored.sum();
+    }
+
+    int size() {
+        synchronized (contributions) {
+            return contributions.size();
+        }
+    }
+
+    // values.csv names reactions after GitHub's reaction content, with "+1"/"-1" spelled out.
+    static String reactionType(String content) {
+        switch (content) {
+            case "+1":
+                return REACTION_TYPE_PREFIX + "thumbs_up";
+            case "-1":
+                return REACTION_TYPE_PREFIX + "thumbs_down";
+            default:
+                return REACTION_TYPE_PREFIX + content;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (contributions) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    // --- Journal ---
+
+    // Neither part can hold a line break.
+    private static String key(String tenant, String url) {
+        return tenant + '\n' + url;
+    }
+
+    private static String reactionKey(String reactor, String content) {
+        return reactor + ':' + content;
+    }
+
+    private static String trackRecord(Contribution contribution) {
+        return "track " + MintLog.escape(contribution.tenant) + " " + MintLog.escape(contribution.url) + " "
+                + MintLog.escape(contribution.author) + " " + MintLog.escape(contribution.role) + " "
+                + contribution.trackedAtMillis + " " + contribution.score + " "
+                + contribution.memberMultiplier + " " + contribution.nonMemberMultiplier;
+    }
+
+    private static String reactRecord(String kind, Contribution contribution, String key, double delta) {
+        return kind + " " + MintLog.escape(contribution.tenant) + " " + MintLog.escape(contribution.url) + " "
+                + MintLog.escape(key) + " " + delta;
+    }
+
+    // Scoring goes on without the journal; only a restart would then forget what was not written.
+    private void write(String record) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(record);
+            writer.newLine();
+            writer.flush();
+            appendedBytes += record.length() + 1;
+        } catch (IOException e) {
+            logger.warning("Could not journal reaction tracking to " + journal + ": " + e.getMessage());
+            return;
+        }
+        compactIfGrown();
+    }
+
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        compactedBytes = Files.size(journal);
+        appendedBytes = 0;
+    }
+
+    // Compaction only saves space: if it fails, the full journal stays in place and open for appending.
+    private void compactIfGrown() {
+        long size = compactedBytes + appendedBytes;
+        if (size < compactMinBytes || appendedBytes < compactedBytes) {
+            return;
+        }
+        try {
+            rewrite();
+        } catch (IOException e) {
+            logger.warning("Could not compact reaction journal " + journal + ": " + e.getMessage());
+            compactedBytes = size;
+            appendedBytes = 0;
+            return;
+        }
+        // The writer still points at the replaced file; reopen it on the rewritten one.
+        try {
+            writer.close();
+            open();
+        } catch (IOException e) {
+            writer = null;
+            logger.warning("Could not reopen reaction journal " + journal + ", no longer journaling: " + e.getMessage());
+            return;
+        }
+        logger.info("Compacted reaction journal " + journal + " from " + size + " to " + compactedBytes + " bytes");
+    }
+
+    private void replay() throws IOException {
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] parts = line.split(" ");
+                try {
+                    if ("track".equals(parts[0]) && parts.length == 9) {
+                        String tenant = MintLog.unescape(parts[1]);
+                        String url = MintLog.unescape(parts[2]);
+                        contributions.put(key(tenant, url), new Contribution(tenant, url, MintLog.unescape(parts[3]),
+                                MintLog.unescape(parts[4]), Long.parseLong(parts[5]), Double.parseDouble(parts[6]),
+                                Double.parseDouble(parts[7]), Double.parseDouble(parts[8])));
+                    } else if (("react".equals(parts[0]) || "unreact".equals(parts[0])) && parts.length == 5) {
+                        // Reactions to contributions evicted since are dropped.
+                        Contribution contribution = contributions.get(key(MintLog.unescape(parts[1]), MintLog.unescape(parts[2])));
+                        if (contribution != null) {
+                            boolean counted = "react".equals(parts[0]);
+                            String key = MintLog.unescape(parts[3]);
+                            if (counted ? contribution.reactions.add(key) : contribution.reactions.remove(key)) {
+                                contribution.score += (counted ? 1 : -1) * Double.parseDouble(parts[4]);
+                            }
+                        }
+                    } else {
+                        logger.warning("Skipping malformed line " + lineNumber + " of reaction journal " + journal);
+                    }
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Skipping malformed line " + lineNumber + " of reaction journal " + journal + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!contributions.isEmpty()) {
+            logger.info("Recovered " + contributions.size() + " tracked contribution(s) from " + journal);
+        }
+    }
+
+    // Replaces the journal with one record per tracked contribution and counted reaction.
+    private void rewrite() throws IOException {
+        Path rewritten = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(rewritten, StandardCharsets.UTF_8)) {
+            for (Contribution contribution : contributions.values()) {
+                out.write(trackRecord(contribution));
+                out.newLine();
+                // The score above already includes the reactions.
+                for (String key : contribution.reactions) {
+                    out.write(reactRecord("react", contribution, key, 0));
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(rewritten, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
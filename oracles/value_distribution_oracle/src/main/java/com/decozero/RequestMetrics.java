@@ -0,0 +1,205 @@
+package com.decozero;
+
+import com.decozero.github.CircuitBreaker;
+import com.decozero.github.ResilientGitHubConnector;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage and per-request latency of the function, by GitHub event type and outcome.
+ *
+ * Every (event, stage) and (event, outcome) pair has its {@link LatencyHistogram} allocated up
+ * front in plain arrays, so recording is an array lookup and an atomic increment. Throughput is
+ * the request histograms' counts. The first request of an instance is also kept apart, together
+ * with the time spent initializing the function class, to separate cold from warm invocations.
+ * {@link #render()} writes everything in the Prometheus text format, with p50/p90/p99 computed from
+ * the histograms.
+ */
+final class RequestMetrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Event types with their own series; everything else is counted as "other". */
+    static final String[] EVENT_TYPES = {"push", "pull_request", "issues", "issue_comment", "reaction", "member", "membership", "other"};
+    private static final int OTHER_EVENT = EVENT_TYPES.length - 1;
+
+    enum Stage {
+        /** Reading the body and checking its signature. */
+        VERIFY,
+        /** Streaming the payload into a {@link WebhookPayload}. */
+        PARSE,
+        /** Getting the compiled values.csv, from the cache or GitHub. */
+        VALUES_CSV,
+        /** Classifying an issue title or comment into a contribution type. */
+        CLASSIFY,
+        /** Resolving roles and rules and computing the awards. */
+        SCORE,
+        /** Appending the awards to the mint log. */
+        MINT,
+        /** Recording the awards in the contribution ledger. */
+        LEDGER
+    }
+
+    enum Outcome {
+        /** Awards were queued for minting. */
+        MINTED,
+        /** Processed without anything to mint, or an event that is only acknowledged. */
+        NO_AWARD,
+        /** A redelivery that was dropped. */
+        DUPLICATE,
+        /** Refused as malformed, oversized or unsigned (4xx). */
+        REJECTED,
+        /** Failed on a dependency and left for GitHub to retry (5xx). */
+        FAILED
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final LatencyHistogram[][] stages = new LatencyHistogram[EVENT_TYPES.length][Stage.values().length];
+    private final LatencyHistogram[][] requests = new LatencyHistogram[EVENT_TYPES.length][Outcome.values().length];
+    private final LongAdder payloadBytes = new LongAdder();
+    private final LongAdder awards = new LongAdder();
+    private final AtomicBoolean cold = new AtomicBoolean(true);
+    private volatile long firstRequestNanos = -1;
+    private volatile long initNanos = -1;
+    private volatile ResilientGitHubConnector gitHub;
+
+    RequestMetrics() {
+        for (int e = 0; e < EVENT_TYPES.length; e++) {
+            for (int s = 0; s < stages[e].length; s++) {
+                stages[e][s] = new LatencyHistogram();
+            }
+            for (int o = 0; o < requests[e].length; o++) {
+                requests[e][o] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /** Maps an X-GitHub-Event value to its series index. */
+    static int eventIndex(String eventType) {
+        switch (eventType) {
+            case "push":
+                return 0;
+            case "pull_request":
+                return 1;
+            case "issues":
+                return 2;
+            case "issue_comment":
+                return 3;
+            case "reaction":
+                return 4;
+            case "member":
+                return 5;
+            case "membership":
+                return 6;
+            default:
+                return OTHER_EVENT;
+        }
+    }
+
+    void stage(int event, Stage stage, long nanos) {
+        stages[event][stage.ordinal()].record(nanos);
+    }
+
+    void request(int event, Outcome outcome, long nanos) {
+        requests[event][outcome.ordinal()].record(nanos);
+        if (cold.get() && cold.compareAndSet(true, false)) {
+            firstRequestNanos = nanos;
+        }
+    }
+
+    void payloadBytes(long bytes) {
+        payloadBytes.add(bytes);
+    }
+
+    void awards(int count) {
+        awards.add(count);
+    }
+
+    /** Reports the calls of this GitHub connector too. */
+    void gitHub(ResilientGitHubConnector connector) {
+        gitHub = connector;
+    }
+
+    /** Time spent loading the function class and its static dependencies. */
+    void initialized(long nanos) {
+        initNanos = nanos;
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(8192);
+        header(out, "deco_request_seconds", "Latency of webhook deliveries by event type and outcome.", "summary");
+        for (int e = 0; e < EVENT_TYPES.length; e++) {
+            for (Outcome outcome : Outcome.values()) {
+                summary(out, "deco_request_seconds", "event=\"" + EVENT_TYPES[e] + "\",outcome=\"" + label(outcome) + "\"",
+                        requests[e][outcome.ordinal()]);
+            }
+        }
+        header(out, "deco_stage_seconds", "Latency of the stages of webhook deliveries by event type.", "summary");
+        for (int e = 0; e < EVENT_TYPES.length; e++) {
+            for (Stage stage : Stage.values()) {
+                summary(out, "deco_stage_seconds", "event=\"" + EVENT_TYPES[e] + "\",stage=\"" + label(stage) + "\"",
+                        stages[e][stage.ordinal()]);
+            }
+        }
+        header(out, "deco_payload_bytes_total", "Bytes of webhook payloads read.", "counter");
+        out.append("deco_payload_bytes_total ").append(payloadBytes.sum()).append('\n');
+        header(out, "deco_awards_total", "Awards queued for minting.", "counter");
+        out.append("deco_awards_total ").append(awards.sum()).append('\n');
+        ResilientGitHubConnector connector = gitHub;
+        if (connector != null) {
+            counter(out, "deco_github_requests_total", "GitHub API requests made.", connector.requestCount());
+            counter(out, "deco_github_calls_total", "Calls sent to GitHub, retries included.", connector.callCount());
+            counter(out, "deco_github_coalesced_total", "GitHub GETs answered by an identical call in flight.", connector.coalescedCount());
+            counter(out, "deco_github_retries_total", "GitHub calls retried.", connector.retryCount());
+            counter(out, "deco_github_throttled_total", "GitHub responses that were rate limited.", connector.throttledCount());
+            counter(out, "deco_github_limited_total", "GitHub requests refused for lack of rate limit.", connector.limitedCount());
+            counter(out, "deco_github_circuit_rejected_total", "GitHub requests refused by the open circuit.",
+                    connector.circuitBreaker().rejectedCount());
+            header(out, "deco_github_circuit_open", "1 while the GitHub circuit breaker is open.", "gauge");
+            out.append("deco_github_circuit_open ")
+                    .append(connector.circuitBreaker().state() == CircuitBreaker.State.CLOSED ? 0 : 1).append('\n');
+        }
+        if (initNanos >= 0) {
+            header(out, "deco_init_seconds", "Time spent initializing the function class.", "gauge");
+            out.append("deco_init_seconds ").append(seconds(initNanos)).append('\n');
+        }
+        if (firstRequestNanos >= 0) {
+            header(out, "deco_first_request_seconds", "Latency of the first request served by this instance.", "gauge");
+            out.append("deco_first_request_seconds ").append(seconds(firstRequestNanos)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long count = histogram.count();
+        if (count == 0) {
+            return;
+        }
+        for (double q : QUANTILES) {
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ")
+                    .append(seconds(histogram.quantileNanos(q))).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.sumNanos())).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String label(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,238 @@
+package com.decozero;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Resolves contributors to the values.csv roles from per-repository snapshots of collaborator
+ * permissions.
+ *
+ * Each snapshot is an immutable login-to-role map that is replaced, never modified, so a lookup
+ * takes no lock. Snapshots are loaded in the background the first time a repository
+ * is seen, patched from {@code member} webhook events, and reconciled against GitHub periodically and
+ * after {@code membership} (team) events. Until a repository's snapshot is loaded its contributors
+ * resolve to {@link RuleTable#FALLBACK_ROLE}; afterwards, logins without access are non-members.
+ * Every lookup stamps its snapshot with the time; when a load takes the snapshots past the
+ * repository bound, the ones looked up least recently are evicted to make room.
+ */
+class RoleResolver implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(RoleResolver.class.getName());
+
+    static final String MAINTAINER_ROLE = "maintainer";
+    static final String CONTRIBUTOR_ROLE = "contributor";
+    static final String NON_MEMBER_ROLE = "non_member";
+
+    /** Reads the permission ("admin", "write", "read", ...) of every collaborator of a repository. */
+    interface CollaboratorSource {
+        Map<String, String> permissions(String repoFullName) throws IOException;
+    }
+
+    // A repository's roles, and when they were last looked up.
+    private static final class Snapshot {
+        final Map<String, String> roles;
+        volatile long lastAccessNanos;
+
+        Snapshot(Map<String, String> roles, long lastAccessNanos) {
+            this.roles = roles;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    private final CollaboratorSource source;
+    private final IntSupplier maxRepos;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder memberEvents = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxRepos Bound on the snapshots kept, read on every load so that it can follow e.g. the
+     *                 number of tenants.
+     */
+    RoleResolver(CollaboratorSource source, IntSupplier maxRepos, long reconcileInterval, TimeUnit unit) {
+        this.source = source;
+        this.maxRepos = maxRepos;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "role-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileAll, reconcileInterval, reconcileInterval, unit);
+    }
+
+    /** Returns the values.csv role of a login in a repository. Never blocks on GitHub. */
+    String role(String repoFullName, String login) {
+        lookups.increment();
+        Snapshot snapshot = snapshots.get(repoFullName);
+        if (snapshot == null) {
+            unresolved.increment();
+            requestLoad(repoFullName);
+            return RuleTable.FALLBACK_ROLE;
+        }
+        snapshot.lastAccessNanos = System.nanoTime();
+        return snapshot.roles.getOrDefault(login, NON_MEMBER_ROLE);
+    }
+
+    /**
+     * Applies a {@code member} webhook event.
+     *
+     * @param action     "added", "edited" or "removed".
+     * @param permission The collaborator's new permission, or null if the event does not carry it.
+     */
+    void memberEvent(String repoFullName, String action, String login, String permission) {
+        memberEvents.increment();
+        if (!snapshots.containsKey(repoFullName)) {
+            requestLoad(repoFullName);
+            return;
+        }
+        if ("removed".equals(action)) {
+            update(repoFullName, login, null);
+        } else if (permission != null) {
+            update(repoFullName, login, roleFor(permission));
+        } else {
+            // Permission unknown; fetch the authoritative list instead of guessing.
+            requestLoad(repoFullName);
+        }
+    }
+
+    /** Applies a {@code membership} (team) event by reconciling the organization's repositories. */
+    void membershipEvent(String organization) {
+        String prefix = organization + "/";
+        for (String repoFullName : snapshots.keySet()) {
+            if (repoFullName.startsWith(prefix)) {
+                requestLoad(repoFullName);
+            }
+        }
+    }
+
+    static String roleFor(String permission) {
+        switch (permission) {
+            case "admin":
+            case "maintain":
+                return MAINTAINER_ROLE;
+            case "write":
+            case "triage":
+                return CONTRIBUTOR_ROLE;
+            default:
+                return NON_MEMBER_ROLE;
+        }
+    }
+
+    // Copy-on-write: readers keep using the previous map until the new one is published.
+    private void update(String repoFullName, String login, String role) {
+        snapshots.computeIfPresent(repoFullName, (repo, snapshot) -> {
+            Map<String, String> copy = new HashMap<>(snapshot.roles);
+            if (role == null) {
+                copy.remove(login);
+            } else {
+                copy.put(login, role);
+            }
+            return new Snapshot(Collections.unmodifiableMap(copy), snapshot.lastAccessNanos);
+        });
+    }
+
+    private void requestLoad(String repoFullName) {
+        if (loading.add(repoFullName)) {
+            scheduler.execute(() -> {
+                try {
+                    load(repoFullName);
+                } finally {
+                    loading.remove(repoFullName);
+                }
+            });
+        }
+    }
+
+    private void load(String repoFullName) {
+        try {
+            Map<String, String> roles = new HashMap<>();
+            source.permissions(repoFullName).forEach((login, permission) -> roles.put(login, roleFor(permission)));
+            Snapshot previous = snapshots.put(repoFullName, new Snapshot(Collections.unmodifiableMap(roles), System.nanoTime()));
+            if (previous == null) {
+                evictLeastRecentlyUsed();
+            }
+            loads.increment();
+            logger.info("Loaded roles of " + roles.size() + " collaborator(s) of " + repoFullName);
+        } catch (IOException | RuntimeException e) {
+            loadFailures.increment();
+            logger.warning("Could not load collaborators of " + repoFullName + ": " + e.getMessage());
+        }
+    }
+
+    // Only loads add snapshots, one at a time on the scheduler thread, so the bound is checked there.
+    private void evictLeastRecentlyUsed() {
+        int excess = snapshots.size() - maxRepos.getAsInt();
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Long>> byAccess = new ArrayList<>(snapshots.size());
+        snapshots.forEach((repo, snapshot) -> byAccess.add(new AbstractMap.SimpleImmutableEntry<>(repo, snapshot.lastAccessNanos)));
+        // Compared as differences, as nanoTime values may wrap.
+        byAccess.sort((a, b) -> Long.signum(a.getValue() - b.getValue()));
+        for (Map.Entry<String, Long> eldest : byAccess.subList(0, Math.min(excess, byAccess.size()))) {
+            if (snapshots.remove(eldest.getKey()) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private void reconcileAll() {
+        for (String repoFullName : snapshots.keySet()) {
+            requestLoad(repoFullName);
+        }
+    }
+
+    long lookupCount() {
+        return lookups.sum();
+    }
+
+    long unresolvedCount() {
+        return unresolved.sum();
+    }
+
+    long loadCount() {
+        return loads.sum();
+    }
+
+    long loadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    long memberEventCount() {
+        return memberEvents.sum();
+    }
+
+    /** Snapshots evicted to stay within the repository bound. */
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    int repoCount() {
+        return snapshots.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,183 @@
+package com.decozero;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled, immutable form of the values.csv rules.
+ *
+ * Contribution types and roles are interned into dense integer ids, and rule values are stored in
+ * primitive arrays indexed by {@code typeId * roleCount + roleId}. The "fall back to the general
+ * contributor rule" step is resolved once at compile time, so scoring by ids allocates nothing and
+ * does no hashing. Callers intern the type and role strings once per event with {@link #typeId}
+ * and {@link #roleId}, then resolve a slot and read its values.
+ */
+final class RuleTable {
+
+    /** Role whose rule is used when no rule exists for the contributor's actual role. */
+    static final String FALLBACK_ROLE = "contributor";
+
+    private final Map<String, Integer> typeIds;
+    private final Map<String, Integer> roleIds;
+    private final String[] typeNames;
+    private final String[] roleNames;
+    private final int roleCount;
+    private final int ruleCount;
+    private final String version;
+    // Classifier built from the rules' keywords column, or null if none has keywords.
+    private final KeywordClassifier classifier;
+
+    // Per (type, role) slot, the slot whose values apply after fallback, or -1 if none.
+    private final int[] resolvedSlots;
+    // Per type, the slot of its fallback role rule, or -1 if it has none.
+    private final int[] fallbackSlots;
+    private final boolean[] exact;
+    private final double[] baseValues;
+    private final double[] memberReactionMultipliers;
+    private final double[] nonMemberReactionMultipliers;
+
+    private RuleTable(Map<String, Integer> typeIds, Map<String, Integer> roleIds, int ruleCount, String version,
+                      KeywordClassifier classifier) {
+        this.typeIds = typeIds;
+        this.roleIds = roleIds;
+        this.typeNames = new String[typeIds.size()];
+        this.roleNames = new String[roleIds.size()];
+        typeIds.forEach((name, id) -> typeNames[id] = name);
+        roleIds.forEach((name, id) -> roleNames[id] = name);
+        this.roleCount = roleIds.size();
+        this.ruleCount = ruleCount;
+        this.version = version;
+        this.classifier = classifier;
+        int slots = typeNames.length * roleCount;
+        this.resolvedSlots = new int[slots];
+        this.fallbackSlots = new int[typeNames.length];
+        this.exact = new boolean[slots];
+        this.baseValues = new double[slots];
+        this.memberReactionMultipliers = new double[slots];
+        this.nonMemberReactionMultipliers = new double[slots];
+        Arrays.fill(resolvedSlots, -1);
+        Arrays.fill(fallbackSlots, -1);
+    }
+
+    /**
+     * Compiles parsed rules into a table. Later rules for the same (type, role) pair win.
+     */
+    static RuleTable compile(Collection<ContributionRule> rules) {
+        return compile(rules, null);
+    }
+
+    /**
+     * @param version Blob SHA of the values.csv the rules were parsed from, or null if unknown.
+     */
+    static RuleTable compile(Collection<ContributionRule> rules, String version) {
+        Map<String, Integer> typeIds = new HashMap<>();
+        Map<String, Integer> roleIds = new HashMap<>();
+        for (ContributionRule rule : rules) {
+            typeIds.putIfAbsent(rule.contributionType, typeIds.size());
+            roleIds.putIfAbsent(rule.role, roleIds.size());
+        }
+        RuleTable table = new RuleTable(typeIds, roleIds, rules.size(), version, KeywordClassifier.fromRules(rules));
+        for (ContributionRule rule : rules) {
+            int slot = typeIds.get(rule.contributionType) * table.roleCount + roleIds.get(rule.role);
+            table.exact[slot] = true;
+            table.baseValues[slot] = rule.baseValue;
+            table.memberReactionMultipliers[slot] = rule.memberReactionMultiplier;
+            table.nonMemberReactionMultipliers[slot] = rule.nonMemberReactionMultiplier;
+        }
+        Integer fallbackRole = roleIds.get(FALLBACK_ROLE);
+        for (int type = 0; type < table.typeNames.length; type++) {
+            int fallback = fallbackRole == null ? -1 : type * table.roleCount + fallbackRole;
+            if (fallback >= 0 && !table.exact[fallback]) {
+                fallback = -1;
+            }
+            table.fallbackSlots[type] = fallback;
+            for (int role = 0; role < table.roleCount; role++) {
+                int slot = type * table.roleCount + role;
+                table.resolvedSlots[slot] = table.exact[slot] ? slot : fallback;
+            }
+        }
+        return table;
+    }
+
+    /** Returns the id of a contribution type, or -1 if values.csv has no rule for it. */
+    int typeId(String contributionType) {
+        Integer id = typeIds.get(contributionType);
+        return id == null ? -1 : id;
+    }
+
+    /** Returns the id of a role, or -1 if values.csv has no rule for it. */
+    int roleId(String role) {
+        Integer id = roleIds.get(role);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Resolves the slot whose values apply to a (type, role) pair, including the fallback to the
+     * general contributor rule. An unknown role (-1) resolves straight to the fallback.
+     *
+     * @return The slot, or -1 if no rule applies.
+     */
+    int resolve(int typeId, int roleId) {
+        if (typeId < 0) {
+            return -1;
+        }
+        return roleId < 0 ? fallbackSlots[typeId] : resolvedSlots[typeId * roleCount + roleId];
+    }
+
+    /** Returns true if values.csv defines a rule for exactly this (type, role) pair. */
+    boolean hasExactRule(int typeId, int roleId) {
+        return typeId >= 0 && roleId >= 0 && exact[typeId * roleCount + roleId];
+    }
+
+    double baseValue(int slot) {
+        return baseValues[slot];
+    }
+
+    double memberReactionMultiplier(int slot) {
+        return memberReactionMultipliers[slot];
+    }
+
+    double nonMemberReactionMultiplier(int slot) {
+        return nonMemberReactionMultipliers[slot];
+    }
+
+    String typeName(int typeId) {
+        return typeNames[typeId];
+    }
+
+    String roleName(int roleId) {
+        return roleNames[roleId];
+    }
+
+    int typeCount() {
+        return typeNames.length;
+    }
+
+    int roleCount() {
+        return roleCount;
+    }
+
+    /** Blob SHA of the values.csv these rules come from, or null if unknown. */
+    String version() {
+        return version;
+    }
+
+    /**
+     * Classifier for the keywords listed in this values.csv, earlier rows taking precedence, or null
+     * if it lists none.
+     */
+    KeywordClassifier classifier() {
+        return classifier;
+    }
+
+    /** Number of (type, role) rules defined in values.csv. */
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    boolean isEmpty() {
+        return ruleCount == 0;
+    }
+}
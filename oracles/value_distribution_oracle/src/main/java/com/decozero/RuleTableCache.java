@@ -0,0 +1,154 @@
+package com.decozero;
+
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Per-repository cache of compiled values.csv rule tables.
+ *
+ * Entries are versioned by the blob SHA of values.csv. Within the TTL an entry is served without
+ * contacting GitHub; after it, the file is fetched again but only re-parsed if its SHA changed.
+ * When the caller already knows the expected version (e.g. the hash stored on the DeCo contract via
+ * {@code set_values_csv_hash}) a matching entry is served regardless of age. The number of cached
+ * repositories is bounded with LRU eviction.
+ */
+class RuleTableCache {
+
+    private static final Logger logger = Logger.getLogger(RuleTableCache.class.getName());
+
+    /** Fetches the current values.csv of a repository together with its blob SHA. */
+    interface Source {
+        VersionedCsv fetch(String repoFullName) throws IOException;
+    }
+
+    /** Raw values.csv content at a given version. */
+    static final class VersionedCsv {
+        final String version;
+        final byte[] content;
+
+        VersionedCsv(String version, byte[] content) {
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    private static final class Entry {
+        final String version;
+        final RuleTable rules;
+        volatile long validatedAtNanos;
+
+        Entry(String version, RuleTable rules, long validatedAtNanos) {
+            this.version = version;
+            this.rules = rules;
+            this.validatedAtNanos = validatedAtNanos;
+        }
+    }
+
+    private final Source source;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    RuleTableCache(Source source, long ttl, TimeUnit unit, int maxRepos) {
+        this.source = source;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxRepos) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled rules for a repository.
+     *
+     * @param repoFullName    Repository in "owner/name" form.
+     * @param expectedVersion Known blob SHA of the current values.csv, or null if unknown.
+     * @return The compiled rule table.
+     */
+    RuleTable get(String repoFullName, String expectedVersion) throws IOException, CsvValidationException {
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(repoFullName);
+        }
+        long now = System.nanoTime();
+        if (cached != null) {
+            boolean fresh = expectedVersion != null
+                    ? expectedVersion.equals(cached.version)
+                    : now - cached.validatedAtNanos < ttlNanos;
+            if (fresh) {
+                hits.increment();
+                return cached.rules;
+            }
+        }
+
+        VersionedCsv csv = source.fetch(repoFullName);
+        if (cached != null && cached.version.equals(csv.version)) {
+            // Unchanged since the last parse, only extend the entry's validity.
+            revalidations.increment();
+            hits.increment();
+            cached.validatedAtNanos = now;
+            return cached.rules;
+        }
+
+        misses.increment();
+        RuleTable rules;
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(csv.content), StandardCharsets.UTF_8)) {
+            rules = RuleTable.compile(ValuesCsv.parse(reader).values(), csv.version);
+        }
+        if (!rules.isEmpty()) {
+            synchronized (entries) {
+                entries.put(repoFullName, new Entry(csv.version, rules, now));
+            }
+            logger.info("Compiled values.csv for " + repoFullName + " at version " + csv.version + ". Rules count: " + rules.ruleCount());
+        }
+        return rules;
+    }
+
+    /** Drops the cached rules of a repository, e.g. after a push that modified values.csv. */
+    void invalidate(String repoFullName) {
+        synchronized (entries) {
+            entries.remove(repoFullName);
+        }
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long revalidationCount() {
+        return revalidations.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
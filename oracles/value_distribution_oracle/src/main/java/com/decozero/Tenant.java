@@ -0,0 +1,59 @@
+package com.decozero;
+
+import java.util.function.Supplier;
+
+/**
+ * One DeCo served by the function: the repository whose contributions it scores, the contract it
+ * mints on and records them for, and the secret its webhooks are signed with.
+ *
+ * A single-tenant deployment has one tenant built from its environment that accepts any
+ * repository; a multi-tenant one looks them up in its {@link TenantRegistry}.
+ */
+final class Tenant {
+
+    /** Repository in "owner/name" form, or null if the tenant takes deliveries for any repository. */
+    final String repoFullName;
+    final String contractId;
+    /** Verifier of the deliveries' signatures, or null if the tenant has no webhook secret. */
+    final WebhookSignature signature;
+    /** Blob SHA of the repository's current values.csv as published by the contract, or null if unknown. */
+    final String valuesCsvVersion;
+    private final Supplier<MintBatcher> mintBatcher;
+    private final Supplier<ContributionLedger> ledger;
+    private final ActiveMembers activeMembers;
+
+    Tenant(String repoFullName, String contractId, WebhookSignature signature, String valuesCsvVersion,
+           Supplier<MintBatcher> mintBatcher, Supplier<ContributionLedger> ledger, ActiveMembers activeMembers) {
+        this.repoFullName = repoFullName;
+        this.contractId = contractId;
+        this.signature = signature;
+        this.valuesCsvVersion = valuesCsvVersion;
+        this.mintBatcher = mintBatcher;
+        this.ledger = ledger;
+        this.activeMembers = activeMembers;
+    }
+
+    /** Returns true if deliveries about the repository belong to this tenant. GitHub names are case-insensitive. */
+    boolean serves(String repoFullName) {
+        return this.repoFullName == null || this.repoFullName.equalsIgnoreCase(repoFullName);
+    }
+
+    /** Key of the tenant's state in components shared by all tenants, such as the reaction scorer: its contract. */
+    String key() {
+        return contractId == null ? "" : contractId;
+    }
+
+    /** The batcher minting on the tenant's contract, or null if its mint log cannot be opened. */
+    MintBatcher mintBatcher() {
+        return mintBatcher.get();
+    }
+
+    /** The ledger of the contributions scored for the tenant's contract, or null if it cannot be opened. */
+    ContributionLedger ledger() {
+        return ledger.get();
+    }
+
+    ActiveMembers activeMembers() {
+        return activeMembers;
+    }
+}
@@ -0,0 +1,274 @@
+package com.decozero;
+
+import com.decozero.secrets.SecretManager;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The DeCos served by a multi-tenant deployment, by repository.
+ *
+ * Tenants are read from a CSV file with one line per repository:
+ * {@code repository,contract_id,webhook_secret_name[,values_csv_sha]}. The secret is resolved by
+ * name through {@link SecretManager}; the optional SHA is the values.csv version the contract
+ * publishes, which lets cached rules be used without revalidating them against GitHub. Blank lines,
+ * {@code #} comments and a header line are skipped. The file is checked for changes every reload
+ * interval and swapped in whole when it parses.
+ *
+ * What belongs to a contract rather than to a line of the file is created on first use and kept
+ * across reloads: its {@link MintBatcher}, logging to {@code <contract id>.journal} in the mint log
+ * directory, its {@link ContributionLedger}, {@code <contract id>.ledger} in the ledger directory, and
+ * its {@link ActiveMembers}. All batchers flush on one shared scheduler.
+ */
+class TenantRegistry implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(TenantRegistry.class.getName());
+
+    private static final String HEADER = "repository";
+
+    private final Path file;
+    private final NearMintClient near;
+    private final ActiveMembers.Source memberSource;
+    private final Path mintLogDir;
+    private final Path ledgerDir;
+    private final int tokenDecimals;
+    private final int maxBatchAccounts;
+    private final long flushIntervalMillis;
+    private final long membersTtlMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // Keyed by lower-cased "owner/name"; replaced as a whole on reload.
+    private volatile Map<String, Tenant> tenants = Collections.emptyMap();
+    private volatile FileTime loadedModified;
+    private final Map<String, MintBatcher> batchers = new ConcurrentHashMap<>();
+    private final Map<String, ContributionLedger> ledgers = new ConcurrentHashMap<>();
+    private final Map<String, ActiveMembers> members = new ConcurrentHashMap<>();
+    private final Object batcherLock = new Object();
+
+    /**
+     * @param near         Client minting for every tenant, or null to keep their awards in the mint logs.
+     * @param flushThreads Threads of the scheduler shared by the mint batchers and the reloads.
+     */
+    TenantRegistry(Path file, NearMintClient near, ActiveMembers.Source memberSource, Path mintLogDir, Path ledgerDir,
+                   int tokenDecimals, int maxBatchAccounts, long flushInterval, long membersTtl, TimeUnit unit,
+                   int flushThreads) {
+        this.file = file;
+        this.near = near;
+        this.memberSource = memberSource;
+        this.mintLogDir = mintLogDir;
+        this.ledgerDir = ledgerDir;
+        this.tokenDecimals = tokenDecimals;
+        this.maxBatchAccounts = maxBatchAccounts;
+        this.flushIntervalMillis = unit.toMillis(flushInterval);
+        this.membersTtlMillis = unit.toMillis(membersTtl);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threads = r -> {
+            Thread thread = new Thread(r, "tenant-mint-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.scheduler = Executors.newScheduledThreadPool(flushThreads, threads);
+    }
+
+    /**
+     * Loads the file, then keeps checking it for changes every {@code reloadInterval}.
+     *
+     * @throws IOException If the file cannot be read or has a malformed line.
+     */
+    void start(long reloadInterval, TimeUnit unit) throws IOException {
+        reload();
+        scheduler.scheduleWithFixedDelay(this::reloadQuietly, reloadInterval, reloadInterval, unit);
+    }
+
+    /** Returns the tenant of a repository ("owner/name", any case), or null if it is not served. */
+    Tenant tenant(String repoFullName) {
+        return repoFullName == null ? null : tenants.get(repoFullName.toLowerCase(Locale.ROOT));
+    }
+
+    int size() {
+        return tenants.size();
+    }
+
+    /** The ledgers opened so far, one per contract that has recorded a contribution. */
+    List<ContributionLedger> ledgers() {
+        return new ArrayList<>(ledgers.values());
+    }
+
+    /** Number of contracts that have minted since the process started. */
+    int activeContracts() {
+        return batchers.size();
+    }
+
+    /**
+     * Returns the repository a webhook URL is for: its last two path segments, as in
+     * {@code /webhooks/owner/name}. Null if the path has fewer than two segments.
+     */
+    static String repositoryFromPath(String path) {
+        int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        int slash = path.lastIndexOf('/', end - 1);
+        if (slash <= 0) {
+            return null;
+        }
+        int ownerSlash = path.lastIndexOf('/', slash - 1);
+        if (ownerSlash < 0 || ownerSlash + 1 == slash || slash + 1 == end) {
+            return null;
+        }
+        return path.substring(ownerSlash + 1, end);
+    }
+
+    // Re-reads the file if it changed since the last load.
+    private void reload() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        if (modified.equals(loadedModified)) {
+            return;
+        }
+        Map<String, Tenant> loaded = new HashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split("\\s*,\\s*", -1);
+            if (lineNumber == 1 && HEADER.equalsIgnoreCase(fields[0])) {
+                continue;
+            }
+            if (fields.length < 3 || fields.length > 4 || fields[0].indexOf('/') < 0
+                    || !isAccountId(fields[1]) || fields[2].isEmpty()) {
+                throw new IOException("Malformed tenant at " + file + ":" + lineNumber);
+            }
+            String repo = fields[0];
+            String sha = fields.length == 4 && !fields[3].isEmpty() ? fields[3] : null;
+            loaded.put(repo.toLowerCase(Locale.ROOT), tenant(repo, fields[1], SecretManager.getSecret(fields[2]), sha));
+        }
+        tenants = loaded;
+        loadedModified = modified;
+        logger.info("Loaded " + loaded.size() + " tenant(s) from " + file);
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Could not reload tenants, keeping the previous set: " + e.getMessage());
+        }
+    }
+
+    private Tenant tenant(String repo, String contractId, String secret, String valuesCsvVersion) {
+        ActiveMembers contractMembers = members.computeIfAbsent(contractId,
+                id -> new ActiveMembers(memberSource, id, membersTtlMillis, TimeUnit.MILLISECONDS));
+        WebhookSignature signature = secret == null || secret.isEmpty() ? null : new WebhookSignature(secret);
+        if (signature == null) {
+            logger.warning("No webhook secret for " + repo + "; its deliveries are rejected unless WEBHOOK_ALLOW_UNSIGNED is set.");
+        }
+        return new Tenant(repo, contractId, signature, valuesCsvVersion, () -> batcher(contractId),
+                () -> ledger(contractId), contractMembers);
+    }
+
+    // Opens the contract's batcher on its first award, replaying what a previous process left unminted.
+    private MintBatcher batcher(String contractId) {
+        MintBatcher batcher = batchers.get(contractId);
+        if (batcher != null) {
+            return batcher;
+        }
+        synchronized (batcherLock) {
+            batcher = batchers.get(contractId);
+            if (batcher == null) {
+                Path logPath = mintLogDir.resolve(contractId + ".journal");
+                MintBatcher opened = new MintBatcher(near, contractId, new MintLog(logPath), tokenDecimals,
+                        maxBatchAccounts, flushIntervalMillis, TimeUnit.MILLISECONDS, scheduler);
+                try {
+                    Files.createDirectories(mintLogDir);
+                    opened.start();
+                } catch (IOException e) {
+                    // Not kept, so the next award tries again.
+                    logger.severe("Could not open mint log " + logPath + ": " + e.getMessage());
+                    return null;
+                }
+                batchers.put(contractId, opened);
+                batcher = opened;
+            }
+            return batcher;
+        }
+    }
+
+    // Opens the contract's ledger on its first record; a failure is retried on the next one.
+    private ContributionLedger ledger(String contractId) {
+        ContributionLedger ledger = ledgers.get(contractId);
+        if (ledger != null) {
+            return ledger;
+        }
+        synchronized (batcherLock) {
+            ledger = ledgers.get(contractId);
+            if (ledger == null) {
+                Path ledgerPath = ledgerDir.resolve(contractId + ".ledger");
+                try {
+                    Files.createDirectories(ledgerDir);
+                    ledger = new ContributionLedger(ledgerPath);
+                } catch (IOException e) {
+                    logger.severe("Could not open contribution ledger " + ledgerPath + ": " + e.getMessage());
+                    return null;
+                }
+                ledgers.put(contractId, ledger);
+            }
+            return ledger;
+        }
+    }
+
+    // NEAR account ids: 2-64 characters of a-z, 0-9, '-', '_' and '.'; they also name the mint logs.
+    private static boolean isAccountId(String id) {
+        if (id.length() < 2 || id.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.')) {
+                return false;
+            }
+        }
+        return !id.startsWith(".");
+    }
+
+    /**
+     * Stops reloading and closes every batcher, each making a last attempt to mint what is pending,
+     * and every ledger.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        IOException failure = null;
+        for (MintBatcher batcher : batchers.values()) {
+            try {
+                batcher.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (ContributionLedger ledger : ledgers.values()) {
+            try {
+                ledger.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
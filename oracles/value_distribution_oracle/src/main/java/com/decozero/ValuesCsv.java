@@ -0,0 +1,45 @@
+package com.decozero;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Parser for the values.csv contribution rules file.
+ */
+final class ValuesCsv {
+
+    private static final Logger logger = Logger.getLogger(ValuesCsv.class.getName());
+
+    private ValuesCsv() {
+    }
+
+    /**
+     * Parses every rule row of a values.csv file, keyed by {@code contributionType + "_" + role}.
+     * Comment lines starting with '#' and malformed rows are skipped.
+     *
+     * @param reader Reader positioned at the start of the file. Not closed by this method.
+     * @return The parsed rules, in file order. Empty if the file contains no valid rows.
+     */
+    static Map<String, ContributionRule> parse(Reader reader) throws IOException, CsvValidationException {
+        Map<String, ContributionRule> rules = new LinkedHashMap<>();
+        CSVReader csvReader = new CSVReader(reader);
+        String[] nextLine;
+        // Skip header and comment lines starting with '#'
+        while ((nextLine = csvReader.readNext()) != null) {
+            if (nextLine.length > 0 && !nextLine[0].trim().startsWith("#")) {
+                try {
+                    ContributionRule rule = new ContributionRule(nextLine);
+                    rules.put(rule.contributionType + "_" + rule.role, rule);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    logger.warning("Skipping malformed CSV line: " + String.join(",", nextLine));
+                }
+            }
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,66 @@
+package com.decozero;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The handful of GitHub webhook payload fields the value distribution function acts on.
+ * Fields absent from the payload are left null (or false/empty).
+ */
+final class WebhookPayload {
+
+    /** One entry of a push event's {@code commits} array. */
+    static final class PushCommit {
+        String authorUsername;
+        String url;
+        boolean distinct = true;
+        boolean touchesValuesCsv;
+    }
+
+    // Top level
+    String action;
+    String ref;
+    String repositoryHtmlUrl;
+    String pusherName;
+    final List<PushCommit> commits = new ArrayList<>();
+
+    // pull_request
+    boolean hasPullRequest;
+    String pullRequestRepoHtmlUrl;
+    String pullRequestUserLogin;
+    String pullRequestHtmlUrl;
+    boolean pullRequestMerged;
+
+    // issue
+    boolean hasIssue;
+    String issueRepoHtmlUrl;
+    String issueUserLogin;
+    String issueHtmlUrl;
+    String issueTitle;
+
+    // comment
+    boolean hasComment;
+    String commentUserLogin;
+    String commentBody;
+
+    // member / membership
+    String memberLogin;
+    String memberPermission;
+    String organizationLogin;
+
+    // reaction (emitted by the reaction poller, GitHub has no reaction webhook)
+    boolean hasReaction;
+    String reactionContent;
+    String reactionUserLogin;
+    String reactionSubjectHtmlUrl;
+
+    /** Returns true if any commit of a push added or modified values.csv. */
+    boolean touchesValuesCsv() {
+        for (PushCommit commit : commits) {
+            if (commit.touchesValuesCsv) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
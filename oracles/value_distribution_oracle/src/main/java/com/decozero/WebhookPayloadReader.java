@@ -0,0 +1,307 @@
+package com.decozero;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming extractor for GitHub webhook payloads.
+ *
+ * Walks the request body once with Gson's {@link JsonReader}, keeping only the fields listed in
+ * {@link WebhookPayload} and skipping every other value without materialising it. Large push and
+ * pull_request payloads are therefore never held in memory as a String or a JsonObject tree.
+ */
+final class WebhookPayloadReader {
+
+    private static final String VALUES_CSV_PATH = "values.csv";
+
+    private WebhookPayloadReader() {
+    }
+
+    /**
+     * Reads a webhook payload.
+     *
+     * @param body The request body. Not closed by this method.
+     * @throws IOException           If the body cannot be read or is not well-formed JSON.
+     * @throws IllegalStateException If the top-level value is not a JSON object.
+     */
+    static WebhookPayload read(Reader body) throws IOException {
+        WebhookPayload payload = new WebhookPayload();
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "action":
+                    payload.action = nextString(reader);
+                    break;
+                case "ref":
+                    payload.ref = nextString(reader);
+                    break;
+                case "repository":
+                    payload.repositoryHtmlUrl = readHtmlUrl(reader);
+                    break;
+                case "pusher":
+                    payload.pusherName = readStringField(reader, "name");
+                    break;
+                case "commits":
+                    readCommits(reader, payload);
+                    break;
+                case "pull_request":
+                    readPullRequest(reader, payload);
+                    break;
+                case "issue":
+                    readIssue(reader, payload);
+                    break;
+                case "comment":
+                    readComment(reader, payload);
+                    break;
+                case "reaction":
+                    readReaction(reader, payload);
+                    break;
+                case "member":
+                    payload.memberLogin = readStringField(reader, "login");
+                    break;
+                case "changes":
+                    readChanges(reader, payload);
+                    break;
+                case "organization":
+                    payload.organizationLogin = readStringField(reader, "login");
+                    break;
+                case "subject":
+                    payload.reactionSubjectHtmlUrl = readHtmlUrl(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return payload;
+    }
+
+    private static void readCommits(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginArray(reader)) {
+            return;
+        }
+        while (reader.hasNext()) {
+            if (!beginObject(reader)) {
+                continue;
+            }
+            WebhookPayload.PushCommit commit = new WebhookPayload.PushCommit();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "distinct":
+                        commit.distinct = nextBoolean(reader, true);
+                        break;
+                    case "author":
+                        commit.authorUsername = readStringField(reader, "username");
+                        break;
+                    case "url":
+                        commit.url = nextString(reader);
+                        break;
+                    case "added":
+                    case "modified":
+                        commit.touchesValuesCsv |= containsString(reader, VALUES_CSV_PATH);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            payload.commits.add(commit);
+        }
+        reader.endArray();
+    }
+
+    private static void readPullRequest(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginObject(reader)) {
+            return;
+        }
+        payload.hasPullRequest = true;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "html_url":
+                    payload.pullRequestHtmlUrl = nextString(reader);
+                    break;
+                case "merged":
+                    payload.pullRequestMerged = nextBoolean(reader, false);
+                    break;
+                case "user":
+                    payload.pullRequestUserLogin = readStringField(reader, "login");
+                    break;
+                case "base":
+                    // base.repo.html_url
+                    if (beginObject(reader)) {
+                        while (reader.hasNext()) {
+                            if ("repo".equals(reader.nextName())) {
+                                payload.pullRequestRepoHtmlUrl = readHtmlUrl(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readIssue(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginObject(reader)) {
+            return;
+        }
+        payload.hasIssue = true;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "html_url":
+                    payload.issueHtmlUrl = nextString(reader);
+                    break;
+                case "title":
+                    payload.issueTitle = nextString(reader);
+                    break;
+                case "user":
+                    payload.issueUserLogin = readStringField(reader, "login");
+                    break;
+                case "repository":
+                    payload.issueRepoHtmlUrl = readHtmlUrl(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readComment(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginObject(reader)) {
+            return;
+        }
+        payload.hasComment = true;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "body":
+                    payload.commentBody = nextString(reader);
+                    break;
+                case "user":
+                    payload.commentUserLogin = readStringField(reader, "login");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // Only member events' {"permission": {"to": ...}} change is of interest.
+    private static void readChanges(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginObject(reader)) {
+            return;
+        }
+        while (reader.hasNext()) {
+            if ("permission".equals(reader.nextName())) {
+                payload.memberPermission = readStringField(reader, "to");
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readReaction(JsonReader reader, WebhookPayload payload) throws IOException {
+        if (!beginObject(reader)) {
+            return;
+        }
+        payload.hasReaction = true;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "content":
+                    payload.reactionContent = nextString(reader);
+                    break;
+                case "user":
+                    payload.reactionUserLogin = readStringField(reader, "login");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // --- Low-level helpers ---
+
+    private static String readHtmlUrl(JsonReader reader) throws IOException {
+        return readStringField(reader, "html_url");
+    }
+
+    // Reads a single string field of an object value, skipping all its other fields.
+    private static String readStringField(JsonReader reader, String field) throws IOException {
+        if (!beginObject(reader)) {
+            return null;
+        }
+        String value = null;
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName())) {
+                value = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static boolean containsString(JsonReader reader, String expected) throws IOException {
+        if (!beginArray(reader)) {
+            return false;
+        }
+        boolean found = false;
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.STRING && !found) {
+                found = expected.equals(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return found;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    private static boolean nextBoolean(JsonReader reader, boolean defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        reader.skipValue();
+        return defaultValue;
+    }
+
+    // Enters an object value, or skips the value and returns false if it is not an object (e.g. null).
+    private static boolean beginObject(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            return true;
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    private static boolean beginArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            return true;
+        }
+        reader.skipValue();
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.decozero;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Verifies the X-Hub-Signature-256 header GitHub sends with every webhook delivery.
+ *
+ * The HMAC-SHA256 {@link Mac} is initialised once per thread and reset between requests, and the
+ * computed digest is compared in constant time.
+ */
+final class WebhookSignature {
+
+    private static final String PREFIX = "sha256=";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final ThreadLocal<Mac> macs;
+
+    WebhookSignature(String secret) {
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+            }
+        });
+    }
+
+    /**
+     * Returns true if {@code header} is the signature of {@code body}.
+     *
+     * @param header Value of X-Hub-Signature-256, e.g. "sha256=&lt;hex&gt;", or null if absent.
+     */
+    boolean matches(String header, byte[] body) {
+        if (header == null || !header.startsWith(PREFIX)) {
+            return false;
+        }
+        byte[] expected = decodeHex(header, PREFIX.length());
+        if (expected == null) {
+            return false;
+        }
+        Mac mac = macs.get();
+        mac.reset();
+        mac.update(body);
+        return MessageDigest.isEqual(mac.doFinal(), expected);
+    }
+
+    private static byte[] decodeHex(String text, int offset) {
+        int length = text.length() - offset;
+        if (length % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(text.charAt(offset + 2 * i), 16);
+            int low = Character.digit(text.charAt(offset + 2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
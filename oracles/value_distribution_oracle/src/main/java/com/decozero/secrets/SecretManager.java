@@ -27,8 +27,12 @@ public class SecretManager {
         //     return null;
         // }
 
-        // Mock implementation returns a placeholder value.
-        // Replace this with the actual secret value for testing purposes.
+        // Mock implementation returns a placeholder value, unless an environment variable of the
+        // same name provides one for a local run (e.g. a real GitHub App key for a load test).
+        String local = System.getenv(secretName);
+        if (local != null && !local.isEmpty()) {
+            return local;
+        }
         return "mock-" + secretName;
     }
 }
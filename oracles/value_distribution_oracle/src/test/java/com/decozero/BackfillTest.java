@@ -0,0 +1,69 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BackfillTest {
+
+    // Values that add up exactly in any order, so that totals can be compared as strings.
+    private static final String VALUES_CSV =
+            "contribution_type,role,base_value,member_reaction_multiplier,non_member_reaction_multiplier\n"
+                    + "pull_request_merged,contributor,1.5,1,1\n"
+                    + "issue_closed,contributor,0.25,1,1\n";
+    private static final String[] TYPES = {"pull_request_merged", "issue_closed", "unknown_type"};
+    private static final int AUTHORS = 37;
+    // Several batches, more than are ever in flight at once.
+    private static final int EVENTS = 100_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelLedgerMatchesASequentialCount() throws Exception {
+        StringBuilder events = new StringBuilder();
+        Map<String, Double> amounts = new HashMap<>();
+        Map<String, Long> contributions = new HashMap<>();
+        for (int i = 0; i < EVENTS; i++) {
+            if (i % 101 == 0) {
+                events.append("not json\n");
+                continue;
+            }
+            String type = TYPES[i % TYPES.length];
+            String author = "author-" + (i * 7 % AUTHORS);
+            events.append("{\"type\": \"").append(type).append("\", \"author\": \"").append(author).append("\"}\n");
+            double value = type.equals("pull_request_merged") ? 1.5 : type.equals("issue_closed") ? 0.25 : 0;
+            if (value > 0) {
+                amounts.merge(author, value, Double::sum);
+                contributions.merge(author, 1L, Long::sum);
+            }
+        }
+        Set<String> expected = new HashSet<>();
+        expected.add("contributor,role,amount,contributions");
+        amounts.forEach((author, amount) -> expected.add(author + ",contributor," + amount + "," + contributions.get(author)));
+
+        assertEquals(expected, ledger(events.toString(), 1));
+        assertEquals(expected, ledger(events.toString(), 4));
+    }
+
+    private Set<String> ledger(String events, int parallelism) throws Exception {
+        RuleTable rules = RuleTable.compile(ValuesCsv.parse(new StringReader(VALUES_CSV)).values());
+        Backfill backfill = new Backfill(rules, Collections.emptyMap(), Collections.emptyMap(), false, parallelism);
+        backfill.run(new BufferedReader(new StringReader(events)));
+        Path out = folder.newFile().toPath();
+        backfill.writeLedger(out);
+        return new HashSet<>(Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContributionLedgerTest {
+
+    private static final String CONTRACT_ID = "deco.testnet";
+    private static final int TOKEN_DECIMALS = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reconcileReportsContributorsWhoseBalanceDiffers() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("contributions.ledger");
+        FakeNearRpc near = new FakeNearRpc(0, TimeUnit.MILLISECONDS, 0);
+        try (ContributionLedger ledger = new ContributionLedger(path)) {
+            ledger.append(entry("alice", 1.5));
+            ledger.append(entry("bob", 2.0));
+            ledger.append(entry("alice", 0.25));
+            ledger.append(entry("carol", 1.0));
+            mint(near, "alice", 175);
+            mint(near, "bob", 150);
+
+            List<ContributionLedger.Discrepancy> discrepancies = ledger.reconcile(near, TOKEN_DECIMALS);
+            assertEquals(2, discrepancies.size());
+            assertDiscrepancy(discrepancies.get(0), "bob", 200, 150);
+            assertDiscrepancy(discrepancies.get(1), "carol", 100, 0);
+
+            mint(near, "bob", 50);
+            mint(near, "carol", 100);
+            assertTrue(ledger.reconcile(near, TOKEN_DECIMALS).isEmpty());
+        }
+    }
+
+    @Test
+    public void reconcileAsksForEachBalanceOnce() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("contributions.ledger");
+        Map<String, Integer> asked = new LinkedHashMap<>();
+        ContributionLedger.BalanceSource balances = account -> {
+            asked.merge(account, 1, Integer::sum);
+            return BigInteger.valueOf(100);
+        };
+        try (ContributionLedger ledger = new ContributionLedger(path)) {
+            for (int i = 0; i < 10; i++) {
+                ledger.append(entry(i % 2 == 0 ? "alice" : "bob", 0.2));
+            }
+        }
+        // Reopened, so the records are read back from the file.
+        try (ContributionLedger ledger = new ContributionLedger(path)) {
+            assertTrue(ledger.reconcile(balances, TOKEN_DECIMALS).isEmpty());
+        }
+        assertEquals(Arrays.asList("alice", "bob"), new ArrayList<>(asked.keySet()));
+        assertEquals(Collections.singleton(1), new HashSet<>(asked.values()));
+    }
+
+    private static ContributionLedger.Entry entry(String contributor, double amount) {
+        return new ContributionLedger.Entry(System.currentTimeMillis(), "delivery", contributor, "commit", "member",
+                amount, 1, "v1");
+    }
+
+    private static void mint(FakeNearRpc near, String account, long units) throws IOException {
+        near.mintBatch(CONTRACT_ID, Collections.singletonMap(account, BigInteger.valueOf(units)));
+    }
+
+    private static void assertDiscrepancy(ContributionLedger.Discrepancy discrepancy, String contributor,
+                                          long ledgerUnits, long chainUnits) {
+        assertEquals(contributor, discrepancy.contributor);
+        assertEquals(BigInteger.valueOf(ledgerUnits), discrepancy.ledgerUnits);
+        assertEquals(BigInteger.valueOf(chainUnits), discrepancy.chainUnits);
+    }
+}
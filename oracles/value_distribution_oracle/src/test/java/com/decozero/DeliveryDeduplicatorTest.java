@@ -0,0 +1,57 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeliveryDeduplicatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void claimsSurviveARestart() {
+        Path path = folder.getRoot().toPath().resolve("deliveries");
+        DeliveryDeduplicator deliveries = deduplicator(path, 100, 10);
+        assertTrue(deliveries.claim("a"));
+        assertTrue(deliveries.claim("b"));
+        assertFalse(deliveries.claim("a"));
+        deliveries.release("b");
+
+        DeliveryDeduplicator restarted = deduplicator(path, 100, 10);
+        assertTrue(restarted.isDuplicate("a"));
+        assertFalse(restarted.isDuplicate("b"));
+        assertTrue(restarted.claim("b"));
+    }
+
+    @Test
+    public void storeIsCompactedWhileRunning() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("deliveries");
+        DeliveryDeduplicator deliveries = deduplicator(path, 5, 10);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(deliveries.claim("id-" + i));
+        }
+        assertEquals(5, deliveries.size());
+        long lines = Files.readAllLines(path, StandardCharsets.UTF_8).size();
+        assertTrue("lines left: " + lines, lines <= 5 + 10);
+
+        DeliveryDeduplicator restarted = deduplicator(path, 5, 10);
+        assertEquals(5, restarted.size());
+        assertTrue(restarted.isDuplicate("id-99"));
+        assertFalse(restarted.isDuplicate("id-94"));
+    }
+
+    private static DeliveryDeduplicator deduplicator(Path path, int maxEntries, int compactMinRecords) {
+        return new DeliveryDeduplicator(1, TimeUnit.HOURS, maxEntries, new DeliveryDeduplicator.FileStore(path),
+                compactMinRecords);
+    }
+}
@@ -0,0 +1,115 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeliverySpoolTest {
+
+    private static final String KEY = "deco-org/project";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void concurrentDeliveriesWithOneIdAreSpooledOnce() throws Exception {
+        DeliverySpool spool = spool(10);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<DeliverySpool.Delivery>> accepted = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                Callable<DeliverySpool.Delivery> accept = () -> {
+                    start.await();
+                    return spool.accept("72d3162e-cc78-11e3-81ab-4c9367dc0958", KEY, content("{}"));
+                };
+                accepted.add(executor.submit(accept));
+            }
+            start.countDown();
+            int spooled = 0;
+            for (Future<DeliverySpool.Delivery> delivery : accepted) {
+                spooled += delivery.get() != DeliverySpool.DUPLICATE ? 1 : 0;
+            }
+            assertEquals(1, spooled);
+            assertEquals(1, spool.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void processedIdCanBeSpooledAgain() throws IOException {
+        DeliverySpool spool = spool(10);
+        DeliverySpool.Delivery delivery = spool.accept("id-1", KEY, content("{}"));
+        assertSame(DeliverySpool.DUPLICATE, spool.accept("id-1", KEY, content("{}")));
+        spool.done(delivery);
+        DeliverySpool.Delivery again = spool.accept("id-1", KEY, content("{}"));
+        assertNotNull(again);
+        assertEquals(2, again.bytes);
+    }
+
+    @Test
+    public void keyHoldsAtMostMaxPerKey() throws IOException {
+        DeliverySpool spool = spool(2);
+        assertNotNull(spool.accept("id-1", KEY, content("{}")));
+        assertNotNull(spool.accept("id-2", KEY, content("{}")));
+        assertNull(spool.accept("id-3", KEY, content("{}")));
+        assertNotNull(spool.accept("id-4", "deco-org/other", content("{}")));
+    }
+
+    @Test
+    public void failedDeliveryWaitsForItsRetryWhileNewerOnesGoAhead() throws Exception {
+        DeliverySpool spool = spool(10);
+        DeliverySpool.Delivery failed = spool.accept("failed", KEY, content("{}"));
+        DeliverySpool.Delivery newer = spool.accept("newer", KEY, content("{}"));
+        spool.retry(failed, 200, TimeUnit.MILLISECONDS);
+        spool.defer(newer);
+
+        List<String> queued = new ArrayList<>();
+        spool.replay(delivery -> queued.add(delivery.id));
+        assertEquals(Collections.singletonList("newer"), queued);
+        assertEquals(1, spool.retryCount());
+
+        Thread.sleep(250);
+        queued.clear();
+        spool.replay(delivery -> queued.add(delivery.id));
+        assertEquals(Collections.singletonList("failed"), queued);
+        assertEquals(0, spool.retryCount());
+    }
+
+    @Test
+    public void refusedRetryStaysSetAside() throws IOException {
+        DeliverySpool spool = spool(10);
+        DeliverySpool.Delivery failed = spool.accept("failed", KEY, content("{}"));
+        spool.retry(failed, 0, TimeUnit.MILLISECONDS);
+        spool.replay(delivery -> false);
+        assertEquals(1, spool.retryCount());
+    }
+
+    private DeliverySpool spool(int maxPerKey) throws IOException {
+        DeliverySpool spool = new DeliverySpool(folder.getRoot().toPath().resolve("spool"), maxPerKey);
+        spool.recover();
+        return spool;
+    }
+
+    private static DeliverySpool.Content content(String body) {
+        return new DeliverySpool.Content("/deco-org/project", Collections.emptyMap(), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
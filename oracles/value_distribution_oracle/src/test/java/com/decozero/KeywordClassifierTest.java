@@ -0,0 +1,57 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.decozero.ContributionClassifier.Subject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class KeywordClassifierTest {
+
+    @Test
+    public void keywordThatIsASuffixOfAnotherIsFoundInsideIt() {
+        KeywordClassifier classifier = classifier("review", "short", "code review", "long");
+        // Ends in the state of "code review", where "review" is only reached through the failure link.
+        assertEquals("short", classifier.classify(Subject.COMMENT, "needs a code review"));
+
+        classifier = classifier("code review", "long", "review", "short");
+        assertEquals("long", classifier.classify(Subject.COMMENT, "needs a code review"));
+        assertEquals("short", classifier.classify(Subject.COMMENT, "needs a review"));
+    }
+
+    @Test
+    public void suffixInsideALongerWordDoesNotMatch() {
+        KeywordClassifier classifier = classifier("error", "error", "terror", "terror");
+        assertEquals("terror", classifier.classify(Subject.COMMENT, "a terror"));
+        assertNull(classifier.classify(Subject.COMMENT, "errors"));
+        assertEquals("error", classifier("error*", "error").classify(Subject.COMMENT, "errors"));
+    }
+
+    @Test
+    public void overlappingKeywordsAreBothFound() {
+        KeywordClassifier classifier = classifier("bug report", "report", "critical bug", "critical");
+        assertEquals("report", classifier.classify(Subject.COMMENT, "critical bug report"));
+        // "bug report" is cut short by a longer word, so only the other one counts.
+        assertEquals("critical", classifier.classify(Subject.COMMENT, "critical bug reporter"));
+    }
+
+    @Test
+    public void partialMatchFallsBackWithoutMissingALaterOne() {
+        KeywordClassifier classifier = classifier("pull request", "pull", "request", "request");
+        assertEquals("pull", classifier.classify(Subject.COMMENT, "a pull pull request"));
+        assertEquals("request", classifier.classify(Subject.COMMENT, "pull requests and a request"));
+        assertNull(classifier.classify(Subject.COMMENT, "pull requests"));
+        assertEquals("PULL", classifier("Pull Request", "PULL").classify(Subject.COMMENT, "a PULL REQUEST"));
+    }
+
+    // Comment keywords from alternating keyword and type arguments, earlier ones taking precedence.
+    private static KeywordClassifier classifier(String... keywordsAndTypes) {
+        List<KeywordClassifier.Keyword> keywords = new ArrayList<>();
+        for (int i = 0; i < keywordsAndTypes.length; i += 2) {
+            keywords.addAll(KeywordClassifier.parseKeywords(Subject.COMMENT, keywordsAndTypes[i + 1], keywordsAndTypes[i]));
+        }
+        return KeywordClassifier.compile(keywords);
+    }
+}
@@ -0,0 +1,185 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MintBatcherTest {
+
+    private static final String CONTRACT_ID = "deco.testnet";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Records the transactions it is sent; the one numbered {@code failingCall} is rejected. */
+    private static final class RecordingClient implements NearMintClient {
+        final List<Map<String, BigInteger>> transactions = new ArrayList<>();
+        final Map<String, BigInteger> balances = new LinkedHashMap<>();
+        int failingCall;
+        int calls;
+
+        @Override
+        public synchronized String mintBatch(String contractId, Map<String, BigInteger> amounts) throws IOException {
+            if (++calls == failingCall) {
+                throw new IOException("transaction rejected");
+            }
+            transactions.add(new LinkedHashMap<>(amounts));
+            amounts.forEach((account, amount) -> balances.merge(account, amount, BigInteger::add));
+            return "tx-" + calls;
+        }
+    }
+
+    @Test
+    public void backlogIsMintedInChunksOfMaxAccounts() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        logAwards(path, "a", "b", "c", "d", "e");
+        RecordingClient client = new RecordingClient();
+        MintBatcher batcher = batcher(client, path, 2);
+        batcher.start();
+
+        assertEquals(5, batcher.flush());
+        assertEquals(3, client.transactions.size());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(client.transactions.get(0).keySet()));
+        assertEquals(Arrays.asList("c", "d"), new ArrayList<>(client.transactions.get(1).keySet()));
+        assertEquals(Arrays.asList("e"), new ArrayList<>(client.transactions.get(2).keySet()));
+        assertEquals(0, batcher.pendingAccounts());
+        batcher.close();
+        assertTrue(recover(path).isEmpty());
+    }
+
+    @Test
+    public void failedChunkLeavesItsAwardsAndTheRestPending() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        logAwards(path, "a", "b", "c", "d", "e");
+        RecordingClient client = new RecordingClient();
+        client.failingCall = 2;
+        MintBatcher batcher = batcher(client, path, 2);
+        batcher.start();
+
+        try {
+            batcher.flush();
+            fail("flush succeeded with a rejected transaction");
+        } catch (IOException e) {
+            // Expected: the second chunk's failure.
+        }
+        assertEquals(1, client.transactions.size());
+        assertEquals(3, batcher.pendingAccounts());
+        assertEquals(1, batcher.flushFailureCount());
+
+        // Only the first chunk was marked minted, so a restart mints the other three and nothing twice.
+        RecordingClient restartedClient = new RecordingClient();
+        MintBatcher restarted = batcher(restartedClient, path, 2);
+        restarted.start();
+        assertEquals(3, restarted.pendingAccounts());
+        assertEquals(3, restarted.flush());
+        restarted.close();
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(client.balances.keySet()));
+        assertEquals(Arrays.asList("c", "d", "e"), new ArrayList<>(restartedClient.balances.keySet()));
+        assertTrue(recover(path).isEmpty());
+    }
+
+    @Test
+    public void failedChunkIsRetriedOnTheNextFlush() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        logAwards(path, "a", "b", "c");
+        RecordingClient client = new RecordingClient();
+        client.failingCall = 1;
+        MintBatcher batcher = batcher(client, path, 2);
+        batcher.start();
+
+        try {
+            batcher.flush();
+            fail("flush succeeded with a rejected transaction");
+        } catch (IOException e) {
+            // Expected: the first chunk's failure, which stops the flush.
+        }
+        assertTrue(client.transactions.isEmpty());
+        assertEquals(3, batcher.flush());
+        batcher.close();
+        for (String account : Arrays.asList("a", "b", "c")) {
+            assertEquals("balance of " + account, BigInteger.ONE, client.balances.get(account));
+        }
+        assertTrue(recover(path).isEmpty());
+    }
+
+    @Test
+    public void awardsLoggedBeforeACrashAreMintedOnRestart() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        MintBatcher crashed = batcher(new RecordingClient(), path, 10);
+        crashed.start();
+        crashed.submit(Arrays.asList(new MintAward("alice", "member", 1.0, 1), new MintAward("bob", "member", 0.5, 1)));
+        crashed.submit(Arrays.asList(new MintAward("alice", "member", 1.0, 1)));
+        // Neither flushed nor closed: the process is gone with the awards only in the log.
+
+        RecordingClient client = new RecordingClient();
+        MintBatcher restarted = batcher(client, path, 10);
+        restarted.start();
+        assertEquals(2, restarted.pendingAccounts());
+        assertEquals(2, restarted.flush());
+        restarted.close();
+        assertEquals(BigInteger.valueOf(200), client.balances.get("alice"));
+        assertEquals(BigInteger.valueOf(50), client.balances.get("bob"));
+    }
+
+    @Test
+    public void withoutClientAwardsStayInTheLog() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        MintBatcher batcher = batcher(null, path, 1);
+        batcher.start();
+        batcher.submit(Arrays.asList(new MintAward("alice", "member", 1.0, 1), new MintAward("bob", "member", 2.0, 1)));
+
+        assertEquals(0, batcher.flush());
+        assertEquals(2, batcher.pendingAccounts());
+        batcher.close();
+        assertEquals(Arrays.asList("alice", "bob"), accounts(recover(path)));
+    }
+
+    // --- Helpers ---
+
+    private static MintBatcher batcher(NearMintClient client, Path path, int maxAccounts) {
+        // Token of 2 decimals; the periodic flush is too far away to run during a test.
+        return new MintBatcher(client, CONTRACT_ID, new MintLog(path), 2, maxAccounts, 1, TimeUnit.HOURS);
+    }
+
+    // Logs one smallest unit for each account, as a previous process would have.
+    private static void logAwards(Path path, String... accounts) throws IOException {
+        List<BigInteger> amounts = new ArrayList<>();
+        for (int i = 0; i < accounts.length; i++) {
+            amounts.add(BigInteger.ONE);
+        }
+        MintLog log = new MintLog(path);
+        log.recover();
+        log.append(Arrays.asList(accounts), amounts);
+        log.close();
+    }
+
+    private static List<MintLog.Entry> recover(Path path) throws IOException {
+        MintLog log = new MintLog(path);
+        try {
+            return log.recover();
+        } finally {
+            log.close();
+        }
+    }
+
+    private static List<String> accounts(List<MintLog.Entry> entries) {
+        List<String> accounts = new ArrayList<>();
+        for (MintLog.Entry entry : entries) {
+            accounts.add(entry.account);
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,115 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MintLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoveryKeepsOnlyUnmintedAwards() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        MintLog log = new MintLog(path);
+        log.recover();
+        List<MintLog.Entry> logged = log.append(Arrays.asList("a", "b", "c", "d"), units(1, 2, 3, 4));
+        log.flushed(logged.get(1).seq);
+        log.flushed(logged.get(3).seq, Collections.singletonList("d"));
+        log.close();
+
+        MintLog recovered = new MintLog(path);
+        List<MintLog.Entry> pending = recovered.recover();
+        assertEquals(1, pending.size());
+        assertEquals("c", pending.get(0).account);
+        assertEquals(BigInteger.valueOf(3), pending.get(0).amount);
+        // Sequence numbers carry on past what was logged before.
+        List<MintLog.Entry> next = recovered.append(Collections.singletonList("e"), units(5));
+        assertEquals(logged.get(3).seq + 1, next.get(0).seq);
+        recovered.close();
+        assertEquals(2, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void tornLastLineIsSkipped() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        MintLog log = new MintLog(path);
+        log.recover();
+        log.append(Collections.singletonList("a"), units(1));
+        log.close();
+        Files.write(path, "award 2 b".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        MintLog recovered = new MintLog(path);
+        List<MintLog.Entry> pending = recovered.recover();
+        recovered.close();
+        assertEquals(1, pending.size());
+        assertEquals("a", pending.get(0).account);
+    }
+
+    @Test
+    public void accountsWithSpacesAndLineBreaksReadBack() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        MintLog log = new MintLog(path);
+        log.recover();
+        log.append(Arrays.asList("a b", "c\nd", "100%"), units(1, 2, 3));
+        log.close();
+
+        MintLog recovered = new MintLog(path);
+        List<MintLog.Entry> pending = recovered.recover();
+        recovered.close();
+        assertEquals("a b", pending.get(0).account);
+        assertEquals("c\nd", pending.get(1).account);
+        assertEquals("100%", pending.get(2).account);
+    }
+
+    @Test
+    public void logIsCompactedWhileRunningOnceItHasGrown() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("mints.journal");
+        // Compacted whenever it has doubled, however small.
+        MintLog log = new MintLog(path, 1);
+        log.recover();
+        long minted = 0;
+        for (int i = 0; i < 100; i++) {
+            List<MintLog.Entry> logged = log.append(Arrays.asList("a" + i, "b" + i), units(1, 1));
+            log.flushed(logged.get(0).seq, Collections.singletonList("a" + i));
+            minted = logged.get(1).seq;
+        }
+        // Compaction dropped the minted a awards, and the records marking them.
+        long mintedLeft = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            mintedLeft += line.startsWith("award") && line.contains(" a") ? 1 : 0;
+        }
+        assertTrue(mintedLeft + " minted awards left in the log", mintedLeft < 50);
+
+        log.flushed(minted);
+        log.append(Collections.singletonList("c"), units(7));
+        log.close();
+        MintLog recovered = new MintLog(path);
+        List<MintLog.Entry> pending = recovered.recover();
+        recovered.close();
+        assertEquals(1, pending.size());
+        assertEquals("c", pending.get(0).account);
+        assertEquals(BigInteger.valueOf(7), pending.get(0).amount);
+    }
+
+    private static List<BigInteger> units(long... amounts) {
+        BigInteger[] units = new BigInteger[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            units[i] = BigInteger.valueOf(amounts[i]);
+        }
+        return Arrays.asList(units);
+    }
+}
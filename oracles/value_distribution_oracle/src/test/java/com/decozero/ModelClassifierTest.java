@@ -0,0 +1,87 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+
+import com.decozero.ContributionClassifier.Subject;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModelClassifierTest {
+
+    private static final long MODEL_LATENCY_MILLIS = 300;
+    private static final int CONCURRENT_CLASSIFICATIONS = 8;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_CLASSIFICATIONS);
+    private final ExecutorService handlers = Executors.newFixedThreadPool(CONCURRENT_CLASSIFICATIONS);
+    private final AtomicInteger modelCalls = new AtomicInteger();
+    private HttpServer model;
+
+    @Before
+    public void startModel() throws Exception {
+        model = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        model.setExecutor(handlers);
+        model.createContext("/classify", exchange -> {
+            modelCalls.incrementAndGet();
+            try {
+                Thread.sleep(MODEL_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"contribution_type\": \"suggestion\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        model.start();
+    }
+
+    @After
+    public void stopModel() {
+        model.stop(0);
+        callers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    @Test
+    public void concurrentMissesShareOneModelCall() throws Exception {
+        ModelClassifier classifier = new ModelClassifier(HttpClient.newHttpClient(),
+                URI.create("http://127.0.0.1:" + model.getAddress().getPort() + "/classify"),
+                KeywordClassifier.defaults(), 100, 5, TimeUnit.SECONDS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> answers = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CLASSIFICATIONS; i++) {
+            answers.add(callers.submit(() -> {
+                start.await();
+                return classifier.classify(Subject.COMMENT, "what about caching the rules?");
+            }));
+        }
+        start.countDown();
+        for (Future<String> answer : answers) {
+            assertEquals("suggestion", answer.get());
+        }
+        assertEquals(1, modelCalls.get());
+        assertEquals(0, classifier.fallbackCount());
+        // Callers that came in after the answer was cached are hits rather than misses.
+        assertEquals(CONCURRENT_CLASSIFICATIONS, classifier.hitCount() + classifier.missCount());
+        assertEquals(classifier.missCount() - 1, classifier.joinedCount());
+
+        assertEquals("suggestion", classifier.classify(Subject.COMMENT, "what about caching the rules?"));
+        assertEquals(1, modelCalls.get());
+    }
+}
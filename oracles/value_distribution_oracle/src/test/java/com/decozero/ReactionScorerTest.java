@@ -0,0 +1,73 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReactionScorerTest {
+
+    private static final String URL = "https://github.com/deco-org/project/pull/1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RuleTable rules;
+    private int slot;
+
+    @Before
+    public void compileRules() throws Exception {
+        rules = RuleTable.compile(ValuesCsv.parse(new StringReader(
+                "contribution_type,role,base_value,member_reaction_multiplier,non_member_reaction_multiplier\n"
+                        + "pull_request_merged,contributor,100,1.5,0.5\n"
+                        + "reaction_heart,member,2,1,1\n"
+                        + "reaction_heart,non_member,1,1,1\n")).values(), "v1");
+        slot = rules.resolve(rules.typeId("pull_request_merged"), rules.roleId("contributor"));
+    }
+
+    @Test
+    public void contributionsAreTrackedPerTenant() {
+        ReactionScorer scorer = new ReactionScorer(100);
+        scorer.track("a.testnet", URL, "alice", "contributor", rules, slot);
+
+        assertNull(scorer.react("b.testnet", URL, "bob", "heart", true, rules));
+        MintAward award = scorer.react("a.testnet", URL, "bob", "heart", true, rules);
+        assertNotNull(award);
+        assertEquals("alice", award.contributor);
+        assertEquals(3.0, award.amount, 1e-9);
+        assertEquals(103.0, scorer.score("a.testnet", URL), 1e-9);
+        assertTrue(Double.isNaN(scorer.score("b.testnet", URL)));
+
+        scorer.track("b.testnet", URL, "carol", "contributor", rules, slot);
+        assertEquals(2, scorer.trackedSince(0).size());
+        assertEquals("a.testnet", scorer.trackedSince(0).get(0).tenant);
+    }
+
+    @Test
+    public void journalIsCompactedWhileRunning() throws Exception {
+        Path journal = folder.getRoot().toPath().resolve("reactions.journal");
+        try (ReactionScorer scorer = new ReactionScorer(10, journal, 2048)) {
+            for (int i = 0; i < 200; i++) {
+                scorer.track("a.testnet", URL + i, "alice", "contributor", rules, slot);
+                assertNotNull(scorer.react("a.testnet", URL + i, "bob", "heart", false, rules));
+            }
+            assertEquals(10, scorer.size());
+            assertTrue("journal bytes: " + Files.size(journal), Files.size(journal) < 3 * 2048);
+        }
+        try (ReactionScorer scorer = new ReactionScorer(10, journal, 2048)) {
+            assertEquals(10, scorer.size());
+            assertEquals(100.5, scorer.score("a.testnet", URL + 199), 1e-9);
+            // Counted before the restart.
+            assertNull(scorer.react("a.testnet", URL + 199, "bob", "heart", false, rules));
+            assertTrue(Double.isNaN(scorer.score("a.testnet", URL + 0)));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.decozero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class RoleResolverTest {
+
+    private final RoleResolver resolver = new RoleResolver(repo -> Collections.singletonMap("alice", "admin"),
+            () -> 2, 1, TimeUnit.HOURS);
+
+    @After
+    public void close() {
+        resolver.close();
+    }
+
+    @Test
+    public void rolesResolveOnceTheSnapshotIsLoaded() throws InterruptedException {
+        assertEquals(RuleTable.FALLBACK_ROLE, resolver.role("o/a", "alice"));
+        awaitLoads(1);
+        assertEquals(RoleResolver.MAINTAINER_ROLE, resolver.role("o/a", "alice"));
+        assertEquals(RoleResolver.NON_MEMBER_ROLE, resolver.role("o/a", "bob"));
+
+        resolver.memberEvent("o/a", "added", "bob", "write");
+        assertEquals(RoleResolver.CONTRIBUTOR_ROLE, resolver.role("o/a", "bob"));
+        resolver.memberEvent("o/a", "removed", "alice", null);
+        assertEquals(RoleResolver.NON_MEMBER_ROLE, resolver.role("o/a", "alice"));
+    }
+
+    @Test
+    public void leastRecentlyLookedUpSnapshotIsEvictedPastTheBound() throws InterruptedException {
+        resolver.role("o/a", "alice");
+        awaitLoads(1);
+        resolver.role("o/b", "alice");
+        awaitLoads(2);
+        Thread.sleep(5);
+        // o/a is now the more recently looked up of the two.
+        assertEquals(RoleResolver.MAINTAINER_ROLE, resolver.role("o/a", "alice"));
+
+        resolver.role("o/c", "alice");
+        awaitLoads(3);
+        assertEquals(2, resolver.repoCount());
+        assertEquals(1, resolver.evictionCount());
+        assertEquals(RoleResolver.MAINTAINER_ROLE, resolver.role("o/a", "alice"));
+        assertEquals(RoleResolver.MAINTAINER_ROLE, resolver.role("o/c", "alice"));
+        assertEquals(RuleTable.FALLBACK_ROLE, resolver.role("o/b", "alice"));
+    }
+
+    private void awaitLoads(long loads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (resolver.loadCount() < loads && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("snapshots loaded: " + resolver.loadCount(), resolver.loadCount() >= loads);
+    }
+}